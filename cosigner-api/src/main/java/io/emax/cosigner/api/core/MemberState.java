@@ -0,0 +1,5 @@
+package io.emax.cosigner.api.core;
+
+public enum MemberState {
+  ALIVE, SUSPECT, DEAD
+}
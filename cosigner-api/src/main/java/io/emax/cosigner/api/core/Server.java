@@ -2,6 +2,7 @@ package io.emax.cosigner.api.core;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public class Server {
@@ -25,6 +26,33 @@ public class Server {
   private String sigS;
   @JsonProperty
   private String sigV;
+  @JsonProperty
+  private long incarnation;
+  @JsonProperty
+  private MemberState memberState = MemberState.ALIVE;
+
+  public Server() {
+  }
+
+  /**
+   * Copy a server, so that a changed version can be published without touching the one other
+   * threads may be reading.
+   */
+  public Server(Server server) {
+    this.serverLocation = server.serverLocation;
+    this.serverRpcPort = server.serverRpcPort;
+    this.serverListeningPort = server.serverListeningPort;
+    this.isOriginator = server.isOriginator;
+    this.serverId = server.serverId;
+    this.lastCommunication = server.lastCommunication;
+    this.currencyStatus =
+        server.currencyStatus == null ? null : new HashMap<>(server.currencyStatus);
+    this.sigR = server.sigR;
+    this.sigS = server.sigS;
+    this.sigV = server.sigV;
+    this.incarnation = server.incarnation;
+    this.memberState = server.memberState;
+  }
 
   public String getServerLocation() {
     return serverLocation;
@@ -106,6 +134,26 @@ public class Server {
     this.sigV = sigV;
   }
 
+  public long getIncarnation() {
+    return incarnation;
+  }
+
+  public void setIncarnation(long incarnation) {
+    this.incarnation = incarnation;
+  }
+
+  public MemberState getMemberState() {
+    return memberState;
+  }
+
+  public void setMemberState(MemberState memberState) {
+    this.memberState = memberState;
+  }
+
+  /**
+   * Servers are identified by their ID and ports only, so every version of a server is equal to the
+   * others. Sets of servers have to replace an entry to update it, adding won't.
+   */
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -146,7 +194,8 @@ public class Server {
     return "Server [serverLocation=" + serverLocation + ", serverRpcPort=" + serverRpcPort
         + ", serverListeningPort=" + serverListeningPort + ", isOriginator=" + isOriginator
         + ", serverId=" + serverId + ", lastCommunication=" + lastCommunication + ", sigR=" + sigR
-        + ", sigS=" + sigS + ", sigV=" + sigV + "]";
+        + ", sigS=" + sigS + ", sigV=" + sigV + ", incarnation=" + incarnation + ", memberState="
+        + memberState + "]";
   }
 
 }
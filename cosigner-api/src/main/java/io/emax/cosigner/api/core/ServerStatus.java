@@ -1,5 +1,5 @@
 package io.emax.cosigner.api.core;
 
 public enum ServerStatus {
-  UNKNOWN, CONNECTED, DISCONNECTED
+  UNKNOWN, CONNECTED, DISCONNECTED, SYNCING
 }
@@ -48,6 +48,9 @@ public interface Monitor {
 
   /**
    * Subscribe-able version of getBalances.
+   *
+   * <p>Only addresses whose balance changed are emitted, right after the refresh that noticed the
+   * change. A full snapshot of every balance is emitted periodically as well.
    */
   Observable<Map<String, String>> getObservableBalances();
 
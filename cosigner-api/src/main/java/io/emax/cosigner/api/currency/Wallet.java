@@ -230,6 +230,15 @@ public interface Wallet extends OfflineWallet {
       this.confirmed = confirmed;
     }
 
+    /**
+     * Key identifying this transfer for de-duplication. Unlike equals, it leaves out the date so
+     * that a transaction seen while pending isn't reported again once it's mined.
+     */
+    public String identityKey() {
+      return txHash + "|" + Arrays.toString(fromAddress) + "|" + Arrays.toString(toAddress) + "|"
+          + (amount == null ? null : amount.toPlainString());
+    }
+
     @Override
     public int hashCode() {
       final int prime = 31;
@@ -304,6 +313,58 @@ public interface Wallet extends OfflineWallet {
    */
   TransactionDetails[] getTransactions(String address, int numberToReturn, int skipNumber);
 
+  /**
+   * A batch of transactions along with the cursor to continue from.
+   */
+  class TransactionPage {
+    private TransactionDetails[] transactions = new TransactionDetails[0];
+    private String cursor;
+
+    public TransactionPage() {
+    }
+
+    public TransactionPage(TransactionDetails[] transactions, String cursor) {
+      setTransactions(transactions);
+      this.cursor = cursor;
+    }
+
+    public TransactionDetails[] getTransactions() {
+      TransactionDetails[] retArray = new TransactionDetails[transactions.length];
+      System.arraycopy(transactions, 0, retArray, 0, transactions.length);
+      return retArray;
+    }
+
+    public void setTransactions(TransactionDetails[] transactions) {
+      this.transactions = new TransactionDetails[transactions.length];
+      System.arraycopy(transactions, 0, this.transactions, 0, transactions.length);
+    }
+
+    /**
+     * Opaque position to pass into the next call, e.g. a block height or block hash.
+     */
+    public String getCursor() {
+      return cursor;
+    }
+
+    public void setCursor(String cursor) {
+      this.cursor = cursor;
+    }
+  }
+
+  /**
+   * List transactions for an address that were seen after a cursor.
+   *
+   * <p>Wallets that can't query incrementally fall back to the most recent transactions, and
+   * return a null cursor.
+   *
+   * @param address address to lookup transactions for.
+   * @param cursor  Cursor from the previous page, or null to start from the beginning.
+   * @return Transactions seen since the cursor, and the cursor for the next call.
+   */
+  default TransactionPage getTransactionsSince(String address, String cursor) {
+    return new TransactionPage(getTransactions(address, 100, 0), null);
+  }
+
   TransactionDetails getTransaction(String transactionId);
 
   ServerStatus getWalletStatus();
@@ -10,4 +10,12 @@ public interface Validator {
    * signing/sending process.
    */
   boolean validateTransaction(CurrencyPackageInterface currency, String transaction);
+
+  /**
+   * Called after cosigner signs a transaction that passed validation, so that validators keeping
+   * track of spending can account for it. The transaction includes the signatures gathered from
+   * the rest of the cluster.
+   */
+  default void transactionSigned(CurrencyPackageInterface currency, String transaction) {
+  }
 }
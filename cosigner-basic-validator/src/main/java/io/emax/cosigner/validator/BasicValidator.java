@@ -1,6 +1,7 @@
 package io.emax.cosigner.validator;
 
 import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.currency.Monitor;
 import io.emax.cosigner.api.currency.Wallet;
 import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
 import io.emax.cosigner.api.validation.Validatable;
@@ -14,9 +15,31 @@ import java.math.BigDecimal;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BasicValidator implements Validator {
   private static final Logger LOGGER = LoggerFactory.getLogger(BasicValidator.class);
+  private static final int HISTORY_PAGE_SIZE = 100;
+  private static final int HISTORY_PAGES = 50;
+  private static final int DECODE_CACHE_SIZE = 100;
+
+  private final SpendLedger ledger = new SpendLedger();
+  // Held while a sender's history is first read, so only that sender waits on it.
+  private final ConcurrentHashMap<String, Object> historyLocks = new ConcurrentHashMap<>();
+  // Per currency, watches the known senders and reports what they spend, wherever it was signed.
+  private final ConcurrentHashMap<String, Monitor> spendMonitors = new ConcurrentHashMap<>();
+  private final Map<String, TransactionDetails> decodedTransactions =
+      new LinkedHashMap<String, TransactionDetails>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TransactionDetails> eldest) {
+          return size() > DECODE_CACHE_SIZE;
+        }
+      };
 
   @Override
   public boolean validateTransaction(CurrencyPackageInterface currency, String transaction) {
@@ -38,11 +61,10 @@ public class BasicValidator implements Validator {
     }
 
     LOGGER.debug("Attempting to validate: " + currency.getConfiguration().getCurrencySymbol());
-    Wallet wallet = currency.getWallet();
     Validatable validatableWallet = (Validatable) currency.getWallet();
     ValidatorConfiguration validatorConfig = (ValidatorConfiguration) currency.getConfiguration();
 
-    TransactionDetails txDetail = validatableWallet.decodeRawTransaction(transaction);
+    TransactionDetails txDetail = decode(validatableWallet, transaction);
     if (validatorConfig.getMaxAmountPerTransaction().compareTo(BigDecimal.ZERO) != 0
         && txDetail.getAmount().compareTo(validatorConfig.getMaxAmountPerTransaction()) > 0) {
       LOGGER.info("Transaction value too high for: " + txDetail.toString());
@@ -50,20 +72,13 @@ public class BasicValidator implements Validator {
     }
 
     // Build timed totals.
+    String currencySymbol = currency.getConfiguration().getCurrencySymbol();
     BigDecimal hourlyTotal = BigDecimal.ZERO;
     BigDecimal dailyTotal = BigDecimal.ZERO;
-    Instant oneHourAgo = Clock.systemUTC().instant().minus(1, ChronoUnit.HOURS);
-    Instant oneDayAgo = Clock.systemUTC().instant().minus(1, ChronoUnit.DAYS);
-    for (String senders : txDetail.getFromAddress()) {
-      TransactionDetails[] txs = wallet.getTransactions(senders, 100, 0);
-      for (TransactionDetails tx : txs) {
-        if (tx.getTxDate().toInstant().isAfter(oneHourAgo)) {
-          hourlyTotal = hourlyTotal.add(tx.getAmount());
-        }
-        if (tx.getTxDate().toInstant().isAfter(oneDayAgo)) {
-          dailyTotal = dailyTotal.add(tx.getAmount());
-        }
-      }
+    for (String sender : txDetail.getFromAddress()) {
+      loadHistory(currency, sender);
+      hourlyTotal = hourlyTotal.add(ledger.getHourlyTotal(currencySymbol, sender));
+      dailyTotal = dailyTotal.add(ledger.getDailyTotal(currencySymbol, sender));
     }
 
     // Verify that the tx + timed totals are within bounds.
@@ -85,4 +100,108 @@ public class BasicValidator implements Validator {
     return true;
   }
 
+  @Override
+  public void transactionSigned(CurrencyPackageInterface currency, String transaction) {
+    if (!Validatable.class.isAssignableFrom(currency.getWallet().getClass())) {
+      return;
+    }
+
+    String currencySymbol = currency.getConfiguration().getCurrencySymbol();
+    TransactionDetails txDetail = decode((Validatable) currency.getWallet(), transaction);
+    for (String sender : txDetail.getFromAddress()) {
+      loadHistory(currency, sender);
+      ledger.record(currencySymbol, sender, txDetail.getTxHash(), txDetail.getAmount());
+    }
+  }
+
+  private TransactionDetails decode(Validatable wallet, String transaction) {
+    // Decoding looks up every input, and the same transaction is usually validated then signed.
+    synchronized (decodedTransactions) {
+      TransactionDetails txDetail = decodedTransactions.get(transaction);
+      if (txDetail != null) {
+        return txDetail;
+      }
+    }
+    TransactionDetails txDetail = wallet.decodeRawTransaction(transaction);
+    synchronized (decodedTransactions) {
+      decodedTransactions.put(transaction, txDetail);
+    }
+    return txDetail;
+  }
+
+  /**
+   * Seed the ledger with the last day of a sender's spending the first time it's seen. After that
+   * its spends are fed in by the currency's monitor as they're found.
+   */
+  private void loadHistory(CurrencyPackageInterface currency, String sender) {
+    String currencySymbol = currency.getConfiguration().getCurrencySymbol();
+    if (ledger.isKnown(currencySymbol, sender)) {
+      return;
+    }
+    String lockKey = currencySymbol + ":" + sender;
+    synchronized (historyLocks.computeIfAbsent(lockKey, key -> new Object())) {
+      if (ledger.isKnown(currencySymbol, sender)) {
+        return;
+      }
+
+      // Start watching first so nothing falls between the history and the monitor, anything
+      // reported by both is only counted once.
+      watch(currency, sender);
+      Instant oneDayAgo = Clock.systemUTC().instant().minus(1, ChronoUnit.DAYS);
+      Wallet wallet = currency.getWallet();
+      int page = 0;
+      boolean morePages = true;
+      while (morePages && page < HISTORY_PAGES) {
+        TransactionDetails[] txs =
+            wallet.getTransactions(sender, HISTORY_PAGE_SIZE, page * HISTORY_PAGE_SIZE);
+        Arrays.stream(txs).filter(tx -> tx.getTxDate() != null && tx.getFromAddress() != null
+            && Arrays.stream(tx.getFromAddress()).anyMatch(sender::equalsIgnoreCase))
+            .forEach(tx -> count(currencySymbol, sender, tx));
+        // Keep going back until a page reaches past the start of the day window.
+        morePages = txs.length == HISTORY_PAGE_SIZE && Arrays.asList(txs).stream().allMatch(
+            tx -> tx.getTxDate() == null || tx.getTxDate().toInstant().isAfter(oneDayAgo));
+        page++;
+      }
+      ledger.markKnown(currencySymbol, sender);
+    }
+    historyLocks.remove(lockKey);
+  }
+
+  private void watch(CurrencyPackageInterface currency, String sender) {
+    String currencySymbol = currency.getConfiguration().getCurrencySymbol();
+    Monitor monitor = spendMonitors.computeIfAbsent(currencySymbol, key -> {
+      if (currency.getMonitor() == null) {
+        return null;
+      }
+      Monitor spendMonitor = currency.getMonitor().createNewMonitor();
+      spendMonitor.getObservableTransactions().subscribe(
+          txs -> txs.forEach(tx -> countSenders(currencySymbol, tx)),
+          error -> LOGGER.warn("Stopped watching " + currencySymbol + " spends", error));
+      return spendMonitor;
+    });
+    if (monitor != null) {
+      monitor.addAddresses(Collections.singletonList(sender));
+    }
+  }
+
+  private void countSenders(String currency, TransactionDetails tx) {
+    if (tx.getFromAddress() == null) {
+      return;
+    }
+    Arrays.stream(tx.getFromAddress()).filter(Objects::nonNull)
+        .filter(sender -> ledger.isKnown(currency, sender))
+        .forEach(sender -> count(currency, sender, tx));
+  }
+
+  private void count(String currency, String sender, TransactionDetails tx) {
+    // Change paid back to the sender isn't spent.
+    String[] recipients = tx.getToAddress();
+    if (recipients != null && recipients.length > 0
+        && Arrays.stream(recipients).allMatch(sender::equalsIgnoreCase)) {
+      return;
+    }
+    Instant time =
+        tx.getTxDate() == null ? Clock.systemUTC().instant() : tx.getTxDate().toInstant();
+    ledger.seed(currency, sender, tx.identityKey(), tx.getTxHash(), time, tx.getAmount());
+  }
 }
@@ -0,0 +1,178 @@
+package io.emax.cosigner.validator;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running totals of what each sender has spent over the last hour and the last day.
+ *
+ * <p>Spends are appended as they're signed and expire off the front of each window when it's
+ * read, so a limit check is a couple of map lookups rather than a walk of the sender's history.
+ *
+ * <p>Confirmed transfers are seeded by their identity key, so each output of a transaction counts
+ * once however often it's reported. Spends recorded as they're signed keep their transaction hash,
+ * and the transfers of that transaction are skipped when they confirm so they aren't counted
+ * twice.
+ */
+public class SpendLedger {
+  private final Clock clock;
+  private final ConcurrentHashMap<String, Sender> senders = new ConcurrentHashMap<>();
+
+  private static class Spend {
+    private final Instant time;
+    private final BigDecimal amount;
+
+    Spend(Instant time, BigDecimal amount) {
+      this.time = time;
+      this.amount = amount;
+    }
+  }
+
+  private static class Window {
+    private final ChronoUnit unit;
+    // Confirmed spends can turn up after later ones were recorded, so keep them ordered by time.
+    private final PriorityQueue<Spend> spends =
+        new PriorityQueue<>(Comparator.comparing(spend -> spend.time));
+    private BigDecimal total = BigDecimal.ZERO;
+
+    Window(ChronoUnit unit) {
+      this.unit = unit;
+    }
+
+    void add(Spend spend) {
+      spends.add(spend);
+      total = total.add(spend.amount);
+    }
+
+    BigDecimal getTotal(Instant now) {
+      Instant cutoff = now.minus(1, unit);
+      while (!spends.isEmpty() && !spends.peek().time.isAfter(cutoff)) {
+        total = total.subtract(spends.poll().amount);
+      }
+      return total;
+    }
+  }
+
+  private static class Sender {
+    private final Window hour = new Window(ChronoUnit.HOURS);
+    private final Window day = new Window(ChronoUnit.DAYS);
+    // Confirmed transfers already counted, by identity key.
+    private final Map<String, Instant> confirmed = new HashMap<>();
+    // Transactions counted as they were signed here, by hash.
+    private final Map<String, Instant> signed = new HashMap<>();
+
+    void add(Spend spend) {
+      hour.add(spend);
+      day.add(spend);
+    }
+
+    void expire(Instant cutoff) {
+      confirmed.values().removeIf(time -> !time.isAfter(cutoff));
+      signed.values().removeIf(time -> !time.isAfter(cutoff));
+    }
+  }
+
+  public SpendLedger() {
+    this(Clock.systemUTC());
+  }
+
+  public SpendLedger(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Whether the sender has been seen yet, if not its history should be loaded with
+   * {@link #seed(String, String, String, String, Instant, BigDecimal)}.
+   */
+  public boolean isKnown(String currency, String sender) {
+    return senders.containsKey(key(currency, sender));
+  }
+
+  /**
+   * Load a confirmed transfer from the sender. Transfers can be seeded in any order, one that's
+   * already been seeded is ignored, as is one from a transaction that was recorded when it was
+   * signed here.
+   *
+   * @param identity Key identifying the transfer, a transaction can have several.
+   * @param txHash   Hash of the transaction the transfer belongs to.
+   * @return True if the spend was new.
+   */
+  public boolean seed(String currency, String sender, String identity, String txHash,
+      Instant time, BigDecimal amount) {
+    Sender ledger = senders.computeIfAbsent(key(currency, sender), key -> new Sender());
+    Instant cutoff = clock.instant().minus(1, ChronoUnit.DAYS);
+    if (!time.isAfter(cutoff)) {
+      return false;
+    }
+    synchronized (ledger) {
+      ledger.expire(cutoff);
+      if (ledger.confirmed.putIfAbsent(identity, time) != null) {
+        return false;
+      }
+      if (txHash != null && ledger.signed.containsKey(txHash.toLowerCase(Locale.US))) {
+        return false;
+      }
+      ledger.add(new Spend(time, amount));
+      return true;
+    }
+  }
+
+  /**
+   * Mark a sender as loaded even if it had nothing to seed.
+   */
+  public void markKnown(String currency, String sender) {
+    senders.computeIfAbsent(key(currency, sender), key -> new Sender());
+  }
+
+  /**
+   * Record a spend that's being signed now.
+   *
+   * @param txHash Hash of the transaction, so that it isn't counted again once it confirms. Null
+   *               if it isn't known.
+   */
+  public void record(String currency, String sender, String txHash, BigDecimal amount) {
+    Sender ledger = senders.computeIfAbsent(key(currency, sender), key -> new Sender());
+    Instant now = clock.instant();
+    synchronized (ledger) {
+      ledger.expire(now.minus(1, ChronoUnit.DAYS));
+      if (txHash != null
+          && ledger.signed.putIfAbsent(txHash.toLowerCase(Locale.US), now) != null) {
+        return;
+      }
+      ledger.add(new Spend(now, amount));
+    }
+  }
+
+  public BigDecimal getHourlyTotal(String currency, String sender) {
+    Sender ledger = senders.get(key(currency, sender));
+    if (ledger == null) {
+      return BigDecimal.ZERO;
+    }
+    synchronized (ledger) {
+      return ledger.hour.getTotal(clock.instant());
+    }
+  }
+
+  public BigDecimal getDailyTotal(String currency, String sender) {
+    Sender ledger = senders.get(key(currency, sender));
+    if (ledger == null) {
+      return BigDecimal.ZERO;
+    }
+    synchronized (ledger) {
+      return ledger.day.getTotal(clock.instant());
+    }
+  }
+
+  private static String key(String currency, String sender) {
+    // Wallets don't agree on the case of an address, e.g. hex from a log versus a decoded sender.
+    return currency + ":" + sender.toLowerCase(Locale.US);
+  }
+}
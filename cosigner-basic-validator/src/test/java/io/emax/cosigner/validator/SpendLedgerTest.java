@@ -0,0 +1,94 @@
+package io.emax.cosigner.validator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+public class SpendLedgerTest {
+  private static class MovableClock extends Clock {
+    private Instant now = Instant.parse("2016-01-01T00:00:00Z");
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  @Test
+  public void testWindows() {
+    System.out.println("");
+    System.out.println("Testing spend ledger windows.");
+    MovableClock clock = new MovableClock();
+    SpendLedger ledger = new SpendLedger(clock);
+    Assert.assertFalse(ledger.isKnown("BTC", "sender"));
+
+    // Two days ago falls outside both windows, two hours ago only counts for the day.
+    ledger.seed("BTC", "sender", "tx1|0", "tx1", clock.now.minus(2, ChronoUnit.DAYS),
+        BigDecimal.valueOf(100));
+    ledger.seed("BTC", "sender", "tx2|0", "tx2", clock.now.minus(2, ChronoUnit.HOURS),
+        BigDecimal.valueOf(5));
+    Assert.assertTrue(ledger.isKnown("BTC", "sender"));
+    ledger.record("BTC", "sender", null, BigDecimal.ONE);
+    Assert.assertEquals(BigDecimal.ONE, ledger.getHourlyTotal("BTC", "sender"));
+    Assert.assertEquals(BigDecimal.valueOf(6), ledger.getDailyTotal("BTC", "sender"));
+    Assert.assertEquals(BigDecimal.ZERO, ledger.getDailyTotal("ETH", "sender"));
+
+    clock.now = clock.now.plus(61, ChronoUnit.MINUTES);
+    Assert.assertEquals(BigDecimal.ZERO, ledger.getHourlyTotal("BTC", "sender"));
+    Assert.assertEquals(BigDecimal.valueOf(6), ledger.getDailyTotal("BTC", "sender"));
+
+    clock.now = clock.now.plus(23, ChronoUnit.HOURS);
+    Assert.assertEquals(BigDecimal.ZERO, ledger.getDailyTotal("BTC", "sender"));
+  }
+
+  @Test
+  public void testConfirmedSpends() {
+    System.out.println("");
+    System.out.println("Testing confirmed spends folding into the spend ledger.");
+    MovableClock clock = new MovableClock();
+    SpendLedger ledger = new SpendLedger(clock);
+    ledger.markKnown("BTC", "Sender");
+    Assert.assertTrue(ledger.isKnown("BTC", "sender"));
+
+    // Signed here, then confirmed, only counts once however many outputs it has.
+    ledger.record("BTC", "sender", "LOCAL", BigDecimal.ONE);
+    clock.now = clock.now.plus(10, ChronoUnit.MINUTES);
+    Assert.assertFalse(ledger.seed("BTC", "sender", "local|a", "local", clock.now,
+        BigDecimal.valueOf(0.5)));
+    Assert.assertFalse(ledger.seed("BTC", "sender", "local|b", "local", clock.now,
+        BigDecimal.valueOf(0.5)));
+    Assert.assertEquals(BigDecimal.ONE, ledger.getHourlyTotal("BTC", "sender"));
+
+    // Signed elsewhere counts every output, even ones that predate what was recorded and ones of
+    // the same value as a local spend, but each output only once.
+    Instant earlier = clock.now.minus(15, ChronoUnit.MINUTES);
+    Assert.assertTrue(ledger.seed("BTC", "sender", "remote|a", "remote", earlier,
+        BigDecimal.ONE));
+    Assert.assertTrue(ledger.seed("BTC", "sender", "remote|b", "remote", earlier,
+        BigDecimal.valueOf(2)));
+    Assert.assertFalse(ledger.seed("BTC", "sender", "remote|b", "remote", earlier,
+        BigDecimal.valueOf(2)));
+    Assert.assertEquals(BigDecimal.valueOf(4), ledger.getHourlyTotal("BTC", "sender"));
+
+    // The earlier spends expire first.
+    clock.now = earlier.plus(1, ChronoUnit.HOURS);
+    Assert.assertEquals(BigDecimal.ONE, ledger.getHourlyTotal("BTC", "sender"));
+    Assert.assertEquals(BigDecimal.valueOf(4), ledger.getDailyTotal("BTC", "sender"));
+  }
+}
@@ -0,0 +1,31 @@
+package io.emax.cosigner.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suites and writes the results as JSON, so that runs can be compared against
+ * each other.
+ *
+ * <p>Usage: java -jar benchmarks.jar [include regex] [result file]. Without arguments every suite
+ * is run and the report is written to jmh-result.json. Fork, warmup and measurement counts come
+ * from the annotations on each suite so that every run is set up the same way.
+ */
+public class BenchmarkRunner {
+  private static final String DEFAULT_RESULT = "jmh-result.json";
+
+  /**
+   * Run the benchmarks.
+   */
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : ".*";
+    String result = args.length > 1 ? args[1] : DEFAULT_RESULT;
+
+    Options options = new OptionsBuilder().include(include).resultFormat(ResultFormatType.JSON)
+        .result(result).jvmArgsAppend("-XX:+UseG1GC", "-Xms1g", "-Xmx1g").build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,79 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawInput;
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawOutput;
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawTransaction;
+import io.emax.cosigner.common.ByteUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and encoding of raw bitcoin transactions, done several times over while a transaction is
+ * prepared and signed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BitcoinTransactionBenchmark {
+  @Param({"1", "10", "100"})
+  private int inputs;
+
+  private RawTransaction transaction;
+  private String encoded;
+
+  /**
+   * Build a transaction spending multi-sig inputs to a couple of P2SH outputs.
+   */
+  @Setup
+  public void setup() {
+    Random random = Inputs.random();
+    transaction = new RawTransaction();
+    transaction.setVersion(1);
+    for (int i = 0; i < inputs; i++) {
+      RawInput input = new RawInput();
+      input.setTxHash(ByteUtilities.toHexString(Inputs.bytes(random, 32)));
+      input.setTxIndex(i % 4);
+      // Roughly the size of a partly signed 2 of 3 script.
+      input.setScript(ByteUtilities.toHexString(Inputs.bytes(random, 180)));
+      transaction.getInputs().add(input);
+    }
+    for (int i = 0; i < 2; i++) {
+      RawOutput output = new RawOutput();
+      output.setAmount(100000L * (i + 1));
+      output.setScript("a914" + ByteUtilities.toHexString(Inputs.bytes(random, 20)) + "87");
+      transaction.getOutputs().add(output);
+    }
+    encoded = transaction.encode();
+  }
+
+  @Benchmark
+  public String encode() {
+    return transaction.encode();
+  }
+
+  @Benchmark
+  public RawTransaction parse() {
+    return RawTransaction.parse(encoded);
+  }
+
+  @Benchmark
+  public RawTransaction copy() {
+    return transaction.copy();
+  }
+}
@@ -0,0 +1,120 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.crypto.Aes;
+import io.emax.cosigner.common.crypto.Secp256k1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing, key handling and the encryption used between cluster nodes.
+ *
+ * <p>Signatures use a random nonce, so sign and recover timings vary slightly from run to run even
+ * though the keys and messages are fixed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class CryptoBenchmark {
+  private byte[] privateKey;
+  private byte[] publicKey;
+  private byte[] otherPublicKey;
+  private byte[] message;
+  private byte[][] signature;
+
+  /**
+   * The cluster encryption, the only part that depends on the payload size.
+   */
+  @State(Scope.Benchmark)
+  public static class Payload {
+    @Param({"32", "1024"})
+    private int payloadSize;
+
+    private byte[] aesKey;
+    private byte[] iv;
+    private String plainText;
+    private String cipherText;
+
+    /**
+     * Build the shared key and payloads.
+     */
+    @Setup
+    public void setup() {
+      Random random = Inputs.random();
+      aesKey = Secp256k1.generateSharedSecret(Inputs.privateKey(random),
+          Secp256k1.getPublicKey(Inputs.privateKey(random)));
+      iv = Inputs.bytes(random, 16);
+      plainText = ByteUtilities.toHexString(Inputs.bytes(random, payloadSize));
+      cipherText = Aes.encrypt(aesKey, iv, plainText);
+    }
+  }
+
+  /**
+   * Build the keys and message.
+   */
+  @Setup
+  public void setup() {
+    Random random = Inputs.random();
+    privateKey = Inputs.privateKey(random);
+    publicKey = Secp256k1.getPublicKey(privateKey);
+    otherPublicKey = Secp256k1.getPublicKey(Inputs.privateKey(random));
+    message = Inputs.bytes(random, 32);
+    signature = Secp256k1.signTransaction(message, privateKey);
+  }
+
+  @Benchmark
+  public byte[] generatePrivateKey() {
+    return Secp256k1.generatePrivateKey();
+  }
+
+  @Benchmark
+  public byte[] getPublicKey() {
+    return Secp256k1.getPublicKey(privateKey);
+  }
+
+  @Benchmark
+  public byte[][] sign() {
+    return Secp256k1.signTransaction(message, privateKey);
+  }
+
+  @Benchmark
+  public byte getRecoveryId() {
+    return Secp256k1.getRecoveryId(signature[0], signature[1], message, publicKey);
+  }
+
+  @Benchmark
+  public byte[] recover() {
+    return Secp256k1.recoverPublicKey(signature[0], signature[1], signature[2], message);
+  }
+
+  @Benchmark
+  public byte[] sharedSecret() {
+    return Secp256k1.generateSharedSecret(privateKey, otherPublicKey);
+  }
+
+  @Benchmark
+  public String aesEncrypt(Payload payload) {
+    return Aes.encrypt(payload.aesKey, payload.iv, payload.plainText);
+  }
+
+  @Benchmark
+  public String aesDecrypt(Payload payload) {
+    return Aes.decrypt(payload.aesKey, payload.iv, payload.cipherText);
+  }
+}
@@ -0,0 +1,67 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.common.Base58;
+import io.emax.cosigner.common.ByteUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base58 and hex codecs, which sit under every address and transaction conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class EncodingBenchmark {
+  // Address sized, and roughly a two input multi-sig transaction.
+  @Param({"25", "512"})
+  private int size;
+
+  private byte[] data;
+  private String base58;
+  private String hex;
+
+  /**
+   * Build the payloads.
+   */
+  @Setup
+  public void setup() {
+    data = Inputs.bytes(Inputs.random(), size);
+    base58 = Base58.encode(data);
+    hex = ByteUtilities.toHexString(data);
+  }
+
+  @Benchmark
+  public String base58Encode() {
+    return Base58.encode(data);
+  }
+
+  @Benchmark
+  public byte[] base58Decode() throws Exception {
+    return Base58.decode(base58);
+  }
+
+  @Benchmark
+  public String hexEncode() {
+    return ByteUtilities.toHexString(data);
+  }
+
+  @Benchmark
+  public byte[] hexDecode() {
+    return ByteUtilities.toByteArray(hex);
+  }
+}
@@ -0,0 +1,86 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.ethereum.core.common.Rlp;
+import io.emax.cosigner.ethereum.core.common.RlpEntity;
+import io.emax.cosigner.ethereum.core.gethrpc.RawTransaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RLP coding and raw ethereum transactions, which are rebuilt for every contract call and
+ * signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class EthereumTransactionBenchmark {
+  // A plain transfer, a token transfer, and a multi-sig contract call.
+  @Param({"0", "68", "516"})
+  private int dataSize;
+
+  private RawTransaction transaction;
+  private byte[] encoded;
+  private byte[] item;
+
+  /**
+   * Build a signed transaction carrying the call data.
+   */
+  @Setup
+  public void setup() {
+    Random random = Inputs.random();
+    transaction = new RawTransaction();
+    transaction.getNonce().setDecodedContents(BigInteger.valueOf(42).toByteArray());
+    transaction.getGasPrice().setDecodedContents(BigInteger.valueOf(20000000000L).toByteArray());
+    transaction.getGasLimit().setDecodedContents(BigInteger.valueOf(500000).toByteArray());
+    transaction.getTo().setDecodedContents(Inputs.bytes(random, 20));
+    transaction.getValue().setDecodedContents(Inputs.bytes(random, 8));
+    transaction.getData().setDecodedContents(Inputs.bytes(random, dataSize));
+    transaction.getSigV().setDecodedContents(new byte[]{27});
+    transaction.getSigR().setDecodedContents(Inputs.bytes(random, 32));
+    transaction.getSigS().setDecodedContents(Inputs.bytes(random, 32));
+    encoded = transaction.encode();
+    item = Inputs.bytes(random, Math.max(dataSize, 1));
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return transaction.encode();
+  }
+
+  @Benchmark
+  public RawTransaction parse() {
+    return RawTransaction.parseBytes(encoded);
+  }
+
+  @Benchmark
+  public byte[] sigBytes() {
+    return transaction.getSigBytes();
+  }
+
+  @Benchmark
+  public byte[] rlpEncodeItem() {
+    return Rlp.encodeItem(item);
+  }
+
+  @Benchmark
+  public RlpEntity rlpParse() {
+    return Rlp.parseArray(encoded);
+  }
+}
@@ -0,0 +1,36 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.common.crypto.Secp256k1;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Benchmark inputs. Everything is drawn from a fixed seed so that each run measures the same data.
+ */
+final class Inputs {
+  static final long SEED = 0x636f7369676e6572L;
+
+  private Inputs() {
+  }
+
+  static Random random() {
+    return new Random(SEED);
+  }
+
+  static byte[] bytes(Random random, int size) {
+    byte[] data = new byte[size];
+    random.nextBytes(data);
+    return data;
+  }
+
+  static byte[] privateKey(Random random) {
+    byte[] key = bytes(random, 32);
+    BigInteger keyValue = new BigInteger(1, key);
+    while (keyValue.signum() == 0 || keyValue.compareTo(Secp256k1.MAXPRIVATEKEY) > 0) {
+      random.nextBytes(key);
+      keyValue = new BigInteger(1, key);
+    }
+    return key;
+  }
+}
@@ -0,0 +1,81 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.Json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON handling of the API request objects, done on every call into cosigner-core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class JsonBenchmark {
+  @Param({"1", "100"})
+  private int accounts;
+
+  private CurrencyParameters parameters;
+  private String json;
+
+  /**
+   * Build a request with the given number of accounts and a recipient for each.
+   */
+  @Setup
+  public void setup() {
+    Random random = Inputs.random();
+    parameters = new CurrencyParameters();
+    parameters.setCurrencySymbol("BTC");
+    parameters.setUserKey(ByteUtilities.toHexString(Inputs.bytes(random, 32)));
+    parameters.setCallback("http://localhost:8080/callback");
+    List<String> accountList = new LinkedList<>();
+    List<CurrencyParametersRecipient> recipients = new LinkedList<>();
+    for (int i = 0; i < accounts; i++) {
+      accountList.add(ByteUtilities.toHexString(Inputs.bytes(random, 20)));
+      CurrencyParametersRecipient recipient = new CurrencyParametersRecipient();
+      recipient.setRecipientAddress(ByteUtilities.toHexString(Inputs.bytes(random, 20)));
+      recipient.setAmount(Integer.toString(random.nextInt(100000)));
+      recipients.add(recipient);
+    }
+    parameters.setAccount(accountList);
+    parameters.setReceivingAccount(recipients);
+    parameters.setTransactionData(ByteUtilities.toHexString(Inputs.bytes(random, 512)));
+    json = Json.stringifyObject(CurrencyParameters.class, parameters);
+  }
+
+  @Benchmark
+  public String stringify() {
+    return Json.stringifyObject(CurrencyParameters.class, parameters);
+  }
+
+  @Benchmark
+  public Object objectify() {
+    return Json.objectifyString(CurrencyParameters.class, json);
+  }
+
+  @Benchmark
+  public Object roundTrip() {
+    return Json.objectifyString(CurrencyParameters.class,
+        Json.stringifyObject(CurrencyParameters.class, parameters));
+  }
+}
@@ -0,0 +1,62 @@
+package io.emax.cosigner.benchmarks;
+
+import io.emax.cosigner.bitcoin.BitcoinResource;
+import io.emax.cosigner.bitcoin.common.BitcoinTools;
+import io.emax.cosigner.bitcoin.stubrpc.BitcoinTestRpc;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.ethereum.core.common.EthereumTools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic key derivation. The round count is the index of the address being derived, so the
+ * cost here grows with the number of addresses a user key has.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class KeyDerivationBenchmark {
+  @Param({"1", "10", "100", "1000"})
+  private int rounds;
+
+  private String userKey;
+  private String serverKey;
+
+  /**
+   * Pick the key parts. Key encoding asks bitcoind which network it's on, so the stub answers
+   * instead of timing a failed connection.
+   */
+  @Setup
+  public void setup() {
+    BitcoinResource.getResource().setBitcoindRpc(new BitcoinTestRpc());
+    Random random = Inputs.random();
+    userKey = ByteUtilities.toHexString(Inputs.privateKey(random));
+    serverKey = ByteUtilities.toHexString(Inputs.privateKey(random));
+  }
+
+  @Benchmark
+  public String bitcoin() {
+    return BitcoinTools.getDeterministicPrivateKey(userKey, serverKey, rounds);
+  }
+
+  @Benchmark
+  public String ethereum() {
+    return EthereumTools.getDeterministicPrivateKey(userKey, serverKey, rounds);
+  }
+}
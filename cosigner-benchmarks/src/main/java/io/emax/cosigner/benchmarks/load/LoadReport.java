@@ -0,0 +1,72 @@
+package io.emax.cosigner.benchmarks.load;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency percentiles per endpoint.
+ *
+ * <p>Latencies are sampled uniformly across the whole run rather than decayed towards the most
+ * recent calls, so the percentiles describe the run as a whole.
+ */
+public class LoadReport {
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+  private volatile long started = System.nanoTime();
+  private volatile long stopped = 0;
+
+  /**
+   * Start counting from now, dropping anything recorded during the warm up.
+   */
+  public void reset() {
+    timers.clear();
+    errors.clear();
+    started = System.nanoTime();
+    stopped = 0;
+  }
+
+  /**
+   * Stop the clock that throughput is worked out against.
+   */
+  public void stop() {
+    stopped = System.nanoTime();
+  }
+
+  public void record(String endpoint, long nanos, boolean failed) {
+    timers.computeIfAbsent(endpoint, name -> new Timer(new UniformReservoir(65536)))
+        .update(nanos, TimeUnit.NANOSECONDS);
+    if (failed) {
+      errors.computeIfAbsent(endpoint, name -> new AtomicLong()).incrementAndGet();
+    }
+  }
+
+  /**
+   * Print one line per endpoint.
+   */
+  public void print(PrintStream out) {
+    double elapsed = ((stopped == 0 ? System.nanoTime() : stopped) - started) / 1e9;
+    out.println(String.format("%-24s %9s %8s %10s %9s %9s %9s %9s", "endpoint", "calls", "errors",
+        "calls/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+    new TreeMap<>(timers).forEach((endpoint, timer) -> {
+      Snapshot snapshot = timer.getSnapshot();
+      AtomicLong failed = errors.get(endpoint);
+      out.println(String
+          .format("%-24s %9d %8d %10.1f %9.2f %9.2f %9.2f %9.2f", endpoint, timer.getCount(),
+              failed == null ? 0 : failed.get(), timer.getCount() / elapsed,
+              millis(snapshot.getMedian()), millis(snapshot.get95thPercentile()),
+              millis(snapshot.get99thPercentile()), millis(snapshot.getMax())));
+    });
+  }
+
+  private static double millis(double nanos) {
+    return nanos / 1e6;
+  }
+}
@@ -0,0 +1,255 @@
+package io.emax.cosigner.benchmarks.load;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.api.currency.Monitor;
+import io.emax.cosigner.bitcoin.BitcoinCurrencyPackage;
+import io.emax.cosigner.bitcoin.BitcoinResource;
+import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
+import io.emax.cosigner.bitcoin.stubrpc.BitcoinTestRpc;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.common.rpc.SimulatedNode;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+import io.emax.cosigner.core.currency.Common;
+import io.emax.cosigner.ethereum.core.EthereumResource;
+import io.emax.cosigner.ethereum.core.gethrpc.EthereumRpc;
+import io.emax.cosigner.ethereum.core.stubrpc.EthereumTestRpc;
+import io.emax.cosigner.ethereum.token.CurrencyConfigurations.EthCurrencyPackage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Drives the Common API in-process against simulated nodes and reports throughput and latency per
+ * endpoint.
+ *
+ * <p>The nodes are the stub RPCs from the currency packages, loaded with the configured number of
+ * unspent outputs and logs and put behind {@link SimulatedNode} for latency and failures. Every
+ * address gets its own user key, the same as a deployment with many users, and all of them are
+ * watched by a monitor so its background scans run against the full address set while the API is
+ * under load.
+ *
+ * <p>Usage: java -cp benchmarks.jar io.emax.cosigner.benchmarks.load.LoadTest [properties file]
+ */
+public class LoadTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+  private final LoadTestConfiguration config;
+  private final LoadReport report = new LoadReport();
+  private final SimulatedNode.Profile profile;
+  private final List<Account> accounts = new ArrayList<>();
+  private final Map<String, List<Account>> currencyAccounts = new HashMap<>();
+  private final List<Monitor> monitors = new LinkedList<>();
+
+  private static class Account {
+    private final String currency;
+    private final String userKey;
+    private final String address;
+
+    Account(String currency, String userKey, String address) {
+      this.currency = currency;
+      this.userKey = userKey;
+      this.address = address;
+    }
+  }
+
+  /**
+   * Run a load test.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    String propertiesFilePath = args.length > 0 ? args[0] : "./cosigner-loadtest.properties";
+    LoadTest loadTest = new LoadTest(new LoadTestConfiguration(propertiesFilePath));
+    loadTest.setUp();
+    loadTest.run();
+    loadTest.tearDown();
+    loadTest.report.print(System.out);
+    System.exit(0);
+  }
+
+  public LoadTest(LoadTestConfiguration config) {
+    this.config = config;
+    this.profile = new SimulatedNode.Profile().setSeed(config.getSeed());
+  }
+
+  /**
+   * Start the simulated nodes, register the currencies and create the addresses. The nodes answer
+   * without latency or failures until the run starts.
+   */
+  public void setUp() {
+    profile.setLatency(0, 0).setFailureRate(0);
+
+    BitcoinTestRpc bitcoinRpc = new BitcoinTestRpc();
+    bitcoinRpc.setUnspentOutputs(config.getUnspentOutputs());
+    BitcoinResource.getResource()
+        .setBitcoindRpc(SimulatedNode.wrap(BitcoindRpc.class, bitcoinRpc, profile));
+
+    EthereumTestRpc ethereumRpc = new EthereumTestRpc();
+    ethereumRpc.setFilterLogs(config.getFilterLogs());
+    EthereumResource.getResource()
+        .setEthereumRpc(SimulatedNode.wrap(EthereumRpc.class, ethereumRpc, profile));
+
+    // Approvals look up the cluster, which needs a configuration to start from.
+    if (CosignerApplication.getConfig() == null) {
+      CosignerApplication.setConfig(new CosignerConfiguration());
+    }
+
+    for (String currencyName : config.getCurrencies()) {
+      CurrencyPackageInterface currency;
+      if ("bitcoin".equalsIgnoreCase(currencyName)) {
+        currency = new BitcoinCurrencyPackage();
+      } else if ("ethereum".equalsIgnoreCase(currencyName)) {
+        currency = new EthCurrencyPackage();
+      } else {
+        System.out.println("Unknown currency " + currencyName + ", skipping it");
+        continue;
+      }
+      String symbol = currency.getConfiguration().getCurrencySymbol();
+      CosignerApplication.getCurrencies().put(symbol, currency);
+
+      List<String> addresses = new ArrayList<>(config.getAddresses());
+      List<Account> symbolAccounts = new ArrayList<>(config.getAddresses());
+      for (int i = 0; i < config.getAddresses(); i++) {
+        String userKey = String.format("%064x", config.getSeed() * 1000003 + i + 1);
+        String address = currency.getWallet().createAddress(userKey);
+        symbolAccounts.add(new Account(symbol, userKey, address));
+        addresses.add(address);
+      }
+      accounts.addAll(symbolAccounts);
+      currencyAccounts.put(symbol, symbolAccounts);
+      System.out.println("Created " + addresses.size() + " " + symbol + " addresses");
+
+      Monitor monitor = currency.getMonitor().createNewMonitor();
+      monitor.addAddresses(addresses);
+      monitors.add(monitor);
+    }
+  }
+
+  /**
+   * Turn on the simulated latency and failures, then run the workload for the warm up and the
+   * measured duration.
+   */
+  public void run() throws InterruptedException {
+    if (accounts.isEmpty()) {
+      System.out.println("No currencies to test");
+      return;
+    }
+    profile.setLatency(config.getMedianLatency(), config.getP99Latency())
+        .setFailureRate(config.getFailureRate());
+
+    long warmupEnds = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getWarmup());
+    long runEnds = warmupEnds + TimeUnit.SECONDS.toNanos(config.getDuration());
+    ExecutorService workers = Executors.newFixedThreadPool(config.getThreads());
+    for (int i = 0; i < config.getThreads(); i++) {
+      workers.submit(() -> {
+        while (System.nanoTime() < runEnds) {
+          try {
+            runOperation();
+          } catch (RuntimeException e) {
+            LOGGER.debug(null, e);
+          }
+        }
+      });
+    }
+
+    TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnds - System.nanoTime()));
+    report.reset();
+    System.out.println("Warm up done, measuring for " + config.getDuration() + "s");
+
+    workers.shutdown();
+    workers.awaitTermination(config.getDuration() + 60L, TimeUnit.SECONDS);
+    report.stop();
+  }
+
+  public void tearDown() {
+    monitors.forEach(Monitor::destroyMonitor);
+  }
+
+  public LoadReport getReport() {
+    return report;
+  }
+
+  private void runOperation() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Account account = accounts.get(random.nextInt(accounts.size()));
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol(account.currency);
+    params.setUserKey(account.userKey);
+    params.setAccount(Collections.singletonList(account.address));
+
+    int roll = random.nextInt(Math.max(1,
+        config.getBalanceWeight() + config.getHistoryWeight() + config.getMonitorWeight()
+            + config.getTransactionWeight()));
+    if (roll < config.getBalanceWeight()) {
+      call("getBalance", () -> Common.getBalance(stringify(params)));
+      return;
+    }
+    roll -= config.getBalanceWeight();
+    if (roll < config.getHistoryWeight()) {
+      call("listTransactions", () -> Common.listTransactions(stringify(params)));
+      return;
+    }
+    roll -= config.getHistoryWeight();
+    if (roll < config.getMonitorWeight()) {
+      params.setCallback(config.getCallback());
+      call("monitorBalance", () -> Common.monitorBalance(stringify(params), null));
+      return;
+    }
+
+    List<Account> recipients = currencyAccounts.get(account.currency);
+    Account recipient = recipients.get(random.nextInt(recipients.size()));
+    CurrencyParametersRecipient recipientData = new CurrencyParametersRecipient();
+    recipientData.setAmount("0.5");
+    recipientData.setRecipientAddress(recipient.address);
+    params.setReceivingAccount(Collections.singletonList(recipientData));
+
+    CosignerResponse prepared = call("prepareTransaction",
+        () -> Common.prepareTransaction(stringify(params)));
+    if (prepared == null) {
+      return;
+    }
+    params.setTransactionData(prepared.getResult());
+    CosignerResponse approved = call("approveTransaction",
+        () -> Common.approveTransaction(stringify(params), false));
+    if (approved == null) {
+      return;
+    }
+    params.setTransactionData(approved.getResult());
+    call("submitTransaction", () -> Common.submitTransaction(stringify(params)));
+  }
+
+  /**
+   * Time a call, returning its response or null if it failed.
+   */
+  private CosignerResponse call(String endpoint, Supplier<String> request) {
+    long start = System.nanoTime();
+    CosignerResponse response = null;
+    try {
+      response = (CosignerResponse) Json.objectifyString(CosignerResponse.class, request.get());
+    } catch (RuntimeException e) {
+      LOGGER.debug(null, e);
+    }
+    boolean failed =
+        response == null || response.getError() != null && !response.getError().isEmpty();
+    report.record(endpoint, System.nanoTime() - start, failed);
+    return failed ? null : response;
+  }
+
+  private static String stringify(CurrencyParameters params) {
+    return Json.stringifyObject(CurrencyParameters.class, params);
+  }
+}
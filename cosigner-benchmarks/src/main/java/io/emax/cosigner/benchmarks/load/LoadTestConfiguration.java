@@ -0,0 +1,183 @@
+package io.emax.cosigner.benchmarks.load;
+
+import io.emax.cosigner.common.EnvironmentVariableParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Settings for a load test run, read from cosigner-loadtest.properties.
+ */
+public class LoadTestConfiguration {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestConfiguration.class);
+  private String[] currencies = {"bitcoin", "ethereum"};
+  private int threads = 100;
+  private int duration = 60;
+  private int warmup = 10;
+  private int addresses = 10000;
+  private int unspentOutputs = 50;
+  private int filterLogs = 50;
+  private long medianLatency = 5;
+  private long p99Latency = 100;
+  private double failureRate = 0.01;
+  private int balanceWeight = 50;
+  private int historyWeight = 20;
+  private int monitorWeight = 10;
+  private int transactionWeight = 20;
+  private String callback = "";
+  private long seed = 1;
+
+  public LoadTestConfiguration(String propertiesFilePath) {
+    loadConfig(propertiesFilePath);
+  }
+
+  private static int getIntProp(Properties prop, String value, int defaultValue) {
+    try {
+      return Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(prop.getProperty(value)));
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+      return defaultValue;
+    }
+  }
+
+  private static long getLongProp(Properties prop, String value, long defaultValue) {
+    try {
+      return Long.parseLong(EnvironmentVariableParser.resolveEnvVars(prop.getProperty(value)));
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+      return defaultValue;
+    }
+  }
+
+  private void loadConfig(String propertiesFilePath) {
+    try (FileInputStream propertiesFile = new FileInputStream(propertiesFilePath)) {
+      Properties properties = new Properties();
+      properties.load(propertiesFile);
+
+      // currencies
+      String arrayParser =
+          EnvironmentVariableParser.resolveEnvVars(properties.getProperty("currencies"));
+      if (arrayParser != null) {
+        currencies = arrayParser.split("[|]");
+      }
+
+      // threads
+      threads = getIntProp(properties, "threads", threads);
+
+      // duration
+      duration = getIntProp(properties, "duration", duration);
+
+      // warmup
+      warmup = getIntProp(properties, "warmup", warmup);
+
+      // addresses
+      addresses = getIntProp(properties, "addresses", addresses);
+
+      // unspentOutputs
+      unspentOutputs = getIntProp(properties, "unspentOutputs", unspentOutputs);
+
+      // filterLogs
+      filterLogs = getIntProp(properties, "filterLogs", filterLogs);
+
+      // medianLatency
+      medianLatency = getLongProp(properties, "medianLatency", medianLatency);
+
+      // p99Latency
+      p99Latency = getLongProp(properties, "p99Latency", p99Latency);
+
+      // failureRate
+      failureRate = Double.parseDouble(EnvironmentVariableParser.resolveEnvVars(
+          properties.getProperty("failureRate", Double.toString(failureRate))));
+
+      // balanceWeight
+      balanceWeight = getIntProp(properties, "balanceWeight", balanceWeight);
+
+      // historyWeight
+      historyWeight = getIntProp(properties, "historyWeight", historyWeight);
+
+      // monitorWeight
+      monitorWeight = getIntProp(properties, "monitorWeight", monitorWeight);
+
+      // transactionWeight
+      transactionWeight = getIntProp(properties, "transactionWeight", transactionWeight);
+
+      // callback
+      callback = EnvironmentVariableParser
+          .resolveEnvVars(properties.getProperty("callback", callback));
+
+      // seed
+      seed = getLongProp(properties, "seed", seed);
+    } catch (IOException e) {
+      LOGGER.info("Could not load load test configuration from " + propertiesFilePath
+          + ", using defaults.");
+    }
+  }
+
+  public String[] getCurrencies() {
+    return currencies.clone();
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getDuration() {
+    return duration;
+  }
+
+  public int getWarmup() {
+    return warmup;
+  }
+
+  public int getAddresses() {
+    return addresses;
+  }
+
+  public int getUnspentOutputs() {
+    return unspentOutputs;
+  }
+
+  public int getFilterLogs() {
+    return filterLogs;
+  }
+
+  public long getMedianLatency() {
+    return medianLatency;
+  }
+
+  public long getP99Latency() {
+    return p99Latency;
+  }
+
+  public double getFailureRate() {
+    return failureRate;
+  }
+
+  public int getBalanceWeight() {
+    return balanceWeight;
+  }
+
+  public int getHistoryWeight() {
+    return historyWeight;
+  }
+
+  public int getMonitorWeight() {
+    return monitorWeight;
+  }
+
+  public int getTransactionWeight() {
+    return transactionWeight;
+  }
+
+  public String getCallback() {
+    return callback;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+}
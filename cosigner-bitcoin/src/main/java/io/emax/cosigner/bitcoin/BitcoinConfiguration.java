@@ -23,8 +23,18 @@ public class BitcoinConfiguration implements CurrencyConfiguration, ValidatorCon
   private String[] multiSigAccounts = {};
   private int maxDeterministicAddresses = 100;
   private int rescanTimer = 60;
+  private int rescanReadTimeout = 6 * 60 * 60 * 1000;
   private String daemonUser;
   private String daemonPassword;
+  private int rpcConnectTimeout = 5000;
+  private int rpcReadTimeout = 30000;
+  private int rpcMaxInFlight = 20;
+  private boolean rpcWriteFanOut = false;
+  private int rpcMaxBlockLag = 2;
+  private int rpcHealthCheckInterval = 30;
+  private int balanceSnapshotInterval = 10;
+  private int seenTransactionWindow = 100000;
+  private String stateFile = "";
   private BigDecimal maxAmountPerHour = BigDecimal.ZERO;
   private BigDecimal maxAmountPerDay = BigDecimal.ZERO;
   private BigDecimal maxAmountPerTransaction = BigDecimal.ZERO;
@@ -92,6 +102,9 @@ public class BitcoinConfiguration implements CurrencyConfiguration, ValidatorCon
         // rescanTimer
         rescanTimer = getIntProp(cosignerProperties, "rescanTimer", rescanTimer);
 
+        // rescanReadTimeout
+        rescanReadTimeout = getIntProp(cosignerProperties, "rescanReadTimeout", rescanReadTimeout);
+
         // daemonUser
         daemonUser = EnvironmentVariableParser
             .resolveEnvVars(cosignerProperties.getProperty("daemonUser", ""));
@@ -100,6 +113,38 @@ public class BitcoinConfiguration implements CurrencyConfiguration, ValidatorCon
         daemonPassword = EnvironmentVariableParser
             .resolveEnvVars(cosignerProperties.getProperty("daemonPassword", ""));
 
+        // rpcConnectTimeout
+        rpcConnectTimeout = getIntProp(cosignerProperties, "rpcConnectTimeout", rpcConnectTimeout);
+
+        // rpcReadTimeout
+        rpcReadTimeout = getIntProp(cosignerProperties, "rpcReadTimeout", rpcReadTimeout);
+
+        // rpcMaxInFlight
+        rpcMaxInFlight = getIntProp(cosignerProperties, "rpcMaxInFlight", rpcMaxInFlight);
+
+        // rpcWriteFanOut
+        rpcWriteFanOut = Boolean.valueOf(EnvironmentVariableParser.resolveEnvVars(
+            cosignerProperties.getProperty("rpcWriteFanOut", Boolean.toString(rpcWriteFanOut))));
+
+        // rpcMaxBlockLag
+        rpcMaxBlockLag = getIntProp(cosignerProperties, "rpcMaxBlockLag", rpcMaxBlockLag);
+
+        // rpcHealthCheckInterval
+        rpcHealthCheckInterval =
+            getIntProp(cosignerProperties, "rpcHealthCheckInterval", rpcHealthCheckInterval);
+
+        // balanceSnapshotInterval
+        balanceSnapshotInterval =
+            getIntProp(cosignerProperties, "balanceSnapshotInterval", balanceSnapshotInterval);
+
+        // seenTransactionWindow
+        seenTransactionWindow =
+            getIntProp(cosignerProperties, "seenTransactionWindow", seenTransactionWindow);
+
+        // stateFile
+        stateFile = EnvironmentVariableParser
+            .resolveEnvVars(cosignerProperties.getProperty("stateFile", stateFile));
+
         // maxAmountPerHour
         maxAmountPerHour = new BigDecimal(EnvironmentVariableParser.resolveEnvVars(
             cosignerProperties.getProperty("maxAmountPerHour", maxAmountPerHour.toPlainString())));
@@ -197,6 +242,49 @@ public class BitcoinConfiguration implements CurrencyConfiguration, ValidatorCon
     return daemonPassword;
   }
 
+  /**
+   * Connection strings for every configured node, the first one is the primary.
+   */
+  public String[] getDaemonConnectionStrings() {
+    return daemonConnectionString.split("[|]");
+  }
+
+  public boolean isRpcWriteFanOut() {
+    return rpcWriteFanOut;
+  }
+
+  public int getRpcMaxBlockLag() {
+    return rpcMaxBlockLag;
+  }
+
+  public int getRpcHealthCheckInterval() {
+    return rpcHealthCheckInterval;
+  }
+
+  public int getBalanceSnapshotInterval() {
+    return balanceSnapshotInterval;
+  }
+
+  public int getSeenTransactionWindow() {
+    return seenTransactionWindow;
+  }
+
+  public String getStateFile() {
+    return stateFile;
+  }
+
+  public int getRpcConnectTimeout() {
+    return rpcConnectTimeout;
+  }
+
+  public int getRpcReadTimeout() {
+    return rpcReadTimeout;
+  }
+
+  public int getRpcMaxInFlight() {
+    return rpcMaxInFlight;
+  }
+
   public int getMaxDeterministicAddresses() {
     return maxDeterministicAddresses;
   }
@@ -219,4 +307,11 @@ public class BitcoinConfiguration implements CurrencyConfiguration, ValidatorCon
   public int getRescanTimer() {
     return rescanTimer;
   }
+
+  /**
+   * Milliseconds to wait for a rescan to finish, a rescan from an early block can take hours.
+   */
+  public int getRescanReadTimeout() {
+    return rescanReadTimeout;
+  }
 }
@@ -23,7 +23,7 @@ public class BitcoinCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public Wallet getWallet() {
+  public synchronized Wallet getWallet() {
     if(bitcoinWallet == null) {
       bitcoinWallet = new BitcoinWallet(bitcoinConfiguration);
     }
@@ -31,14 +31,14 @@ public class BitcoinCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public void setWallet(Wallet wallet) {
+  public synchronized void setWallet(Wallet wallet) {
     if (wallet.getClass().isInstance(BitcoinWallet.class)) {
       bitcoinWallet = (BitcoinWallet) wallet;
     }
   }
 
   @Override
-  public Monitor getMonitor() {
+  public synchronized Monitor getMonitor() {
     if(bitcoinMonitor == null) {
       bitcoinMonitor = new BitcoinMonitor((BitcoinWallet) getWallet());
     }
@@ -47,7 +47,7 @@ public class BitcoinCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public void setMonitor(Monitor monitor) {
+  public synchronized void setMonitor(Monitor monitor) {
     if (monitor.getClass().isInstance(BitcoinMonitor.class)) {
       bitcoinMonitor = (BitcoinMonitor) monitor;
     }
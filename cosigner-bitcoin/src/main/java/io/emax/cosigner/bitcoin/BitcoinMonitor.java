@@ -1,37 +1,63 @@
 package io.emax.cosigner.bitcoin;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
+import io.emax.cosigner.api.currency.Wallet.TransactionPage;
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.SeenTransactions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Observable;
 import rx.Subscription;
+import rx.subjects.PublishSubject;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 public class BitcoinMonitor implements io.emax.cosigner.api.currency.Monitor {
   private static final Logger LOGGER = LoggerFactory.getLogger(BitcoinMonitor.class);
-  private final HashSet<String> monitoredAddresses = new HashSet<>();
-  private final HashMap<String, String> accountBalances = new HashMap<>();
-  private final HashSet<TransactionDetails> accountTransactions = new HashSet<>();
-  private final HashSet<TransactionDetails> newAccountTransactions = new HashSet<>();
-  private final Observable<Map<String, String>> observableBalances =
-      Observable.interval(1, TimeUnit.MINUTES).map(tick -> accountBalances);
-
+  private static final int RECENT_TRANSACTIONS = 1000;
+  // Roughly a day of blocks, how far back an address's history goes when it's first watched.
+  private static final long HISTORY_BLOCKS = 144;
+  private final Set<String> monitoredAddresses = ConcurrentHashMap.newKeySet();
+  private final Map<String, String> accountBalances = new ConcurrentHashMap<>();
+  // Most recent transactions, used to catch up new subscribers.
+  private final LinkedHashSet<TransactionDetails> recentTransactions = new LinkedHashSet<>();
+  private final SeenTransactions seenTransactions;
+  // Filled by the refresh and drained by the transaction interval, which run on different threads.
+  private final Queue<TransactionDetails> newAccountTransactions = new ConcurrentLinkedQueue<>();
+  // Where the transaction scan left off, so a refresh only looks at new blocks. The scan covers
+  // the whole wallet, so one cursor serves every address.
+  private volatile String transactionCursor;
+  // Addresses added since the last refresh, their recent history hasn't been scanned yet.
+  private final Set<String> newAddresses = ConcurrentHashMap.newKeySet();
+  // Balances that changed in the last refresh, sent out as soon as they're seen.
+  private final PublishSubject<Map<String, String>> balanceChanges = PublishSubject.create();
+  private final Observable<Map<String, String>> observableBalances;
+
+  // Shared, so every subscriber gets each batch instead of racing the others to drain the queue.
   private final Observable<Set<TransactionDetails>> observableTransactions =
-      Observable.interval(1, TimeUnit.MINUTES).map(tick -> {
+      Observable.interval(1, TimeUnit.MINUTES).<Set<TransactionDetails>>map(tick -> {
         HashSet<TransactionDetails> txs = new HashSet<>();
-        txs.addAll(newAccountTransactions);
-        newAccountTransactions.clear();
+        for (TransactionDetails tx = newAccountTransactions.poll(); tx != null;
+            tx = newAccountTransactions.poll()) {
+          txs.add(tx);
+        }
         return txs;
-      });
+      }).share();
 
   private final Subscription balanceSubscription =
       Observable.interval(30, TimeUnit.SECONDS).map(tick -> updateBalances()).onErrorReturn(null)
@@ -43,46 +69,120 @@ public class BitcoinMonitor implements io.emax.cosigner.api.currency.Monitor {
   public BitcoinMonitor(BitcoinConfiguration conf) {
     config = conf;
     wallet = new BitcoinWallet(conf);
+    seenTransactions =
+        new SeenTransactions(config.getCurrencySymbol(), config.getSeenTransactionWindow());
+    observableBalances = buildObservableBalances();
   }
 
   public BitcoinMonitor(BitcoinWallet wallet) {
     this.wallet = wallet;
     config = wallet.config;
+    seenTransactions =
+        new SeenTransactions(config.getCurrencySymbol(), config.getSeenTransactionWindow());
+    observableBalances = buildObservableBalances();
+  }
+
+  private Observable<Map<String, String>> buildObservableBalances() {
+    if (config.getBalanceSnapshotInterval() <= 0) {
+      return balanceChanges;
+    }
+    // Send a full snapshot now and then as well so subscribers can resync.
+    return balanceChanges.mergeWith(
+        Observable.interval(config.getBalanceSnapshotInterval(), TimeUnit.MINUTES)
+            .map(tick -> new HashMap<>(accountBalances)));
   }
 
   private boolean updateBalances() {
+    // Idle monitors, like the currency's template, would only drag the tick metrics down.
+    if (monitoredAddresses.isEmpty()) {
+      return true;
+    }
+    MetricRegistry metrics = Metrics.getRegistry();
+    String symbol = config.getCurrencySymbol();
+    metrics.histogram(MetricRegistry.name(BitcoinMonitor.class, symbol, "addresses"))
+        .update(monitoredAddresses.size());
+    Timer.Context tick =
+        metrics.timer(MetricRegistry.name(BitcoinMonitor.class, symbol, "tick")).time();
+    Map<String, String> changes = new HashMap<>();
     monitoredAddresses.forEach(address -> {
       try {
         String currentBalance = wallet.getBalance(address);
-        accountBalances.put(address, currentBalance);
+        String previousBalance = accountBalances.put(address, currentBalance);
+        if (currentBalance != null && !currentBalance.equals(previousBalance)) {
+          changes.put(address, currentBalance);
+        }
       } catch (Exception e) {
         LOGGER.debug("Bad address passed to monitor: " + address);
       }
     });
 
+    if (!changes.isEmpty()) {
+      balanceChanges.onNext(changes);
+    }
+
     updateTransactions();
+    tick.stop();
     return true;
   }
 
   private void updateTransactions() {
     HashSet<TransactionDetails> details = new HashSet<>();
-    monitoredAddresses.forEach(
-        address -> Arrays.asList(wallet.getTransactions(address, 100, 0)).forEach(details::add));
+    try {
+      if (transactionCursor == null) {
+        transactionCursor = wallet.getCursor(HISTORY_BLOCKS);
+        newAddresses.clear();
+      }
+      TransactionPage page = wallet.getTransactionsSince(
+          new HashSet<>(monitoredAddresses), transactionCursor);
+      Arrays.asList(page.getTransactions()).forEach(details::add);
+      if (page.getCursor() != null) {
+        transactionCursor = page.getCursor();
+      }
 
-    // Remove the intersection
-    details.removeAll(accountTransactions);
-    accountTransactions.addAll(details);
-    newAccountTransactions.addAll(details);
+      // Newly watched addresses pick up where everything else is, plus their recent history.
+      if (!newAddresses.isEmpty()) {
+        Set<String> added = new HashSet<>(newAddresses);
+        newAddresses.removeAll(added);
+        added.retainAll(monitoredAddresses);
+        if (!added.isEmpty()) {
+          page = wallet.getTransactionsSince(added, wallet.getCursor(HISTORY_BLOCKS));
+          Arrays.asList(page.getTransactions()).forEach(details::add);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.debug("Unable to scan transactions", e);
+    }
+
+    // Only pass on what hasn't been reported before
+    details.forEach(detail -> {
+      if (seenTransactions.add(detail.identityKey())) {
+        newAccountTransactions.add(detail);
+        synchronized (recentTransactions) {
+          recentTransactions.add(detail);
+          if (recentTransactions.size() > RECENT_TRANSACTIONS) {
+            recentTransactions.remove(recentTransactions.iterator().next());
+          }
+        }
+      }
+    });
   }
 
   @Override
   public void addAddresses(Iterable<String> addresses) {
-    addresses.forEach(monitoredAddresses::add);
+    addresses.forEach(address -> {
+      if (monitoredAddresses.add(address)) {
+        newAddresses.add(address);
+      }
+    });
   }
 
   @Override
   public void removeAddresses(Iterable<String> addresses) {
-    addresses.forEach(monitoredAddresses::remove);
+    addresses.forEach(address -> {
+      monitoredAddresses.remove(address);
+      accountBalances.remove(address);
+      newAddresses.remove(address);
+    });
   }
 
   @Override
@@ -116,7 +216,9 @@ public class BitcoinMonitor implements io.emax.cosigner.api.currency.Monitor {
 
   @Override
   public Set<TransactionDetails> getTransactions() {
-    return accountTransactions;
+    synchronized (recentTransactions) {
+      return new HashSet<>(recentTransactions);
+    }
   }
 
   @Override
@@ -1,17 +1,17 @@
 package io.emax.cosigner.bitcoin;
 
-import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
-import com.googlecode.jsonrpc4j.ProxyUtil;
+import com.googlecode.jsonrpc4j.JsonRpcMethod;
 
 import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.NodePoolTransport;
+import io.emax.cosigner.common.rpc.RpcProxy;
+import io.emax.cosigner.common.rpc.RpcTransport;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.net.Authenticator;
-import java.net.MalformedURLException;
-import java.net.PasswordAuthentication;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Static connection to a bitcoind RPC server.
@@ -19,34 +19,43 @@ import java.net.URL;
  * @author Tom
  */
 public class BitcoinResource {
-  private static final Logger LOGGER = LoggerFactory.getLogger(BitcoinResource.class);
   private static final BitcoinResource serverResource = new BitcoinResource();
-  private BitcoinConfiguration config;
-  private JsonRpcHttpClient client;
+  private RpcTransport transport;
+  private RpcTransport rescanTransport;
   private BitcoindRpc bitcoindRpc;
+  private BitcoindRpc rescanRpc;
 
   public static BitcoinResource getResource() {
     return serverResource;
   }
 
   private BitcoinResource() {
-    this.config = new BitcoinConfiguration();
-    try {
-
-      // Set up our RPC authentication
-      Authenticator.setDefault(new Authenticator() {
-        @Override
-        protected PasswordAuthentication getPasswordAuthentication() {
-          return new PasswordAuthentication(config.getDaemonUser(),
-              config.getDaemonPassword().toCharArray());
-        }
-      });
-
-      this.client = new JsonRpcHttpClient(new URL(config.getDaemonConnectionString()));
-
-    } catch (MalformedURLException e) {
-      LOGGER.error(null, e);
+    BitcoinConfiguration config = new BitcoinConfiguration();
+    List<HttpRpcTransport> nodes = new LinkedList<>();
+    List<HttpRpcTransport> rescanNodes = new LinkedList<>();
+    String[] connectionStrings = config.getDaemonConnectionStrings();
+    for (int i = 0; i < connectionStrings.length; i++) {
+      nodes.add(new HttpRpcTransport("bitcoind-" + i, connectionStrings[i].trim(),
+          config.getDaemonUser(), config.getDaemonPassword(), config.getRpcConnectTimeout(),
+          config.getRpcReadTimeout(), config.getRpcMaxInFlight()));
+      rescanNodes.add(new HttpRpcTransport("bitcoind-rescan-" + i, connectionStrings[i].trim(),
+          config.getDaemonUser(), config.getDaemonPassword(), config.getRpcConnectTimeout(),
+          config.getRescanReadTimeout(), 1));
     }
+
+    // Watch-only addresses live in each node's wallet, so every node has to import them.
+    this.transport = new NodePoolTransport("bitcoind", nodes,
+        new HashSet<>(Arrays.asList("sendrawtransaction", "getnewaddress")),
+        new HashSet<>(Arrays.asList("importaddress", "addmultisigaddress", "rescanblockchain")),
+        config.isRpcWriteFanOut(), config.getRpcMaxBlockLag(),
+        node -> (Long) node.invoke("getblockcount", null, Long.class),
+        config.getRpcHealthCheckInterval());
+
+    // Rescans block until they're done, which can be hours, so they get their own connections.
+    this.rescanTransport = new NodePoolTransport("bitcoind-rescan", rescanNodes,
+        new HashSet<>(), new HashSet<>(Arrays.asList("importaddress", "rescanblockchain")), false,
+        config.getRpcMaxBlockLag(), node -> (Long) node.invoke("getblockcount", null, Long.class),
+        config.getRpcHealthCheckInterval());
   }
 
   public BitcoinResource(BitcoindRpc rpc) {
@@ -55,6 +64,17 @@ public class BitcoinResource {
 
   public void setBitcoindRpc(BitcoindRpc rpc) {
     this.bitcoindRpc = rpc;
+    this.rescanRpc = rpc;
+  }
+
+  /**
+   * Replace the transport used to reach bitcoind.
+   */
+  public void setTransport(RpcTransport transport) {
+    this.transport = transport;
+    this.rescanTransport = transport;
+    this.bitcoindRpc = null;
+    this.rescanRpc = null;
   }
 
   /**
@@ -64,10 +84,29 @@ public class BitcoinResource {
    */
   public BitcoindRpc getBitcoindRpc() {
     if (bitcoindRpc == null) {
-      this.bitcoindRpc =
-          ProxyUtil.createClientProxy(getClass().getClassLoader(), BitcoindRpc.class, client);
+      this.bitcoindRpc = createProxy(transport);
     }
 
     return this.bitcoindRpc;
   }
+
+  /**
+   * Get an RPC object for rescans, which waits as long as a rescan can take.
+   *
+   * @return RPC object
+   */
+  public BitcoindRpc getRescanRpc() {
+    if (rescanRpc == null) {
+      this.rescanRpc = rescanTransport == null ? getBitcoindRpc() : createProxy(rescanTransport);
+    }
+
+    return this.rescanRpc;
+  }
+
+  private static BitcoindRpc createProxy(RpcTransport transport) {
+    return RpcProxy.createProxy(BitcoindRpc.class, transport, method -> {
+      JsonRpcMethod rpcMethod = method.getAnnotation(JsonRpcMethod.class);
+      return rpcMethod == null ? method.getName() : rpcMethod.value();
+    });
+  }
 }
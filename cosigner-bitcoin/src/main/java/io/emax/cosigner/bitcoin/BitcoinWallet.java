@@ -16,9 +16,11 @@ import io.emax.cosigner.bitcoin.bitcoindrpc.RawInput;
 import io.emax.cosigner.bitcoin.bitcoindrpc.RawOutput;
 import io.emax.cosigner.bitcoin.bitcoindrpc.RawTransaction;
 import io.emax.cosigner.bitcoin.bitcoindrpc.SigHash;
+import io.emax.cosigner.bitcoin.bitcoindrpc.SinceBlock;
 import io.emax.cosigner.bitcoin.bitcoindrpc.SignedTransaction;
 import io.emax.cosigner.bitcoin.common.BitcoinTools;
 import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.StateStore;
 import io.emax.cosigner.common.crypto.Secp256k1;
 
 import org.slf4j.Logger;
@@ -29,6 +31,7 @@ import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -36,6 +39,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -45,10 +49,13 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
   private static final Logger LOGGER = LoggerFactory.getLogger(BitcoinWallet.class);
   private final BitcoindRpc bitcoindRpc = BitcoinResource.getResource().getBitcoindRpc();
   private static final String PUBKEY_PREFIX = "PK-";
+  private static final String REDEEM_SCRIPT_KEY = "redeemScript/";
 
   BitcoinConfiguration config;
 
+  // Redeem scripts live in the state store when there is one, this only holds them otherwise.
   private final HashMap<String, String> multiSigRedeemScripts = new HashMap<>();
+  private final StateStore state;
 
   private Thread multiSigSubscription = new Thread(() -> {
     //noinspection InfiniteLoopStatement
@@ -63,28 +70,25 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
     }
   });
 
+  private final RescanScheduler rescans;
+
   private Thread rescanThread = new Thread(() -> {
     //noinspection InfiniteLoopStatement
     while (true) {
       try {
-        try {
-          LOGGER.debug("Initiating blockchain rescan...");
-          byte[] key = Secp256k1.generatePrivateKey();
-          String privateKey = BitcoinTools.encodePrivateKey(ByteUtilities.toHexString(key));
-          String address = BitcoinTools.getPublicAddress(privateKey, true);
-          bitcoindRpc.importaddress(address, "RESCAN", true);
-        } catch (Exception e) {
-          LOGGER.debug("Rescan thread interrupted, or import timed out (expected)", e);
-        }
-        Thread.sleep(config.getRescanTimer() * 60L * 60L * 1000L);
+        checkForRescan();
+        Thread.sleep(60000);
       } catch (Exception e) {
-        LOGGER.debug("Rescan thread interrupted, or import timed out (expected)", e);
+        LOGGER.debug("Rescan thread interrupted", e);
       }
     }
   });
 
   public BitcoinWallet(BitcoinConfiguration conf) {
     config = conf;
+    state = StateStore.open(config.getStateFile());
+    rescans = new RescanScheduler(bitcoindRpc, BitcoinResource.getResource().getRescanRpc(), state,
+        config.getRescanTimer());
 
     if (!multiSigSubscription.isAlive()) {
       multiSigSubscription.setDaemon(true);
@@ -128,6 +132,7 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
       }
     }
     bitcoindRpc.importaddress(newAddress, internalName, false);
+    rescans.addressImported();
 
     return newAddress;
   }
@@ -135,6 +140,7 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
   @Override
   public boolean registerAddress(String address) {
     bitcoindRpc.importaddress(address, "", false);
+    rescans.addressImported();
     return true;
   }
 
@@ -169,10 +175,19 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
     String internalName = BitcoinTools.encodeUserKey(name);
     String newAddress = generateMultiSigAddress(addresses, name);
     bitcoindRpc.importaddress(newAddress, internalName, false);
+    rescans.addressImported();
 
     return newAddress;
   }
 
+  private void checkForRescan() {
+    try {
+      rescans.check();
+    } catch (Exception e) {
+      LOGGER.debug("Unable to check for a rescan", e);
+    }
+  }
+
   private void scanForAddresses() {
     try {
       Map<String, BigDecimal> knownAccounts = bitcoindRpc.listaccounts(0, true);
@@ -245,11 +260,25 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
               BitcoinTools.encodeUserKey(name));
     }
 
-    multiSigRedeemScripts.put(newAddress.getAddress(), newAddress.getRedeemScript());
+    putRedeemScript(newAddress.getAddress(), newAddress.getRedeemScript());
 
     return newAddress.getAddress();
   }
 
+  private void putRedeemScript(String address, String redeemScript) {
+    if (state == null || !state.put(REDEEM_SCRIPT_KEY + address, redeemScript)) {
+      multiSigRedeemScripts.put(address, redeemScript);
+    }
+  }
+
+  private String getRedeemScript(String address) {
+    String redeemScript = multiSigRedeemScripts.get(address);
+    if (redeemScript == null && state != null) {
+      redeemScript = state.get(REDEEM_SCRIPT_KEY + address);
+    }
+    return redeemScript;
+  }
+
   @Override
   public String getBalance(String address) {
     BigDecimal balance = BigDecimal.ZERO;
@@ -406,7 +435,7 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
         if (output.getTransactionId().equalsIgnoreCase(input.getTxHash())
             && output.getOutputIndex() == input.getTxIndex()) {
 
-          String redeemScript = multiSigRedeemScripts.get(output.getAddress());
+          String redeemScript = getRedeemScript(output.getAddress());
           Iterable<String> publicKeys = RawTransaction.decodeRedeemScript(redeemScript);
           publicKeys.forEach(key -> addresses.add(BitcoinTools.getPublicAddress(key, false)));
         }
@@ -498,7 +527,7 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
           outpoint.setTransactionId(output.getTransactionId());
           outpoint.setOutputIndex(output.getOutputIndex());
           outpoint.setScriptPubKey(output.getScriptPubKey());
-          outpoint.setRedeemScript(multiSigRedeemScripts.get(output.getAddress()));
+          outpoint.setRedeemScript(getRedeemScript(output.getAddress()));
 
           if (output.getAddress().equalsIgnoreCase(address)) {
             RawTransaction signingTx = RawTransaction.stripInputScripts(rawTx);
@@ -687,116 +716,179 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
         break;
       }
 
-      for (Payment payment : Arrays.asList(payments)) {
-        // Lookup the txid and vout/vin based on the sign of the amount (+/-)
-        // Determine the address involved
-        try {
-          String rawTx = bitcoindRpc.getrawtransaction(payment.getTxid());
-          RawTransaction tx = RawTransaction.parse(rawTx);
-          if (payment.getCategory() == PaymentCategory.receive) {
-            // Paid to the account
-
-            if (payment.getAddress().equalsIgnoreCase(address)) {
-              TransactionDetails detail = new TransactionDetails();
-              detail.setAmount(payment.getAmount().abs());
-              detail.setTxDate(new Date(payment.getBlocktime().toInstant().toEpochMilli() * 1000L));
-
-              Map txData = bitcoindRpc.gettransaction(payment.getTxid(), true);
-              detail
-                  .setConfirmed(config.getMinConfirmations() <= (int) txData.get("confirmations"));
-              detail.setConfirmations((int) txData.get("confirmations"));
-              detail.setMinConfirmations(config.getMinConfirmations());
-
-              // Senders
-              HashSet<String> senders = new HashSet<>();
-              tx.getInputs().forEach(input -> {
-                try {
-                  String rawSenderTx = bitcoindRpc.getrawtransaction(input.getTxHash());
-                  RawTransaction senderTx = RawTransaction.parse(rawSenderTx);
-                  String script = senderTx.getOutputs().get(input.getTxIndex()).getScript();
-                  String scriptAddress = RawTransaction.decodePubKeyScript(script);
-                  senders.add(scriptAddress);
-                } catch (Exception e) {
-                  LOGGER.debug(null, e);
-                  senders.add(null);
-                }
-              });
-              detail.setFromAddress(senders.toArray(new String[senders.size()]));
+      txDetails.addAll(decodePayments(address, payments));
+
+      pageNumber++;
+    }
+
+    for (int i = 0; i < skipNumber; i++) {
+      txDetails.removeFirst();
+    }
+    while (txDetails.size() > numberToReturn) {
+      txDetails.removeLast();
+    }
+
+    return txDetails.toArray(new TransactionDetails[txDetails.size()]);
+  }
+
+  @Override
+  public TransactionPage getTransactionsSince(String address, String cursor) {
+    return getTransactionsSince(Collections.singleton(address), cursor);
+  }
+
+  /**
+   * List transactions for a set of addresses that were seen after a cursor.
+   *
+   * <p>listsinceblock covers the whole wallet, so watching many addresses takes one call rather
+   * than one per address.
+   *
+   * @param addresses addresses to lookup transactions for.
+   * @param cursor    Block hash from the previous page, or null to start from the beginning.
+   * @return Transactions seen since the cursor, and the cursor for the next call.
+   */
+  public TransactionPage getTransactionsSince(Collection<String> addresses, String cursor) {
+    // Only blocks after the cursor are scanned, lastblock is the tip to continue from next time.
+    SinceBlock sinceBlock = bitcoindRpc.listsinceblock(cursor == null ? "" : cursor, 1, true);
+    List<TransactionDetails> txDetails = decodePayments(addresses, sinceBlock.getTransactions());
+    return new TransactionPage(txDetails.toArray(new TransactionDetails[txDetails.size()]),
+        sinceBlock.getLastblock());
+  }
 
-              detail.setToAddress(new String[]{address});
-              detail.setTxHash(payment.getTxid());
+  /**
+   * Cursor for {@link #getTransactionsSince(Collection, String)} that starts a number of blocks
+   * back from the tip, rather than at the start of the wallet's history.
+   */
+  public String getCursor(long blocksBack) {
+    long tip = bitcoindRpc.getBlockCount();
+    return bitcoindRpc.getBlockHash(Math.max(0, tip - blocksBack));
+  }
+
+  private List<TransactionDetails> decodePayments(String address, Payment[] payments) {
+    return decodePayments(Collections.singleton(address), payments);
+  }
 
-              txDetails.add(detail);
+  private List<TransactionDetails> decodePayments(Collection<String> addresses,
+      Payment[] payments) {
+    // Addresses are matched without case, but reported the way the caller gave them.
+    Map<String, String> watched = new HashMap<>();
+    addresses.forEach(address -> watched.put(address.toLowerCase(Locale.US), address));
+    // Several payments can come from one transaction, and several inputs from one transaction.
+    Map<String, RawTransaction> rawTxs = new HashMap<>();
+    Map<String, List<String>> txSenders = new HashMap<>();
+    Map<String, Map> txDatas = new HashMap<>();
+
+    LinkedList<TransactionDetails> txDetails = new LinkedList<>();
+    for (Payment payment : Arrays.asList(payments)) {
+      // Lookup the txid and vout/vin based on the sign of the amount (+/-)
+      // Determine the address involved
+      try {
+        if (payment.getCategory() == PaymentCategory.receive) {
+          // Paid to the account, which is known without looking up the transaction.
+          String address = payment.getAddress() == null ? null
+              : watched.get(payment.getAddress().toLowerCase(Locale.US));
+          if (address == null) {
+            continue;
+          }
+          TransactionDetails detail = new TransactionDetails();
+          detail.setAmount(payment.getAmount().abs());
+          detail.setTxDate(new Date(payment.getBlocktime().toInstant().toEpochMilli() * 1000L));
+
+          Map txData = txDatas.computeIfAbsent(payment.getTxid(),
+              txid -> bitcoindRpc.gettransaction(txid, true));
+          detail.setConfirmed(config.getMinConfirmations() <= (int) txData.get("confirmations"));
+          detail.setConfirmations((int) txData.get("confirmations"));
+          detail.setMinConfirmations(config.getMinConfirmations());
+
+          // Senders
+          HashSet<String> senders =
+              new HashSet<>(getSenders(payment.getTxid(), rawTxs, txSenders));
+          detail.setFromAddress(senders.toArray(new String[senders.size()]));
+
+          detail.setToAddress(new String[]{address});
+          detail.setTxHash(payment.getTxid());
+
+          txDetails.add(detail);
+        } else if (payment.getCategory() == PaymentCategory.send) {
+          // Sent from the account, only the inputs say which of our addresses it came from.
+          for (String sender : getSenders(payment.getTxid(), rawTxs, txSenders)) {
+            String address =
+                sender == null ? null : watched.get(sender.toLowerCase(Locale.US));
+            if (address == null) {
+              continue;
             }
-          } else if (payment.getCategory() == PaymentCategory.send) {
-            // Sent from the account
-            tx.getInputs().forEach(input -> {
-              String rawSenderTx = bitcoindRpc.getrawtransaction(input.getTxHash());
-              RawTransaction senderTx = RawTransaction.parse(rawSenderTx);
-              String script = senderTx.getOutputs().get(input.getTxIndex()).getScript();
-              String scriptAddress = RawTransaction.decodePubKeyScript(script);
-
-              if (scriptAddress != null && scriptAddress.equalsIgnoreCase(address)) {
-                TransactionDetails detail = new TransactionDetails();
-
-                detail
-                    .setTxDate(new Date(payment.getBlocktime().toInstant().toEpochMilli() * 1000L));
-                detail.setTxHash(payment.getTxid());
-                detail.setAmount(payment.getAmount().abs());
-                detail.setFromAddress(new String[]{address});
-                detail.setToAddress(new String[]{payment.getAddress()});
-
-                Map txData = bitcoindRpc.gettransaction(payment.getTxid(), true);
-                detail.setConfirmed(
-                    config.getMinConfirmations() <= (int) txData.get("confirmations"));
-                detail.setConfirmations((int) txData.get("confirmations"));
-                detail.setMinConfirmations(config.getMinConfirmations());
-
-                txDetails.add(detail);
-              }
-            });
+            TransactionDetails detail = new TransactionDetails();
+
+            detail.setTxDate(new Date(payment.getBlocktime().toInstant().toEpochMilli() * 1000L));
+            detail.setTxHash(payment.getTxid());
+            detail.setAmount(payment.getAmount().abs());
+            detail.setFromAddress(new String[]{address});
+            detail.setToAddress(new String[]{payment.getAddress()});
+
+            Map txData = txDatas.computeIfAbsent(payment.getTxid(),
+                txid -> bitcoindRpc.gettransaction(txid, true));
+            detail.setConfirmed(
+                config.getMinConfirmations() <= (int) txData.get("confirmations"));
+            detail.setConfirmations((int) txData.get("confirmations"));
+            detail.setMinConfirmations(config.getMinConfirmations());
+
+            txDetails.add(detail);
           }
-        } catch (Exception e) {
-          LOGGER.debug(null, e);
         }
+      } catch (Exception e) {
+        LOGGER.debug(null, e);
       }
+    }
 
-      LinkedList<TransactionDetails> removeThese = new LinkedList<>();
-      for (TransactionDetails detail : txDetails) {
-        boolean noMatch = false;
-        for (String from : Arrays.asList(detail.getFromAddress())) {
-          boolean subMatch = false;
-          for (String to : Arrays.asList(detail.getToAddress())) {
-            if (to.equalsIgnoreCase(from)) {
-              subMatch = true;
-              break;
-            }
-          }
-          if (!subMatch) {
-            noMatch = true;
+    LinkedList<TransactionDetails> removeThese = new LinkedList<>();
+    for (TransactionDetails detail : txDetails) {
+      boolean noMatch = false;
+      for (String from : Arrays.asList(detail.getFromAddress())) {
+        boolean subMatch = false;
+        for (String to : Arrays.asList(detail.getToAddress())) {
+          if (to.equalsIgnoreCase(from)) {
+            subMatch = true;
             break;
           }
         }
-
-        // If the from & to's match then it's just a return amount, simpler if we don't list it.
-        if (!noMatch) {
-          removeThese.add(detail);
+        if (!subMatch) {
+          noMatch = true;
+          break;
         }
       }
 
-      removeThese.forEach(txDetails::remove);
-
-      pageNumber++;
+      // If the from & to's match then it's just a return amount, simpler if we don't list it.
+      if (!noMatch) {
+        removeThese.add(detail);
+      }
     }
 
-    for (int i = 0; i < skipNumber; i++) {
-      txDetails.removeFirst();
-    }
-    while (txDetails.size() > numberToReturn) {
-      txDetails.removeLast();
-    }
+    removeThese.forEach(txDetails::remove);
 
-    return txDetails.toArray(new TransactionDetails[txDetails.size()]);
+    return txDetails;
+  }
+
+  /**
+   * Addresses paying into each input of a transaction, null where one couldn't be decoded.
+   */
+  private List<String> getSenders(String txid, Map<String, RawTransaction> rawTxs,
+      Map<String, List<String>> txSenders) {
+    return txSenders.computeIfAbsent(txid, key -> {
+      List<String> senders = new LinkedList<>();
+      RawTransaction tx = rawTxs.computeIfAbsent(txid,
+          hash -> RawTransaction.parse(bitcoindRpc.getrawtransaction(hash)));
+      tx.getInputs().forEach(input -> {
+        try {
+          RawTransaction senderTx = rawTxs.computeIfAbsent(input.getTxHash(),
+              hash -> RawTransaction.parse(bitcoindRpc.getrawtransaction(hash)));
+          String script = senderTx.getOutputs().get(input.getTxIndex()).getScript();
+          senders.add(RawTransaction.decodePubKeyScript(script));
+        } catch (Exception e) {
+          LOGGER.debug(null, e);
+          senders.add(null);
+        }
+      });
+      return senders;
+    });
   }
 
   @Override
@@ -833,6 +925,14 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
     txDetails.setAmount(totalAmount);
     txDetails.setFromAddress(senders.toArray(new String[senders.size()]));
     txDetails.setToAddress(recipients.toArray(new String[recipients.size()]));
+    try {
+      // The txid is the reversed double SHA-256 of the transaction.
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] txid = md.digest(md.digest(ByteUtilities.toByteArray(transaction)));
+      txDetails.setTxHash(ByteUtilities.toHexString(ByteUtilities.flipEndian(txid)).toLowerCase());
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+    }
     return txDetails;
   }
 
@@ -883,6 +983,7 @@ public class BitcoinWallet implements Wallet, Validatable, CurrencyAdmin {
     configSummary.put("Minimum Signatures", ((Integer) config.getMinSignatures()).toString());
     configSummary.put("Minimum Confirmations", ((Integer) config.getMinConfirmations()).toString());
     configSummary.put("Rescan Timer", ((Integer) config.getRescanTimer()).toString());
+    configSummary.put("Indexed Height", Long.toString(rescans.getIndexedHeight()));
     configSummary
         .put("Maximum Transaction Value", config.getMaxAmountPerTransaction().toPlainString());
     configSummary
@@ -0,0 +1,170 @@
+package io.emax.cosigner.bitcoin;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
+import io.emax.cosigner.bitcoin.common.BitcoinTools;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.StateStore;
+import io.emax.cosigner.common.crypto.Secp256k1;
+import io.emax.cosigner.common.rpc.RpcException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides when bitcoind's wallet needs a rescan, and of which blocks.
+ *
+ * <p>Addresses are imported without a rescan so that handing them out stays fast. Bitcoind indexes
+ * every new block for everything in its wallet, so the only blocks that can be missing anything
+ * are the ones before an import. The scheduler keeps the height up to which the wallet is known to
+ * be complete, and when addresses have been imported, or the chain has gone backwards past that
+ * height, it rescans from there to the tip with rescanblockchain. A few blocks under the height
+ * are always included in case of a reorg. The height is kept in the wallet's state store so a
+ * restart doesn't need to start from the genesis block, and when there's no height yet and nothing
+ * has been imported it starts from the tip. If a rescan fails the height stays where it was, and
+ * the next check tries again. Rescans can take hours, so they can be given their own connection
+ * with a longer read timeout than the rest of the calls.
+ */
+public class RescanScheduler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RescanScheduler.class);
+  private static final String INDEXED_HEIGHT_KEY = "indexedHeight";
+  private static final long REORG_MARGIN = 6;
+
+  private final BitcoindRpc bitcoindRpc;
+  private final BitcoindRpc rescanRpc;
+  private final StateStore state;
+  private final long maxInterval;
+  private final AtomicBoolean importsPending = new AtomicBoolean(false);
+  private volatile long indexedHeight = -1;
+  private long lastRescan = System.currentTimeMillis();
+
+  /**
+   * Set up a scheduler.
+   *
+   * @param bitcoindRpc  Node to check and rescan.
+   * @param state        Store to keep the indexed height in, may be null.
+   * @param rescanTimer  Hours between precautionary rescans of the last few blocks.
+   */
+  public RescanScheduler(BitcoindRpc bitcoindRpc, StateStore state, int rescanTimer) {
+    this(bitcoindRpc, bitcoindRpc, state, rescanTimer);
+  }
+
+  /**
+   * Set up a scheduler that runs the rescans themselves over a separate connection.
+   *
+   * @param bitcoindRpc  Node to check.
+   * @param rescanRpc    Node to rescan, with a read timeout long enough for a rescan to finish.
+   * @param state        Store to keep the indexed height in, may be null.
+   * @param rescanTimer  Hours between precautionary rescans of the last few blocks.
+   */
+  public RescanScheduler(BitcoindRpc bitcoindRpc, BitcoindRpc rescanRpc, StateStore state,
+      int rescanTimer) {
+    this.bitcoindRpc = bitcoindRpc;
+    this.rescanRpc = rescanRpc;
+    this.state = state;
+    this.maxInterval = rescanTimer * 60L * 60L * 1000L;
+
+    String storedHeight = state == null ? null : state.get(INDEXED_HEIGHT_KEY);
+    if (storedHeight != null) {
+      indexedHeight = Long.parseLong(storedHeight);
+      LOGGER.info("BTC wallet indexed up to block " + indexedHeight);
+    }
+  }
+
+  /**
+   * Note that an address was imported without a rescan, so the next check rescans.
+   */
+  public void addressImported() {
+    importsPending.set(true);
+  }
+
+  /**
+   * Height up to which the wallet is known to be complete, -1 if it isn't known.
+   */
+  public long getIndexedHeight() {
+    return indexedHeight;
+  }
+
+  /**
+   * Compare the chain against the indexed height and rescan if there's a gap.
+   *
+   * @return True if a rescan was run and completed.
+   */
+  public synchronized boolean check() {
+    long tip = bitcoindRpc.getBlockCount();
+    long start;
+    if (indexedHeight < 0 && !importsPending.get()) {
+      // Nothing has been imported that bitcoind hasn't already seen, so the tip is complete.
+      LOGGER.info("BTC wallet index height unknown, starting from block " + tip);
+      setIndexedHeight(tip);
+      return false;
+    } else if (indexedHeight < 0) {
+      LOGGER.info("BTC wallet index height unknown, rescanning the whole chain");
+      start = 0;
+    } else if (tip < indexedHeight) {
+      LOGGER.info("BTC chain went back from " + indexedHeight + " to " + tip + ", rescanning");
+      start = tip - REORG_MARGIN;
+    } else if (importsPending.get()) {
+      LOGGER.info("BTC addresses imported since block " + indexedHeight + ", rescanning");
+      start = indexedHeight - REORG_MARGIN;
+    } else if (System.currentTimeMillis() - lastRescan > maxInterval) {
+      start = tip - REORG_MARGIN;
+    } else {
+      // Nothing imported, so bitcoind has kept up with the new blocks on its own.
+      setIndexedHeight(tip);
+      return false;
+    }
+
+    // Imports while the rescan runs may land in blocks it has already passed.
+    boolean imported = importsPending.getAndSet(false);
+    if (!rescan(Math.max(0, start), tip)) {
+      if (imported) {
+        importsPending.set(true);
+      }
+      return false;
+    }
+    setIndexedHeight(tip);
+    lastRescan = System.currentTimeMillis();
+    return true;
+  }
+
+  private boolean rescan(long start, long stop) {
+    LOGGER.debug("Rescanning BTC blocks " + start + " to " + stop);
+    Timer.Context timer = Metrics.getRegistry()
+        .timer(MetricRegistry.name(RescanScheduler.class, "rescan")).time();
+    try {
+      rescanRpc.rescanblockchain(start, stop);
+      return true;
+    } catch (RpcException e) {
+      if (e.getErrorCode() != RpcException.METHOD_NOT_FOUND) {
+        LOGGER.warn("BTC rescan of blocks " + start + " to " + stop + " failed, will retry", e);
+        return false;
+      }
+      // Nodes older than 0.16 don't have rescanblockchain, an import with rescan is all there is.
+      LOGGER.warn("rescanblockchain isn't available, falling back to a full rescan");
+      try {
+        byte[] key = Secp256k1.generatePrivateKey();
+        String privateKey = BitcoinTools.encodePrivateKey(ByteUtilities.toHexString(key));
+        String address = BitcoinTools.getPublicAddress(privateKey, true);
+        rescanRpc.importaddress(address, "RESCAN", true);
+      } catch (RuntimeException fallbackError) {
+        LOGGER.debug("Rescan import timed out (expected)", fallbackError);
+      }
+      return true;
+    } finally {
+      timer.stop();
+    }
+  }
+
+  private void setIndexedHeight(long height) {
+    indexedHeight = height;
+    if (state != null) {
+      state.put(INDEXED_HEIGHT_KEY, Long.toString(height));
+    }
+  }
+}
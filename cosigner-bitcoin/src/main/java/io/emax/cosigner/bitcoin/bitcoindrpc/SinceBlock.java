@@ -0,0 +1,49 @@
+package io.emax.cosigner.bitcoin.bitcoindrpc;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+
+/**
+ * Wallet transactions since a given block.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SinceBlock {
+  /**
+   * Payments in blocks after the requested one, along with any unconfirmed ones.
+   */
+  @JsonProperty("transactions")
+  private Payment[] transactions = new Payment[0];
+
+  /**
+   * The hash of the block to pass to the next listsinceblock call.
+   */
+  @JsonProperty("lastblock")
+  private String lastblock;
+
+  public Payment[] getTransactions() {
+    Payment[] retArray = new Payment[transactions.length];
+    System.arraycopy(transactions, 0, retArray, 0, transactions.length);
+    return retArray;
+  }
+
+  public void setTransactions(Payment[] transactions) {
+    this.transactions = new Payment[transactions.length];
+    System.arraycopy(transactions, 0, this.transactions, 0, transactions.length);
+  }
+
+  public String getLastblock() {
+    return lastblock;
+  }
+
+  public void setLastblock(String lastblock) {
+    this.lastblock = lastblock;
+  }
+
+  @Override
+  public String toString() {
+    return "SinceBlock [transactions=" + Arrays.toString(transactions) + ", lastblock=" + lastblock
+        + "]";
+  }
+}
@@ -82,6 +82,20 @@ public interface WalletRpc {
   @JsonRpcMethod("importaddress")
   void importaddress(String addressOrScript, String account, boolean rescan);
 
+  /**
+   * RescanBlockchain Requires wallet support. Added in Bitcoin Core 0.16.0.
+   *
+   * <p>The rescanblockchain RPC rescans the local block database for wallet related transactions,
+   * starting and stopping at the given heights. Unlike importing with rescan set, only the given
+   * range of blocks is read.
+   *
+   * @param startHeight Block height where the rescan should start
+   * @param stopHeight  The last block height that should be scanned
+   * @return The start_height and stop_height that were actually scanned
+   */
+  @JsonRpcMethod("rescanblockchain")
+  Map<String, Object> rescanblockchain(long startHeight, long stopHeight);
+
   /**
    * ListAccounts Requires wallet support.
    *
@@ -142,6 +156,24 @@ public interface WalletRpc {
   Payment[] listtransactions(String account, int numberToReturn, int numberToSkip,
       boolean includeWatchOnly);
 
+  /**
+   * The listsinceblock RPC gets all transactions affecting the wallet which have occurred since a
+   * particular block, plus the header hash of a block at a particular depth.
+   *
+   * @param blockHash             The hash of a block header encoded as hex in RPC byte order. All
+   *                              transactions affecting the wallet which are not in that block or
+   *                              any earlier block will be returned. An empty string lists all
+   *                              transactions.
+   * @param targetConfirmations   Sets the lastblock field of the results to the header hash of a
+   *                              block with this many confirmations.
+   * @param includeWatchOnly      If set to true, include watch-only addresses in details and
+   *                              calculations as if they were regular addresses belonging to the
+   *                              wallet.
+   * @return The matching transactions and the block hash to use in the next call
+   */
+  @JsonRpcMethod("listsinceblock")
+  SinceBlock listsinceblock(String blockHash, int targetConfirmations, boolean includeWatchOnly);
+
   @JsonRpcMethod("gettransaction")
   Map<String, Object> gettransaction(String txid, boolean includeWatchOnly);
 }
@@ -6,6 +6,7 @@ import io.emax.cosigner.bitcoin.bitcoindrpc.NetworkBytes;
 import io.emax.cosigner.common.Base58;
 import io.emax.cosigner.common.ByteUtilities;
 import io.emax.cosigner.common.DeterministicRng;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.common.crypto.Secp256k1;
 
 import org.bouncycastle.crypto.digests.RIPEMD160Digest;
@@ -42,7 +43,7 @@ public class BitcoinTools {
       return NOKEY;
     }
 
-    try {
+    try (Tracer.Span span = Tracer.span("key.derive")) {
       byte[] userKey = new BigInteger(userKeyPart, 16).toByteArray();
       byte[] serverKey = new BigInteger(serverKeyPart, 16).toByteArray();
       SecureRandom secureRandom = DeterministicRng.getSecureRandom(userKey, serverKey);
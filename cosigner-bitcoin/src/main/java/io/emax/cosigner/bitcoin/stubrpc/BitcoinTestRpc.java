@@ -11,6 +11,7 @@ import io.emax.cosigner.bitcoin.bitcoindrpc.OutpointDetails;
 import io.emax.cosigner.bitcoin.bitcoindrpc.Output;
 import io.emax.cosigner.bitcoin.bitcoindrpc.Payment;
 import io.emax.cosigner.bitcoin.bitcoindrpc.SigHash;
+import io.emax.cosigner.bitcoin.bitcoindrpc.SinceBlock;
 import io.emax.cosigner.bitcoin.bitcoindrpc.SignedTransaction;
 import io.emax.cosigner.bitcoin.common.BitcoinTools;
 import io.emax.cosigner.common.ByteUtilities;
@@ -22,6 +23,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class BitcoinTestRpc implements BitcoindRpc {
+  private int unspentOutputs = 1;
+
+  /**
+   * Number of unspent outputs listunspent answers with, for load testing with larger wallets.
+   */
+  public void setUnspentOutputs(int unspentOutputs) {
+    this.unspentOutputs = unspentOutputs;
+  }
 
   @Override
   public BlockChainInfo getblockchaininfo() {
@@ -100,6 +109,14 @@ public class BitcoinTestRpc implements BitcoindRpc {
 
   }
 
+  @Override
+  public Map<String, Object> rescanblockchain(long startHeight, long stopHeight) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("start_height", startHeight);
+    result.put("stop_height", stopHeight);
+    return result;
+  }
+
   @Override
   public Map<String, BigDecimal> listaccounts(int confirmations, boolean includeWatchOnly) {
     return null;
@@ -108,22 +125,27 @@ public class BitcoinTestRpc implements BitcoindRpc {
   @Override
   public Output[] listunspent(int minimumConfirmations, int maximumConfirmations,
       String[] addresses) {
-
-    Output output = new Output();
-    output.setAccount("");
-    output.setAddress(new BitcoinWallet(new BitcoinConfiguration()).createAddress("deadbeef"));
-    output.setAmount(BigDecimal.valueOf(30));
-    output.setConfirmations(minimumConfirmations);
-    output.setOutputIndex(1);
-    output.setTransactionId("00000000000000000000000000000000000000000000000000000000deadbeef");
-    String decodedAddress = BitcoinTools.decodeAddress(output.getAddress());
+    String address = new BitcoinWallet(new BitcoinConfiguration()).createAddress("deadbeef");
+    String decodedAddress = BitcoinTools.decodeAddress(address);
     byte[] addressBytes = ByteUtilities.toByteArray(decodedAddress);
     String scriptData = "76a914";
     scriptData += ByteUtilities.toHexString(addressBytes);
     scriptData += "88ac";
-    output.setScriptPubKey(scriptData);
 
-    return new Output[]{output};
+    Output[] outputs = new Output[unspentOutputs];
+    for (int i = 0; i < unspentOutputs; i++) {
+      Output output = new Output();
+      output.setAccount("");
+      output.setAddress(address);
+      output.setAmount(BigDecimal.valueOf(30));
+      output.setConfirmations(minimumConfirmations);
+      output.setOutputIndex(1);
+      output.setTransactionId(String.format("%056x", i) + "deadbeef");
+      output.setScriptPubKey(scriptData);
+      outputs[i] = output;
+    }
+
+    return outputs;
   }
 
   @Override
@@ -132,6 +154,14 @@ public class BitcoinTestRpc implements BitcoindRpc {
     return new Payment[]{};
   }
 
+  @Override
+  public SinceBlock listsinceblock(String blockHash, int targetConfirmations,
+      boolean includeWatchOnly) {
+    SinceBlock sinceBlock = new SinceBlock();
+    sinceBlock.setLastblock(blockHash);
+    return sinceBlock;
+  }
+
   @Override
   public Map<String, Object> gettransaction(String txid, boolean includeWatchOnly) {
     return null;
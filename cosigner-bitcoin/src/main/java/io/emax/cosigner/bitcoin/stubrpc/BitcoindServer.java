@@ -0,0 +1,663 @@
+package io.emax.cosigner.bitcoin.stubrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.emax.cosigner.bitcoin.bitcoindrpc.NetworkBytes;
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawInput;
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawOutput;
+import io.emax.cosigner.bitcoin.bitcoindrpc.RawTransaction;
+import io.emax.cosigner.bitcoin.common.BitcoinTools;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.rpc.JsonRpcServer;
+import io.emax.cosigner.common.rpc.RpcException;
+import io.emax.cosigner.common.rpc.SimulatedNode;
+
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for a regtest bitcoind over HTTP JSON-RPC.
+ *
+ * <p>Keeps a synthetic chain in memory: blocks, a UTXO set and a watch-only wallet, enough to
+ * answer every call in {@link io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc}. Transactions
+ * sent to it are checked against the UTXO set but signatures aren't verified. Blocks are mined
+ * on a timer, and each block can carry payments to random wallet addresses so there's always
+ * something to spend and something for the monitors to see.
+ */
+public class BitcoindServer {
+  private static final int SATOSHI_DECIMALS = 8;
+
+  private final JsonRpcServer server;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Random random;
+
+  private final List<Block> blocks = new ArrayList<>();
+  private final List<Transaction> mempool = new LinkedList<>();
+  private final Map<String, Transaction> transactions = new HashMap<>();
+  // Wallet transactions in the order they were first seen.
+  private final List<Transaction> walletTransactions = new ArrayList<>();
+  private final Map<String, Utxo> unspent = new LinkedHashMap<>();
+  // Watched address -> account.
+  private final Map<String, String> wallet = new LinkedHashMap<>();
+  // Start and stop heights of each rescanblockchain call.
+  private final List<long[]> rescans = new ArrayList<>();
+  private int paymentsPerBlock = 0;
+
+  private static class Block {
+    private final String hash;
+    private final int height;
+    private final long time;
+    private final List<Transaction> transactions = new LinkedList<>();
+
+    Block(String hash, int height, long time) {
+      this.hash = hash;
+      this.height = height;
+      this.time = time;
+    }
+  }
+
+  private static class Transaction {
+    private final String txid;
+    private final String hex;
+    private final RawTransaction raw;
+    private final long time;
+    // Address of each output spent by the inputs, null where it isn't known.
+    private final List<String> inputAddresses = new LinkedList<>();
+    private Block block;
+
+    Transaction(String txid, String hex, RawTransaction raw, long time) {
+      this.txid = txid;
+      this.hex = hex;
+      this.raw = raw;
+      this.time = time;
+    }
+  }
+
+  private static class Utxo {
+    private final Transaction transaction;
+    private final int vout;
+    private final String address;
+    private final String script;
+    private final BigDecimal amount;
+
+    Utxo(Transaction transaction, int vout, String address, String script, BigDecimal amount) {
+      this.transaction = transaction;
+      this.vout = vout;
+      this.address = address;
+      this.script = script;
+      this.amount = amount;
+    }
+  }
+
+  /**
+   * Set up a node with just a genesis block.
+   *
+   * @param port Port to listen on, 0 to pick a free one.
+   * @param seed Seed for the synthetic payments.
+   */
+  public BitcoindServer(int port, long seed) throws IOException {
+    this.random = new Random(seed);
+    this.server = new JsonRpcServer("bitcoind", port);
+    blocks.add(new Block(randomHash(), 0, now()));
+
+    server.register("getblockchaininfo", params -> getBlockchainInfo());
+    server.register("getblockcount", params -> getBlockCount());
+    server.register("getblockhash", params -> getBlockHash(params.get(0).asInt()));
+    server.register("getblock", params -> getBlock(params.get(0).asText()));
+    server.register("createrawtransaction",
+        params -> createRawTransaction(params.get(0), params.get(1)));
+    server.register("getrawtransaction", params -> getRawTransaction(params.get(0).asText()));
+    server.register("sendrawtransaction", params -> sendRawTransaction(params.get(0).asText()));
+    server.register("signrawtransaction", params -> signRawTransaction(params.get(0).asText()));
+    server.register("createmultisig",
+        params -> createMultiSig(params.get(0).asInt(), params.get(1)));
+    server.register("addmultisigaddress", params -> addMultiSigAddress(params.get(0).asInt(),
+        params.get(1), params.path(2).asText("")));
+    server.register("getaddressesbyaccount",
+        params -> getAddressesByAccount(params.get(0).asText()));
+    server.register("getnewaddress", params -> getNewAddress(params.path(0).asText("")));
+    server.register("importaddress", params -> {
+      importAddress(params.get(0).asText(), params.path(1).asText(""));
+      return null;
+    });
+    server.register("rescanblockchain", params -> rescanBlockchain(params.path(0).asLong(0),
+        params.path(1).asLong(getBlockCount())));
+    server.register("listaccounts", params -> listAccounts(params.path(0).asInt(1)));
+    server.register("listunspent", params -> listUnspent(params.path(0).asInt(1),
+        params.path(1).asInt(9999999), params.path(2)));
+    server.register("listtransactions", params -> listTransactions(params.path(0).asText("*"),
+        params.path(1).asInt(10), params.path(2).asInt(0)));
+    server.register("listsinceblock",
+        params -> listSinceBlock(params.path(0).asText(""), params.path(1).asInt(1)));
+    server.register("gettransaction", params -> getTransaction(params.get(0).asText()));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop();
+  }
+
+  public String getUrl() {
+    return server.getUrl();
+  }
+
+  /**
+   * Latency and failures to add to every request, null for none.
+   */
+  public void setProfile(SimulatedNode.Profile profile) {
+    server.setProfile(profile);
+  }
+
+  /**
+   * Number of synthetic payments to wallet addresses that each new block carries.
+   */
+  public synchronized void setPaymentsPerBlock(int paymentsPerBlock) {
+    this.paymentsPerBlock = paymentsPerBlock;
+  }
+
+  /**
+   * Mine a block on a timer.
+   */
+  public void produceBlocks(long interval, TimeUnit unit) {
+    server.schedule(interval, unit, this::mineBlock);
+  }
+
+  /**
+   * Pay an address from outside the wallet. The payment sits in the mempool until the next block.
+   *
+   * @return Transaction ID of the payment.
+   */
+  public synchronized String fund(String address, BigDecimal amount) {
+    RawTransaction tx = new RawTransaction();
+    tx.setVersion(1);
+    RawInput input = new RawInput();
+    input.setTxHash(randomHash());
+    input.setTxIndex(0);
+    tx.getInputs().add(input);
+    tx.getOutputs().add(output(address, amount));
+    return accept(tx.encode(), tx).txid;
+  }
+
+  /**
+   * Mine the mempool into a new block, along with any synthetic payments.
+   */
+  public synchronized void mineBlock() {
+    List<String> addresses = new ArrayList<>(wallet.keySet());
+    for (int i = 0; i < paymentsPerBlock && !addresses.isEmpty(); i++) {
+      String address = addresses.get(random.nextInt(addresses.size()));
+      fund(address, BigDecimal.valueOf(1 + random.nextInt(1000), 2));
+    }
+
+    Block block = new Block(randomHash(), blocks.size(), now());
+    mempool.forEach(tx -> {
+      tx.block = block;
+      block.transactions.add(tx);
+    });
+    mempool.clear();
+    blocks.add(block);
+  }
+
+  public synchronized int getBlockCount() {
+    return getTip().height;
+  }
+
+  private Block getTip() {
+    return blocks.get(blocks.size() - 1);
+  }
+
+  private synchronized ObjectNode getBlockchainInfo() {
+    ObjectNode info = mapper.createObjectNode();
+    info.put("chain", "regtest");
+    info.put("blocks", getTip().height);
+    info.put("headers", getTip().height);
+    info.put("bestblockhash", getTip().hash);
+    info.put("mediantime", getTip().time);
+    return info;
+  }
+
+  private synchronized String getBlockHash(int height) {
+    if (height < 0 || height >= blocks.size()) {
+      throw new RpcException("Block height out of range");
+    }
+    return blocks.get(height).hash;
+  }
+
+  private synchronized ObjectNode getBlock(String hash) {
+    Block block = findBlock(hash);
+    if (block == null) {
+      throw new RpcException("Block not found");
+    }
+    ObjectNode result = mapper.createObjectNode();
+    result.put("hash", block.hash);
+    result.put("height", block.height);
+    result.put("confirmations", getTip().height - block.height + 1);
+    result.put("time", block.time);
+    if (block.height > 0) {
+      result.put("previousblockhash", blocks.get(block.height - 1).hash);
+    }
+    ArrayNode txids = result.putArray("tx");
+    block.transactions.forEach(tx -> txids.add(tx.txid));
+    return result;
+  }
+
+  private Block findBlock(String hash) {
+    for (Block block : blocks) {
+      if (block.hash.equalsIgnoreCase(hash)) {
+        return block;
+      }
+    }
+    return null;
+  }
+
+  private String createRawTransaction(JsonNode outpoints, JsonNode amounts) {
+    RawTransaction tx = new RawTransaction();
+    tx.setVersion(1);
+    outpoints.forEach(outpoint -> {
+      RawInput input = new RawInput();
+      input.setTxHash(outpoint.get("txid").asText());
+      input.setTxIndex(outpoint.get("vout").asInt());
+      tx.getInputs().add(input);
+    });
+    amounts.fields().forEachRemaining(
+        amount -> tx.getOutputs().add(output(amount.getKey(), amount.getValue().decimalValue())));
+    return tx.encode();
+  }
+
+  private synchronized String getRawTransaction(String txid) {
+    Transaction tx = transactions.get(txid.toLowerCase());
+    if (tx == null) {
+      throw new RpcException("No information available about transaction");
+    }
+    return tx.hex;
+  }
+
+  private synchronized String sendRawTransaction(String hex) {
+    RawTransaction tx = RawTransaction.parse(hex);
+    if (tx == null) {
+      throw new RpcException("TX decode failed");
+    }
+    for (RawInput input : tx.getInputs()) {
+      if (!unspent.containsKey(outpoint(input.getTxHash(), input.getTxIndex()))) {
+        throw new RpcException("Missing inputs");
+      }
+    }
+    return accept(hex, tx).txid;
+  }
+
+  /**
+   * Put a transaction in the mempool, spending its inputs and adding its outputs to the UTXO set.
+   */
+  private Transaction accept(String hex, RawTransaction raw) {
+    String txid = hashTransaction(hex);
+    if (transactions.containsKey(txid)) {
+      throw new RpcException("Transaction already in block chain");
+    }
+    Transaction tx = new Transaction(txid, hex, raw, now());
+    raw.getInputs().forEach(input -> {
+      Utxo spent = unspent.remove(outpoint(input.getTxHash(), input.getTxIndex()));
+      tx.inputAddresses.add(spent == null ? null : spent.address);
+    });
+    for (int i = 0; i < raw.getOutputs().size(); i++) {
+      RawOutput output = raw.getOutputs().get(i);
+      unspent.put(outpoint(txid, i), new Utxo(tx, i, decodeScript(output.getScript()),
+          output.getScript(), BigDecimal.valueOf(output.getAmount(), SATOSHI_DECIMALS)));
+    }
+
+    transactions.put(txid, tx);
+    mempool.add(tx);
+    if (!getPayments(tx).isEmpty()) {
+      walletTransactions.add(tx);
+    }
+    return tx;
+  }
+
+  private ObjectNode signRawTransaction(String hex) {
+    // Signatures aren't checked, so there's nothing to add.
+    ObjectNode result = mapper.createObjectNode();
+    result.put("hex", hex);
+    result.put("complete", true);
+    return result;
+  }
+
+  private ObjectNode createMultiSig(int required, JsonNode keys) {
+    StringBuilder script = new StringBuilder(opNumber(required));
+    keys.forEach(key -> {
+      byte[] keyBytes = ByteUtilities.toByteArray(key.asText());
+      if (keyBytes.length != 33 && keyBytes.length != 65) {
+        throw new RpcException("Invalid public key: " + key.asText());
+      }
+      script.append(ByteUtilities.toHexString(new byte[]{(byte) keyBytes.length}))
+          .append(ByteUtilities.toHexString(keyBytes));
+    });
+    script.append(opNumber(keys.size())).append("ae");
+
+    String redeemScript = script.toString().toLowerCase();
+    ObjectNode result = mapper.createObjectNode();
+    result.put("address", BitcoinTools
+        .encodeAddress(hash160(ByteUtilities.toByteArray(redeemScript)),
+            NetworkBytes.P2SH_TEST.toString()));
+    result.put("redeemScript", redeemScript);
+    return result;
+  }
+
+  private String addMultiSigAddress(int required, JsonNode keys, String account) {
+    String address = createMultiSig(required, keys).get("address").asText();
+    importAddress(address, account);
+    return address;
+  }
+
+  private synchronized List<String> getAddressesByAccount(String account) {
+    List<String> addresses = new LinkedList<>();
+    wallet.forEach((address, addressAccount) -> {
+      if (addressAccount.equals(account)) {
+        addresses.add(address);
+      }
+    });
+    return addresses;
+  }
+
+  private String getNewAddress(String account) {
+    byte[] keyHash = new byte[20];
+    synchronized (this) {
+      random.nextBytes(keyHash);
+    }
+    String address = BitcoinTools
+        .encodeAddress(ByteUtilities.toHexString(keyHash), NetworkBytes.P2PKH_TEST.toString());
+    importAddress(address, account);
+    return address;
+  }
+
+  private synchronized void importAddress(String address, String account) {
+    if (BitcoinTools.decodeAddress(address).isEmpty()) {
+      throw new RpcException("Invalid Bitcoin address or script");
+    }
+    wallet.put(address, account);
+  }
+
+  private synchronized Map<String, Object> rescanBlockchain(long startHeight, long stopHeight) {
+    if (startHeight < 0 || startHeight > getBlockCount()) {
+      throw new RpcException("Invalid start_height");
+    }
+    if (stopHeight < startHeight || stopHeight > getBlockCount()) {
+      throw new RpcException("Invalid stop_height");
+    }
+    // Imports already see the whole chain here, so there's nothing to do but note the range.
+    rescans.add(new long[]{startHeight, stopHeight});
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("start_height", startHeight);
+    result.put("stop_height", stopHeight);
+    return result;
+  }
+
+  /**
+   * Start and stop heights of the rescans requested so far.
+   */
+  public synchronized List<long[]> getRescans() {
+    return new ArrayList<>(rescans);
+  }
+
+  private synchronized Map<String, BigDecimal> listAccounts(int minConfirmations) {
+    Map<String, BigDecimal> accounts = new HashMap<>();
+    wallet.values().forEach(account -> accounts.put(account, BigDecimal.ZERO));
+    unspent.values().forEach(utxo -> {
+      String account = wallet.get(utxo.address);
+      if (account != null && getConfirmations(utxo.transaction) >= minConfirmations) {
+        accounts.put(account, accounts.get(account).add(utxo.amount));
+      }
+    });
+    return accounts;
+  }
+
+  private synchronized ArrayNode listUnspent(int minConfirmations, int maxConfirmations,
+      JsonNode addresses) {
+    List<String> filter = new LinkedList<>();
+    addresses.forEach(address -> filter.add(address.asText()));
+
+    ArrayNode outputs = mapper.createArrayNode();
+    unspent.values().forEach(utxo -> {
+      int confirmations = getConfirmations(utxo.transaction);
+      if (!wallet.containsKey(utxo.address) || confirmations < minConfirmations
+          || confirmations > maxConfirmations
+          || !filter.isEmpty() && !filter.contains(utxo.address)) {
+        return;
+      }
+      ObjectNode output = outputs.addObject();
+      output.put("txid", utxo.transaction.txid);
+      output.put("vout", utxo.vout);
+      output.put("address", utxo.address);
+      output.put("account", wallet.get(utxo.address));
+      output.put("scriptPubKey", utxo.script);
+      output.put("amount", utxo.amount);
+      output.put("confirmations", confirmations);
+      output.put("spendable", false);
+      output.put("solvable", true);
+    });
+    return outputs;
+  }
+
+  private synchronized ArrayNode listTransactions(String account, int count, int skip) {
+    List<ObjectNode> payments = new ArrayList<>();
+    walletTransactions.forEach(tx -> getPayments(tx).forEach(payment -> {
+      if ("*".equals(account) || account.equals(payment.get("account").asText())) {
+        payments.add(payment);
+      }
+    }));
+
+    // Newest last, skipping back from the most recent.
+    ArrayNode result = mapper.createArrayNode();
+    int end = payments.size() - skip;
+    for (int i = Math.max(0, end - count); i < end; i++) {
+      result.add(payments.get(i));
+    }
+    return result;
+  }
+
+  private synchronized ObjectNode listSinceBlock(String hash, int targetConfirmations) {
+    Block since = hash.isEmpty() ? null : findBlock(hash);
+    ObjectNode result = mapper.createObjectNode();
+    ArrayNode payments = result.putArray("transactions");
+    walletTransactions.forEach(tx -> {
+      if (since == null || tx.block == null || tx.block.height > since.height) {
+        getPayments(tx).forEach(payments::add);
+      }
+    });
+    int lastBlock = Math.max(0, getTip().height - targetConfirmations + 1);
+    result.put("lastblock", blocks.get(lastBlock).hash);
+    return result;
+  }
+
+  private synchronized ObjectNode getTransaction(String txid) {
+    Transaction tx = transactions.get(txid.toLowerCase());
+    List<ObjectNode> payments = tx == null ? new LinkedList<>() : getPayments(tx);
+    if (payments.isEmpty()) {
+      throw new RpcException("Invalid or non-wallet transaction id");
+    }
+
+    ObjectNode result = mapper.createObjectNode();
+    BigDecimal amount = BigDecimal.ZERO;
+    ArrayNode details = mapper.createArrayNode();
+    for (ObjectNode payment : payments) {
+      amount = amount.add(payment.get("amount").decimalValue());
+      ObjectNode detail = details.addObject();
+      detail.set("account", payment.get("account"));
+      detail.set("address", payment.get("address"));
+      detail.set("category", payment.get("category"));
+      detail.set("amount", payment.get("amount"));
+      detail.set("vout", payment.get("vout"));
+    }
+    result.put("txid", tx.txid);
+    result.put("amount", amount);
+    result.put("confirmations", getConfirmations(tx));
+    if (tx.block != null) {
+      result.put("blockhash", tx.block.hash);
+      result.put("blocktime", tx.block.time);
+    }
+    result.put("time", tx.time);
+    result.put("timereceived", tx.time);
+    result.set("details", details);
+    result.put("hex", tx.hex);
+    return result;
+  }
+
+  /**
+   * Wallet view of a transaction, a receive entry for each output paying a wallet address and a
+   * send entry for each output paid for by one.
+   */
+  private List<ObjectNode> getPayments(Transaction tx) {
+    List<ObjectNode> payments = new LinkedList<>();
+    String sender = null;
+    for (String inputAddress : tx.inputAddresses) {
+      if (inputAddress != null && wallet.containsKey(inputAddress)) {
+        sender = inputAddress;
+        break;
+      }
+    }
+
+    for (int i = 0; i < tx.raw.getOutputs().size(); i++) {
+      RawOutput output = tx.raw.getOutputs().get(i);
+      String address = decodeScript(output.getScript());
+      BigDecimal amount = BigDecimal.valueOf(output.getAmount(), SATOSHI_DECIMALS);
+      if (sender != null && !tx.inputAddresses.contains(address)) {
+        payments.add(payment(tx, wallet.get(sender), address, "send", amount.negate(), i));
+      }
+      if (address != null && wallet.containsKey(address)) {
+        payments.add(payment(tx, wallet.get(address), address, "receive", amount, i));
+      }
+    }
+    return payments;
+  }
+
+  private ObjectNode payment(Transaction tx, String account, String address, String category,
+      BigDecimal amount, int vout) {
+    ObjectNode payment = mapper.createObjectNode();
+    payment.put("account", account);
+    payment.put("address", address);
+    payment.put("category", category);
+    payment.put("amount", amount);
+    payment.put("vout", vout);
+    payment.put("confirmations", getConfirmations(tx));
+    if (tx.block != null) {
+      payment.put("blockhash", tx.block.hash);
+      payment.put("blockindex", tx.block.transactions.indexOf(tx));
+      payment.put("blocktime", tx.block.time);
+    }
+    payment.put("txid", tx.txid);
+    payment.put("time", tx.time);
+    payment.put("timereceived", tx.time);
+    payment.put("involvesWatchonly", true);
+    return payment;
+  }
+
+  private int getConfirmations(Transaction tx) {
+    return tx.block == null ? 0 : getTip().height - tx.block.height + 1;
+  }
+
+  private static RawOutput output(String address, BigDecimal amount) {
+    String keyHash = BitcoinTools.decodeAddress(address);
+    if (keyHash.isEmpty()) {
+      throw new RpcException("Invalid Bitcoin address: " + address);
+    }
+    RawOutput output = new RawOutput();
+    output.setAmount(amount.movePointRight(SATOSHI_DECIMALS).longValueExact());
+    output.setScript(BitcoinTools.isMultiSigAddress(address) ? "a914" + keyHash + "87" :
+        "76a914" + keyHash + "88ac");
+    return output;
+  }
+
+  /**
+   * Address paid by a standard script. Decoded here rather than with RawTransaction so the server
+   * doesn't end up calling whatever node the RPC resource points at.
+   */
+  private static String decodeScript(String script) {
+    String lowerScript = script.toLowerCase();
+    if (lowerScript.matches("^76a914[0-9a-f]{40}88ac$")) {
+      return BitcoinTools
+          .encodeAddress(lowerScript.substring(6, 46), NetworkBytes.P2PKH_TEST.toString());
+    }
+    if (lowerScript.matches("^a914[0-9a-f]{40}87$")) {
+      return BitcoinTools
+          .encodeAddress(lowerScript.substring(4, 44), NetworkBytes.P2SH_TEST.toString());
+    }
+    return null;
+  }
+
+  private static String opNumber(int number) {
+    if (number < 1 || number > 16) {
+      throw new RpcException("Invalid number of keys: " + number);
+    }
+    return ByteUtilities.toHexString(new byte[]{(byte) (0x50 + number)});
+  }
+
+  private static String outpoint(String txid, int vout) {
+    return txid.toLowerCase() + ":" + vout;
+  }
+
+  private static String hashTransaction(String hex) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      byte[] hash = sha256.digest(sha256.digest(ByteUtilities.toByteArray(hex)));
+      return ByteUtilities.toHexString(ByteUtilities.flipEndian(hash)).toLowerCase();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hash160(byte[] data) {
+    try {
+      byte[] sha = MessageDigest.getInstance("SHA-256").digest(data);
+      RIPEMD160Digest ripemd = new RIPEMD160Digest();
+      byte[] hash = new byte[20];
+      ripemd.update(sha, 0, sha.length);
+      ripemd.doFinal(hash, 0);
+      return ByteUtilities.toHexString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String randomHash() {
+    byte[] hash = new byte[32];
+    random.nextBytes(hash);
+    return ByteUtilities.toHexString(hash).toLowerCase();
+  }
+
+  private static long now() {
+    return System.currentTimeMillis() / 1000L;
+  }
+
+  /**
+   * Run a node from the command line.
+   *
+   * <p>Arguments are the port (default 18332), seconds between blocks (default 30) and the number
+   * of synthetic payments per block (default 10).
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 18332;
+    long interval = args.length > 1 ? Long.parseLong(args[1]) : 30;
+    int payments = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    BitcoindServer node = new BitcoindServer(port, System.currentTimeMillis());
+    node.setPaymentsPerBlock(payments);
+    node.produceBlocks(interval, TimeUnit.SECONDS);
+    node.start();
+    System.out.println("bitcoind stand-in listening on " + node.getUrl());
+  }
+}
@@ -0,0 +1,132 @@
+package io.emax.cosigner.bitcoin;
+
+import com.googlecode.jsonrpc4j.JsonRpcMethod;
+
+import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
+import io.emax.cosigner.bitcoin.bitcoindrpc.BlockChainName;
+import io.emax.cosigner.bitcoin.bitcoindrpc.MultiSig;
+import io.emax.cosigner.bitcoin.bitcoindrpc.Outpoint;
+import io.emax.cosigner.bitcoin.bitcoindrpc.Output;
+import io.emax.cosigner.bitcoin.bitcoindrpc.Payment;
+import io.emax.cosigner.bitcoin.bitcoindrpc.Payment.PaymentCategory;
+import io.emax.cosigner.bitcoin.bitcoindrpc.SigHash;
+import io.emax.cosigner.bitcoin.bitcoindrpc.SinceBlock;
+import io.emax.cosigner.bitcoin.common.BitcoinTools;
+import io.emax.cosigner.bitcoin.stubrpc.BitcoindServer;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.RpcException;
+import io.emax.cosigner.common.rpc.RpcProxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BitcoindServerTest {
+  private BitcoindServer node;
+  private BitcoindRpc rpc;
+
+  @Before
+  public void setUp() throws IOException {
+    node = new BitcoindServer(0, 1);
+    node.start();
+    HttpRpcTransport transport =
+        new HttpRpcTransport("bitcoind-test", node.getUrl(), "", "", 1000, 5000, 4);
+    rpc = RpcProxy.createProxy(BitcoindRpc.class, transport, method -> {
+      JsonRpcMethod rpcMethod = method.getAnnotation(JsonRpcMethod.class);
+      return rpcMethod == null ? method.getName() : rpcMethod.value();
+    });
+  }
+
+  @After
+  public void tearDown() {
+    node.stop();
+  }
+
+  @Test
+  public void testChain() {
+    System.out.println("");
+    System.out.println("Testing bitcoind stand-in.");
+    Assert.assertEquals(BlockChainName.regtest, rpc.getblockchaininfo().getChain());
+    Assert.assertEquals(0, rpc.getBlockCount());
+
+    String sender = rpc.getnewaddress("sender");
+    String recipient = rpc.getnewaddress("recipient");
+    Assert.assertArrayEquals(new String[]{sender}, rpc.getaddressesbyaccount("sender"));
+
+    String fundingTx = node.fund(sender, new BigDecimal("1.5"));
+    Assert.assertNotNull(rpc.getrawtransaction(fundingTx));
+    Assert.assertEquals(1, rpc.listunspent(0, 9999999, new String[]{}).length);
+    Assert.assertEquals(0, rpc.listunspent(1, 9999999, new String[]{}).length);
+
+    node.mineBlock();
+    Assert.assertEquals(1, rpc.getBlockCount());
+    Output[] unspent = rpc.listunspent(1, 9999999, new String[]{sender});
+    Assert.assertEquals(1, unspent.length);
+    Assert.assertEquals(0, new BigDecimal("1.5").compareTo(unspent[0].getAmount()));
+    Assert.assertEquals(0,
+        new BigDecimal("1.5").compareTo(rpc.listaccounts(1, true).get("sender")));
+
+    Map<String, BigDecimal> amounts = new HashMap<>();
+    amounts.put(recipient, new BigDecimal("1.0"));
+    amounts.put(sender, new BigDecimal("0.49"));
+    String tx = rpc.createrawtransaction(new Outpoint[]{unspent[0]}, amounts);
+    tx = rpc.signrawtransaction(tx, null, null, SigHash.ALL).getTransaction();
+    String txid = rpc.sendrawtransaction(tx, false);
+    try {
+      rpc.sendrawtransaction(tx, false);
+      Assert.fail("Expected the double spend to be rejected.");
+    } catch (RpcException e) {
+      System.out.println("Got expected error: " + e.getMessage());
+    }
+
+    String firstBlock = rpc.getBlockHash(1);
+    node.mineBlock();
+    Assert.assertEquals(2, rpc.getBlockCount());
+    Assert.assertNotNull(rpc.getBlock(rpc.getBlockHash(2)).get("time"));
+
+    Map<String, Object> txData = rpc.gettransaction(txid, true);
+    Assert.assertEquals(1, (int) txData.get("confirmations"));
+    Assert.assertEquals(txid, txData.get("txid"));
+
+    // Funding, then the send to the recipient, its receipt and the change, all in the wallet.
+    Payment[] payments = rpc.listtransactions("*", 10, 0, true);
+    Assert.assertEquals(4, payments.length);
+    Assert.assertEquals(fundingTx, payments[0].getTxid());
+    Assert.assertEquals(2, rpc.listtransactions("*", 2, 2, true).length);
+    Assert.assertEquals(0, rpc.listtransactions("*", 10, 4, true).length);
+
+    SinceBlock sinceBlock = rpc.listsinceblock(firstBlock, 1, true);
+    Assert.assertEquals(rpc.getBlockHash(2), sinceBlock.getLastblock());
+    Assert.assertEquals(3, sinceBlock.getTransactions().length);
+    for (Payment payment : sinceBlock.getTransactions()) {
+      Assert.assertEquals(txid, payment.getTxid());
+      if (payment.getCategory() == PaymentCategory.send) {
+        Assert.assertEquals(recipient, payment.getAddress());
+      }
+    }
+  }
+
+  @Test
+  public void testMultiSig() {
+    System.out.println("");
+    System.out.println("Testing bitcoind stand-in multi-sig addresses.");
+    String[] keys = new String[]{
+        "02" + "11111111111111111111111111111111" + "11111111111111111111111111111111",
+        "03" + "22222222222222222222222222222222" + "22222222222222222222222222222222"};
+    MultiSig multiSig = rpc.createmultisig(2, keys);
+    Assert.assertTrue(BitcoinTools.isMultiSigAddress(multiSig.getAddress()));
+    Assert.assertTrue(multiSig.getRedeemScript().startsWith("5221"));
+    Assert.assertTrue(multiSig.getRedeemScript().endsWith("52ae"));
+
+    Assert.assertEquals(multiSig.getAddress(), rpc.addmultisigaddress(2, keys, "multi"));
+    node.setPaymentsPerBlock(3);
+    node.mineBlock();
+    Assert.assertEquals(3, rpc.listunspent(1, 9999999, new String[]{}).length);
+  }
+}
@@ -0,0 +1,144 @@
+package io.emax.cosigner.bitcoin;
+
+import com.googlecode.jsonrpc4j.JsonRpcMethod;
+
+import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
+import io.emax.cosigner.bitcoin.stubrpc.BitcoindServer;
+import io.emax.cosigner.common.StateStore;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.RpcException;
+import io.emax.cosigner.common.rpc.RpcProxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RescanSchedulerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BitcoindServer node;
+  private BitcoindRpc rpc;
+
+  @Before
+  public void setUp() throws IOException {
+    node = new BitcoindServer(0, 1);
+    node.start();
+    HttpRpcTransport transport =
+        new HttpRpcTransport("bitcoind-test", node.getUrl(), "", "", 1000, 5000, 4);
+    rpc = RpcProxy.createProxy(BitcoindRpc.class, transport, method -> {
+      JsonRpcMethod rpcMethod = method.getAnnotation(JsonRpcMethod.class);
+      return rpcMethod == null ? method.getName() : rpcMethod.value();
+    });
+  }
+
+  @After
+  public void tearDown() {
+    node.stop();
+  }
+
+  private void mine(int blocks) {
+    for (int i = 0; i < blocks; i++) {
+      node.mineBlock();
+    }
+  }
+
+  @Test
+  public void testRescans() throws IOException {
+    System.out.println("");
+    System.out.println("Testing targeted rescans.");
+    File stateFile = new File(folder.getRoot(), "btc.state");
+    StateStore state = new StateStore(stateFile);
+    RescanScheduler rescans = new RescanScheduler(rpc, state, 5);
+    mine(20);
+
+    // Nothing known yet and addresses imported, so the whole chain.
+    rescans.addressImported();
+    Assert.assertTrue(rescans.check());
+    Assert.assertArrayEquals(new long[]{0, 20}, node.getRescans().get(0));
+
+    // New blocks alone don't need a rescan, bitcoind indexes them for the wallet.
+    mine(10);
+    Assert.assertFalse(rescans.check());
+    Assert.assertEquals(30, rescans.getIndexedHeight());
+
+    // An import without a rescan only needs the blocks since the indexed height.
+    mine(5);
+    rescans.addressImported();
+    Assert.assertTrue(rescans.check());
+    Assert.assertArrayEquals(new long[]{24, 35}, node.getRescans().get(1));
+    Assert.assertFalse(rescans.check());
+    state.close();
+
+    // The height survives a restart.
+    state = new StateStore(stateFile);
+    rescans = new RescanScheduler(rpc, state, 5);
+    Assert.assertEquals(35, rescans.getIndexedHeight());
+    Assert.assertFalse(rescans.check());
+    Assert.assertEquals(2, node.getRescans().size());
+    state.close();
+
+    // Without a height or any imports there's nothing to rescan, it starts from the tip.
+    rescans = new RescanScheduler(rpc, null, 5);
+    mine(5);
+    Assert.assertFalse(rescans.check());
+    Assert.assertEquals(40, rescans.getIndexedHeight());
+    Assert.assertEquals(2, node.getRescans().size());
+  }
+
+  @Test
+  public void testFailedRescans() throws IOException {
+    System.out.println("");
+    System.out.println("Testing that failed rescans are retried.");
+    // Fail rescanblockchain with whatever error code is set, 0 for no failure.
+    AtomicInteger errorCode = new AtomicInteger();
+    BitcoindRpc failingRpc = (BitcoindRpc) Proxy.newProxyInstance(
+        BitcoindRpc.class.getClassLoader(), new Class<?>[]{BitcoindRpc.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("rescanblockchain") && errorCode.get() != 0) {
+            throw new RpcException("rescanblockchain failed", errorCode.get());
+          }
+          try {
+            return method.invoke(rpc, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    StateStore state = new StateStore(new File(folder.getRoot(), "btc.state"));
+    RescanScheduler rescans = new RescanScheduler(rpc, failingRpc, state, 5);
+    mine(20);
+    rescans.addressImported();
+    Assert.assertTrue(rescans.check());
+    Assert.assertEquals(20, rescans.getIndexedHeight());
+
+    // A node error leaves the height and the pending import for the next check.
+    mine(5);
+    rescans.addressImported();
+    errorCode.set(-1);
+    Assert.assertFalse(rescans.check());
+    Assert.assertEquals(20, rescans.getIndexedHeight());
+    Assert.assertFalse(rescans.check());
+    errorCode.set(0);
+    Assert.assertTrue(rescans.check());
+    Assert.assertArrayEquals(new long[]{14, 25}, node.getRescans().get(1));
+    Assert.assertEquals(25, rescans.getIndexedHeight());
+
+    // A node without rescanblockchain gets an import with a rescan instead.
+    mine(5);
+    rescans.addressImported();
+    errorCode.set(RpcException.METHOD_NOT_FOUND);
+    Assert.assertTrue(rescans.check());
+    Assert.assertEquals(30, rescans.getIndexedHeight());
+    Assert.assertEquals(2, node.getRescans().size());
+    state.close();
+  }
+}
@@ -1,8 +1,15 @@
 package io.emax.cosigner.bitcoin;
 
+import com.googlecode.jsonrpc4j.JsonRpcMethod;
+
 import io.emax.cosigner.api.currency.Wallet.Recipient;
+import io.emax.cosigner.api.currency.Wallet.TransactionPage;
+import io.emax.cosigner.bitcoin.bitcoindrpc.BitcoindRpc;
 import io.emax.cosigner.bitcoin.bitcoindrpc.RawTransaction;
 import io.emax.cosigner.bitcoin.stubrpc.BitcoinTestRpc;
+import io.emax.cosigner.bitcoin.stubrpc.BitcoindServer;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.RpcProxy;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,8 +17,15 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WalletTest {
   private static final Logger LOGGER = LoggerFactory.getLogger(WalletTest.class);
@@ -73,4 +87,50 @@ public class WalletTest {
       Assert.fail("Balance test failed");
     }
   }
+
+  @Test
+  public void testTransactionsSince() throws IOException {
+    System.out.println("");
+    System.out.println("Testing a single transaction scan for several addresses.");
+    BitcoindServer node = new BitcoindServer(0, 1);
+    node.start();
+    try {
+      HttpRpcTransport transport =
+          new HttpRpcTransport("bitcoind-test", node.getUrl(), "", "", 1000, 5000, 4);
+      BitcoindRpc rpc = RpcProxy.createProxy(BitcoindRpc.class, transport, method -> {
+        JsonRpcMethod rpcMethod = method.getAnnotation(JsonRpcMethod.class);
+        return rpcMethod == null ? method.getName() : rpcMethod.value();
+      });
+      Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+      BitcoindRpc countingRpc = (BitcoindRpc) Proxy.newProxyInstance(
+          BitcoindRpc.class.getClassLoader(), new Class<?>[]{BitcoindRpc.class},
+          (proxy, method, args) -> {
+            calls.computeIfAbsent(method.getName(), name -> new AtomicInteger()).incrementAndGet();
+            try {
+              return method.invoke(rpc, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          });
+      BitcoinResource.getResource().setBitcoindRpc(countingRpc);
+      BitcoinWallet scanWallet = new BitcoinWallet(new BitcoinConfiguration());
+
+      String first = rpc.getnewaddress("first");
+      String second = rpc.getnewaddress("second");
+      node.fund(first, BigDecimal.ONE);
+      node.fund(second, BigDecimal.ONE);
+      node.fund(rpc.getnewaddress("other"), BigDecimal.ONE);
+      node.mineBlock();
+      calls.clear();
+
+      TransactionPage page = scanWallet.getTransactionsSince(Arrays.asList(first, second), null);
+      Assert.assertEquals(2, page.getTransactions().length);
+      Assert.assertEquals(rpc.getBlockHash(1), page.getCursor());
+      Assert.assertEquals(1, calls.get("listsinceblock").get());
+      // The funding transaction and its input for each watched receipt, none for the other one.
+      Assert.assertEquals(4, calls.get("getrawtransaction").get());
+    } finally {
+      node.stop();
+    }
+  }
 }
@@ -0,0 +1,21 @@
+package io.emax.cosigner.common;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Shared metric registry for cosigner and the currency libraries.
+ *
+ * <p>Libraries record into whatever registry is set here, cosigner-core swaps in the Dropwizard
+ * registry at start-up so everything shows up on the admin metrics page.
+ */
+public class Metrics {
+  private static volatile MetricRegistry registry = new MetricRegistry();
+
+  public static MetricRegistry getRegistry() {
+    return registry;
+  }
+
+  public static void setRegistry(MetricRegistry registry) {
+    Metrics.registry = registry;
+  }
+}
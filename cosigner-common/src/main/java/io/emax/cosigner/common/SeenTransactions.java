@@ -0,0 +1,167 @@
+package io.emax.cosigner.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed size record of the transactions a monitor has already reported.
+ *
+ * <p>Only the SHA-256 digest of each transaction key is kept, in a ring of the most recent
+ * entries, indexed by an open addressing hash table of ints. Once the ring is full the oldest
+ * digest is dropped to make room, so the window has to be larger than the number of transactions
+ * a single scan can return for notifications to stay exactly-once.
+ */
+public class SeenTransactions {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SeenTransactions.class);
+  private static final int DIGEST_LONGS = 4;
+
+  private final int capacity;
+  // Digests in insertion order, DIGEST_LONGS per entry.
+  private final long[] digests;
+  // Ring position + 1 of the entry hashed to each slot, 0 when the slot is free.
+  private final int[] table;
+  private final int mask;
+  private int next = 0;
+  private int size = 0;
+  private final String name;
+
+  /**
+   * Create a window holding up to capacity transactions.
+   *
+   * @param name     Name to publish metrics under, usually the currency symbol.
+   * @param capacity Number of transactions to remember.
+   */
+  public SeenTransactions(String name, int capacity) {
+    this.name = name;
+    this.capacity = Math.max(1, capacity);
+    this.digests = new long[this.capacity * DIGEST_LONGS];
+    int tableSize = Integer.highestOneBit(this.capacity) << 2;
+    this.table = new int[tableSize];
+    this.mask = tableSize - 1;
+
+    // A currency's template monitor is created before the one that does the work, so the newest
+    // window takes over the gauges rather than leaving them on an idle one.
+    MetricRegistry registry = Metrics.getRegistry();
+    String sizeName = MetricRegistry.name(SeenTransactions.class, name, "size");
+    String bytesName = MetricRegistry.name(SeenTransactions.class, name, "bytes");
+    registry.remove(sizeName);
+    registry.remove(bytesName);
+    try {
+      registry.register(sizeName, (Gauge<Integer>) this::size);
+      registry.register(bytesName, (Gauge<Long>) this::getFootprint);
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * Record a transaction.
+   *
+   * @return True if it hadn't been seen yet.
+   */
+  public synchronized boolean add(String key) {
+    long[] digest = digest(key);
+    if (find(digest) >= 0) {
+      return false;
+    }
+
+    if (size == capacity) {
+      remove(next);
+      Metrics.getRegistry().meter(MetricRegistry.name(SeenTransactions.class, name, "evicted"))
+          .mark();
+    } else {
+      size++;
+    }
+    System.arraycopy(digest, 0, digests, next * DIGEST_LONGS, DIGEST_LONGS);
+    int slot = home(next);
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = next + 1;
+    next = (next + 1) % capacity;
+    return true;
+  }
+
+  public synchronized boolean contains(String key) {
+    return find(digest(key)) >= 0;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Approximate heap used by the window, in bytes.
+   */
+  public long getFootprint() {
+    return digests.length * 8L + table.length * 4L;
+  }
+
+  private int home(int position) {
+    return (int) digests[position * DIGEST_LONGS] & mask;
+  }
+
+  // Returns the table slot holding the digest, or -1.
+  private int find(long[] digest) {
+    int slot = (int) digest[0] & mask;
+    while (table[slot] != 0) {
+      int offset = (table[slot] - 1) * DIGEST_LONGS;
+      boolean matches = true;
+      for (int i = 0; i < DIGEST_LONGS; i++) {
+        if (digests[offset + i] != digest[i]) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void remove(int position) {
+    int slot = home(position);
+    while (table[slot] != position + 1) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = 0;
+
+    // Shift back any entries that probed past the slot we just freed.
+    int current = (slot + 1) & mask;
+    while (table[current] != 0) {
+      int wanted = home(table[current] - 1);
+      boolean movable = slot <= current ? wanted <= slot || wanted > current
+          : wanted <= slot && wanted > current;
+      if (movable) {
+        table[slot] = table[current];
+        table[current] = 0;
+        slot = current;
+      }
+      current = (current + 1) & mask;
+    }
+  }
+
+  private static long[] digest(String key) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      ByteBuffer hash = ByteBuffer.wrap(sha256.digest(key.getBytes(StandardCharsets.UTF_8)));
+      long[] digest = new long[DIGEST_LONGS];
+      for (int i = 0; i < DIGEST_LONGS; i++) {
+        digest[i] = hash.getLong();
+      }
+      return digest;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,412 @@
+package io.emax.cosigner.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded key/value store for indexes the wallets would otherwise rebuild from the chain.
+ *
+ * <p>Every change is appended to a single log file and forced to disk before returning. Each
+ * record carries a CRC, so a record torn by a crash is found and cut off when the log is replayed
+ * on open. Only the keys and where their values sit in the file are kept on heap, values are read
+ * back from the file when asked for. Once more than half the file is overwritten or removed
+ * records, the live ones are copied to a new file which replaces the old one.
+ *
+ * <p>The log only has one writer. Wallets that share a state file get the same store from
+ * {@link #open(String)}, and the file is locked while it's open so a second store on it fails
+ * instead of writing over the first one's records.
+ */
+public class StateStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StateStore.class);
+
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 0;
+  // Record length and CRC.
+  private static final int HEADER = 8;
+  // Type and key length, ahead of the key and value.
+  private static final int BODY_HEADER = 5;
+  private static final int MAX_RECORD = 64 * 1024 * 1024;
+  private static final long MIN_COMPACTION = 1024 * 1024;
+  private static final Map<String, StateStore> openStores = new HashMap<>();
+
+  private final File file;
+  private final String name;
+  private FileChannel channel;
+  private String openPath;
+  private Map<String, Location> index = new HashMap<>();
+  private long end = 0;
+  private long liveBytes = 0;
+
+  private static class Location {
+    private final long position;
+    private final int recordLength;
+    private final int valueOffset;
+
+    private Location(long position, int recordLength, int valueOffset) {
+      this.position = position;
+      this.recordLength = recordLength;
+      this.valueOffset = valueOffset;
+    }
+
+    private int getValueLength() {
+      return recordLength - valueOffset;
+    }
+  }
+
+  /**
+   * Open a store for a wallet, sharing it with any other wallet that has the same file open.
+   *
+   * @param path File to keep the store in.
+   * @return The store, or null if no path is configured or it can't be opened.
+   */
+  public static StateStore open(String path) {
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    try {
+      String canonicalPath = new File(path).getCanonicalPath();
+      synchronized (openStores) {
+        StateStore store = openStores.get(canonicalPath);
+        if (store == null) {
+          store = new StateStore(new File(canonicalPath));
+          store.openPath = canonicalPath;
+          openStores.put(canonicalPath, store);
+        }
+        return store;
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to open state store " + path + ", indexes will be rebuilt", e);
+      return null;
+    }
+  }
+
+  /**
+   * Open or create the store in the given file, replaying its log.
+   *
+   * @throws IOException If the file can't be read, or another store already has it open.
+   */
+  public StateStore(File file) throws IOException {
+    this.file = file;
+    this.name = file.getName();
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Unable to create " + parent);
+    }
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    lock(channel);
+    replay();
+    compactIfNeeded();
+    LOGGER.info("Loaded " + index.size() + " entries from " + file);
+
+    MetricRegistry registry = Metrics.getRegistry();
+    try {
+      registry.register(MetricRegistry.name(StateStore.class, name, "keys"),
+          (Gauge<Integer>) this::size);
+      registry.register(MetricRegistry.name(StateStore.class, name, "bytes"),
+          (Gauge<Long>) this::getFileSize);
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  private void lock(FileChannel target) throws IOException {
+    FileLock lock;
+    try {
+      lock = target.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      target.close();
+      throw new IOException(file + " is already open in another state store");
+    }
+  }
+
+  private void replay() throws IOException {
+    long position = 0;
+    long size = channel.size();
+    try (InputStream fileInput = new BufferedInputStream(new FileInputStream(file));
+        DataInputStream input = new DataInputStream(fileInput)) {
+      while (position + HEADER <= size) {
+        int length = input.readInt();
+        int crc = input.readInt();
+        if (length < BODY_HEADER || length > MAX_RECORD || position + HEADER + length > size) {
+          break;
+        }
+        byte[] body = new byte[length];
+        input.readFully(body);
+        if (crc != crc(body)) {
+          break;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        int keyLength = buffer.getInt();
+        if (keyLength < 0 || keyLength > length - BODY_HEADER) {
+          break;
+        }
+        String key = new String(body, BODY_HEADER, keyLength, StandardCharsets.UTF_8);
+        apply(key, type == PUT
+            ? new Location(position, HEADER + length, HEADER + BODY_HEADER + keyLength) : null);
+        position += HEADER + length;
+      }
+    }
+
+    if (position < size) {
+      LOGGER.warn("Discarding " + (size - position) + " bytes of incomplete records from " + file);
+      channel.truncate(position);
+      channel.force(true);
+    }
+    end = position;
+  }
+
+  private void apply(String key, Location location) {
+    Location previous = location == null ? index.remove(key) : index.put(key, location);
+    if (previous != null) {
+      liveBytes -= previous.recordLength;
+    }
+    if (location != null) {
+      liveBytes += location.recordLength;
+    }
+  }
+
+  private static int crc(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    return (int) crc.getValue();
+  }
+
+  private static ByteBuffer encode(byte type, String key, String value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] valueBytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    byte[] body = new byte[BODY_HEADER + keyBytes.length + valueBytes.length];
+    ByteBuffer.wrap(body).put(type).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+
+    ByteBuffer record = ByteBuffer.allocate(HEADER + body.length);
+    record.putInt(body.length).putInt(crc(body)).put(body);
+    record.flip();
+    return record;
+  }
+
+  private long append(ByteBuffer record) throws IOException {
+    long position = end;
+    while (record.hasRemaining()) {
+      end += channel.write(record, end);
+    }
+    channel.force(false);
+    return position;
+  }
+
+  /**
+   * Store a value, replacing any existing one.
+   *
+   * @return False if it couldn't be written.
+   */
+  public synchronized boolean put(String key, String value) {
+    if (value.equals(get(key))) {
+      return true;
+    }
+    ByteBuffer record = encode(PUT, key, value);
+    int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+    try {
+      long position = append(record);
+      apply(key, new Location(position, record.limit(), HEADER + BODY_HEADER + keyLength));
+      compactIfNeeded();
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write " + key + " to " + file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Remove a value.
+   *
+   * @return False if the removal couldn't be written.
+   */
+  public synchronized boolean remove(String key) {
+    if (!index.containsKey(key)) {
+      return true;
+    }
+    try {
+      append(encode(REMOVE, key, null));
+      apply(key, null);
+      compactIfNeeded();
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to remove " + key + " from " + file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Read a value back.
+   *
+   * @return The value, or null if there isn't one or it can't be read.
+   */
+  public synchronized String get(String key) {
+    Location location = index.get(key);
+    if (location == null) {
+      return null;
+    }
+    ByteBuffer value = ByteBuffer.allocate(location.getValueLength());
+    try {
+      long position = location.position + location.valueOffset;
+      while (value.hasRemaining()) {
+        int read = channel.read(value, position + value.position());
+        if (read < 0) {
+          throw new EOFException();
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read " + key + " from " + file, e);
+      return null;
+    }
+    return new String(value.array(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * All the values whose keys start with prefix, for loading an index at startup.
+   */
+  public synchronized Map<String, String> getAll(String prefix) {
+    Map<String, String> values = new TreeMap<>();
+    index.keySet().forEach(key -> {
+      if (key.startsWith(prefix)) {
+        String value = get(key);
+        if (value != null) {
+          values.put(key, value);
+        }
+      }
+    });
+    return values;
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  public synchronized long getFileSize() {
+    return end;
+  }
+
+  private void compactIfNeeded() {
+    long deadBytes = end - liveBytes;
+    if (deadBytes > liveBytes && deadBytes > MIN_COMPACTION) {
+      try {
+        compact();
+      } catch (IOException e) {
+        // The change that got us here is already on disk, the log just stays long for now.
+        LOGGER.warn("Unable to compact " + file + ", keeping the current log", e);
+      }
+    }
+  }
+
+  /**
+   * Rewrite the log with only the live records.
+   *
+   * <p>The new file is written and locked beside the old one, then renamed over it. The old file
+   * stays open and locked until that's done, so if anything fails the store carries on with it.
+   */
+  public synchronized void compact() throws IOException {
+    File compacted = new File(file.getPath() + ".compact");
+    Map<String, Location> newIndex = new HashMap<>();
+    long position = 0;
+    FileChannel output = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      lock(output);
+      for (Map.Entry<String, Location> entry : index.entrySet()) {
+        Location location = entry.getValue();
+        ByteBuffer record = ByteBuffer.allocate(location.recordLength);
+        while (record.hasRemaining()) {
+          if (channel.read(record, location.position + record.position()) < 0) {
+            throw new EOFException();
+          }
+        }
+        record.flip();
+        while (record.hasRemaining()) {
+          output.write(record, position + record.position());
+        }
+        newIndex.put(entry.getKey(),
+            new Location(position, location.recordLength, location.valueOffset));
+        position += location.recordLength;
+      }
+      output.force(true);
+      Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      output.close();
+      Files.deleteIfExists(compacted.toPath());
+      throw e;
+    }
+    syncDirectory();
+
+    FileChannel previous = channel;
+    channel = output;
+    try {
+      previous.close();
+    } catch (IOException e) {
+      LOGGER.debug(null, e);
+    }
+    LOGGER.info("Compacted " + file + " from " + end + " to " + position + " bytes");
+    index = newIndex;
+    end = position;
+    liveBytes = position;
+  }
+
+  /**
+   * Force the rename into the directory, so a crash can't bring back the old log.
+   */
+  private void syncDirectory() {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent == null) {
+      return;
+    }
+    try (FileChannel directory = FileChannel.open(parent.toPath(), StandardOpenOption.READ)) {
+      directory.force(true);
+    } catch (IOException e) {
+      // Not every platform lets a directory be opened or synced.
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * Close the file, the store can't be used after this.
+   */
+  public synchronized void close() {
+    if (openPath != null) {
+      synchronized (openStores) {
+        openStores.remove(openPath, this);
+      }
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package io.emax.cosigner.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lightweight request tracing.
+ *
+ * <p>A trace is started for each API request, and the work done for it is recorded as nested spans
+ * on the current thread. The trace context can be passed on to another thread or another cosigner
+ * node as a string, so that an approval that fans out across the cluster can be put back together
+ * as one timeline. Finished spans go to the exporter, which by default writes one JSON line per
+ * span to the io.emax.cosigner.trace logger.
+ */
+public class Tracer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Tracer.class);
+  private static final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+  private static volatile boolean enabled = true;
+  private static volatile String node = "";
+  private static volatile Exporter exporter = new LogExporter();
+
+  /**
+   * Receives every finished span.
+   */
+  public interface Exporter {
+    void export(Span span);
+  }
+
+  /**
+   * Writes spans to the io.emax.cosigner.trace logger at debug level.
+   */
+  public static class LogExporter implements Exporter {
+    private static final Logger TRACE_LOGGER = LoggerFactory.getLogger("io.emax.cosigner.trace");
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void export(Span span) {
+      if (!TRACE_LOGGER.isDebugEnabled()) {
+        return;
+      }
+      ObjectNode json = mapper.createObjectNode();
+      json.put("traceId", span.getTraceId());
+      json.put("spanId", span.getSpanId());
+      json.put("parentId", span.getParentId());
+      json.put("name", span.getName());
+      json.put("node", span.getNode());
+      json.put("start", span.getStartMicros());
+      json.put("duration", span.getDurationMicros());
+      TRACE_LOGGER.debug(json.toString());
+    }
+  }
+
+  public static class Span implements AutoCloseable {
+    private final String traceId;
+    private final String spanId;
+    private final String parentId;
+    private final String name;
+    private final String node;
+    private final Span previous;
+    private final long startMicros;
+    private final long startNanos;
+    private long durationMicros = -1;
+
+    // Placeholder that records nothing.
+    private Span() {
+      this.traceId = null;
+      this.spanId = null;
+      this.parentId = null;
+      this.name = null;
+      this.node = null;
+      this.previous = null;
+      this.startMicros = 0;
+      this.startNanos = 0;
+      this.durationMicros = 0;
+    }
+
+    private Span(String traceId, String parentId, String name) {
+      this.traceId = traceId;
+      this.spanId = newId();
+      this.parentId = parentId;
+      this.name = name;
+      this.node = Tracer.node;
+      this.previous = currentSpan.get();
+      this.startMicros = System.currentTimeMillis() * 1000L;
+      this.startNanos = System.nanoTime();
+      currentSpan.set(this);
+    }
+
+    public String getTraceId() {
+      return traceId;
+    }
+
+    public String getSpanId() {
+      return spanId;
+    }
+
+    public String getParentId() {
+      return parentId;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getNode() {
+      return node;
+    }
+
+    public long getStartMicros() {
+      return startMicros;
+    }
+
+    public long getDurationMicros() {
+      return durationMicros;
+    }
+
+    /**
+     * Context to hand on to other threads or nodes.
+     */
+    public String getContext() {
+      return traceId + "/" + spanId;
+    }
+
+    @Override
+    public void close() {
+      if (durationMicros >= 0) {
+        return;
+      }
+      durationMicros = (System.nanoTime() - startNanos) / 1000L;
+      if (currentSpan.get() == this) {
+        if (previous == null) {
+          currentSpan.remove();
+        } else {
+          currentSpan.set(previous);
+        }
+      }
+      try {
+        exporter.export(this);
+      } catch (RuntimeException e) {
+        LOGGER.debug(null, e);
+      }
+    }
+  }
+
+  // Returned when there's nothing to record, closing it does nothing.
+  private static final Span NOOP = new Span();
+
+  public static void setEnabled(boolean enabled) {
+    Tracer.enabled = enabled;
+  }
+
+  /**
+   * Name of this node, recorded on every span.
+   */
+  public static void setNode(String node) {
+    Tracer.node = node;
+  }
+
+  public static void setExporter(Exporter exporter) {
+    Tracer.exporter = exporter;
+  }
+
+  /**
+   * Start a span, beginning a new trace if there isn't one already running on this thread.
+   */
+  public static Span trace(String name) {
+    if (!enabled) {
+      return NOOP;
+    }
+    Span current = currentSpan.get();
+    if (current == null) {
+      return new Span(newId(), null, name);
+    }
+    return new Span(current.traceId, current.spanId, name);
+  }
+
+  /**
+   * Start a span if a trace is running on this thread.
+   */
+  public static Span span(String name) {
+    Span current = currentSpan.get();
+    if (!enabled || current == null) {
+      return NOOP;
+    }
+    return new Span(current.traceId, current.spanId, name);
+  }
+
+  /**
+   * Start a span under a context passed from another thread or node. Does nothing if the context
+   * is null.
+   */
+  public static Span span(String name, String context) {
+    if (!enabled || context == null || !context.contains("/")) {
+      return NOOP;
+    }
+    String[] ids = context.split("/", 2);
+    return new Span(ids[0], ids[1], name);
+  }
+
+  /**
+   * Start a span under a context passed from another node, or a new trace if there isn't one.
+   */
+  public static Span join(String name, String context) {
+    Span span = span(name, context);
+    return span == NOOP ? trace(name) : span;
+  }
+
+  /**
+   * The context of the span running on this thread, null if there isn't one.
+   */
+  public static String currentContext() {
+    Span current = currentSpan.get();
+    return current == null ? null : current.getContext();
+  }
+
+  private static String newId() {
+    return Long.toHexString(ThreadLocalRandom.current().nextLong());
+  }
+}
@@ -1,6 +1,11 @@
 package io.emax.cosigner.common.crypto;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.Tracer;
 
 import org.bouncycastle.asn1.x9.X9IntegerConverter;
 import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
@@ -77,7 +82,9 @@ public class Secp256k1 {
    * Sign data using the ECDSA algorithm.
    */
   public static byte[][] signTransaction(byte[] data, byte[] privateKey) {
-    try {
+    try (Timer.Context timer = Metrics.getRegistry()
+        .timer(MetricRegistry.name(Secp256k1.class, "sign")).time();
+        Tracer.Span span = Tracer.span("secp256k1.sign")) {
       Security.addProvider(new BouncyCastleProvider());
       ECNamedCurveParameterSpec spec = ECNamedCurveTable.getParameterSpec(SECP256K1);
 
@@ -160,7 +167,9 @@ public class Secp256k1 {
     ECNamedCurveParameterSpec spec = ECNamedCurveTable.getParameterSpec(SECP256K1);
     BigInteger pointN = spec.getN();
 
-    try {
+    try (Timer.Context timer = Metrics.getRegistry()
+        .timer(MetricRegistry.name(Secp256k1.class, "recover")).time();
+        Tracer.Span span = Tracer.span("secp256k1.recover")) {
       BigInteger pointX = new BigInteger(1, sigR);
 
       X9IntegerConverter x9 = new X9IntegerConverter();
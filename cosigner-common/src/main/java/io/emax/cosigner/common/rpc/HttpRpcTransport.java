@@ -0,0 +1,171 @@
+package io.emax.cosigner.common.rpc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.emax.cosigner.common.Metrics;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSON-RPC over a pooled, keep-alive HTTP client.
+ *
+ * <p>Connections to the node are kept open and reused between calls. Calls wait at most the read
+ * timeout for one of the in-flight slots to free up, so a stuck node fails fast instead of piling
+ * up threads. Each RPC method gets a timer, and errors are counted, under the transport's name.
+ */
+public class HttpRpcTransport implements RpcTransport {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HttpRpcTransport.class);
+
+  private final String name;
+  private final String url;
+  private final String authorization;
+  private final int readTimeout;
+  private final Semaphore inFlight;
+  private final CloseableHttpClient httpClient;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final AtomicLong requestId = new AtomicLong();
+
+  /**
+   * Set up a transport to a single node.
+   *
+   * @param name           Name used for metrics, e.g. bitcoind.
+   * @param url            Node RPC URL.
+   * @param user           RPC user, blank if the node doesn't use authentication.
+   * @param password       RPC password.
+   * @param connectTimeout Milliseconds to wait for a connection.
+   * @param readTimeout    Milliseconds to wait for a response.
+   * @param maxInFlight    Maximum number of calls that may be waiting on the node at once.
+   */
+  public HttpRpcTransport(String name, String url, String user, String password,
+      int connectTimeout, int readTimeout, int maxInFlight) {
+    this.name = name;
+    this.url = url;
+    this.readTimeout = readTimeout;
+    this.inFlight = new Semaphore(maxInFlight, true);
+
+    if (user != null && !user.isEmpty()) {
+      String credentials = user + ":" + (password == null ? "" : password);
+      this.authorization = "Basic " + Base64.getEncoder()
+          .encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    } else {
+      this.authorization = null;
+    }
+
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxInFlight);
+    connectionManager.setDefaultMaxPerRoute(maxInFlight);
+
+    RequestConfig requestConfig =
+        RequestConfig.custom().setConnectTimeout(connectTimeout).setSocketTimeout(readTimeout)
+            .setConnectionRequestTimeout(connectTimeout).build();
+
+    this.httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig).evictIdleConnections(60L, TimeUnit.SECONDS)
+        .build();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  @Override
+  public Object invoke(String method, Object[] arguments, Type returnType) {
+    MetricRegistry metrics = Metrics.getRegistry();
+    try {
+      if (!inFlight.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+        metrics.meter(MetricRegistry.name(HttpRpcTransport.class, name, "rejected")).mark();
+        throw new RpcException("Too many requests in flight to " + name, true);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RpcException("Interrupted waiting for " + name, e);
+    }
+
+    metrics.counter(MetricRegistry.name(HttpRpcTransport.class, name, "inFlight")).inc();
+    try (Timer.Context ignored = metrics
+        .timer(MetricRegistry.name(HttpRpcTransport.class, name, method)).time()) {
+      ObjectNode request = mapper.createObjectNode();
+      request.put("jsonrpc", "2.0");
+      request.put("id", requestId.incrementAndGet());
+      request.put("method", method);
+      request.set("params", mapper.valueToTree(arguments == null ? new Object[0] : arguments));
+
+      HttpPost httpPost = new HttpPost(url);
+      if (authorization != null) {
+        httpPost.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+      }
+      httpPost.setEntity(
+          new ByteArrayEntity(mapper.writeValueAsBytes(request), ContentType.APPLICATION_JSON));
+
+      JsonNode response;
+      int statusCode;
+      try (CloseableHttpResponse httpResponse = httpClient.execute(httpPost)) {
+        statusCode = httpResponse.getStatusLine().getStatusCode();
+        // Read the whole body so the connection goes back to the pool.
+        byte[] body = EntityUtils.toByteArray(httpResponse.getEntity());
+        response = body == null || body.length == 0 ? null : mapper.readTree(body);
+      }
+
+      if (response == null || !response.isObject()) {
+        throw new RpcException(name + " returned HTTP " + statusCode + " for " + method, true);
+      }
+      JsonNode error = response.get("error");
+      if (error != null && !error.isNull()) {
+        throw new RpcException(name + " " + method + " failed: " + error.toString(),
+            error.path("code").asInt(0));
+      }
+      if (returnType == void.class || returnType == Void.class) {
+        return null;
+      }
+      JsonNode result = response.get("result");
+      if (result == null || result.isNull()) {
+        return null;
+      }
+      return mapper.readValue(mapper.treeAsTokens(result),
+          mapper.getTypeFactory().constructType(returnType));
+    } catch (IOException e) {
+      LOGGER.debug(null, e);
+      metrics.meter(MetricRegistry.name(HttpRpcTransport.class, name, "errors")).mark();
+      throw new RpcException("Could not call " + method + " on " + name, e);
+    } catch (RpcException e) {
+      metrics.meter(MetricRegistry.name(HttpRpcTransport.class, name, "errors")).mark();
+      throw e;
+    } finally {
+      metrics.counter(MetricRegistry.name(HttpRpcTransport.class, name, "inFlight")).dec();
+      inFlight.release();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + "(" + url + ")";
+  }
+}
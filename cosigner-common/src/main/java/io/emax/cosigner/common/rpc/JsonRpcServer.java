@@ -0,0 +1,234 @@
+package io.emax.cosigner.common.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal JSON-RPC 2.0 server for standing in for a node over real HTTP.
+ *
+ * <p>Methods are registered by name and take the raw params. Single calls and batches are both
+ * accepted. A {@link SimulatedNode.Profile} can be set to add latency and failures to each HTTP
+ * request, a failed request gets an HTTP 503 the same as a node that's struggling. Tasks such as
+ * block production can be run on a timer alongside the server.
+ */
+public class JsonRpcServer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JsonRpcServer.class);
+
+  // Standard JSON-RPC error codes.
+  private static final int PARSE_ERROR = -32700;
+  private static final int INVALID_REQUEST = -32600;
+  private static final int METHOD_NOT_FOUND = -32601;
+  private static final int SERVER_ERROR = -32000;
+
+  private final String name;
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final ScheduledExecutorService timer;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<String, Method> methods = new ConcurrentHashMap<>();
+  private final Random random = new Random();
+  private volatile SimulatedNode.Profile profile;
+
+  /**
+   * Implementation of a single RPC method.
+   */
+  public interface Method {
+    /**
+     * Handle a call.
+     *
+     * @param params Params array from the request, empty if there weren't any.
+     * @return Anything the object mapper can write as the result.
+     * @throws RpcException To answer with an error.
+     */
+    Object call(JsonNode params);
+  }
+
+  /**
+   * Set up a server on the loopback interface.
+   *
+   * @param name Name used for threads and logging.
+   * @param port Port to listen on, 0 to pick a free one.
+   */
+  public JsonRpcServer(String name, int port) throws IOException {
+    this.name = name;
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.handlers = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, name + "-rpc-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, name + "-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    server.setExecutor(handlers);
+    server.createContext("/", this::handle);
+  }
+
+  public void register(String method, Method implementation) {
+    methods.put(method, implementation);
+  }
+
+  /**
+   * Latency and failures to add to every HTTP request, null for none.
+   */
+  public void setProfile(SimulatedNode.Profile profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * Run a task on a fixed interval until the server is stopped.
+   */
+  public void schedule(long interval, TimeUnit unit, Runnable task) {
+    timer.scheduleAtFixedRate(() -> {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOGGER.warn("Scheduled task on " + name + " failed", e);
+      }
+    }, interval, interval, unit);
+  }
+
+  public void start() {
+    server.start();
+    LOGGER.info(name + " listening on " + getUrl());
+  }
+
+  public void stop() {
+    timer.shutdownNow();
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public String getUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + getPort() + "/";
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      SimulatedNode.Profile currentProfile = profile;
+      if (currentProfile != null && !simulate(currentProfile)) {
+        exchange.sendResponseHeaders(503, -1);
+        return;
+      }
+
+      JsonNode response;
+      try (InputStream input = exchange.getRequestBody()) {
+        JsonNode request = mapper.readTree(input);
+        if (request != null && request.isArray() && request.size() > 0) {
+          ArrayNode responses = mapper.createArrayNode();
+          request.forEach(call -> responses.add(dispatch(call)));
+          response = responses;
+        } else {
+          response = dispatch(request);
+        }
+      } catch (IOException e) {
+        LOGGER.debug(null, e);
+        response = error(null, PARSE_ERROR, "Parse error");
+      }
+
+      byte[] body = mapper.writeValueAsBytes(response);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Wait out the simulated latency.
+   *
+   * @return False if the request should fail.
+   */
+  private boolean simulate(SimulatedNode.Profile currentProfile) {
+    double gaussian;
+    double roll;
+    synchronized (random) {
+      gaussian = random.nextGaussian();
+      roll = random.nextDouble();
+    }
+    long delay = currentProfile.getDelay(gaussian);
+    try {
+      if (delay > 0) {
+        TimeUnit.MILLISECONDS.sleep(delay);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return roll >= currentProfile.getFailureRate();
+  }
+
+  private ObjectNode dispatch(JsonNode call) {
+    // Valid JSON that isn't a request object, including an empty batch, is an invalid request.
+    if (call == null || !call.isObject() || !call.path("method").isTextual()) {
+      JsonNode id = call == null || !call.isObject() ? null : call.get("id");
+      return error(id, INVALID_REQUEST, "Invalid request");
+    }
+
+    JsonNode id = call.get("id");
+    String methodName = call.get("method").asText();
+    Method method = methods.get(methodName);
+    if (method == null) {
+      return error(id, METHOD_NOT_FOUND, "Method not found: " + methodName);
+    }
+
+    JsonNode params = call.get("params");
+    if (params == null || params.isNull()) {
+      params = mapper.createArrayNode();
+    }
+    try {
+      ObjectNode response = mapper.createObjectNode();
+      response.put("jsonrpc", "2.0");
+      response.set("id", id);
+      response.set("result", mapper.valueToTree(method.call(params)));
+      return response;
+    } catch (RuntimeException e) {
+      LOGGER.debug(null, e);
+      return error(id, SERVER_ERROR, e.getMessage());
+    }
+  }
+
+  private ObjectNode error(JsonNode id, int code, String message) {
+    ObjectNode response = mapper.createObjectNode();
+    response.put("jsonrpc", "2.0");
+    response.set("id", id);
+    ObjectNode error = response.putObject("error");
+    error.put("code", code);
+    error.put("message", message);
+    return response;
+  }
+}
@@ -0,0 +1,273 @@
+package io.emax.cosigner.common.rpc;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.common.Metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Spreads RPC calls over several nodes for the same chain.
+ *
+ * <p>Reads go to the healthy node with the lowest recent latency, falling through to the next node
+ * if one can't be reached. A node is unhealthy while it's failing, or while it's more than the
+ * allowed number of blocks behind the best height seen across the pool. Writes go to the first
+ * (primary) node, and optionally to all the others as well so the transaction propagates faster.
+ * Replicated methods, such as watching a new address, are applied to every node so their wallet
+ * views stay the same no matter which one answers a read.
+ */
+public class NodePoolTransport implements RpcTransport {
+  private static final Logger LOGGER = LoggerFactory.getLogger(NodePoolTransport.class);
+  private static final int MAX_FAILURES = 3;
+  private static final long FAILURE_COOLDOWN = TimeUnit.SECONDS.toMillis(30);
+
+  private final String name;
+  private final List<Node> nodes = new ArrayList<>();
+  private final Set<String> writeMethods = new HashSet<>();
+  private final Set<String> replicatedMethods = new HashSet<>();
+  private final boolean writeFanOut;
+  private final long maxBlockLag;
+  private final ToLongFunction<RpcTransport> heightCheck;
+  private Subscription healthSubscription;
+
+  private static class Node {
+    private final RpcTransport transport;
+    private volatile double latency = 0;
+    private volatile long height = -1;
+    private volatile int failures = 0;
+    private volatile long lastFailure = 0;
+
+    Node(RpcTransport transport) {
+      this.transport = transport;
+    }
+
+    void recordSuccess(long nanos) {
+      failures = 0;
+      // Exponentially weighted so a single slow call doesn't move the node out of favour.
+      double millis = nanos / 1000000.0;
+      latency = latency == 0 ? millis : latency * 0.8 + millis * 0.2;
+    }
+
+    void recordFailure() {
+      failures++;
+      lastFailure = System.currentTimeMillis();
+    }
+
+    boolean isFailing() {
+      return failures >= MAX_FAILURES
+          && System.currentTimeMillis() - lastFailure < FAILURE_COOLDOWN;
+    }
+  }
+
+  /**
+   * Set up a pool of nodes.
+   *
+   * @param name                Name used for metrics and logs.
+   * @param transports          Transports for each node, the first one is the primary.
+   * @param writeMethods        RPC methods that change node state and go to the primary.
+   * @param replicatedMethods   RPC methods that have to be applied to every node.
+   * @param writeFanOut         Also send writes to every other node.
+   * @param maxBlockLag         Skip nodes that are more than this many blocks behind the best one.
+   * @param heightCheck         Reads the current block height from a node.
+   * @param healthCheckInterval Seconds between height checks.
+   */
+  public NodePoolTransport(String name, List<? extends RpcTransport> transports,
+      Set<String> writeMethods, Set<String> replicatedMethods, boolean writeFanOut,
+      long maxBlockLag, ToLongFunction<RpcTransport> heightCheck, long healthCheckInterval) {
+    this.name = name;
+    transports.forEach(transport -> nodes.add(new Node(transport)));
+    this.writeMethods.addAll(writeMethods);
+    this.replicatedMethods.addAll(replicatedMethods);
+    this.writeFanOut = writeFanOut;
+    this.maxBlockLag = maxBlockLag;
+    this.heightCheck = heightCheck;
+
+    try {
+      Metrics.getRegistry().register(MetricRegistry.name(NodePoolTransport.class, name, "healthy"),
+          (Gauge<Integer>) () -> getHealthyNodes().size());
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+
+    if (nodes.size() > 1) {
+      healthSubscription = Observable.interval(0, healthCheckInterval, TimeUnit.SECONDS)
+          .observeOn(Schedulers.io()).subscribe(tick -> checkHeights());
+    }
+  }
+
+  /**
+   * Stop checking node heights.
+   */
+  public void shutdown() {
+    if (healthSubscription != null) {
+      healthSubscription.unsubscribe();
+    }
+  }
+
+  @Override
+  public Object invoke(String method, Object[] arguments, Type returnType) {
+    if (replicatedMethods.contains(method)) {
+      return invokeReplicated(method, arguments, returnType);
+    }
+    if (writeMethods.contains(method)) {
+      return invokeWrite(method, arguments, returnType);
+    }
+
+    RpcException lastError = null;
+    for (Node node : getHealthyNodes()) {
+      try {
+        return invokeNode(node, method, arguments, returnType);
+      } catch (RpcException e) {
+        if (!e.isTransportError()) {
+          throw e;
+        }
+        lastError = e;
+        LOGGER.debug(name + ": " + node.transport + " failed " + method + ", trying next node");
+      }
+    }
+    throw lastError == null ? new RpcException("No nodes available for " + name, true)
+        : lastError;
+  }
+
+  private Object invokeWrite(String method, Object[] arguments, Type returnType) {
+    List<Node> targets = new LinkedList<>(nodes);
+    Node primary = targets.remove(0);
+
+    if (writeFanOut) {
+      for (Node node : targets) {
+        Observable.just(node).observeOn(Schedulers.io())
+            .subscribe(target -> fanOut(target, method, arguments, returnType));
+      }
+    }
+
+    try {
+      return invokeNode(primary, method, arguments, returnType);
+    } catch (RpcException e) {
+      if (!e.isTransportError() || writeFanOut) {
+        throw e;
+      }
+      // Primary is unreachable, hand it to the next healthy node instead.
+      for (Node node : getHealthyNodes()) {
+        if (node == primary) {
+          continue;
+        }
+        try {
+          return invokeNode(node, method, arguments, returnType);
+        } catch (RpcException e1) {
+          if (!e1.isTransportError()) {
+            throw e1;
+          }
+        }
+      }
+      throw e;
+    }
+  }
+
+  private void fanOut(Node node, String method, Object[] arguments, Type returnType) {
+    try {
+      invokeNode(node, method, arguments, returnType);
+    } catch (RpcException e) {
+      LOGGER.debug(name + ": fan-out of " + method + " to " + node.transport + " failed", e);
+    }
+  }
+
+  private Object invokeReplicated(String method, Object[] arguments, Type returnType) {
+    Object result = null;
+    RpcException primaryError = null;
+    for (Node node : nodes) {
+      try {
+        Object nodeResult = invokeNode(node, method, arguments, returnType);
+        if (node == nodes.get(0)) {
+          result = nodeResult;
+        }
+      } catch (RpcException e) {
+        LOGGER.warn(name + ": " + method + " failed on " + node.transport);
+        if (node == nodes.get(0)) {
+          primaryError = e;
+        }
+      }
+    }
+    if (primaryError != null) {
+      throw primaryError;
+    }
+    return result;
+  }
+
+  private static Object invokeNode(Node node, String method, Object[] arguments,
+      Type returnType) {
+    long start = System.nanoTime();
+    try {
+      Object result = node.transport.invoke(method, arguments, returnType);
+      node.recordSuccess(System.nanoTime() - start);
+      return result;
+    } catch (RpcException e) {
+      if (e.isTransportError()) {
+        node.recordFailure();
+      } else {
+        node.recordSuccess(System.nanoTime() - start);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Nodes that are up and caught up, fastest first. Falls back to every node, primary first, if
+   * none of them look healthy so calls still get a chance to go through.
+   */
+  private List<Node> getHealthyNodes() {
+    long bestHeight = nodes.stream().mapToLong(node -> node.height).max().orElse(-1);
+    List<Node> healthy = new ArrayList<>();
+    nodes.forEach(node -> {
+      if (node.isFailing()) {
+        return;
+      }
+      if (bestHeight >= 0 && node.height >= 0 && bestHeight - node.height > maxBlockLag) {
+        return;
+      }
+      healthy.add(node);
+    });
+
+    if (healthy.isEmpty()) {
+      return Collections.unmodifiableList(nodes);
+    }
+    healthy.sort(Comparator.comparingDouble(node -> node.latency));
+    return healthy;
+  }
+
+  private void checkHeights() {
+    nodes.forEach(node -> {
+      long start = System.nanoTime();
+      try {
+        node.height = heightCheck.applyAsLong(node.transport);
+        node.recordSuccess(System.nanoTime() - start);
+      } catch (Exception e) {
+        LOGGER.debug(name + ": height check failed for " + node.transport, e);
+        node.recordFailure();
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    return name + nodes.stream().map(node -> node.transport.toString())
+        .reduce((first, second) -> first + ", " + second).map(list -> "[" + list + "]")
+        .orElse("[]");
+  }
+}
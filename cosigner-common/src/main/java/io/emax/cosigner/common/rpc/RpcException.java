@@ -0,0 +1,49 @@
+package io.emax.cosigner.common.rpc;
+
+/**
+ * Thrown when an RPC call can't be completed or the node responds with an error.
+ *
+ * <p>Transport errors mean the node couldn't be reached or didn't answer properly, as opposed to
+ * the node rejecting the call itself. When the node rejects it, the JSON-RPC error code is kept.
+ */
+public class RpcException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public static final int METHOD_NOT_FOUND = -32601;
+
+  private final boolean transportError;
+  private final int errorCode;
+
+  public RpcException(String message) {
+    this(message, false);
+  }
+
+  public RpcException(String message, boolean transportError) {
+    super(message);
+    this.transportError = transportError;
+    this.errorCode = 0;
+  }
+
+  public RpcException(String message, int errorCode) {
+    super(message);
+    this.transportError = false;
+    this.errorCode = errorCode;
+  }
+
+  public RpcException(String message, Throwable cause) {
+    super(message, cause);
+    this.transportError = true;
+    this.errorCode = 0;
+  }
+
+  public boolean isTransportError() {
+    return transportError;
+  }
+
+  /**
+   * JSON-RPC error code the node answered with, 0 if it didn't answer with one.
+   */
+  public int getErrorCode() {
+    return errorCode;
+  }
+}
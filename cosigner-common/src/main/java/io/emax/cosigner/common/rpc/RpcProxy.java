@@ -0,0 +1,55 @@
+package io.emax.cosigner.common.rpc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.Tracer;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Function;
+
+/**
+ * Implements an RPC interface by passing every call through an {@link RpcTransport}.
+ */
+public class RpcProxy {
+  /**
+   * Create an RPC client for the interface.
+   *
+   * @param rpcInterface Interface describing the RPC methods.
+   * @param transport    Transport used to make the calls.
+   * @param methodNames  Maps an interface method to the RPC method name.
+   * @return Proxy implementing the interface.
+   */
+  public static <T> T createProxy(Class<T> rpcInterface, RpcTransport transport,
+      Function<Method, String> methodNames) {
+    Object proxy = Proxy
+        .newProxyInstance(rpcInterface.getClassLoader(), new Class<?>[]{rpcInterface},
+            (instance, method, args) -> {
+              if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                  case "equals":
+                    return instance == args[0];
+                  case "hashCode":
+                    return System.identityHashCode(instance);
+                  default:
+                    return rpcInterface.getSimpleName() + " over " + transport;
+                }
+              }
+              // Timed here as well as in the transport, so a pool shows up as one call per method
+              // however many nodes it had to try.
+              String rpcMethod = methodNames.apply(method);
+              try (Timer.Context timer = Metrics.getRegistry()
+                  .timer(MetricRegistry.name(rpcInterface, rpcMethod)).time();
+                  Tracer.Span span = Tracer.span("rpc." + rpcMethod)) {
+                return transport.invoke(rpcMethod, args, method.getGenericReturnType());
+              } catch (RuntimeException e) {
+                Metrics.getRegistry()
+                    .meter(MetricRegistry.name(rpcInterface, rpcMethod, "errors")).mark();
+                throw e;
+              }
+            });
+    return rpcInterface.cast(proxy);
+  }
+}
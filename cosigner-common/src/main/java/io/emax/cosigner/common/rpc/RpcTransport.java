@@ -0,0 +1,19 @@
+package io.emax.cosigner.common.rpc;
+
+import java.lang.reflect.Type;
+
+/**
+ * Sends a JSON-RPC call to a node and converts the result.
+ */
+public interface RpcTransport {
+  /**
+   * Make an RPC call.
+   *
+   * @param method     RPC method name.
+   * @param arguments  Positional parameters, may be null if there are none.
+   * @param returnType Type the result should be converted to.
+   * @return The converted result.
+   * @throws RpcException If the call fails or the node returns an error.
+   */
+  Object invoke(String method, Object[] arguments, Type returnType);
+}
@@ -0,0 +1,117 @@
+package io.emax.cosigner.common.rpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a stub RPC implementation behind the latency and failures of a real node.
+ *
+ * <p>Latency follows a log-normal distribution fitted to a median and a 99th percentile, which is a
+ * fair match for what bitcoind and geth look like under load: most calls are quick and a few take
+ * far longer. Failures are thrown as transport errors, the same as a node that couldn't be reached.
+ */
+public class SimulatedNode {
+  // Standard normal quantile for the 99th percentile.
+  private static final double Z_99 = 2.326;
+
+  /**
+   * How the simulated node behaves.
+   */
+  public static class Profile {
+    private volatile long medianLatency = 5;
+    private volatile long p99Latency = 50;
+    private volatile double failureRate = 0;
+    private long seed = 1;
+
+    /**
+     * Latency in milliseconds.
+     */
+    public Profile setLatency(long median, long p99) {
+      this.medianLatency = median;
+      this.p99Latency = Math.max(median, p99);
+      return this;
+    }
+
+    /**
+     * Fraction of calls, between 0 and 1, that fail.
+     */
+    public Profile setFailureRate(double failureRate) {
+      this.failureRate = failureRate;
+      return this;
+    }
+
+    public Profile setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public long getMedianLatency() {
+      return medianLatency;
+    }
+
+    public long getP99Latency() {
+      return p99Latency;
+    }
+
+    public double getFailureRate() {
+      return failureRate;
+    }
+
+    /**
+     * Latency for one call, given a draw from the standard normal distribution.
+     */
+    long getDelay(double gaussian) {
+      long median = medianLatency;
+      double sigma = median <= 0 ? 0 : Math.log((double) p99Latency / median) / Z_99;
+      return (long) (median * Math.exp(sigma * gaussian));
+    }
+
+    long getSeed() {
+      return seed;
+    }
+  }
+
+  /**
+   * Wrap a stub node. The profile is read on every call, so it can be changed while the node is
+   * in use, for instance to set up data quickly before turning the latency on.
+   *
+   * @param rpcInterface Interface describing the RPC methods.
+   * @param node         Stub implementing the calls.
+   * @param profile      Latency and failures to add to every call.
+   * @return Proxy implementing the interface.
+   */
+  public static <T> T wrap(Class<T> rpcInterface, T node, Profile profile) {
+    Random random = new Random(profile.getSeed());
+
+    Object proxy = Proxy
+        .newProxyInstance(rpcInterface.getClassLoader(), new Class<?>[]{rpcInterface},
+            (instance, method, args) -> {
+              if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(node, args);
+              }
+
+              double gaussian;
+              double roll;
+              synchronized (random) {
+                gaussian = random.nextGaussian();
+                roll = random.nextDouble();
+              }
+              long delay = profile.getDelay(gaussian);
+              if (delay > 0) {
+                TimeUnit.MILLISECONDS.sleep(delay);
+              }
+              if (roll < profile.getFailureRate()) {
+                throw new RpcException("Simulated failure in " + method.getName(), true);
+              }
+
+              try {
+                return method.invoke(node, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+    return rpcInterface.cast(proxy);
+  }
+}
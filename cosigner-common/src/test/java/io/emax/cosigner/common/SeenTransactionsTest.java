@@ -0,0 +1,47 @@
+package io.emax.cosigner.common;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SeenTransactionsTest {
+  @Test
+  public void testWindow() {
+    System.out.println("");
+    System.out.println("Testing seen transaction window.");
+    SeenTransactions seen = new SeenTransactions("window-test", 1000);
+
+    Assert.assertTrue(seen.add("tx0"));
+    Assert.assertFalse(seen.add("tx0"));
+
+    for (int i = 1; i < 5000; i++) {
+      Assert.assertTrue(seen.add("tx" + i));
+      Assert.assertFalse(seen.add("tx" + i));
+    }
+    Assert.assertEquals(1000, seen.size());
+
+    // Everything in the window is still known after all the evictions, everything older is gone.
+    for (int i = 4000; i < 5000; i++) {
+      Assert.assertTrue(seen.contains("tx" + i));
+    }
+    for (int i = 0; i < 4000; i++) {
+      Assert.assertFalse(seen.contains("tx" + i));
+    }
+    System.out.println("Footprint: " + seen.getFootprint() + " bytes");
+  }
+
+  @Test
+  public void testGauges() {
+    System.out.println("");
+    System.out.println("Testing that the newest window reports the gauges.");
+    SeenTransactions idle = new SeenTransactions("gauge-test", 10);
+    SeenTransactions used = new SeenTransactions("gauge-test", 10);
+    used.add("tx0");
+    used.add("tx1");
+    Object size = Metrics.getRegistry().getGauges()
+        .get(MetricRegistry.name(SeenTransactions.class, "gauge-test", "size")).getValue();
+    Assert.assertEquals(2, size);
+    Assert.assertEquals(0, idle.size());
+  }
+}
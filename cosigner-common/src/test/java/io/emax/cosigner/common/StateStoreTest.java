@@ -0,0 +1,125 @@
+package io.emax.cosigner.common;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+public class StateStoreTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReopen() throws IOException {
+    System.out.println("");
+    System.out.println("Testing state store persistence.");
+    File file = new File(folder.getRoot(), "state/test.state");
+    StateStore store = new StateStore(file);
+    Assert.assertTrue(store.put("redeemScript/a", "5221aa52ae"));
+    Assert.assertTrue(store.put("redeemScript/b", "5221bb52ae"));
+    Assert.assertTrue(store.put("scan/rounds", "10"));
+    Assert.assertTrue(store.put("scan/rounds", "12"));
+    Assert.assertTrue(store.remove("redeemScript/b"));
+    store.close();
+
+    store = new StateStore(file);
+    Assert.assertEquals(2, store.size());
+    Assert.assertEquals("12", store.get("scan/rounds"));
+    Assert.assertNull(store.get("redeemScript/b"));
+    Map<String, String> scripts = store.getAll("redeemScript/");
+    Assert.assertEquals(1, scripts.size());
+    Assert.assertEquals("5221aa52ae", scripts.get("redeemScript/a"));
+    store.close();
+
+    // A record cut short by a crash is dropped, everything before it survives.
+    long length = file.length();
+    store = new StateStore(file);
+    store.put("scan/rounds", "13");
+    store.close();
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.setLength(raw.length() - 1);
+    }
+    store = new StateStore(file);
+    Assert.assertEquals("12", store.get("scan/rounds"));
+    Assert.assertEquals(length, file.length());
+    store.close();
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    System.out.println("");
+    System.out.println("Testing state store compaction.");
+    File file = new File(folder.getRoot(), "compaction.state");
+    StateStore store = new StateStore(file);
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 1024; i++) {
+      value.append("00");
+    }
+    for (int i = 0; i < 2000; i++) {
+      store.put("key" + (i % 10), value.toString() + i);
+    }
+    System.out.println("File size: " + store.getFileSize() + " bytes");
+    Assert.assertTrue(store.getFileSize() < 1024 * 1024 * 2);
+
+    // The compacted file is still locked against a second store.
+    try {
+      new StateStore(file);
+      Assert.fail("Opened a second store on a compacted file");
+    } catch (IOException e) {
+      System.out.println("Second store refused: " + e.getMessage());
+    }
+
+    // A compaction that can't be written leaves the store on its current log.
+    File compacted = new File(file.getPath() + ".compact");
+    Assert.assertTrue(compacted.mkdir());
+    long size = store.getFileSize();
+    try {
+      store.compact();
+      Assert.fail("Compacted over a directory");
+    } catch (IOException e) {
+      System.out.println("Compaction failed: " + e.getMessage());
+    }
+    Assert.assertEquals(size, store.getFileSize());
+    Assert.assertEquals(value.toString() + 1999, store.get("key9"));
+    Assert.assertTrue(store.put("key9", "updated"));
+    Assert.assertEquals("updated", store.get("key9"));
+    Assert.assertTrue(compacted.delete());
+    store.put("key9", value.toString() + 1999);
+    store.close();
+
+    store = new StateStore(file);
+    Assert.assertEquals(10, store.size());
+    Assert.assertEquals(value.toString() + 1999, store.get("key9"));
+    store.close();
+  }
+
+  @Test
+  public void testSharedStore() throws IOException {
+    System.out.println("");
+    System.out.println("Testing that a state file only has one store.");
+    File file = new File(folder.getRoot(), "shared.state");
+    StateStore store = StateStore.open(file.getPath());
+    Assert.assertNotNull(store);
+    File samePath = new File(folder.getRoot(), "./shared.state");
+    Assert.assertSame(store, StateStore.open(samePath.getPath()));
+
+    try {
+      new StateStore(file);
+      Assert.fail("Opened a second store on the same file");
+    } catch (IOException e) {
+      System.out.println("Second store refused: " + e.getMessage());
+    }
+
+    store.put("key", "value");
+    store.close();
+    StateStore reopened = StateStore.open(file.getPath());
+    Assert.assertNotSame(store, reopened);
+    Assert.assertEquals("value", reopened.get("key"));
+    reopened.close();
+  }
+}
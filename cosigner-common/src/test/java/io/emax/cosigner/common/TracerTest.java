@@ -0,0 +1,49 @@
+package io.emax.cosigner.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class TracerTest {
+  @Test
+  public void testSpans() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Testing trace spans.");
+    List<Tracer.Span> exported = new LinkedList<>();
+    Tracer.setExporter(exported::add);
+    try {
+      // Nothing is recorded outside of a trace.
+      Tracer.span("orphan").close();
+      Assert.assertTrue(exported.isEmpty());
+
+      String[] remoteContext = new String[1];
+      try (Tracer.Span root = Tracer.trace("root")) {
+        try (Tracer.Span child = Tracer.span("child")) {
+          remoteContext[0] = Tracer.currentContext();
+        }
+        Assert.assertEquals(root.getContext(), Tracer.currentContext());
+      }
+      Assert.assertNull(Tracer.currentContext());
+
+      // Carry the context over to another thread, as a remote node would.
+      Thread other = new Thread(() -> Tracer.join("remote", remoteContext[0]).close());
+      other.start();
+      other.join();
+
+      Assert.assertEquals(3, exported.size());
+      Tracer.Span child = exported.get(0);
+      Tracer.Span root = exported.get(1);
+      Tracer.Span remote = exported.get(2);
+      Assert.assertEquals("child", child.getName());
+      Assert.assertNull(root.getParentId());
+      Assert.assertEquals(root.getSpanId(), child.getParentId());
+      Assert.assertEquals(root.getTraceId(), remote.getTraceId());
+      Assert.assertEquals(child.getSpanId(), remote.getParentId());
+      Assert.assertTrue(root.getDurationMicros() >= child.getDurationMicros());
+    } finally {
+      Tracer.setExporter(new Tracer.LogExporter());
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package io.emax.cosigner.common.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpRpcTransportTest {
+  private HttpServer server;
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile String authorization;
+
+  public interface TestRpc {
+    Map<String, Object> echo(String first, long second);
+
+    String fail();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      JsonNode request = mapper.readTree(exchange.getRequestBody());
+      String response;
+      if (request.get("method").asText().equals("echo")) {
+        response = "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":{\"first\":"
+            + request.get("params").get(0) + ",\"second\":" + request.get("params").get(1)
+            + "}}";
+      } else {
+        response = "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id")
+            + ",\"error\":{\"code\":-1,\"message\":\"no\"}}";
+      }
+      byte[] body = response.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testTransport() {
+    System.out.println("");
+    System.out.println("Testing pooled RPC transport.");
+    HttpRpcTransport transport = new HttpRpcTransport("test",
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/", "user", "pass", 1000, 1000, 2);
+    TestRpc rpc = RpcProxy.createProxy(TestRpc.class, transport, method -> method.getName());
+
+    for (int i = 0; i < 10; i++) {
+      Map<String, Object> result = rpc.echo("hello", i);
+      Assert.assertEquals("hello", result.get("first"));
+      Assert.assertEquals(i, ((Number) result.get("second")).intValue());
+    }
+    Assert.assertEquals(10, requests.get());
+    Assert.assertEquals("Basic dXNlcjpwYXNz", authorization);
+
+    try {
+      rpc.fail();
+      Assert.fail("Expected the RPC error to be thrown.");
+    } catch (RpcException e) {
+      System.out.println("Got expected error: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package io.emax.cosigner.common.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class JsonRpcServerTest {
+  private JsonRpcServer server;
+
+  public interface TestRpc {
+    Map<String, Object> echo(String first, long second);
+
+    long add(long first, long second);
+
+    String missing();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    server = new JsonRpcServer("test", 0);
+    server.register("echo", params -> params);
+    server.register("add", params -> params.get(0).asLong() + params.get(1).asLong());
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void testCalls() {
+    System.out.println("");
+    System.out.println("Testing JSON-RPC server.");
+    HttpRpcTransport transport =
+        new HttpRpcTransport("test", server.getUrl(), "", "", 1000, 1000, 2);
+    TestRpc rpc = RpcProxy.createProxy(TestRpc.class, transport, method -> method.getName());
+
+    Assert.assertEquals(5, rpc.add(2, 3));
+    try {
+      rpc.missing();
+      Assert.fail("Expected the unknown method to be rejected.");
+    } catch (RpcException e) {
+      Assert.assertFalse(e.isTransportError());
+    }
+
+    server.setProfile(new SimulatedNode.Profile().setLatency(0, 0).setFailureRate(1));
+    try {
+      rpc.add(2, 3);
+      Assert.fail("Expected the simulated failure.");
+    } catch (RpcException e) {
+      Assert.assertTrue(e.isTransportError());
+    }
+  }
+
+  @Test
+  public void testBatch() throws IOException {
+    System.out.println("");
+    System.out.println("Testing JSON-RPC batch.");
+    String batch = "[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[1,2]},"
+        + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"nothing\",\"params\":[]},"
+        + "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"echo\",\"params\":[\"a\"]}]";
+
+    JsonNode response = post(batch);
+
+    Assert.assertEquals(3, response.size());
+    Assert.assertEquals(3, response.get(0).get("result").asLong());
+    Assert.assertEquals(-32601, response.get(1).get("error").get("code").asInt());
+    Assert.assertEquals("a", response.get(2).get("result").get(0).asText());
+    Assert.assertEquals(3, response.get(2).get("id").asInt());
+  }
+
+  @Test
+  public void testInvalidRequests() throws IOException {
+    System.out.println("");
+    System.out.println("Testing JSON-RPC invalid requests.");
+    Assert.assertEquals(-32700, post("{\"jsonrpc\":").get("error").get("code").asInt());
+    Assert.assertEquals(-32600, post("[]").get("error").get("code").asInt());
+    Assert.assertEquals(-32600, post("1").get("error").get("code").asInt());
+
+    JsonNode response = post("{\"jsonrpc\":\"2.0\",\"id\":4,\"params\":[]}");
+    Assert.assertEquals(-32600, response.get("error").get("code").asInt());
+    Assert.assertEquals(4, response.get("id").asInt());
+
+    response = post("[{\"jsonrpc\":\"2.0\",\"id\":5,\"method\":6},"
+        + "{\"jsonrpc\":\"2.0\",\"id\":6,\"method\":\"add\",\"params\":[1,2]}]");
+    Assert.assertEquals(-32600, response.get(0).get("error").get("code").asInt());
+    Assert.assertEquals(3, response.get(1).get("result").asLong());
+  }
+
+  private JsonNode post(String request) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl()).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream output = connection.getOutputStream()) {
+      output.write(request.getBytes(StandardCharsets.UTF_8));
+    }
+    try (InputStream input = connection.getInputStream()) {
+      return new ObjectMapper().readTree(input);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package io.emax.cosigner.common.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NodePoolTransportTest {
+  private static class StubTransport implements RpcTransport {
+    private final String name;
+    private volatile boolean down = false;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    StubTransport(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Object invoke(String method, Object[] arguments, Type returnType) {
+      calls.incrementAndGet();
+      if (down) {
+        throw new RpcException(name + " is down", true);
+      }
+      return name;
+    }
+  }
+
+  @Test
+  public void testFailover() {
+    System.out.println("");
+    System.out.println("Testing node pool failover.");
+    StubTransport primary = new StubTransport("primary");
+    StubTransport backup = new StubTransport("backup");
+    NodePoolTransport pool = new NodePoolTransport("test", Arrays.asList(primary, backup),
+        Collections.singleton("send"), Collections.singleton("watch"), false, 2, node -> 0, 3600);
+
+    primary.down = true;
+    Assert.assertEquals("backup", pool.invoke("read", null, String.class));
+    Assert.assertEquals("backup", pool.invoke("send", null, String.class));
+
+    primary.down = false;
+    int backupCalls = backup.calls.get();
+    Assert.assertEquals("primary", pool.invoke("watch", null, String.class));
+    Assert.assertEquals(backupCalls + 1, backup.calls.get());
+    pool.shutdown();
+  }
+
+  @Test
+  public void testLaggingNodeSkipped() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Testing node pool skips lagging nodes.");
+    StubTransport ahead = new StubTransport("ahead");
+    StubTransport behind = new StubTransport("behind");
+    NodePoolTransport pool = new NodePoolTransport("lag", Arrays.asList(behind, ahead),
+        Collections.emptySet(), Collections.emptySet(), false, 2,
+        node -> node == behind ? 100 : 110, 3600);
+
+    // The first height check runs right away, give it a moment to land.
+    for (int i = 0; i < 50 && !"ahead".equals(pool.invoke("read", null, String.class)); i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals("ahead", pool.invoke("read", null, String.class));
+    pool.shutdown();
+  }
+}
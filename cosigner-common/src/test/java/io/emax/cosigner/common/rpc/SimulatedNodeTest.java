@@ -0,0 +1,36 @@
+package io.emax.cosigner.common.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimulatedNodeTest {
+  private interface Echo {
+    String echo(String value);
+  }
+
+  @Test
+  public void testLatencyAndFailures() {
+    System.out.println("");
+    System.out.println("Testing simulated node latency and failures.");
+    SimulatedNode.Profile profile =
+        new SimulatedNode.Profile().setLatency(2, 20).setFailureRate(0.25).setSeed(42);
+    Echo node = SimulatedNode.wrap(Echo.class, value -> value, profile);
+
+    int failures = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 200; i++) {
+      try {
+        Assert.assertEquals("call" + i, node.echo("call" + i));
+      } catch (RpcException e) {
+        Assert.assertTrue(e.isTransportError());
+        failures++;
+      }
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    System.out.println("Failures: " + failures + ", elapsed: " + elapsed + "ms");
+
+    Assert.assertTrue(failures > 20 && failures < 80);
+    // Two milliseconds a call at the median, give or take the tail.
+    Assert.assertTrue(elapsed >= 200);
+  }
+}
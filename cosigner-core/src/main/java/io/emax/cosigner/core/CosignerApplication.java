@@ -1,10 +1,14 @@
 package io.emax.cosigner.core;
 
+import com.codahale.metrics.MetricRegistry;
+
 import io.dropwizard.jersey.DropwizardResourceConfig;
 import io.dropwizard.jersey.setup.JerseyContainerHolder;
 import io.dropwizard.setup.Environment;
 import io.emax.cosigner.api.core.CurrencyPackageInterface;
 import io.emax.cosigner.api.validation.Validator;
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.core.cluster.ClusterInfo;
 import io.emax.cosigner.core.cluster.Coordinator;
 import io.emax.cosigner.core.resources.AdminResource;
@@ -21,13 +25,13 @@ import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.EnumSet;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.FilterRegistration;
@@ -37,6 +41,7 @@ public class CosignerApplication extends io.dropwizard.Application<CosignerConfi
   private static CosignerConfiguration config;
   private static HashMap<String, CurrencyPackageInterface> currencies = new HashMap<>();
   private static LinkedList<Validator> validators = new LinkedList<>();
+  private static volatile boolean ready = false;
   private static final Logger LOGGER = LoggerFactory.getLogger(CosignerApplication.class);
 
   public static CosignerConfiguration getConfig() {
@@ -51,10 +56,24 @@ public class CosignerApplication extends io.dropwizard.Application<CosignerConfi
     return currencies;
   }
 
+  /**
+   * Whether the currencies have finished initializing after startup.
+   */
+  public static boolean isReady() {
+    return ready;
+  }
+
   public static List<Validator> getValidators() {
     return validators;
   }
 
+  /**
+   * Metric registry shared with the currency libraries, the Dropwizard registry once running.
+   */
+  public static MetricRegistry getMetrics() {
+    return Metrics.getRegistry();
+  }
+
   public static void main(String[] args) throws Exception {
     new CosignerApplication().run(args);
   }
@@ -62,6 +81,9 @@ public class CosignerApplication extends io.dropwizard.Application<CosignerConfi
   @Override
   public void run(CosignerConfiguration config, Environment environment) throws Exception {
     CosignerApplication.setConfig(config);
+    Metrics.setRegistry(environment.metrics());
+    Tracer.setEnabled(config.isTracingEnabled());
+    Tracer.setNode(config.getClusterLocation() + ":" + config.getClusterRpcPort());
 
     // Initialize ClusterInfo
     ClusterInfo.getInstance();
@@ -69,62 +91,8 @@ public class CosignerApplication extends io.dropwizard.Application<CosignerConfi
     // Initialize the coordinator
     Coordinator.getInstance();
 
-    // Load currency configurations packages defined in any of our libraries.
-    String path = new File(
-        CosignerApplication.class.getProtectionDomain().getCodeSource().getLocation().toURI()
-            .getPath()).getParentFile().getPath();
-    path += File.separator + "lib" + File.separator;
-
-    File folder = new File(path);
-    File[] listOfFiles = folder.listFiles();
-
-    if (listOfFiles != null) {
-      for (File listOfFile : listOfFiles) {
-        if (listOfFile.isFile()) {
-
-          JarFile jarFile = new JarFile(listOfFile.getAbsolutePath());
-          Enumeration<JarEntry> e = jarFile.entries();
-
-          URL[] urls = {new URL("jar:file:" + path + "!/")};
-          URLClassLoader cl = URLClassLoader.newInstance(urls);
-
-          while (e.hasMoreElements()) {
-            JarEntry je = e.nextElement();
-            if (je.isDirectory() || !je.getName().endsWith(".class")) {
-              continue;
-            }
-            // -6 because of .class
-            String className = je.getName().substring(0, je.getName().length() - 6);
-            className = className.replace('/', '.');
-            try {
-              Class c = cl.loadClass(className);
-              if (CurrencyPackageInterface.class.isAssignableFrom(c)) {
-                CurrencyPackageInterface newCurrency = (CurrencyPackageInterface) c.newInstance();
-                getCurrencies()
-                    .put(newCurrency.getConfiguration().getCurrencySymbol(), newCurrency);
-              }
-            } catch (NoClassDefFoundError | Exception ex) {
-              // It's ok if the class isn't valid, we may be trying to load the actual interface.
-              LOGGER.debug("Failed to load", ex);
-            }
-          }
-        }
-      }
-    }
-
-    LOGGER.info("Currencies available for cosigner: " + getCurrencies().keySet());
-
-    // If the enabled currency list has been set, then remove any that aren't enabled.
-    List<String> removeThese = new LinkedList<>();
-    if (!config.getEnabledCurrencies().isEmpty()) {
-      getCurrencies().forEach((symbol, currency) -> {
-        if (!config.getEnabledCurrencies().contains(symbol)) {
-          removeThese.add(symbol);
-        }
-      });
-      removeThese.forEach(symbol -> getCurrencies().remove(symbol));
-    }
-
+    // Load the currency packages our libraries register as services.
+    getCurrencies().putAll(loadCurrencies(getLibraryClassLoader(), config.getEnabledCurrencies()));
     LOGGER.info("Currencies enabled for cosigner: " + getCurrencies().keySet());
 
     BasicValidator validator = new BasicValidator();
@@ -156,6 +124,82 @@ public class CosignerApplication extends io.dropwizard.Application<CosignerConfi
         environment.servlets().addFilter("crossOriginRequests", CrossOriginFilter.class);
     cors.addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/*");
 
+    // Wallets contact their nodes and start background scans, leave that until we're listening.
+    environment.lifecycle().addServerLifecycleListener(server -> {
+      Thread initializer = new Thread(CosignerApplication::initializeCurrencies, "currency-init");
+      initializer.setDaemon(true);
+      initializer.start();
+    });
+  }
+
+  /**
+   * Class loader covering the jars in lib/, including any dropped in that aren't on the manifest
+   * class path.
+   */
+  private static ClassLoader getLibraryClassLoader() throws Exception {
+    ClassLoader parent = CosignerApplication.class.getClassLoader();
+    File folder = new File(new File(
+        CosignerApplication.class.getProtectionDomain().getCodeSource().getLocation().toURI()
+            .getPath()).getParentFile(), "lib");
+    File[] listOfFiles = folder.listFiles((dir, name) -> name.endsWith(".jar"));
+    if (listOfFiles == null) {
+      return parent;
+    }
+
+    URL[] urls = new URL[listOfFiles.length];
+    for (int i = 0; i < listOfFiles.length; i++) {
+      urls[i] = listOfFiles[i].toURI().toURL();
+    }
+    return URLClassLoader.newInstance(urls, parent);
+  }
+
+  /**
+   * Find the currency packages registered under META-INF/services.
+   *
+   * <p>Creating a package only reads its configuration, the wallet and monitor are left until
+   * {@link #initializeCurrencies()}. Packages that aren't enabled are dropped straight away.
+   *
+   * @param classLoader       Class loader to search for service registrations.
+   * @param enabledCurrencies Symbols to keep, all of them if empty.
+   * @return Enabled currency packages by symbol.
+   */
+  public static Map<String, CurrencyPackageInterface> loadCurrencies(ClassLoader classLoader,
+      List<String> enabledCurrencies) {
+    Map<String, CurrencyPackageInterface> loaded = new HashMap<>();
+    Iterator<CurrencyPackageInterface> packages =
+        ServiceLoader.load(CurrencyPackageInterface.class, classLoader).iterator();
+    while (packages.hasNext()) {
+      try {
+        CurrencyPackageInterface currency = packages.next();
+        String symbol = currency.getConfiguration().getCurrencySymbol();
+        if (enabledCurrencies.isEmpty() || enabledCurrencies.contains(symbol)) {
+          loaded.put(symbol, currency);
+        } else {
+          LOGGER.debug("Skipping disabled currency " + symbol);
+        }
+      } catch (ServiceConfigurationError e) {
+        LOGGER.warn("Failed to load currency package", e);
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * Create the wallets and monitors for the loaded currencies, then mark the node as ready.
+   */
+  public static void initializeCurrencies() {
+    new HashMap<>(getCurrencies()).forEach((symbol, currency) -> {
+      try {
+        LOGGER.info("Initializing " + symbol);
+        currency.getWallet();
+        currency.getMonitor();
+      } catch (RuntimeException e) {
+        LOGGER.error("Unable to initialize " + symbol, e);
+      }
+    });
+    ready = true;
+    LOGGER.info("Currencies ready for cosigner: " + getCurrencies().keySet());
+
     // Trigger a status check on currencies.
     ClusterInfo.getInstance().updateCurrencyStatus();
   }
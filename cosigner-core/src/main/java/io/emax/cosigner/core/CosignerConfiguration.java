@@ -2,6 +2,8 @@ package io.emax.cosigner.core;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import io.emax.cosigner.core.currency.WebSocketPusher.SlowConsumerPolicy;
+
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,6 +12,30 @@ public class CosignerConfiguration extends io.dropwizard.Configuration {
   private int clusterPort = 5555;
   private int clusterRpcPort = 8080;
   private List<String> enabledCurrencies = new LinkedList<>();
+  private int pipelineThreads = 4;
+  private int pipelineQueueSize = 100;
+  private int pipelineJobRetention = 60;
+  private int requestThreadsPerCurrency = 8;
+  private int requestQueueSize = 200;
+  private int callbackThreads = 4;
+  private int callbackQueueSize = 1000;
+  private int callbackBatchSize = 100;
+  private int callbackMaxRetries = 5;
+  private int callbackRetryDelay = 1000;
+  private int callbackTimeout = 5000;
+  private int websocketQueueSize = 1000;
+  private int websocketMaxFrameAddresses = 500;
+  private SlowConsumerPolicy websocketSlowConsumerPolicy = SlowConsumerPolicy.COALESCE;
+  private int validationThreads = 4;
+  private int validationCacheSize = 1000;
+  private int validationCacheTtl = 30000;
+  private boolean tracingEnabled = true;
+  private int gossipInterval = 1000;
+  private int gossipIndirectProbes = 3;
+  private int gossipIndirectTimeout = 5000;
+  private int gossipSuspicionTimeout = 10000;
+  private boolean shardMonitoring = false;
+  private int shardReplicas = 1;
 
   @JsonProperty
   public String getClusterLocation() {
@@ -51,4 +77,265 @@ public class CosignerConfiguration extends io.dropwizard.Configuration {
     this.enabledCurrencies = enabledCurrencies;
   }
 
+  @JsonProperty
+  public int getPipelineThreads() {
+    return pipelineThreads;
+  }
+
+  @JsonProperty
+  public void setPipelineThreads(int pipelineThreads) {
+    this.pipelineThreads = pipelineThreads;
+  }
+
+  @JsonProperty
+  public int getPipelineQueueSize() {
+    return pipelineQueueSize;
+  }
+
+  @JsonProperty
+  public void setPipelineQueueSize(int pipelineQueueSize) {
+    this.pipelineQueueSize = pipelineQueueSize;
+  }
+
+  /**
+   * Minutes that finished transaction jobs are kept around for polling.
+   */
+  @JsonProperty
+  public int getPipelineJobRetention() {
+    return pipelineJobRetention;
+  }
+
+  @JsonProperty
+  public void setPipelineJobRetention(int pipelineJobRetention) {
+    this.pipelineJobRetention = pipelineJobRetention;
+  }
+
+  @JsonProperty
+  public int getRequestThreadsPerCurrency() {
+    return requestThreadsPerCurrency;
+  }
+
+  @JsonProperty
+  public void setRequestThreadsPerCurrency(int requestThreadsPerCurrency) {
+    this.requestThreadsPerCurrency = requestThreadsPerCurrency;
+  }
+
+  @JsonProperty
+  public int getRequestQueueSize() {
+    return requestQueueSize;
+  }
+
+  @JsonProperty
+  public void setRequestQueueSize(int requestQueueSize) {
+    this.requestQueueSize = requestQueueSize;
+  }
+
+  @JsonProperty
+  public int getCallbackThreads() {
+    return callbackThreads;
+  }
+
+  @JsonProperty
+  public void setCallbackThreads(int callbackThreads) {
+    this.callbackThreads = callbackThreads;
+  }
+
+  @JsonProperty
+  public int getCallbackQueueSize() {
+    return callbackQueueSize;
+  }
+
+  @JsonProperty
+  public void setCallbackQueueSize(int callbackQueueSize) {
+    this.callbackQueueSize = callbackQueueSize;
+  }
+
+  @JsonProperty
+  public int getCallbackBatchSize() {
+    return callbackBatchSize;
+  }
+
+  @JsonProperty
+  public void setCallbackBatchSize(int callbackBatchSize) {
+    this.callbackBatchSize = callbackBatchSize;
+  }
+
+  @JsonProperty
+  public int getCallbackMaxRetries() {
+    return callbackMaxRetries;
+  }
+
+  @JsonProperty
+  public void setCallbackMaxRetries(int callbackMaxRetries) {
+    this.callbackMaxRetries = callbackMaxRetries;
+  }
+
+  @JsonProperty
+  public int getCallbackRetryDelay() {
+    return callbackRetryDelay;
+  }
+
+  @JsonProperty
+  public void setCallbackRetryDelay(int callbackRetryDelay) {
+    this.callbackRetryDelay = callbackRetryDelay;
+  }
+
+  @JsonProperty
+  public int getCallbackTimeout() {
+    return callbackTimeout;
+  }
+
+  @JsonProperty
+  public void setCallbackTimeout(int callbackTimeout) {
+    this.callbackTimeout = callbackTimeout;
+  }
+
+  @JsonProperty
+  public int getWebsocketQueueSize() {
+    return websocketQueueSize;
+  }
+
+  @JsonProperty
+  public void setWebsocketQueueSize(int websocketQueueSize) {
+    this.websocketQueueSize = websocketQueueSize;
+  }
+
+  @JsonProperty
+  public int getWebsocketMaxFrameAddresses() {
+    return websocketMaxFrameAddresses;
+  }
+
+  @JsonProperty
+  public void setWebsocketMaxFrameAddresses(int websocketMaxFrameAddresses) {
+    this.websocketMaxFrameAddresses = websocketMaxFrameAddresses;
+  }
+
+  @JsonProperty
+  public SlowConsumerPolicy getWebsocketSlowConsumerPolicy() {
+    return websocketSlowConsumerPolicy;
+  }
+
+  @JsonProperty
+  public void setWebsocketSlowConsumerPolicy(SlowConsumerPolicy websocketSlowConsumerPolicy) {
+    this.websocketSlowConsumerPolicy = websocketSlowConsumerPolicy;
+  }
+
+  @JsonProperty
+  public int getValidationThreads() {
+    return validationThreads;
+  }
+
+  @JsonProperty
+  public void setValidationThreads(int validationThreads) {
+    this.validationThreads = validationThreads;
+  }
+
+  @JsonProperty
+  public int getValidationCacheSize() {
+    return validationCacheSize;
+  }
+
+  @JsonProperty
+  public void setValidationCacheSize(int validationCacheSize) {
+    this.validationCacheSize = validationCacheSize;
+  }
+
+  @JsonProperty
+  public int getValidationCacheTtl() {
+    return validationCacheTtl;
+  }
+
+  @JsonProperty
+  public void setValidationCacheTtl(int validationCacheTtl) {
+    this.validationCacheTtl = validationCacheTtl;
+  }
+
+  @JsonProperty
+  public boolean isTracingEnabled() {
+    return tracingEnabled;
+  }
+
+  @JsonProperty
+  public void setTracingEnabled(boolean tracingEnabled) {
+    this.tracingEnabled = tracingEnabled;
+  }
+
+  /**
+   * Milliseconds between failure-detector probes of the next cluster member.
+   */
+  @JsonProperty
+  public int getGossipInterval() {
+    return gossipInterval;
+  }
+
+  @JsonProperty
+  public void setGossipInterval(int gossipInterval) {
+    this.gossipInterval = gossipInterval;
+  }
+
+  /**
+   * Members asked to probe a server on our behalf when it doesn't answer us directly.
+   */
+  @JsonProperty
+  public int getGossipIndirectProbes() {
+    return gossipIndirectProbes;
+  }
+
+  @JsonProperty
+  public void setGossipIndirectProbes(int gossipIndirectProbes) {
+    this.gossipIndirectProbes = gossipIndirectProbes;
+  }
+
+  /**
+   * Milliseconds to wait for another member to confirm a server we couldn't reach ourselves. It
+   * has to probe the server and get back to us, so this should be longer than a direct probe.
+   */
+  @JsonProperty
+  public int getGossipIndirectTimeout() {
+    return gossipIndirectTimeout;
+  }
+
+  @JsonProperty
+  public void setGossipIndirectTimeout(int gossipIndirectTimeout) {
+    this.gossipIndirectTimeout = gossipIndirectTimeout;
+  }
+
+  /**
+   * Milliseconds a suspected server has to refute the suspicion before it's removed.
+   */
+  @JsonProperty
+  public int getGossipSuspicionTimeout() {
+    return gossipSuspicionTimeout;
+  }
+
+  @JsonProperty
+  public void setGossipSuspicionTimeout(int gossipSuspicionTimeout) {
+    this.gossipSuspicionTimeout = gossipSuspicionTimeout;
+  }
+
+  /**
+   * Spread callback subscriptions across the cluster instead of watching everything everywhere.
+   */
+  @JsonProperty
+  public boolean isShardMonitoring() {
+    return shardMonitoring;
+  }
+
+  @JsonProperty
+  public void setShardMonitoring(boolean shardMonitoring) {
+    this.shardMonitoring = shardMonitoring;
+  }
+
+  /**
+   * Servers besides the primary owner that watch each address when monitoring is sharded.
+   */
+  @JsonProperty
+  public int getShardReplicas() {
+    return shardReplicas;
+  }
+
+  @JsonProperty
+  public void setShardReplicas(int shardReplicas) {
+    this.shardReplicas = shardReplicas;
+  }
 }
@@ -1,5 +1,8 @@
 package io.emax.cosigner.core.cluster;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.emax.cosigner.api.core.Server;
@@ -15,16 +18,26 @@ import org.bouncycastle.crypto.digests.SHA3Digest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class ClusterInfo {
   private static final Logger LOGGER = LoggerFactory.getLogger(ClusterInfo.class);
+  private static final int MAX_VERIFIED_SIGNATURES = 4096;
 
-  private String clusterKey = "";
-  private Set<Server> servers = new HashSet<>();
-  private Server thisServer = new Server();
+  private volatile String clusterKey = "";
+  private volatile String clusterPublicKey = "";
+  // Signature checks already done, every gossip message repeats the same servers.
+  private final Map<String, Boolean> verifiedSignatures = new ConcurrentHashMap<>();
+  // Replaced on every change, never modified, so readers don't need to lock.
+  private final AtomicReference<ClusterView> view =
+      new AtomicReference<>(new ClusterView(0, Collections.emptyList()));
+  private volatile Server thisServer;
 
   // Static resolver
   private static final ClusterInfo clusterInfo = new ClusterInfo();
@@ -36,27 +49,52 @@ public class ClusterInfo {
 
   private ClusterInfo() {
     CosignerConfiguration config = CosignerApplication.getConfig();
-    this.thisServer.setServerLocation(config.getClusterLocation());
-    this.thisServer.setServerListeningPort(config.getClusterPort());
-    this.thisServer.setServerRpcPort(config.getClusterRpcPort());
-    this.thisServer.setOriginator(true);
-    this.thisServer.setServerId(ServerKey.getServerId());
-    this.setClusterKey(ByteUtilities.toHexString(Secp256k1.generatePrivateKey()));
-    this.thisServer.setCurrencyStatus(new HashMap<>());
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    Server server = new Server();
+    server.setServerLocation(config.getClusterLocation());
+    server.setServerListeningPort(config.getClusterPort());
+    server.setServerRpcPort(config.getClusterRpcPort());
+    server.setOriginator(true);
+    server.setServerId(ServerKey.getServerId());
+    server.setCurrencyStatus(new HashMap<>());
     CosignerApplication.getCurrencies().forEach(
-        (currency, currencyPackage) -> this.thisServer.getCurrencyStatus()
+        (currency, currencyPackage) -> server.getCurrencyStatus()
             .put(currency, ServerStatus.UNKNOWN));
+    this.thisServer = server;
+    putServer(server);
+    this.setClusterKey(ByteUtilities.toHexString(Secp256k1.generatePrivateKey()));
 
-    servers.add(thisServer);
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    try {
+      metrics.register(MetricRegistry.name(ClusterInfo.class, "members"),
+          (Gauge<Integer>) () -> getView().getServers().size());
+      metrics.register(MetricRegistry.name(ClusterInfo.class, "version"),
+          (Gauge<Long>) () -> getView().getVersion());
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * The current membership. It won't change under the caller, fetch it again to see updates.
+   */
+  @JsonIgnore
+  public ClusterView getView() {
+    return view.get();
   }
 
   public Set<Server> getServers() {
-    return servers;
+    return view.get().getServers();
   }
 
+  /**
+   * Replace the whole membership.
+   */
   @JsonProperty
   public void setServers(Set<Server> servers) {
-    this.servers = servers;
+    view.updateAndGet(current -> new ClusterView(current.getVersion() + 1, servers));
   }
 
   public Server getThisServer() {
@@ -64,8 +102,25 @@ public class ClusterInfo {
   }
 
   @JsonProperty
-  public void setThisServer(Server thisServer) {
+  public synchronized void setThisServer(Server thisServer) {
     this.thisServer = thisServer;
+    putServer(thisServer);
+  }
+
+  /**
+   * Change this server's entry.
+   *
+   * <p>The change is made to a copy which then replaces the current entry, so anyone holding the
+   * old one keeps seeing a consistent server.
+   *
+   * @return The new entry.
+   */
+  public synchronized Server updateThisServer(Consumer<Server> change) {
+    Server server = new Server(thisServer);
+    change.accept(server);
+    thisServer = server;
+    putServer(server);
+    return server;
   }
 
   public String getClusterKey() {
@@ -76,30 +131,59 @@ public class ClusterInfo {
    * Sets the cluster key for the node.
    */
   public void setClusterKey(String clusterKey) {
+    this.clusterPublicKey =
+        ByteUtilities.toHexString(Secp256k1.getPublicKey(ByteUtilities.toByteArray(clusterKey)));
     this.clusterKey = clusterKey;
+    verifiedSignatures.clear();
 
     // Sign this server with the key.
     String[] signatures = ServerKey.getClusterSignature(clusterKey);
-    thisServer.setSigR(signatures[0]);
-    thisServer.setSigS(signatures[1]);
-    thisServer.setSigV(signatures[2]);
-
-    servers.remove(thisServer);
-    servers.add(thisServer);
+    updateThisServer(server -> {
+      server.setSigR(signatures[0]);
+      server.setSigS(signatures[1]);
+      server.setSigV(signatures[2]);
+    });
   }
 
   /**
    * Causes the server to update its currency status.
    */
   public void updateCurrencyStatus() {
+    if (!CosignerApplication.isReady()) {
+      // Checking the status would create the wallets ahead of the startup initialization.
+      return;
+    }
     LOGGER.debug("Updating currency status...");
+    Map<String, ServerStatus> currencyStatus = new HashMap<>(thisServer.getCurrencyStatus());
     CosignerApplication.getCurrencies().forEach((currency, currencyPackage) -> {
       LOGGER.debug("Getting status for " + currency);
-      thisServer.getCurrencyStatus().put(currency, currencyPackage.getWallet().getWalletStatus());
+      currencyStatus.put(currency, currencyPackage.getWallet().getWalletStatus());
     });
 
-    servers.remove(thisServer);
-    servers.add(thisServer);
+    if (!currencyStatus.equals(thisServer.getCurrencyStatus())) {
+      updateThisServer(server -> server.setCurrencyStatus(currencyStatus));
+      Membership.getInstance().announce();
+    }
+  }
+
+  /**
+   * Look up our entry for a server.
+   *
+   * @return The tracked server, or null if it isn't a member.
+   */
+  public Server getServer(Server server) {
+    return view.get().getServer(server);
+  }
+
+  /**
+   * Add a server, replacing any entry we have for it.
+   */
+  public void putServer(Server server) {
+    view.updateAndGet(current -> current.with(server));
+  }
+
+  public void removeServer(Server server) {
+    view.updateAndGet(current -> current.without(server));
   }
 
   /**
@@ -134,6 +218,50 @@ public class ClusterInfo {
       server.setOriginator(false);
     }
 
+    if (!verifyServer(server)) {
+      LOGGER.debug("Server doesn't belong to this cluster.");
+      return false;
+    }
+
+    if (getThisServer().equals(server)) {
+      return true;
+    }
+
+    if (wasHeartbeat) {
+      // If it was a hearbeat then replace the old one, and update the time.
+      server.setLastCommunication(System.currentTimeMillis());
+      putServer(server);
+    } else {
+      // Otherwise, write in an unknown time if we don't already have an entry for it.
+      server.setLastCommunication(0L);
+      view.updateAndGet(current -> current.getServer(server) == null ? current.with(server)
+          : current);
+    }
+    return true;
+  }
+
+  /**
+   * Check that a server's ID is signed with our cluster key.
+   *
+   * <p>Recovering the signing key is expensive and the same servers are seen over and over, so the
+   * result is remembered for as long as the cluster key stays the same.
+   */
+  public boolean verifyServer(Server server) {
+    if (server.getServerId() == null || server.getSigR() == null || server.getSigS() == null
+        || server.getSigV() == null) {
+      return false;
+    }
+
+    String signature =
+        clusterPublicKey + ":" + server.getServerId() + ":" + server.getSigR() + ":"
+            + server.getSigS() + ":" + server.getSigV();
+    Boolean verified = verifiedSignatures.get(signature);
+    if (verified != null) {
+      return verified;
+    }
+
+    CosignerApplication.getMetrics()
+        .meter(MetricRegistry.name(ClusterInfo.class, "signatureChecks")).mark();
     byte[] data = ByteUtilities.toByteArray(server.getServerId());
     // Hash the public key
     SHA3Digest sha3 = new SHA3Digest(256);
@@ -146,26 +274,12 @@ public class ClusterInfo {
         .recoverPublicKey(ByteUtilities.toByteArray(server.getSigR()),
             ByteUtilities.toByteArray(server.getSigS()),
             ByteUtilities.toByteArray(server.getSigV()), hashedBytes));
+    verified = clusterPublicKey.equalsIgnoreCase(recoveredPublicKey);
 
-    String publicKey =
-        ByteUtilities.toHexString(Secp256k1.getPublicKey(ByteUtilities.toByteArray(clusterKey)));
-
-    if (!publicKey.equalsIgnoreCase(recoveredPublicKey)) {
-      LOGGER.debug("Server doesn't belong to this cluster.");
-      return false;
-    }
-
-    if (wasHeartbeat) {
-      // If it was a hearbeat then remove the old one so that we replace it, and update the time.
-      if (this.getServers().contains(server)) {
-        this.getServers().remove(server);
-      }
-      server.setLastCommunication(System.currentTimeMillis());
-    } else {
-      // Otherwise, write in an unknown time if we don't already have an entry for it.
-      server.setLastCommunication(0L);
+    if (verifiedSignatures.size() >= MAX_VERIFIED_SIGNATURES) {
+      verifiedSignatures.clear();
     }
-    this.getServers().add(server);
-    return true;
+    verifiedSignatures.put(signature, verified);
+    return verified;
   }
 }
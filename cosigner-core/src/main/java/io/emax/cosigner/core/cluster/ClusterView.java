@@ -0,0 +1,78 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.api.core.Server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the servers in the cluster.
+ *
+ * <p>ClusterInfo publishes a new view for every membership change rather than changing a set in
+ * place, so anything iterating over the servers, like a signing round, sees the same peers from
+ * start to finish without taking a lock. Each view's version is one more than the one it replaced,
+ * which tells callers whether the membership changed between two reads.
+ */
+public final class ClusterView {
+  private final long version;
+  private final Map<Server, Server> servers;
+  private final Set<Server> serverSet;
+
+  ClusterView(long version, Collection<Server> servers) {
+    this.version = version;
+    Map<Server, Server> serverMap = new LinkedHashMap<>();
+    servers.forEach(server -> serverMap.put(server, server));
+    this.servers = Collections.unmodifiableMap(serverMap);
+    this.serverSet = Collections.unmodifiableSet(new LinkedHashSet<>(serverMap.values()));
+  }
+
+  private ClusterView(long version, Map<Server, Server> servers) {
+    this.version = version;
+    this.servers = Collections.unmodifiableMap(servers);
+    this.serverSet = Collections.unmodifiableSet(new LinkedHashSet<>(servers.values()));
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Set<Server> getServers() {
+    return serverSet;
+  }
+
+  /**
+   * Look up this view's version of a server.
+   *
+   * @return The server, or null if it isn't a member.
+   */
+  public Server getServer(Server server) {
+    return servers.get(server);
+  }
+
+  /**
+   * A view with the server added, replacing any version of it already there.
+   */
+  ClusterView with(Server server) {
+    Map<Server, Server> updated = new LinkedHashMap<>(servers);
+    // Remove first, put alone keeps the old key.
+    updated.remove(server);
+    updated.put(server, server);
+    return new ClusterView(version + 1, updated);
+  }
+
+  /**
+   * A view without the server, or this view if it isn't a member.
+   */
+  ClusterView without(Server server) {
+    if (!servers.containsKey(server)) {
+      return this;
+    }
+    Map<Server, Server> updated = new LinkedHashMap<>(servers);
+    updated.remove(server);
+    return new ClusterView(version + 1, updated);
+  }
+}
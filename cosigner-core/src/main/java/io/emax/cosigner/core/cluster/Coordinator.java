@@ -1,16 +1,19 @@
 package io.emax.cosigner.core.cluster;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
+import io.emax.cosigner.api.core.MemberState;
 import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.core.CosignerApplication;
 import io.emax.cosigner.core.CosignerConfiguration;
 import io.emax.cosigner.core.cluster.commands.BaseCommand;
 import io.emax.cosigner.core.cluster.commands.ClusterCommand;
-import io.emax.cosigner.core.cluster.commands.ClusterCommandType;
 import io.emax.cosigner.core.cluster.commands.CurrencyCommand;
 import io.emax.cosigner.core.cluster.commands.EncryptedCommand;
 
@@ -32,8 +35,10 @@ import java.util.concurrent.TimeUnit;
 
 public class Coordinator {
   private static final Logger LOGGER = LoggerFactory.getLogger(Coordinator.class);
-  private static final Coordinator coordinator = new Coordinator();
   private static final int REQUEST_TIMEOUT = 1500;
+  // One context for every outgoing request, each one owns I/O threads until it's terminated.
+  private static final Context requestContext = ZMQ.context(1);
+  private static final Coordinator coordinator = new Coordinator();
   private Socket responder;
 
   public static Coordinator getInstance() {
@@ -110,7 +115,7 @@ public class Coordinator {
               ClusterCommand clusterCommand = ClusterCommand.parseCommandString(commandString);
               if (clusterCommand != null) {
                 LOGGER.debug("Command is a ClusterCommand");
-                responder.send(Boolean.toString(ClusterCommand.handleCommand(clusterCommand)));
+                responder.send(ClusterCommand.handleCommand(clusterCommand));
                 return;
               }
 
@@ -120,24 +125,25 @@ public class Coordinator {
             }
           });
 
-      // Setup the hearbeat cycle
-      Observable.interval(30, TimeUnit.SECONDS).map(tick -> true).subscribe(new Action1<Boolean>() {
-        @Override
-        public void call(Boolean arg0) {
-          LOGGER.debug("Heartbeat tick");
-          ClusterInfo.getInstance().getServers().forEach(server -> {
-            if (server.isOriginator()) {
-              // Skip ourselves.
-              return;
+      // Probe one member per period, membership changes ride along on the probes.
+      Observable.interval(config.getGossipInterval(), TimeUnit.MILLISECONDS).map(tick -> true)
+          .subscribe(new Action1<Boolean>() {
+            @Override
+            public void call(Boolean arg0) {
+              try {
+                Membership.getInstance().probe();
+                ShardRouter.getInstance().checkMembership();
+              } catch (RuntimeException e) {
+                LOGGER.warn(null, e);
+              }
             }
-            ClusterCommand command = new ClusterCommand();
-            command.setCommandType(ClusterCommandType.HEARTBEAT);
-            command.getServer().add(ClusterInfo.getInstance().getThisServer());
-            LOGGER.debug("Sending heartbeat to: " + server);
-            String response = broadcastCommand(command, server);
-            LOGGER.debug("Response: " + response);
           });
 
+      // Status changes are announced through the gossip as well.
+      Observable.interval(30, TimeUnit.SECONDS).map(tick -> true).subscribe(new Action1<Boolean>() {
+        @Override
+        public void call(Boolean arg0) {
+          LOGGER.debug("Status tick");
           cluster.updateCurrencyStatus();
         }
 
@@ -160,56 +166,79 @@ public class Coordinator {
    */
   public static String broadcastCommand(BaseCommand command, Server server) {
     // Update the comm time if we've actually been talking to this server.
-    if (ClusterInfo.getInstance().getServers().contains(server)) {
-      ClusterInfo.getInstance().getServers().forEach(trackedServer -> {
-        if (trackedServer.equals(server)) {
-          server.setLastCommunication(trackedServer.getLastCommunication());
-        }
-      });
-    }
-
-    // If we haven't heard from the server in more then 2 minutes, consider it offline.
-    if ((System.currentTimeMillis() - server.getLastCommunication()) > 2 * 60 * 1000) {
-      if (command.getClass() == ClusterCommand.class
-          && ((ClusterCommand) command).getCommandType() == ClusterCommandType.HEARTBEAT) {
-        LOGGER.debug("Server is too old, sending heartbeat");
-      } else {
-        LOGGER.debug("Server is too old, removing server");
-        ClusterInfo.getInstance().getServers().remove(server);
-        return "";
-      }
+    Server trackedServer = ClusterInfo.getInstance().getServer(server);
+    if (trackedServer != null) {
+      server.setLastCommunication(trackedServer.getLastCommunication());
     }
 
-    // If it's not a ClusterCommand, encrypt it. ClusterCommands only identify servers, and
-    // they're checked for signatures.
-    if (command.getClass() != ClusterCommand.class) {
-      command =
-          new EncryptedCommand(ClusterInfo.getInstance().getThisServer(), ServerKey.getMykey(),
-              server, command.toJson());
+    // Membership decides when a server is gone, through suspicion and gossip. Anything it still
+    // lists as a member is worth sending to, probes go out regardless so servers can be found.
+    boolean probe = command.getClass() == ClusterCommand.class && isProbe((ClusterCommand) command);
+    if (!probe && (trackedServer == null || trackedServer.getMemberState() == MemberState.DEAD)) {
+      LOGGER.debug("Server isn't a live member, not sending to it: " + server);
+      return "";
     }
 
-    String commandString = command.toJson();
-
-    Context context = ZMQ.context(1);
-    Socket requester = context.socket(ZMQ.REQ);
-    requester.connect("tcp://" + server.getServerLocation() + ":" + server.getServerRpcPort());
-
-    requester.send(commandString);
-    LOGGER.debug("Command is in flight");
-
-    String reply = command.toJson();
-    Poller poller = new Poller(1);
-    poller.register(requester, Poller.POLLIN);
+    String peer = server.getServerLocation() + ":" + server.getServerRpcPort();
+    String reply;
+    try (Tracer.Span hop = Tracer.span("broadcast " + peer)) {
+      if (command instanceof CurrencyCommand) {
+        ((CurrencyCommand) command).setTraceContext(Tracer.currentContext());
+      }
 
-    poller.poll(REQUEST_TIMEOUT);
+      // If it's not a ClusterCommand, encrypt it. ClusterCommands only identify servers, and
+      // they're checked for signatures.
+      if (command.getClass() != ClusterCommand.class) {
+        command =
+            new EncryptedCommand(ClusterInfo.getInstance().getThisServer(), ServerKey.getMykey(),
+                server, command.toJson());
+      }
 
-    if (poller.pollin(0)) {
-      reply = requester.recvStr();
-      LOGGER.debug("Got response");
+      String commandString = command.toJson();
+
+      MetricRegistry metrics = CosignerApplication.getMetrics();
+      Timer.Context roundTrip =
+          metrics.timer(MetricRegistry.name(Coordinator.class, "broadcast", peer)).time();
+      Socket requester = requestContext.socket(ZMQ.REQ);
+      // Don't hold on to an unanswered request once the socket is closed.
+      requester.setLinger(0);
+      try {
+        requester.connect("tcp://" + server.getServerLocation() + ":" + server.getServerRpcPort());
+
+        requester.send(commandString);
+        LOGGER.debug("Command is in flight");
+
+        reply = command.toJson();
+        Poller poller = new Poller(1);
+        poller.register(requester, Poller.POLLIN);
+
+        poller.poll(REQUEST_TIMEOUT);
+
+        if (poller.pollin(0)) {
+          reply = requester.recvStr();
+          LOGGER.debug("Got response");
+          roundTrip.stop();
+        } else {
+          metrics.meter(MetricRegistry.name(Coordinator.class, "broadcast", peer, "timeouts"))
+              .mark();
+        }
+      } finally {
+        requester.close();
+      }
     }
 
-    requester.close();
-
     return reply;
   }
+
+  private static boolean isProbe(ClusterCommand command) {
+    switch (command.getCommandType()) {
+      case HEARTBEAT:
+      case PING:
+      case PINGREQ:
+      case ACK:
+        return true;
+      default:
+        return false;
+    }
+  }
 }
@@ -0,0 +1,92 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.api.core.Server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring over a set of servers.
+ *
+ * <p>Each server is placed on the ring at a number of points, and a key belongs to the servers
+ * found going clockwise from the key's own point. When a server joins or leaves, only the keys next
+ * to its points change hands, so most assignments stay where they were.
+ */
+public final class HashRing {
+  private static final int VIRTUAL_NODES = 100;
+
+  private final TreeMap<Long, Server> ring = new TreeMap<>();
+  private final Set<Server> members;
+
+  /**
+   * Build a ring from the given servers.
+   */
+  public HashRing(Collection<Server> servers) {
+    this.members = Collections.unmodifiableSet(new HashSet<>(servers));
+    members.forEach(server -> {
+      String serverKey = server.getServerId() + ":" + server.getServerListeningPort() + ":"
+          + server.getServerRpcPort();
+      for (int i = 0; i < VIRTUAL_NODES; i++) {
+        ring.put(hash(serverKey + "#" + i), server);
+      }
+    });
+  }
+
+  public Set<Server> getMembers() {
+    return members;
+  }
+
+  /**
+   * Servers responsible for a key, primary owner first.
+   *
+   * @param key   Key to look up, an address for example.
+   * @param count How many distinct servers to return, fewer if the ring doesn't have that many.
+   */
+  public List<Server> getOwners(String key, int count) {
+    List<Server> owners = new LinkedList<>();
+    if (ring.isEmpty()) {
+      return owners;
+    }
+    int wanted = Math.min(count, members.size());
+    long point = hash(key);
+    for (Map.Entry<Long, Server> entry : ring.tailMap(point).entrySet()) {
+      if (owners.size() >= wanted) {
+        return owners;
+      }
+      if (!owners.contains(entry.getValue())) {
+        owners.add(entry.getValue());
+      }
+    }
+    // Wrap around to the start of the ring.
+    for (Map.Entry<Long, Server> entry : ring.entrySet()) {
+      if (owners.size() >= wanted) {
+        break;
+      }
+      if (!owners.contains(entry.getValue())) {
+        owners.add(entry.getValue());
+      }
+    }
+    return owners;
+  }
+
+  private static long hash(String key) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      // Every JVM is required to provide SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,441 @@
+package io.emax.cosigner.core.cluster;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.api.core.MemberState;
+import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+import io.emax.cosigner.core.cluster.commands.ClusterCommand;
+import io.emax.cosigner.core.cluster.commands.ClusterCommandType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * SWIM-style membership and failure detection for the cluster.
+ *
+ * <p>Rather than every server heartbeating every other server, each one probes a single member per
+ * period, going round-robin through a shuffled list. A member that doesn't answer is probed again
+ * through a few others before it's suspected, and a suspect that doesn't refute the suspicion by
+ * raising its incarnation within the timeout is removed. Membership changes ride along on the
+ * probes and their acks, each one resent a small multiple of the log of the cluster size, so the
+ * messages each server handles per period stay the same however large the cluster gets.
+ *
+ * <p>A member asked to probe on someone else's behalf answers the request straight away and
+ * forwards the target's ack later, so the single request loop never waits on a third server.
+ */
+public class Membership {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Membership.class);
+  private static final Membership membership = new Membership();
+  // Updates piggybacked on each message.
+  private static final int MAX_PIGGYBACK = 8;
+  // Each update is resent this many times the log of the cluster size.
+  private static final int RETRANSMIT_MULTIPLIER = 3;
+  // Removed servers remembered so that late gossip about them doesn't bring them back.
+  private static final int MAX_DEPARTED = 1000;
+
+  private final int indirectProbes;
+  private final long indirectTimeout;
+  private final long suspicionTimeout;
+  private final ExecutorService executor;
+  private final Random random = new Random();
+  private final LinkedList<Server> probeOrder = new LinkedList<>();
+  private final Map<Server, Long> suspects = new HashMap<>();
+  private final Map<Server, Integer> updates = new LinkedHashMap<>();
+  private final Map<Server, Server> departed = new LinkedHashMap<>();
+  private final Map<Server, CompletableFuture<Boolean>> indirectAcks = new ConcurrentHashMap<>();
+
+  public static Membership getInstance() {
+    return membership;
+  }
+
+  private Membership() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    indirectProbes = config.getGossipIndirectProbes();
+    indirectTimeout = config.getGossipIndirectTimeout();
+    suspicionTimeout = config.getGossipSuspicionTimeout();
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "gossip-probe-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    executor = Executors.newFixedThreadPool(Math.max(1, indirectProbes), threadFactory);
+  }
+
+  /**
+   * Run one protocol period: probe the next member and remove suspects that timed out.
+   */
+  public void probe() {
+    expireSuspects();
+    Server target = nextTarget();
+    if (target == null) {
+      return;
+    }
+
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    Timer.Context timer = metrics.timer(MetricRegistry.name(Membership.class, "probe")).time();
+    LOGGER.debug("Probing " + target);
+    boolean acked = ping(target);
+    if (!acked) {
+      LOGGER.debug("No ack from " + target + ", probing indirectly");
+      metrics.meter(MetricRegistry.name(Membership.class, "indirectProbes")).mark();
+      acked = pingIndirectly(target);
+    }
+    timer.stop();
+
+    if (acked) {
+      heardFrom(target);
+    } else {
+      suspect(target);
+    }
+  }
+
+  /**
+   * Answer a probe, taking in the updates it carries.
+   */
+  public ClusterCommand handlePing(ClusterCommand ping) {
+    merge(ping.getServer());
+    return createCommand(ClusterCommandType.ACK);
+  }
+
+  /**
+   * Probe a server on behalf of a member that couldn't reach it.
+   *
+   * <p>The probe runs in the background and an ACK naming the target is sent to the member if the
+   * target answers.
+   *
+   * @return True if the request was accepted.
+   */
+  public boolean handlePingRequest(ClusterCommand request) {
+    Optional<Server> requester =
+        request.getServer().stream().filter(Server::isOriginator).findFirst();
+    Optional<Server> target =
+        request.getServer().stream().filter(server -> !server.isOriginator()).findFirst();
+    if (!requester.isPresent() || !target.isPresent()
+        || !ClusterInfo.getInstance().verifyServer(requester.get())) {
+      return false;
+    }
+    executor.execute(() -> {
+      if (ping(target.get())) {
+        ClusterCommand ack = new ClusterCommand();
+        ack.setCommandType(ClusterCommandType.ACK);
+        ack.getServer().add(target.get());
+        Coordinator.broadcastCommand(ack, requester.get());
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Take in an ACK forwarded by a member that probed a server for us.
+   */
+  public boolean handleIndirectAck(ClusterCommand ack) {
+    ack.getServer().forEach(server -> {
+      CompletableFuture<Boolean> pending = indirectAcks.get(server);
+      if (pending != null) {
+        pending.complete(true);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Tell the cluster that something about this server changed.
+   */
+  public synchronized void announce() {
+    queueUpdate(ClusterInfo.getInstance()
+        .updateThisServer(server -> server.setIncarnation(server.getIncarnation() + 1)));
+  }
+
+  /**
+   * Gossip a server that joined through a heartbeat.
+   */
+  public synchronized void joined(Server server) {
+    departed.remove(server);
+    queueUpdate(server);
+  }
+
+  /**
+   * Apply membership updates from another server.
+   *
+   * <p>A server's own entry in a message it sent counts as hearing from it directly. Otherwise
+   * updates follow the SWIM precedence rules, so news about a higher incarnation always wins, a
+   * suspicion beats an alive entry of the same incarnation, and a removal beats both.
+   */
+  public synchronized void merge(Collection<Server> servers) {
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    long now = System.currentTimeMillis();
+    servers.forEach(update -> {
+      if (update.equals(cluster.getThisServer())) {
+        refute(update);
+        return;
+      }
+      if (!cluster.verifyServer(update)) {
+        LOGGER.debug("Ignoring update for server outside the cluster: " + update);
+        return;
+      }
+      if (update.getMemberState() == null) {
+        update.setMemberState(MemberState.ALIVE);
+      }
+      boolean direct = update.isOriginator();
+      update.setOriginator(false);
+
+      Server known = cluster.getServer(update);
+      if (known == null) {
+        Server gone = departed.get(update);
+        if (update.getMemberState() == MemberState.DEAD
+            || gone != null && update.getIncarnation() <= gone.getIncarnation()) {
+          return;
+        }
+        LOGGER.info("Server joined the cluster: " + update);
+        departed.remove(update);
+        update.setLastCommunication(now);
+        cluster.putServer(update);
+        if (update.getMemberState() == MemberState.SUSPECT) {
+          suspects.put(update, now);
+        }
+        queueUpdate(update);
+        return;
+      }
+
+      if (direct) {
+        known.setLastCommunication(now);
+      }
+      if (!overrides(update, known)) {
+        return;
+      }
+      switch (update.getMemberState()) {
+        case ALIVE:
+          suspects.remove(known);
+          update.setLastCommunication(direct ? now : known.getLastCommunication());
+          cluster.putServer(update);
+          break;
+        case SUSPECT:
+          suspects.putIfAbsent(known, now);
+          update.setLastCommunication(known.getLastCommunication());
+          cluster.putServer(update);
+          break;
+        default:
+          remove(update);
+          return;
+      }
+      queueUpdate(update);
+    });
+  }
+
+  /**
+   * Whether an update about a server replaces what we already know about it.
+   */
+  static boolean overrides(Server update, Server known) {
+    long incarnation = update.getIncarnation();
+    long knownIncarnation = known.getIncarnation();
+    switch (update.getMemberState()) {
+      case ALIVE:
+        return incarnation > knownIncarnation;
+      case SUSPECT:
+        return incarnation > knownIncarnation
+            || incarnation == knownIncarnation && known.getMemberState() == MemberState.ALIVE;
+      case DEAD:
+        return incarnation >= knownIncarnation;
+      default:
+        return false;
+    }
+  }
+
+  private void refute(Server update) {
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    if (update.getMemberState() != MemberState.ALIVE
+        && update.getIncarnation() >= cluster.getThisServer().getIncarnation()) {
+      LOGGER.info("Cluster suspects this server, refuting it");
+      queueUpdate(
+          cluster.updateThisServer(server -> server.setIncarnation(update.getIncarnation() + 1)));
+    }
+  }
+
+  private boolean ping(Server target) {
+    ClusterCommand command = createCommand(ClusterCommandType.PING);
+    String response = Coordinator.broadcastCommand(command, target);
+    if (response == null || response.isEmpty()) {
+      return false;
+    }
+    ClusterCommand reply = ClusterCommand.parseCommandString(response);
+    // A timeout hands back our own request.
+    if (reply == null || reply.getCommandType() != ClusterCommandType.ACK) {
+      return false;
+    }
+    merge(reply.getServer());
+    return true;
+  }
+
+  private boolean pingIndirectly(Server target) {
+    List<Server> helpers = getMembers();
+    helpers.remove(target);
+    Collections.shuffle(helpers, random);
+
+    if (helpers.isEmpty()) {
+      return false;
+    }
+
+    // Our own entry tells the helpers where to send the ack.
+    ClusterCommand command = new ClusterCommand();
+    command.setCommandType(ClusterCommandType.PINGREQ);
+    command.getServer().add(target);
+    command.getServer().add(ClusterInfo.getInstance().getThisServer());
+    CompletableFuture<Boolean> acked = new CompletableFuture<>();
+    indirectAcks.put(target, acked);
+    try {
+      helpers.stream().limit(indirectProbes)
+          .forEach(helper -> executor.execute(() -> Coordinator.broadcastCommand(command, helper)));
+      return acked.get(indirectTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException | ExecutionException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      indirectAcks.remove(target, acked);
+    }
+  }
+
+  private ClusterCommand createCommand(ClusterCommandType commandType) {
+    ClusterCommand command = new ClusterCommand();
+    command.setCommandType(commandType);
+    command.getServer().add(ClusterInfo.getInstance().getThisServer());
+    command.getServer().addAll(getPiggyback());
+    return command;
+  }
+
+  private List<Server> getMembers() {
+    return ClusterInfo.getInstance().getServers().stream().filter(server -> !server.isOriginator())
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  private synchronized Server nextTarget() {
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    if (probeOrder.isEmpty()) {
+      probeOrder.addAll(getMembers());
+      Collections.shuffle(probeOrder, random);
+    }
+    while (!probeOrder.isEmpty()) {
+      Server target = cluster.getServer(probeOrder.removeFirst());
+      if (target != null) {
+        return target;
+      }
+    }
+    return null;
+  }
+
+  private synchronized void heardFrom(Server target) {
+    Server known = ClusterInfo.getInstance().getServer(target);
+    if (known != null) {
+      known.setLastCommunication(System.currentTimeMillis());
+    }
+  }
+
+  private synchronized void suspect(Server target) {
+    Server known = ClusterInfo.getInstance().getServer(target);
+    if (known == null || known.getMemberState() != MemberState.ALIVE) {
+      return;
+    }
+    LOGGER.info("Suspecting server: " + known);
+    CosignerApplication.getMetrics().meter(MetricRegistry.name(Membership.class, "suspected"))
+        .mark();
+    Server suspect = new Server(known);
+    suspect.setMemberState(MemberState.SUSPECT);
+    ClusterInfo.getInstance().putServer(suspect);
+    suspects.put(suspect, System.currentTimeMillis());
+    queueUpdate(suspect);
+  }
+
+  private synchronized void expireSuspects() {
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    long now = System.currentTimeMillis();
+    List<Server> expired = suspects.entrySet().stream()
+        .filter(suspect -> now - suspect.getValue() >= suspicionTimeout).map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+    expired.forEach(suspect -> {
+      suspects.remove(suspect);
+      Server known = cluster.getServer(suspect);
+      if (known != null && known.getMemberState() == MemberState.SUSPECT) {
+        remove(known);
+      }
+    });
+  }
+
+  private void remove(Server server) {
+    LOGGER.info("Removing server from the cluster: " + server);
+    CosignerApplication.getMetrics().meter(MetricRegistry.name(Membership.class, "removed"))
+        .mark();
+    Server dead = new Server(server);
+    dead.setMemberState(MemberState.DEAD);
+    suspects.remove(server);
+    ClusterInfo.getInstance().removeServer(server);
+    departed.remove(server);
+    departed.put(dead, dead);
+    queueUpdate(dead);
+    if (departed.size() > MAX_DEPARTED) {
+      Iterator<Server> oldest = departed.keySet().iterator();
+      oldest.next();
+      oldest.remove();
+    }
+  }
+
+  private void queueUpdate(Server server) {
+    int clusterSize = ClusterInfo.getInstance().getServers().size();
+    int transmissions =
+        Math.max(1, RETRANSMIT_MULTIPLIER * (int) Math.ceil(Math.log(clusterSize + 1)));
+    // Re-insert so the key is the latest copy of the server.
+    updates.remove(server);
+    updates.put(server, transmissions);
+  }
+
+  private synchronized List<Server> getPiggyback() {
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    // Updates that have been sent the least go first.
+    List<Server> piggyback = updates.entrySet().stream()
+        .sorted(Map.Entry.<Server, Integer>comparingByValue().reversed()).limit(MAX_PIGGYBACK)
+        .map(Map.Entry::getKey).collect(Collectors.toList());
+    piggyback.forEach(server -> {
+      int remaining = updates.get(server) - 1;
+      if (remaining > 0) {
+        updates.put(server, remaining);
+      } else {
+        updates.remove(server);
+      }
+    });
+    // Send the latest version of each server, removed ones are only in the update.
+    return piggyback.stream().map(server -> {
+      Server current = cluster.getServer(server);
+      return current == null ? server : current;
+    }).collect(Collectors.toList());
+  }
+}
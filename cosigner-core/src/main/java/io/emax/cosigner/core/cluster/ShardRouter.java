@@ -0,0 +1,182 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+import io.emax.cosigner.core.cluster.commands.CurrencyCommand;
+import io.emax.cosigner.core.cluster.commands.CurrencyCommandType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Assigns addresses to cosigner nodes when monitoring is sharded.
+ *
+ * <p>Each address has a primary owner and a configured number of replicas, picked from the cluster
+ * membership with a consistent hash. Owners watch the address, but only the primary reports on it,
+ * so a replica can take over as soon as the primary leaves. The ring is rebuilt whenever the set
+ * of members changes, and listeners are told about the old and new rings so they can hand work to
+ * the new owners. Handing work over means calling other servers, so listeners run on their own
+ * thread rather than holding up the failure detector, and retries get a turn on every check.
+ */
+public class ShardRouter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+  private static final ShardRouter router = new ShardRouter();
+
+  private final boolean enabled;
+  private final int replicas;
+  private volatile HashRing ring;
+  private final List<BiConsumer<HashRing, HashRing>> listeners = new CopyOnWriteArrayList<>();
+  private final List<Runnable> retries = new CopyOnWriteArrayList<>();
+  private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "shard-rebalance");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean rebalancing = new AtomicBoolean(false);
+
+  public static ShardRouter getInstance() {
+    return router;
+  }
+
+  private ShardRouter() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    enabled = config.isShardMonitoring();
+    replicas = Math.max(0, config.getShardReplicas());
+    ring = new HashRing(ClusterInfo.getInstance().getServers());
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getReplicas() {
+    return replicas;
+  }
+
+  public HashRing getRing() {
+    return ring;
+  }
+
+  /**
+   * Owners of an address, primary first.
+   */
+  public List<Server> getOwners(String address) {
+    return ring.getOwners(address, replicas + 1);
+  }
+
+  /**
+   * Whether this server reports on the address. Always true unless monitoring is sharded.
+   */
+  public boolean isPrimary(String address) {
+    if (!enabled) {
+      return true;
+    }
+    List<Server> owners = ring.getOwners(address, 1);
+    return owners.isEmpty() || owners.get(0).equals(ClusterInfo.getInstance().getThisServer());
+  }
+
+  /**
+   * Get called with the old and new ring whenever the membership changes.
+   */
+  public void addListener(BiConsumer<HashRing, HashRing> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Get called on every check, to retry work a rebalance couldn't finish.
+   */
+  public void addRetry(Runnable retry) {
+    retries.add(retry);
+  }
+
+  /**
+   * Rebuild the ring if servers joined or left since the last check, and run the listeners and
+   * retries in the background. If the last run is still going this waits for the next check, so
+   * each listener sees every change in order.
+   */
+  public void checkMembership() {
+    if (!enabled || !rebalancing.compareAndSet(false, true)) {
+      return;
+    }
+    Set<Server> members = new HashSet<>(ClusterInfo.getInstance().getServers());
+    HashRing previous = ring;
+    HashRing current = previous;
+    if (!members.equals(previous.getMembers())) {
+      current = new HashRing(members);
+      ring = current;
+      LOGGER.info("Cluster membership changed, rebalancing across " + members.size() + " servers");
+    }
+    HashRing next = current;
+    rebalancer.execute(() -> {
+      try {
+        if (next != previous) {
+          listeners.forEach(listener -> {
+            try {
+              listener.accept(previous, next);
+            } catch (RuntimeException e) {
+              LOGGER.warn(null, e);
+            }
+          });
+        }
+        retries.forEach(retry -> {
+          try {
+            retry.run();
+          } catch (RuntimeException e) {
+            LOGGER.warn(null, e);
+          }
+        });
+      } finally {
+        rebalancing.set(false);
+      }
+    });
+  }
+
+  /**
+   * Ask another server to watch addresses for a REST callback.
+   *
+   * @return True if the server accepted the subscription.
+   */
+  public boolean forwardSubscription(Server owner, String currency, String callback,
+      Collection<String> addresses) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol(currency);
+    params.setCallback(callback);
+    params.setAccount(new LinkedList<>(addresses));
+    CurrencyCommand command = new CurrencyCommand();
+    command.setCommandType(CurrencyCommandType.MONITOR);
+    command.setCurrencyParams(params);
+
+    LOGGER.debug("Forwarding " + addresses.size() + " " + currency + " addresses to " + owner);
+    try {
+      CosignerResponse response = (CosignerResponse) Json
+          .objectifyString(CosignerResponse.class, Coordinator.broadcastCommand(command, owner));
+      if (response == null || response.getError() != null && !response.getError().isEmpty()) {
+        LOGGER.warn("Couldn't forward subscription to " + owner + ": "
+            + (response == null ? "no response" : response.getError()));
+        return false;
+      }
+      return true;
+    } catch (RuntimeException e) {
+      LOGGER.warn("Couldn't forward subscription to " + owner, e);
+      return false;
+    }
+  }
+}
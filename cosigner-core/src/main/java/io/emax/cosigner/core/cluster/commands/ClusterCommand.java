@@ -11,6 +11,7 @@ import io.emax.cosigner.api.currency.CurrencyAdmin;
 import io.emax.cosigner.core.CosignerApplication;
 import io.emax.cosigner.core.cluster.ClusterInfo;
 import io.emax.cosigner.core.cluster.Coordinator;
+import io.emax.cosigner.core.cluster.Membership;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,13 +85,29 @@ public class ClusterCommand implements BaseCommand {
 
   /**
    * Attempt to handle the request in a cluster command.
+   *
+   * @return The reply to send back, an ACK for a PING, otherwise whether it was handled.
    */
-  public static boolean handleCommand(ClusterCommand command) {
+  public static String handleCommand(ClusterCommand command) {
+    switch (command.commandType) {
+      case PING:
+        return Membership.getInstance().handlePing(command).toJson();
+      case PINGREQ:
+        return Boolean.toString(Membership.getInstance().handlePingRequest(command));
+      case ACK:
+        return Boolean.toString(Membership.getInstance().handleIndirectAck(command));
+      default:
+        return Boolean.toString(handleAdminCommand(command));
+    }
+  }
+
+  private static boolean handleAdminCommand(ClusterCommand command) {
     switch (command.commandType) {
       case HEARTBEAT:
         LOGGER.debug("Got heartbeat for: " + command);
         command.getServer().forEach(server -> {
           if (ClusterInfo.getInstance().addServer(server, true)) {
+            Membership.getInstance().joined(server);
             ClusterCommand response = new ClusterCommand();
             response.setCommandType(ClusterCommandType.KNOWNSERVERS);
             response.getServer().addAll(ClusterInfo.getInstance().getServers());
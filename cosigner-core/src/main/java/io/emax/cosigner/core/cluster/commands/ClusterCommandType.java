@@ -1,5 +1,5 @@
 package io.emax.cosigner.core.cluster.commands;
 
 public enum ClusterCommandType {
-  KNOWNSERVERS, HEARTBEAT, ENABLETXS, DISABLETXS
+  KNOWNSERVERS, HEARTBEAT, ENABLETXS, DISABLETXS, PING, PINGREQ, ACK
 }
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import io.emax.cosigner.api.core.CosignerResponse;
 import io.emax.cosigner.api.core.CurrencyParameters;
 import io.emax.cosigner.common.Json;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.core.currency.Common;
 
 import org.slf4j.Logger;
@@ -19,6 +20,8 @@ public class CurrencyCommand implements BaseCommand {
   private static final Logger LOGGER = LoggerFactory.getLogger(CurrencyCommand.class);
   private CurrencyCommandType commandType;
   private CurrencyParameters currencyParams;
+  // Trace context of the sender, so the work done here shows up in its trace.
+  private String traceContext;
 
   public CurrencyCommandType getCommandType() {
     return commandType;
@@ -36,6 +39,14 @@ public class CurrencyCommand implements BaseCommand {
     this.currencyParams = currencyParams;
   }
 
+  public String getTraceContext() {
+    return traceContext;
+  }
+
+  public void setTraceContext(String traceContext) {
+    this.traceContext = traceContext;
+  }
+
   /**
    * Convert this command to a JSON string.
    */
@@ -83,11 +94,19 @@ public class CurrencyCommand implements BaseCommand {
    */
   public static String handleCommand(CurrencyCommand command) {
     // SIGN -- Attempt to sign the provided data, for off-client keys
+    // MONITOR -- Watch addresses this server owns for a callback, routed here by another server
     switch (command.commandType) {
       case SIGN:
-        String signedTx = Common.approveTransaction(
-            Json.stringifyObject(CurrencyParameters.class, command.currencyParams), false);
-        return signedTx;
+        try (Tracer.Span span = Tracer.join("CurrencyCommand.SIGN", command.traceContext)) {
+          String signedTx = Common.approveTransaction(
+              Json.stringifyObject(CurrencyParameters.class, command.currencyParams), false);
+          return signedTx;
+        }
+      case MONITOR:
+        try (Tracer.Span span = Tracer.join("CurrencyCommand.MONITOR", command.traceContext)) {
+          return Common.monitorBalance(
+              Json.stringifyObject(CurrencyParameters.class, command.currencyParams), null, false);
+        }
       default:
         CosignerResponse cosignerResponse = new CosignerResponse();
         cosignerResponse.setError("Unsupported command");
@@ -1,5 +1,5 @@
 package io.emax.cosigner.core.cluster.commands;
 
 public enum CurrencyCommandType {
-  SIGN
+  SIGN, MONITOR
 }
@@ -1,5 +1,6 @@
 package io.emax.cosigner.core.cluster.commands;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,19 +10,23 @@ import io.emax.cosigner.api.core.Server;
 import io.emax.cosigner.common.ByteUtilities;
 import io.emax.cosigner.common.crypto.Aes;
 import io.emax.cosigner.common.crypto.Secp256k1;
+import io.emax.cosigner.core.CosignerApplication;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class EncryptedCommand implements BaseCommand {
   private static final Logger LOGGER = LoggerFactory.getLogger(EncryptedCommand.class);
-  // Track nonces for other servers in both directions.
-  private static final Map<String, Long> incomingNonces = new HashMap<>();
-  private static final Map<String, Long> outgoingNonces = new HashMap<>();
+  // Track nonces for other servers in both directions. Commands to the same server can be in
+  // flight concurrently, so incoming ones are checked against a window rather than the last nonce.
+  private static final ConcurrentHashMap<String, ReplayWindow> incomingNonces =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, AtomicLong> outgoingNonces =
+      new ConcurrentHashMap<>();
 
   private Server sender;
   private String payload;
@@ -41,12 +46,10 @@ public class EncryptedCommand implements BaseCommand {
 
       // Set up the nonce
       DecryptedPayload decryptedPayload = new DecryptedPayload();
-      if (!outgoingNonces.containsKey(recipient.getServerId())) {
-        outgoingNonces.put(recipient.getServerId(), 1L);
-      }
-      decryptedPayload.setNonce(outgoingNonces.get(recipient.getServerId()));
+      decryptedPayload.setNonce(
+          outgoingNonces.computeIfAbsent(recipient.getServerId(), key -> new AtomicLong())
+              .incrementAndGet());
       this.nonce = decryptedPayload.getNonce();
-      outgoingNonces.put(recipient.getServerId(), decryptedPayload.getNonce() + 1L);
       decryptedPayload.setPayload(data);
       data = ByteUtilities.toHexString(decryptedPayload.toJson().getBytes("UTF-8"));
       this.sender = sender;
@@ -122,17 +125,15 @@ public class EncryptedCommand implements BaseCommand {
       data = new String(ByteUtilities.toByteArray(data), "UTF-8");
       DecryptedPayload payload = DecryptedPayload.parseData(data);
 
-      // Validate the nonce.
-      if (!incomingNonces.containsKey(command.sender.getServerId())) {
-        incomingNonces.put(command.sender.getServerId(), 0L);
-      }
-      long expectedNonce = incomingNonces.get(command.sender.getServerId());
-      if (payload.getNonce() <= expectedNonce) {
-        // Nonce is too low.
-        throw new Exception("NONCE is too low from server: " + command.sender.getServerId());
+      // Validate the nonce, each one is accepted once and only while it's recent enough.
+      ReplayWindow window = incomingNonces
+          .computeIfAbsent(command.sender.getServerId(), key -> new ReplayWindow());
+      if (!window.accept(payload.getNonce())) {
+        CosignerApplication.getMetrics()
+            .meter(MetricRegistry.name(EncryptedCommand.class, "rejectedNonces")).mark();
+        throw new Exception("NONCE " + payload.getNonce() + " is replayed or too old from server: "
+            + command.sender.getServerId());
       }
-      // Update so we only accept newer nonces after this command.
-      incomingNonces.put(command.sender.getServerId(), payload.getNonce());
 
       return payload.getPayload();
     } catch (Exception e) {
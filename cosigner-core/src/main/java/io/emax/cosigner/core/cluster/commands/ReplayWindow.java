@@ -0,0 +1,67 @@
+package io.emax.cosigner.core.cluster.commands;
+
+/**
+ * Sliding-window replay check for the nonces from one peer, as used by IPsec and DTLS.
+ *
+ * <p>Keeps the highest nonce seen and a bitmap of which nonces within the window below it have
+ * arrived. Commands can arrive in any order as long as they're within the window of the newest
+ * one, each nonce is accepted once, and anything older than the window is rejected. The bitmap is
+ * indexed by nonce modulo the window size, so moving the window only clears the bits it passes
+ * over rather than shifting the whole map.
+ */
+public class ReplayWindow {
+  public static final int DEFAULT_SIZE = 1024;
+
+  private final int size;
+  private final long[] bitmap;
+  private long highest = 0;
+
+  public ReplayWindow() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * Create a window covering the given number of nonces, rounded up to a power of two.
+   */
+  public ReplayWindow(int size) {
+    this.size = Math.max(Long.SIZE, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+    this.bitmap = new long[this.size / Long.SIZE];
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Check a nonce and record it.
+   *
+   * @return True if the nonce hasn't been seen and isn't too old, false if it should be rejected.
+   */
+  public synchronized boolean accept(long nonce) {
+    if (nonce <= 0) {
+      return false;
+    }
+    if (nonce > highest) {
+      // Forget the nonces that are sliding out of the window.
+      long advance = Math.min(nonce - highest, size);
+      for (long cleared = nonce - advance + 1; cleared <= nonce; cleared++) {
+        bitmap[word(cleared)] &= ~bit(cleared);
+      }
+      highest = nonce;
+    } else if (highest - nonce >= size) {
+      return false;
+    } else if ((bitmap[word(nonce)] & bit(nonce)) != 0) {
+      return false;
+    }
+    bitmap[word(nonce)] |= bit(nonce);
+    return true;
+  }
+
+  private int word(long nonce) {
+    return (int) ((nonce & (size - 1)) / Long.SIZE);
+  }
+
+  private static long bit(long nonce) {
+    return 1L << (nonce & (Long.SIZE - 1));
+  }
+}
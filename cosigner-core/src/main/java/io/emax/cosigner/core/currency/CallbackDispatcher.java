@@ -0,0 +1,331 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers monitor and job notifications to REST callbacks.
+ *
+ * <p>Each callback URL gets its own bounded queue that is drained by a small shared pool, using one
+ * pooled HTTP client, so slow or unreachable endpoints never hold up the monitors that feed them.
+ * Balance updates waiting in a queue are merged into one POST per currency, with only the newest
+ * balance kept for each address. Failed POSTs are retried with an increasing delay, and once the
+ * retries run out the endpoint's failure handler is called. If an endpoint can't keep up, its
+ * oldest notifications are dropped.
+ */
+public class CallbackDispatcher {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallbackDispatcher.class);
+
+  private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+  private final ScheduledThreadPoolExecutor executor;
+  private final CloseableHttpClient httpClient;
+  private final int queueSize;
+  private final int batchSize;
+  private final int maxRetries;
+  private final long retryDelay;
+
+  private static class BalanceUpdate {
+    private final String currency;
+    private final String address;
+    private final String balance;
+
+    BalanceUpdate(String currency, String address, String balance) {
+      this.currency = currency;
+      this.address = address;
+      this.balance = balance;
+    }
+  }
+
+  private static class Endpoint {
+    private final String url;
+    // Either a ready to send body, or a BalanceUpdate that can be merged with others.
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private final Deque<String> retrying = new ArrayDeque<>();
+    private Runnable onFailure;
+    private boolean scheduled = false;
+    private boolean closed = false;
+    private int attempts = 0;
+
+    Endpoint(String url) {
+      this.url = url;
+    }
+  }
+
+  // Static resolver
+  private static final CallbackDispatcher dispatcher = new CallbackDispatcher();
+
+  public static CallbackDispatcher getInstance() {
+    return dispatcher;
+  }
+  // End Static resolver, begin actual class.
+
+  private CallbackDispatcher() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    queueSize = config.getCallbackQueueSize();
+    batchSize = config.getCallbackBatchSize();
+    maxRetries = config.getCallbackMaxRetries();
+    retryDelay = config.getCallbackRetryDelay();
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "callback-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    executor = new ScheduledThreadPoolExecutor(config.getCallbackThreads(), threadFactory);
+
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(config.getCallbackThreads() * 2);
+    connectionManager.setDefaultMaxPerRoute(config.getCallbackThreads());
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(config.getCallbackTimeout())
+        .setSocketTimeout(config.getCallbackTimeout())
+        .setConnectionRequestTimeout(config.getCallbackTimeout()).build();
+    httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig).evictIdleConnections(60L, TimeUnit.SECONDS)
+        .build();
+
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    try {
+      metrics.register(MetricRegistry.name(CallbackDispatcher.class, "queued"),
+          (Gauge<Integer>) () -> endpoints.values().stream().mapToInt(endpoint -> {
+            synchronized (endpoint) {
+              return endpoint.queue.size() + endpoint.retrying.size();
+            }
+          }).sum());
+      metrics.register(MetricRegistry.name(CallbackDispatcher.class, "endpoints"),
+          (Gauge<Integer>) endpoints::size);
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * Queue a notification for a callback.
+   *
+   * @param url       Callback URL.
+   * @param body      JSON body to POST.
+   * @param onFailure Called if the notification can't be delivered after retrying, may be null.
+   */
+  public void send(String url, String body, Runnable onFailure) {
+    enqueue(url, body, onFailure);
+  }
+
+  /**
+   * Queue a balance update for a callback. Updates that are still waiting are merged into a single
+   * {@link CurrencyParameters} per currency before they're sent.
+   *
+   * @param url       Callback URL.
+   * @param currency  Currency symbol.
+   * @param address   Address the balance is for.
+   * @param balance   Current balance.
+   * @param onFailure Called if the update can't be delivered after retrying, may be null.
+   */
+  public void sendBalance(String url, String currency, String address, String balance,
+      Runnable onFailure) {
+    enqueue(url, new BalanceUpdate(currency, address, balance), onFailure);
+  }
+
+  /**
+   * Drop anything still waiting for a callback.
+   */
+  public void cancel(String url) {
+    Endpoint endpoint = endpoints.remove(url);
+    if (endpoint != null) {
+      synchronized (endpoint) {
+        endpoint.closed = true;
+        endpoint.queue.clear();
+        endpoint.retrying.clear();
+      }
+    }
+  }
+
+  private void enqueue(String url, Object item, Runnable onFailure) {
+    boolean queued = false;
+    while (!queued) {
+      Endpoint endpoint = endpoints.computeIfAbsent(url, Endpoint::new);
+      synchronized (endpoint) {
+        // A closed endpoint lost a race with going idle, loop around and pick up the new one.
+        if (!endpoint.closed) {
+          if (onFailure != null) {
+            endpoint.onFailure = onFailure;
+          }
+          if (endpoint.queue.size() >= queueSize) {
+            endpoint.queue.pollFirst();
+            CosignerApplication.getMetrics()
+                .meter(MetricRegistry.name(CallbackDispatcher.class, "dropped")).mark();
+            LOGGER.warn("Callback queue for " + url + " is full, dropping oldest notification");
+          }
+          endpoint.queue.addLast(item);
+          if (!endpoint.scheduled) {
+            endpoint.scheduled = true;
+            executor.execute(() -> drain(endpoint));
+          }
+          queued = true;
+        }
+      }
+    }
+  }
+
+  private void drain(Endpoint endpoint) {
+    Deque<String> bodies;
+    synchronized (endpoint) {
+      if (endpoint.closed) {
+        return;
+      }
+      if (endpoint.retrying.isEmpty()) {
+        endpoint.retrying.addAll(nextBatch(endpoint));
+      }
+      bodies = new ArrayDeque<>(endpoint.retrying);
+    }
+
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    boolean failed = false;
+    while (!bodies.isEmpty()) {
+      String body = bodies.peekFirst();
+      if (post(endpoint.url, body)) {
+        metrics.meter(MetricRegistry.name(CallbackDispatcher.class, "delivered")).mark();
+        bodies.pollFirst();
+        synchronized (endpoint) {
+          endpoint.retrying.pollFirst();
+          endpoint.attempts = 0;
+        }
+      } else {
+        failed = true;
+        break;
+      }
+    }
+
+    Runnable onFailure = null;
+    synchronized (endpoint) {
+      if (endpoint.closed) {
+        return;
+      }
+      if (failed) {
+        endpoint.attempts++;
+        if (endpoint.attempts > maxRetries) {
+          LOGGER.warn("Giving up on callback " + endpoint.url + " after " + maxRetries
+              + " retries");
+          metrics.meter(MetricRegistry.name(CallbackDispatcher.class, "failed"))
+              .mark(endpoint.retrying.size());
+          endpoint.retrying.clear();
+          endpoint.attempts = 0;
+          onFailure = endpoint.onFailure;
+        } else {
+          metrics.meter(MetricRegistry.name(CallbackDispatcher.class, "retried")).mark();
+          long delay = retryDelay << Math.min(endpoint.attempts - 1, 16);
+          executor.schedule(() -> drain(endpoint), delay, TimeUnit.MILLISECONDS);
+          return;
+        }
+      }
+
+      if (endpoint.queue.isEmpty() && endpoint.retrying.isEmpty()) {
+        // Nothing left, let the endpoint go so idle callbacks don't pile up.
+        endpoint.scheduled = false;
+        endpoint.closed = true;
+        endpoints.remove(endpoint.url, endpoint);
+      } else {
+        executor.execute(() -> drain(endpoint));
+      }
+    }
+
+    if (onFailure != null) {
+      try {
+        onFailure.run();
+      } catch (Exception e) {
+        LOGGER.debug(null, e);
+      }
+    }
+  }
+
+  private List<String> nextBatch(Endpoint endpoint) {
+    List<String> batch = new LinkedList<>();
+    Map<String, Map<String, String>> balances = new LinkedHashMap<>();
+    int taken = 0;
+    while (taken < batchSize && !endpoint.queue.isEmpty()) {
+      Object item = endpoint.queue.pollFirst();
+      taken++;
+      if (item instanceof BalanceUpdate) {
+        BalanceUpdate update = (BalanceUpdate) item;
+        balances.computeIfAbsent(update.currency, currency -> new LinkedHashMap<>())
+            .put(update.address, update.balance);
+      } else {
+        batch.add((String) item);
+      }
+    }
+
+    balances.forEach((currency, addressBalances) -> {
+      CurrencyParameters responseParms = new CurrencyParameters();
+      responseParms.setCurrencySymbol(currency);
+      responseParms.setAccount(new LinkedList<>(addressBalances.keySet()));
+      List<CurrencyParametersRecipient> receivers = new LinkedList<>();
+      addressBalances.forEach((address, balance) -> {
+        CurrencyParametersRecipient accountData = new CurrencyParametersRecipient();
+        accountData.setAmount(balance);
+        accountData.setRecipientAddress(address);
+        receivers.add(accountData);
+      });
+      responseParms.setReceivingAccount(receivers);
+      batch.add(Json.stringifyObject(CurrencyParameters.class, responseParms));
+    });
+    return batch;
+  }
+
+  private boolean post(String url, String body) {
+    HttpPost httpPost = new HttpPost(url);
+    httpPost.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+    try (Timer.Context ignored = CosignerApplication.getMetrics()
+        .timer(MetricRegistry.name(CallbackDispatcher.class, "post")).time();
+        CloseableHttpResponse response = httpClient.execute(httpPost)) {
+      EntityUtils.consume(response.getEntity());
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode >= 400 && statusCode < 500 && statusCode != 429) {
+        // The endpoint doesn't want it, sending it again won't change that.
+        LOGGER.debug("Callback " + url + " refused notification with HTTP " + statusCode);
+        CosignerApplication.getMetrics()
+            .meter(MetricRegistry.name(CallbackDispatcher.class, "refused")).mark();
+        return true;
+      }
+      return statusCode < 400;
+    } catch (IOException e) {
+      LOGGER.debug(null, e);
+      return false;
+    }
+  }
+}
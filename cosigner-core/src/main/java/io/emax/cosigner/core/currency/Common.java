@@ -1,5 +1,7 @@
 package io.emax.cosigner.core.currency;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -7,35 +9,29 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.emax.cosigner.api.core.CosignerResponse;
 import io.emax.cosigner.api.core.CurrencyPackageInterface;
 import io.emax.cosigner.api.core.CurrencyParameters;
-import io.emax.cosigner.api.core.CurrencyParametersRecipient;
 import io.emax.cosigner.api.core.Server;
-import io.emax.cosigner.api.currency.Monitor;
 import io.emax.cosigner.api.currency.SigningType;
 import io.emax.cosigner.api.currency.Wallet.Recipient;
 import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
-import io.emax.cosigner.api.validation.Validator;
 import io.emax.cosigner.common.Json;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.core.CosignerApplication;
 import io.emax.cosigner.core.cluster.ClusterInfo;
 import io.emax.cosigner.core.cluster.Coordinator;
+import io.emax.cosigner.core.cluster.ShardRouter;
 import io.emax.cosigner.core.cluster.commands.CurrencyCommand;
 import io.emax.cosigner.core.cluster.commands.CurrencyCommandType;
 
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
 import org.eclipse.jetty.websocket.api.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import rx.Subscription;
-
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -43,11 +39,23 @@ import java.util.Map;
 public class Common {
   private static final Logger LOGGER = LoggerFactory.getLogger(Common.class);
 
-  private static final HashMap<String, HashMap<String, Subscription>> balanceSubscriptions =
-      new HashMap<>();
-  private static final HashMap<String, HashMap<String, Subscription>> transactionSubscriptions =
-      new HashMap<>();
-  private static final HashMap<String, HashMap<String, Monitor>> monitors = new HashMap<>();
+  // Times an API call and records it as a trace span.
+  private static class ApiCall implements AutoCloseable {
+    private final Timer.Context timer;
+    private final Tracer.Span span;
+
+    ApiCall(String name) {
+      timer = CosignerApplication.getMetrics().timer(MetricRegistry.name(Common.class, name))
+          .time();
+      span = Tracer.trace("Common." + name);
+    }
+
+    @Override
+    public void close() {
+      span.close();
+      timer.stop();
+    }
+  }
 
   private static CurrencyParameters convertParams(String params) {
     try {
@@ -88,7 +96,7 @@ public class Common {
    * @return String list of currencies.
    */
   public static String listCurrencies() {
-    try {
+    try (ApiCall call = new ApiCall("listCurrencies")) {
       List<String> currencies = new LinkedList<>();
       CosignerApplication.getCurrencies().keySet().forEach(currencies::add);
 
@@ -109,7 +117,7 @@ public class Common {
    * Registers addresses for currency libraries that need a watch list.
    */
   public static String registerAddress(String params) {
-    try {
+    try (ApiCall call = new ApiCall("registerAddress")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -139,7 +147,7 @@ public class Common {
    * keys.
    */
   public static String getNewAddress(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getNewAddress")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -167,7 +175,7 @@ public class Common {
    * Generates a currency-specific address from a public key.
    */
   public static String generateAddressFromKey(String params) {
-    try {
+    try (ApiCall call = new ApiCall("generateAddressFromKey")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -193,7 +201,7 @@ public class Common {
    * key.
    */
   public static String listAllAddresses(String params) {
-    try {
+    try (ApiCall call = new ApiCall("listAllAddresses")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -221,7 +229,7 @@ public class Common {
    * @return List of transactions that affect each account.
    */
   public static String listTransactions(String params) {
-    try {
+    try (ApiCall call = new ApiCall("listTransactions")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -266,7 +274,7 @@ public class Common {
    * Get transaction details for a specific transaction ID.
    */
   public static String getTransaction(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getTransaction")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -291,7 +299,7 @@ public class Common {
    * @return Sum of all balances for the provided addresses.
    */
   public static String getBalance(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getBalance")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -326,7 +334,7 @@ public class Common {
    * @return Sum of all pending balances for the provided addresses.
    */
   public static String getPendingBalance(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getPendingBalance")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -354,23 +362,6 @@ public class Common {
     }
   }
 
-  private static void cleanUpSubscriptions(String id) {
-    if (balanceSubscriptions.containsKey(id)) {
-      balanceSubscriptions.get(id).forEach((s, subscription) -> subscription.unsubscribe());
-      balanceSubscriptions.remove(id);
-    }
-
-    if (transactionSubscriptions.containsKey(id)) {
-      transactionSubscriptions.get(id).forEach((s, subscription) -> subscription.unsubscribe());
-      transactionSubscriptions.remove(id);
-    }
-
-    if (monitors.containsKey(id)) {
-      monitors.get(id).forEach((s, monitor) -> monitor.destroyMonitor());
-      monitors.remove(id);
-    }
-  }
-
   /**
    * Sets up a monitor for the given addresses.
    *
@@ -388,7 +379,27 @@ public class Common {
    * actual data is sent through the socket or callback.
    */
   public static String monitorBalance(String params, Session responseSocket) {
-    try {
+    return monitorBalance(params, responseSocket, true);
+  }
+
+  /**
+   * Sets up a monitor for the given addresses.
+   *
+   * <p>When monitoring is sharded, REST callbacks are routed to the servers that own each address.
+   * Web sockets are tied to this server, so they're always watched here.
+   *
+   * @param params         {@link CurrencyParameters} with the currency code and addresses filled
+   *                       in. If using a REST callback, the callback needs to be filled in as
+   *                       well.
+   * @param responseSocket If this has been called using a web socket, pass the socket in here and
+   *                       the data will be written to is as it's available.
+   * @param routeToOwners  Indicates whether callback subscriptions should be sent to the owning
+   *                       servers, false when another server has already routed them here.
+   * @return An empty {@link CurrencyParameters} object is returned when the monitor is set up.
+   */
+  public static String monitorBalance(String params, Session responseSocket,
+      boolean routeToOwners) {
+    try (ApiCall call = new ApiCall("monitorBalance")) {
       CurrencyParameters currencyParams = convertParams(params);
 
       CurrencyParameters returnParms = new CurrencyParameters();
@@ -396,180 +407,18 @@ public class Common {
 
       // Web socket was passed to us
       if (responseSocket != null) {
-        if (monitors.containsKey(responseSocket.toString())) {
-          HashMap<String, Monitor> myMonitors = monitors.get(responseSocket.toString());
-          LOGGER.debug("Found existing monitor set");
-          if (myMonitors.containsKey(currencyParams.getCurrencySymbol())) {
-            LOGGER.debug("Adding addresses to " + currencyParams.getCurrencySymbol());
-            Monitor myMonitor = myMonitors.get(currencyParams.getCurrencySymbol());
-            myMonitor.addAddresses(currencyParams.getAccount());
-          }
-        } else {
-          LOGGER.debug("Creating new monitor set");
-          cleanUpSubscriptions(responseSocket.toString());
-
-          HashMap<String, Subscription> myBalances = new HashMap<>();
-          HashMap<String, Subscription> myTransactions = new HashMap<>();
-          HashMap<String, Monitor> myMonitors = new HashMap<>();
-          CosignerApplication.getCurrencies().forEach((s, currencyPackageInterface) -> {
-            LOGGER.debug("Creating monitor subscriptions for " + s);
-            Monitor monitor = currencyPackageInterface.getMonitor().createNewMonitor();
-            if (currencyParams.getCurrencySymbol().equals(s)) {
-              LOGGER.debug("Adding addresses to monitor for " + s);
-              monitor.addAddresses(currencyParams.getAccount());
-            }
-
-            Subscription wsBalanceSubscription =
-                monitor.getObservableBalances().subscribe(balanceMap -> {
-                  LOGGER.debug("Got balance tick for " + s);
-                  LOGGER.debug(s + "Balance Map: " + Json.stringifyObject(Map.class, balanceMap));
-                  balanceMap.forEach((address, balance) -> {
-                    try {
-                      CurrencyParameters responseParms = new CurrencyParameters();
-                      responseParms.setCurrencySymbol(s);
-                      responseParms.setAccount(new LinkedList<>());
-                      responseParms.getAccount().add(address);
-                      CurrencyParametersRecipient accountData = new CurrencyParametersRecipient();
-                      accountData.setAmount(balance);
-                      accountData.setRecipientAddress(address);
-                      responseParms.setReceivingAccount(Collections.singletonList(accountData));
-                      LOGGER.debug("Sending balance update...");
-                      responseSocket.getRemote().sendString(
-                          Json.stringifyObject(CurrencyParameters.class, responseParms));
-                      responseSocket.getRemote().flush();
-                    } catch (Exception e) {
-                      LOGGER.debug(null, e);
-                      cleanUpSubscriptions(responseSocket.toString());
-                    }
-                  });
-                });
-
-            Subscription wsTransactionSubscription =
-                monitor.getObservableTransactions().subscribe(transactionSet -> {
-                  LOGGER.debug("Got transaction tick for " + s);
-                  transactionSet.forEach(transaction -> {
-                    try {
-                      CurrencyParameters responseParms = new CurrencyParameters();
-                      responseParms.setCurrencySymbol(s);
-                      responseParms.setAccount(new LinkedList<>());
-                      responseParms.getAccount()
-                          .addAll(Arrays.asList(transaction.getFromAddress()));
-                      LinkedList<CurrencyParametersRecipient> receivers = new LinkedList<>();
-                      Arrays.asList(transaction.getToAddress()).forEach(address -> {
-                        CurrencyParametersRecipient sendData = new CurrencyParametersRecipient();
-                        sendData.setAmount(transaction.getAmount().toPlainString());
-                        sendData.setRecipientAddress(address);
-                        receivers.add(sendData);
-                      });
-                      responseParms.setReceivingAccount(receivers);
-                      responseParms.setTransactionData(transaction.getTxHash());
-                      responseSocket.getRemote().sendString(
-                          Json.stringifyObject(CurrencyParameters.class, responseParms));
-                      responseSocket.getRemote().flush();
-                    } catch (Exception e) {
-                      LOGGER.debug(null, e);
-                      cleanUpSubscriptions(responseSocket.toString());
-                    }
-                  });
-                });
-
-            myBalances.put(s, wsBalanceSubscription);
-            myTransactions.put(s, wsTransactionSubscription);
-            myMonitors.put(s, monitor);
-          });
-          balanceSubscriptions.put(responseSocket.toString(), myBalances);
-          transactionSubscriptions.put(responseSocket.toString(), myTransactions);
-          monitors.put(responseSocket.toString(), myMonitors);
-        }
+        LOGGER.debug("Adding addresses to " + currencyParams.getCurrencySymbol());
+        SubscriptionRegistry.getInstance()
+            .subscribe(responseSocket, currencyParams.getCurrencySymbol(),
+                currencyParams.getAccount());
       } else if (currencyParams.getCallback() != null && !currencyParams.getCallback().isEmpty()) {
         // It's a REST callback
-        if (monitors.containsKey(responseSocket.toString())) {
-          HashMap<String, Monitor> myMonitors = monitors.get(responseSocket.toString());
-          if (myMonitors.containsKey(currencyParams.getCurrencySymbol())) {
-            Monitor myMonitor = myMonitors.get(currencyParams.getCurrencySymbol());
-            myMonitor.addAddresses(currencyParams.getAccount());
-          }
+        if (routeToOwners && ShardRouter.getInstance().isEnabled()) {
+          routeSubscription(currencyParams);
         } else {
-          cleanUpSubscriptions(responseSocket.toString());
-
-          HashMap<String, Subscription> myBalances = new HashMap<>();
-          HashMap<String, Subscription> myTransactions = new HashMap<>();
-          HashMap<String, Monitor> myMonitors = new HashMap<>();
-          CosignerApplication.getCurrencies().forEach((s, currencyPackageInterface) -> {
-            Monitor monitor = currencyPackageInterface.getMonitor().createNewMonitor();
-            if (currencyParams.getCurrencySymbol().equals(s)) {
-              monitor.addAddresses(currencyParams.getAccount());
-            }
-
-            Subscription rsBalanceSubscription =
-                monitor.getObservableBalances().subscribe(balanceMap -> {
-                  balanceMap.forEach((address, balance) -> {
-                    try {
-                      CurrencyParameters responseParms = new CurrencyParameters();
-                      responseParms.setCurrencySymbol(s);
-                      responseParms.setAccount(new LinkedList<>());
-                      responseParms.getAccount().add(address);
-                      CurrencyParametersRecipient accountData = new CurrencyParametersRecipient();
-                      accountData.setAmount(balance);
-                      accountData.setRecipientAddress(address);
-                      responseParms.setReceivingAccount(Collections.singletonList(accountData));
-
-                      HttpPost httpPost = new HttpPost(currencyParams.getCallback());
-                      httpPost.addHeader("content-type", "application/json");
-                      StringEntity entity;
-                      entity = new StringEntity(
-                          Json.stringifyObject(CurrencyParameters.class, responseParms));
-                      httpPost.setEntity(entity);
-
-                      HttpClients.createDefault().execute(httpPost).close();
-                    } catch (Exception e) {
-                      LOGGER.debug(null, e);
-                      cleanUpSubscriptions(currencyParams.getCallback());
-                    }
-                  });
-                });
-
-            Subscription rsTransactionSubscription =
-                monitor.getObservableTransactions().subscribe(transactionSet -> {
-                  transactionSet.forEach(transaction -> {
-                    try {
-                      CurrencyParameters responseParms = new CurrencyParameters();
-                      responseParms.setCurrencySymbol(s);
-                      responseParms.setAccount(new LinkedList<>());
-                      responseParms.getAccount()
-                          .addAll(Arrays.asList(transaction.getFromAddress()));
-                      LinkedList<CurrencyParametersRecipient> receivers = new LinkedList<>();
-                      Arrays.asList(transaction.getToAddress()).forEach(address -> {
-                        CurrencyParametersRecipient sendData = new CurrencyParametersRecipient();
-                        sendData.setAmount(transaction.getAmount().toPlainString());
-                        sendData.setRecipientAddress(address);
-                        receivers.add(sendData);
-                      });
-                      responseParms.setReceivingAccount(receivers);
-                      responseParms.setTransactionData(transaction.getTxHash());
-
-                      HttpPost httpPost = new HttpPost(currencyParams.getCallback());
-                      httpPost.addHeader("content-type", "application/json");
-                      StringEntity entity;
-                      entity = new StringEntity(
-                          Json.stringifyObject(CurrencyParameters.class, responseParms));
-                      httpPost.setEntity(entity);
-
-                      HttpClients.createDefault().execute(httpPost).close();
-                    } catch (Exception e) {
-                      LOGGER.debug(null, e);
-                      cleanUpSubscriptions(currencyParams.getCallback());
-                    }
-                  });
-                });
-
-            myBalances.put(s, rsBalanceSubscription);
-            myTransactions.put(s, rsTransactionSubscription);
-            myMonitors.put(s, monitor);
-          });
-          balanceSubscriptions.put(responseSocket.toString(), myBalances);
-          transactionSubscriptions.put(responseSocket.toString(), myTransactions);
-          monitors.put(responseSocket.toString(), myMonitors);
+          SubscriptionRegistry.getInstance()
+              .subscribe(currencyParams.getCallback(), currencyParams.getCurrencySymbol(),
+                  currencyParams.getAccount());
         }
       }
 
@@ -585,6 +434,27 @@ public class Common {
     }
   }
 
+  private static void routeSubscription(CurrencyParameters currencyParams) throws Exception {
+    ShardRouter router = ShardRouter.getInstance();
+    Map<Server, List<String>> addressesByOwner = new LinkedHashMap<>();
+    currencyParams.getAccount().forEach(address -> router.getOwners(address).forEach(
+        owner -> addressesByOwner.computeIfAbsent(owner, key -> new LinkedList<>()).add(address)));
+
+    List<String> failed = new LinkedList<>();
+    addressesByOwner.forEach((owner, addresses) -> {
+      if (owner.equals(ClusterInfo.getInstance().getThisServer())) {
+        SubscriptionRegistry.getInstance()
+            .subscribe(currencyParams.getCallback(), currencyParams.getCurrencySymbol(), addresses);
+      } else if (!router.forwardSubscription(owner, currencyParams.getCurrencySymbol(),
+          currencyParams.getCallback(), addresses)) {
+        failed.addAll(addresses);
+      }
+    });
+    if (!failed.isEmpty()) {
+      throw new Exception("Could not reach the servers watching " + failed + ", try again.");
+    }
+  }
+
   /**
    * Create and sign a transaction.
    *
@@ -597,7 +467,7 @@ public class Common {
    */
 
   public static String prepareTransaction(String params) {
-    try {
+    try (ApiCall call = new ApiCall("prepareTransaction")) {
       CurrencyParameters currencyParams = convertParams(params);
 
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
@@ -638,10 +508,9 @@ public class Common {
       }
 
       // Try to validate it, don't sign if it fails.
-      for (Validator validator : CosignerApplication.getValidators()) {
-        if (!validator.validateTransaction(currency, currencyParams.getTransactionData())) {
-          throw new Exception("Validation failed, transaction not ok.");
-        }
+      if (!ValidationStage.getInstance()
+          .validate(currency, currencyParams.getTransactionData())) {
+        throw new Exception("Validation failed, transaction not ok.");
       }
 
       // Send it if it's a sign-each and there's more than one signature
@@ -667,7 +536,7 @@ public class Common {
    * Get list of addresses that could sign this transaction.
    */
   public static String getSignersForTransaction(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getSignersForTransaction")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -689,7 +558,7 @@ public class Common {
    * Get the data needed to create an offline signature for the transaction.
    */
   public static String getSignatureString(String params) {
-    try {
+    try (ApiCall call = new ApiCall("getSignatureString")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -717,7 +586,7 @@ public class Common {
    */
   @SuppressWarnings("unchecked")
   public static String applySignature(String params) {
-    try {
+    try (ApiCall call = new ApiCall("applySignature")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -757,17 +626,17 @@ public class Common {
    * @return Signed transaction string
    */
   public static String approveTransaction(String params, boolean sendToRemotes) {
-    try {
+    try (ApiCall call = new ApiCall("approveTransaction")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
+      boolean signedHere = false;
       for (Server server : ClusterInfo.getInstance().getServers()) {
         if (server.isOriginator()) { // It's us, try to sign it locally.
           // But first check that it's valid.
-          for (Validator validator : CosignerApplication.getValidators()) {
-            if (!validator.validateTransaction(currency, currencyParams.getTransactionData())) {
-              throw new Exception("Transaction could not be validated.");
-            }
+          if (!ValidationStage.getInstance()
+              .validate(currency, currencyParams.getTransactionData())) {
+            throw new Exception("Transaction could not be validated.");
           }
 
           // Apply user-key signature first if it exists.
@@ -781,6 +650,7 @@ public class Common {
           String sigAttempt = currency.getWallet()
               .signTransaction(currencyParams.getTransactionData(),
                   currencyParams.getAccount().get(0));
+          signedHere = !sigAttempt.equalsIgnoreCase(currencyParams.getTransactionData());
           currencyParams.setTransactionData(sigAttempt);
         } else if (sendToRemotes) {
           try {
@@ -814,6 +684,11 @@ public class Common {
         }
       }
       String response = currencyParams.getTransactionData();
+      if (signedHere) {
+        // Counted once the rest of the cluster has signed, so validators can match it by hash when
+        // it's mined.
+        ValidationStage.getInstance().transactionSigned(currency, response);
+      }
 
       LOGGER.debug("[Response] " + response);
       CosignerResponse cosignerResponse = new CosignerResponse();
@@ -834,7 +709,7 @@ public class Common {
    * @return The transaction hash/ID.
    */
   public static String submitTransaction(String params) {
-    try {
+    try (ApiCall call = new ApiCall("submitTransaction")) {
       CurrencyParameters currencyParams = convertParams(params);
       CurrencyPackageInterface currency = lookupCurrency(currencyParams);
 
@@ -851,4 +726,43 @@ public class Common {
     }
   }
 
+  /**
+   * Queue a transaction stage to run in the background.
+   *
+   * @param stage          Which stage to run: prepare, approve or broadcast.
+   * @param params         {@link CurrencyParameters} as expected by the matching synchronous
+   *                       method. If the callback is filled in, the finished job is posted to it.
+   * @param responseSocket If this has been called using a web socket, the finished job is written
+   *                       to it.
+   * @return The job ID, which can be passed to getTransactionJob.
+   */
+  public static String queueTransactionStage(TransactionJob.Stage stage, String params,
+      Session responseSocket) {
+    TransactionJob job = TransactionPipeline.getInstance().submit(stage, params, responseSocket);
+    if (job.getStatus() == TransactionJob.Status.REJECTED) {
+      return job.getResult();
+    }
+
+    LOGGER.debug("[Response] " + job.getJobId());
+    CosignerResponse cosignerResponse = new CosignerResponse();
+    cosignerResponse.setResult(job.getJobId());
+    return Json.stringifyObject(CosignerResponse.class, cosignerResponse);
+  }
+
+  /**
+   * Look up the status of a queued transaction stage.
+   *
+   * @param jobId Job ID returned when the stage was queued.
+   * @return The {@link TransactionJob}, including the stage's response once it's done.
+   */
+  public static String getTransactionJob(String jobId) {
+    TransactionJob job = TransactionPipeline.getInstance().getJob(jobId);
+    CosignerResponse cosignerResponse = new CosignerResponse();
+    if (job == null) {
+      cosignerResponse.setError("No such job: " + jobId);
+    } else {
+      cosignerResponse.setResult(Json.stringifyObject(TransactionJob.class, job));
+    }
+    return Json.stringifyObject(CosignerResponse.class, cosignerResponse);
+  }
 }
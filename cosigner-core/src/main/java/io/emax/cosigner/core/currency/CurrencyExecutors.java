@@ -0,0 +1,125 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link Common} calls on a bounded executor per currency.
+ *
+ * <p>Calls into the currency libraries block on their node, so they're kept off of the Jetty
+ * threads. Each currency gets its own pool, a slow or overloaded node only queues up requests for
+ * that currency, and once its queue is full new requests are turned away instead of waiting.
+ */
+public class CurrencyExecutors {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CurrencyExecutors.class);
+  private static final String NO_CURRENCY = "none";
+
+  private final ConcurrentHashMap<String, ThreadPoolExecutor> executors =
+      new ConcurrentHashMap<>();
+  private final int threads;
+  private final int queueSize;
+
+  // Static resolver
+  private static final CurrencyExecutors currencyExecutors = new CurrencyExecutors();
+
+  public static CurrencyExecutors getInstance() {
+    return currencyExecutors;
+  }
+  // End Static resolver, begin actual class.
+
+  private CurrencyExecutors() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    threads = config.getRequestThreadsPerCurrency();
+    queueSize = config.getRequestQueueSize();
+  }
+
+  /**
+   * Run a request on the executor for the currency named in its parameters.
+   *
+   * @param params JSON representation of {@link CurrencyParameters}, used to pick the executor.
+   * @param call   The {@link Common} call to make.
+   * @return The call's response, or an error response if the currency's queue is full.
+   */
+  public CompletableFuture<String> submit(String params, Supplier<String> call) {
+    String currency = lookupSymbol(params);
+    try {
+      return CompletableFuture.supplyAsync(call, getExecutor(currency)).exceptionally(e -> {
+        LOGGER.debug(null, e);
+        return errorResponse(e.toString());
+      });
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("Request queue for " + currency + " is full");
+      CosignerApplication.getMetrics()
+          .meter(MetricRegistry.name(CurrencyExecutors.class, currency, "rejected")).mark();
+      return CompletableFuture
+          .completedFuture(errorResponse(currency + " is busy, try again later."));
+    }
+  }
+
+  private ThreadPoolExecutor getExecutor(String currency) {
+    return executors.computeIfAbsent(currency, symbol -> {
+      AtomicInteger threadCount = new AtomicInteger();
+      ThreadFactory threadFactory = runnable -> {
+        Thread thread =
+            new Thread(runnable, "currency-" + symbol + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      };
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(queueSize), threadFactory);
+      executor.allowCoreThreadTimeOut(true);
+
+      try {
+        CosignerApplication.getMetrics()
+            .register(MetricRegistry.name(CurrencyExecutors.class, symbol, "queued"),
+                (Gauge<Integer>) () -> executor.getQueue().size());
+      } catch (IllegalArgumentException e) {
+        LOGGER.debug(null, e);
+      }
+      return executor;
+    });
+  }
+
+  private static String lookupSymbol(String params) {
+    try {
+      CurrencyParameters currencyParams =
+          (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, params);
+      if (currencyParams != null && currencyParams.getCurrencySymbol() != null
+          && CosignerApplication.getCurrencies().containsKey(currencyParams.getCurrencySymbol())) {
+        return currencyParams.getCurrencySymbol();
+      }
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+    }
+    return NO_CURRENCY;
+  }
+
+  private static String errorResponse(String error) {
+    CosignerResponse cosignerResponse = new CosignerResponse();
+    cosignerResponse.setError(error);
+    return Json.stringifyObject(CosignerResponse.class, cosignerResponse);
+  }
+}
@@ -0,0 +1,517 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.api.currency.Monitor;
+import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.cluster.ClusterInfo;
+import io.emax.cosigner.core.cluster.HashRing;
+import io.emax.cosigner.core.cluster.ShardRouter;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks who is watching which addresses.
+ *
+ * <p>There's one shared monitor per currency, holding the union of every subscriber's addresses.
+ * Subscribers are web socket sessions or REST callbacks, and a reverse index from address to
+ * subscribers lets each monitor tick go straight to the subscribers that care about it. Addresses
+ * are dropped from the shared monitor once nobody is watching them.
+ *
+ * <p>With sharded monitoring, callbacks only get updates from the primary owner of each address,
+ * and when the cluster changes the subscriptions are handed to the servers that now own them. A
+ * handoff that fails is retried until the new owner takes it, and until the new primary has it the
+ * server handing it off keeps reporting the address.
+ */
+public class SubscriptionRegistry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionRegistry.class);
+
+  // Subscribers by session or callback URL.
+  private final ConcurrentHashMap<Object, Subscriber> subscribers = new ConcurrentHashMap<>();
+  // Currency -> address -> subscribers watching it.
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<Subscriber>>> watchers =
+      new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Monitor> monitors = new ConcurrentHashMap<>();
+
+  private abstract static class Subscriber {
+    private final Object key;
+    // Currency -> addresses this subscriber is watching.
+    private final ConcurrentHashMap<String, Set<String>> addresses = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    Subscriber(Object key) {
+      this.key = key;
+    }
+
+    abstract void sendBalances(String currency, Map<String, String> balances);
+
+    abstract void sendTransaction(String transaction);
+
+    abstract boolean isOpen();
+  }
+
+  private static class SocketSubscriber extends Subscriber {
+    private final Session session;
+
+    SocketSubscriber(Session session) {
+      super(session);
+      this.session = session;
+    }
+
+    @Override
+    void sendBalances(String currency, Map<String, String> balances) {
+      WebSocketPusher.getInstance().sendBalances(session, currency, balances);
+    }
+
+    @Override
+    void sendTransaction(String transaction) {
+      WebSocketPusher.getInstance().send(session, transaction);
+    }
+
+    @Override
+    boolean isOpen() {
+      return session.isOpen();
+    }
+  }
+
+  private class CallbackSubscriber extends Subscriber {
+    private final String callback;
+    private final Runnable onFailure;
+    // Currency -> address -> new owners that haven't taken the subscription yet.
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<Server>>> handoffs =
+        new ConcurrentHashMap<>();
+
+    CallbackSubscriber(String callback) {
+      super(callback);
+      this.callback = callback;
+      this.onFailure = () -> unsubscribe(callback);
+    }
+
+    @Override
+    void sendBalances(String currency, Map<String, String> balances) {
+      balances.forEach((address, balance) -> CallbackDispatcher.getInstance()
+          .sendBalance(callback, currency, address, balance, onFailure));
+    }
+
+    @Override
+    void sendTransaction(String transaction) {
+      CallbackDispatcher.getInstance().send(callback, transaction, onFailure);
+    }
+
+    @Override
+    boolean isOpen() {
+      return true;
+    }
+  }
+
+  // Static resolver
+  private static final SubscriptionRegistry registry = new SubscriptionRegistry();
+
+  public static SubscriptionRegistry getInstance() {
+    return registry;
+  }
+  // End Static resolver, begin actual class.
+
+  private SubscriptionRegistry() {
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    try {
+      metrics.register(MetricRegistry.name(SubscriptionRegistry.class, "subscribers"),
+          (Gauge<Integer>) subscribers::size);
+      metrics.register(MetricRegistry.name(SubscriptionRegistry.class, "addresses"),
+          (Gauge<Integer>) () -> watchers.values().stream().mapToInt(Map::size).sum());
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+    ShardRouter.getInstance().addListener(this::rebalance);
+    ShardRouter.getInstance().addRetry(this::retryHandoffs);
+  }
+
+  /**
+   * Watch addresses on behalf of a web socket session.
+   */
+  public void subscribe(Session session, String currency, Iterable<String> addresses) {
+    Subscriber subscriber =
+        subscribers.computeIfAbsent(session, key -> new SocketSubscriber(session));
+    addAddresses(subscriber, currency, addresses);
+  }
+
+  /**
+   * Watch addresses on behalf of a REST callback.
+   */
+  public void subscribe(String callback, String currency, Iterable<String> addresses) {
+    Subscriber subscriber =
+        subscribers.computeIfAbsent(callback, key -> new CallbackSubscriber(callback));
+    addAddresses(subscriber, currency, addresses);
+  }
+
+  /**
+   * Stop watching addresses for a subscriber.
+   */
+  public void unsubscribe(Object key, String currency, Iterable<String> addresses) {
+    Subscriber subscriber = subscribers.get(key);
+    if (subscriber == null) {
+      return;
+    }
+    Set<String> watched = subscriber.addresses.get(currency);
+    if (watched != null) {
+      addresses.forEach(address -> {
+        if (watched.remove(address)) {
+          removeWatcher(subscriber, currency, address);
+        }
+      });
+    }
+  }
+
+  /**
+   * Drop a subscriber and everything it was watching. Called when a web socket closes or a
+   * callback stops accepting updates.
+   *
+   * @param key The web socket {@link Session} or the callback URL.
+   */
+  public void unsubscribe(Object key) {
+    Subscriber subscriber = subscribers.remove(key);
+    if (subscriber == null) {
+      return;
+    }
+    subscriber.closed = true;
+    subscriber.addresses.forEach((currency, addresses) -> addresses
+        .forEach(address -> removeWatcher(subscriber, currency, address)));
+    subscriber.addresses.clear();
+    if (key instanceof String) {
+      CallbackDispatcher.getInstance().cancel((String) key);
+    }
+  }
+
+  private void addAddresses(Subscriber subscriber, String currency, Iterable<String> addresses) {
+    Monitor monitor = getMonitor(currency);
+    Set<String> watched =
+        subscriber.addresses.computeIfAbsent(currency, symbol -> ConcurrentHashMap.newKeySet());
+    ConcurrentHashMap<String, Set<Subscriber>> currencyWatchers =
+        watchers.computeIfAbsent(currency, symbol -> new ConcurrentHashMap<>());
+
+    Set<String> added = new HashSet<>();
+    addresses.forEach(address -> {
+      if (!watched.add(address)) {
+        return;
+      }
+      added.add(address);
+      // Updating the monitor inside compute keeps it in step with the index for each address.
+      currencyWatchers.compute(address, (key, addressWatchers) -> {
+        if (addressWatchers == null) {
+          addressWatchers = ConcurrentHashMap.newKeySet();
+          synchronized (monitor) {
+            monitor.addAddresses(Collections.singleton(address));
+          }
+        }
+        addressWatchers.add(subscriber);
+        return addressWatchers;
+      });
+    });
+
+    if (subscriber.closed) {
+      // Lost a race with the subscriber going away, don't leave its addresses behind.
+      added.forEach(address -> removeWatcher(subscriber, currency, address));
+      return;
+    }
+
+    // The shared monitor has already reported what it knows about addresses it was watching, so
+    // catch this subscriber up on those.
+    try {
+      new HashSet<>(monitor.getTransactions()).forEach(transaction -> {
+        if (involves(transaction, added)) {
+          subscriber.sendTransaction(stringifyTransaction(currency, transaction));
+        }
+      });
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+    }
+
+    // Likewise for balances, which are otherwise only sent when they change.
+    try {
+      Map<String, String> balances = new HashMap<>();
+      new HashMap<>(monitor.getBalances()).forEach((address, balance) -> {
+        if (added.contains(address) && reports(subscriber, currency, address,
+            ShardRouter.getInstance().isPrimary(address))) {
+          balances.put(address, balance);
+        }
+      });
+      if (!balances.isEmpty()) {
+        subscriber.sendBalances(currency, balances);
+      }
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  private void removeWatcher(Subscriber subscriber, String currency, String address) {
+    ConcurrentHashMap<String, Set<Subscriber>> currencyWatchers = watchers.get(currency);
+    if (currencyWatchers == null) {
+      return;
+    }
+    Monitor monitor = monitors.get(currency);
+    currencyWatchers.computeIfPresent(address, (key, addressWatchers) -> {
+      addressWatchers.remove(subscriber);
+      if (!addressWatchers.isEmpty()) {
+        return addressWatchers;
+      }
+      if (monitor != null) {
+        synchronized (monitor) {
+          monitor.removeAddresses(Collections.singleton(address));
+        }
+      }
+      return null;
+    });
+  }
+
+  private Monitor getMonitor(String currency) {
+    return monitors.computeIfAbsent(currency, symbol -> {
+      CurrencyPackageInterface currencyPackage = CosignerApplication.getCurrencies().get(symbol);
+      if (currencyPackage == null) {
+        throw new IllegalArgumentException("Unknown currency " + symbol);
+      }
+      LOGGER.debug("Creating shared monitor for " + symbol);
+      Monitor monitor = currencyPackage.getMonitor().createNewMonitor();
+      monitor.getObservableBalances()
+          .subscribe(balanceMap -> dispatchBalances(symbol, balanceMap),
+              error -> LOGGER.warn("Balance monitor for " + symbol + " failed", error));
+      monitor.getObservableTransactions()
+          .subscribe(transactions -> dispatchTransactions(symbol, transactions),
+              error -> LOGGER.warn("Transaction monitor for " + symbol + " failed", error));
+      return monitor;
+    });
+  }
+
+  private void dispatchBalances(String currency, Map<String, String> balanceMap) {
+    ConcurrentHashMap<String, Set<Subscriber>> currencyWatchers = watchers.get(currency);
+    if (currencyWatchers == null) {
+      return;
+    }
+
+    Map<Subscriber, Map<String, String>> updates = new HashMap<>();
+    new HashMap<>(balanceMap).forEach((address, balance) -> {
+      Set<Subscriber> addressWatchers = currencyWatchers.get(address);
+      if (addressWatchers != null) {
+        boolean primary = ShardRouter.getInstance().isPrimary(address);
+        addressWatchers.forEach(subscriber -> {
+          if (reports(subscriber, currency, address, primary)) {
+            updates.computeIfAbsent(subscriber, key -> new HashMap<>()).put(address, balance);
+          }
+        });
+      }
+    });
+
+    updates.forEach((subscriber, balances) -> {
+      if (!subscriber.isOpen()) {
+        unsubscribe(subscriber.key);
+      } else if (!subscriber.closed) {
+        subscriber.sendBalances(currency, balances);
+      }
+    });
+  }
+
+  private void dispatchTransactions(String currency, Set<TransactionDetails> transactions) {
+    ConcurrentHashMap<String, Set<Subscriber>> currencyWatchers = watchers.get(currency);
+    if (currencyWatchers == null) {
+      return;
+    }
+
+    transactions.forEach(transaction -> {
+      Set<Subscriber> interested = new HashSet<>();
+      addressesOf(transaction).forEach(address -> {
+        Set<Subscriber> addressWatchers = currencyWatchers.get(address);
+        if (addressWatchers != null) {
+          boolean primary = ShardRouter.getInstance().isPrimary(address);
+          addressWatchers.forEach(subscriber -> {
+            if (reports(subscriber, currency, address, primary)) {
+              interested.add(subscriber);
+            }
+          });
+        }
+      });
+      if (interested.isEmpty()) {
+        return;
+      }
+
+      String transactionString = stringifyTransaction(currency, transaction);
+      interested.forEach(subscriber -> {
+        if (!subscriber.isOpen()) {
+          unsubscribe(subscriber.key);
+        } else if (!subscriber.closed) {
+          subscriber.sendTransaction(transactionString);
+        }
+      });
+    });
+  }
+
+  private static boolean reports(Subscriber subscriber, String currency, String address,
+      boolean primary) {
+    if (primary || !(subscriber instanceof CallbackSubscriber)) {
+      return true;
+    }
+    // Keep reporting until the new primary has taken the subscription over.
+    Map<String, Set<Server>> pending = ((CallbackSubscriber) subscriber).handoffs.get(currency);
+    Set<Server> owners = pending == null ? null : pending.get(address);
+    if (owners == null) {
+      return false;
+    }
+    List<Server> currentOwners = ShardRouter.getInstance().getOwners(address);
+    return !currentOwners.isEmpty() && owners.contains(currentOwners.get(0));
+  }
+
+  /**
+   * Hand callback subscriptions to servers that became owners of their addresses, and drop the
+   * ones this server no longer owns.
+   *
+   * <p>Of the previous owners of an address, the first one still in the cluster does the handoff,
+   * so it's done once even if the primary left. A server still holding an unfinished handoff for
+   * an address carries on with it too.
+   */
+  private void rebalance(HashRing previous, HashRing current) {
+    Server thisServer = ClusterInfo.getInstance().getThisServer();
+    int copies = ShardRouter.getInstance().getReplicas() + 1;
+
+    getCallbackSubscribers().forEach(subscriber -> ((Subscriber) subscriber).addresses.forEach(
+        (currency, addresses) -> {
+          ConcurrentHashMap<String, Set<Server>> pending =
+              subscriber.handoffs.computeIfAbsent(currency, symbol -> new ConcurrentHashMap<>());
+          Set<String> checked = new HashSet<>(addresses);
+          checked.forEach(address -> {
+            List<Server> owners = current.getOwners(address, copies);
+            List<Server> previousOwners = previous.getOwners(address, copies);
+            Server lead = previousOwners.stream().filter(current.getMembers()::contains)
+                .findFirst().orElse(thisServer);
+            if (lead.equals(thisServer) || pending.containsKey(address)) {
+              owners.stream().filter(owner -> !previousOwners.contains(owner))
+                  .filter(owner -> !owner.equals(thisServer)).forEach(owner -> pending
+                  .computeIfAbsent(address, key -> ConcurrentHashMap.newKeySet()).add(owner));
+            }
+          });
+          handOff(subscriber, currency, current, checked);
+        }));
+  }
+
+  /**
+   * Try the handoffs that haven't gone through yet.
+   */
+  private void retryHandoffs() {
+    HashRing ring = ShardRouter.getInstance().getRing();
+    getCallbackSubscribers().forEach(subscriber -> subscriber.handoffs.forEach(
+        (currency, pending) -> {
+          if (!pending.isEmpty()) {
+            handOff(subscriber, currency, ring, new HashSet<>(pending.keySet()));
+          }
+        }));
+  }
+
+  /**
+   * Forward the pending handoffs for a currency, then stop watching any of the checked addresses
+   * that this server doesn't own and has finished handing off.
+   */
+  private void handOff(CallbackSubscriber subscriber, String currency, HashRing ring,
+      Set<String> checked) {
+    ShardRouter router = ShardRouter.getInstance();
+    Server thisServer = ClusterInfo.getInstance().getThisServer();
+    int copies = router.getReplicas() + 1;
+    ConcurrentHashMap<String, Set<Server>> pending = subscriber.handoffs.get(currency);
+    if (pending == null) {
+      return;
+    }
+
+    Map<Server, List<String>> handoffs = new HashMap<>();
+    pending.forEach((address, owners) -> {
+      // Servers that stopped being owners since don't need it any more.
+      owners.retainAll(ring.getOwners(address, copies));
+      owners.forEach(
+          owner -> handoffs.computeIfAbsent(owner, key -> new LinkedList<>()).add(address));
+    });
+    handoffs.forEach((owner, handedOff) -> {
+      if (router.forwardSubscription(owner, currency, subscriber.callback, handedOff)) {
+        handedOff.forEach(address -> pending.computeIfPresent(address, (key, owners) -> {
+          owners.remove(owner);
+          return owners;
+        }));
+      }
+    });
+    pending.values().removeIf(Set::isEmpty);
+
+    if (ring.getMembers().isEmpty()) {
+      return;
+    }
+    Set<String> dropped = new HashSet<>();
+    checked.forEach(address -> {
+      if (!pending.containsKey(address) && !ring.getOwners(address, copies).contains(thisServer)) {
+        dropped.add(address);
+      }
+    });
+    if (!dropped.isEmpty()) {
+      LOGGER.debug("No longer watching " + dropped.size() + " " + currency + " addresses for "
+          + subscriber.callback);
+      unsubscribe(subscriber.callback, currency, dropped);
+    }
+  }
+
+  private List<CallbackSubscriber> getCallbackSubscribers() {
+    List<CallbackSubscriber> callbacks = new LinkedList<>();
+    subscribers.values().forEach(subscriber -> {
+      if (subscriber instanceof CallbackSubscriber) {
+        callbacks.add((CallbackSubscriber) subscriber);
+      }
+    });
+    return callbacks;
+  }
+
+  private static List<String> addressesOf(TransactionDetails transaction) {
+    List<String> addresses = new LinkedList<>();
+    if (transaction.getFromAddress() != null) {
+      addresses.addAll(Arrays.asList(transaction.getFromAddress()));
+    }
+    if (transaction.getToAddress() != null) {
+      addresses.addAll(Arrays.asList(transaction.getToAddress()));
+    }
+    return addresses;
+  }
+
+  private static boolean involves(TransactionDetails transaction, Set<String> addresses) {
+    return addressesOf(transaction).stream().anyMatch(addresses::contains);
+  }
+
+  private static String stringifyTransaction(String currency, TransactionDetails transaction) {
+    CurrencyParameters responseParms = new CurrencyParameters();
+    responseParms.setCurrencySymbol(currency);
+    responseParms.setAccount(new LinkedList<>());
+    if (transaction.getFromAddress() != null) {
+      responseParms.getAccount().addAll(Arrays.asList(transaction.getFromAddress()));
+    }
+    LinkedList<CurrencyParametersRecipient> receivers = new LinkedList<>();
+    if (transaction.getToAddress() != null) {
+      Arrays.asList(transaction.getToAddress()).forEach(address -> {
+        CurrencyParametersRecipient sendData = new CurrencyParametersRecipient();
+        sendData.setAmount(transaction.getAmount().toPlainString());
+        sendData.setRecipientAddress(address);
+        receivers.add(sendData);
+      });
+    }
+    responseParms.setReceivingAccount(receivers);
+    responseParms.setTransactionData(transaction.getTxHash());
+    return Json.stringifyObject(CurrencyParameters.class, responseParms);
+  }
+}
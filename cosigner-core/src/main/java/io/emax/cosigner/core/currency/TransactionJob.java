@@ -0,0 +1,89 @@
+package io.emax.cosigner.core.currency;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Status record for a transaction stage that was submitted to the {@link TransactionPipeline}.
+ *
+ * <p>The result is the same {@link io.emax.cosigner.api.core.CosignerResponse} string the
+ * synchronous {@link Common} method would have returned, it is only filled in once the job is done.
+ */
+public class TransactionJob {
+  public enum Stage {
+    PREPARE, APPROVE, BROADCAST
+  }
+
+  public enum Status {
+    QUEUED, RUNNING, COMPLETE, FAILED, REJECTED
+  }
+
+  @JsonProperty
+  private String jobId;
+  @JsonProperty
+  private Stage stage;
+  @JsonProperty
+  private volatile Status status = Status.QUEUED;
+  @JsonProperty
+  private volatile String result;
+  @JsonProperty
+  private long submittedTime;
+  @JsonProperty
+  private volatile long completedTime;
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public void setJobId(String jobId) {
+    this.jobId = jobId;
+  }
+
+  public Stage getStage() {
+    return stage;
+  }
+
+  public void setStage(Stage stage) {
+    this.stage = stage;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public String getResult() {
+    return result;
+  }
+
+  public void setResult(String result) {
+    this.result = result;
+  }
+
+  public long getSubmittedTime() {
+    return submittedTime;
+  }
+
+  public void setSubmittedTime(long submittedTime) {
+    this.submittedTime = submittedTime;
+  }
+
+  public long getCompletedTime() {
+    return completedTime;
+  }
+
+  public void setCompletedTime(long completedTime) {
+    this.completedTime = completedTime;
+  }
+
+  /**
+   * Indicates whether the job has stopped, successfully or otherwise.
+   */
+  @JsonIgnore
+  public boolean isDone() {
+    return status == Status.COMPLETE || status == Status.FAILED || status == Status.REJECTED;
+  }
+}
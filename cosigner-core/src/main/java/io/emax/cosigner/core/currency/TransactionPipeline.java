@@ -0,0 +1,190 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+import io.emax.cosigner.core.currency.TransactionJob.Stage;
+import io.emax.cosigner.core.currency.TransactionJob.Status;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the prepare, approve and broadcast stages off of the request threads.
+ *
+ * <p>Each stage has its own bounded executor so a slow node or cluster peer only backs up the stage
+ * it's stuck in. Submissions return a job ID straight away, and the result can be polled for, or is
+ * pushed to the submitting web socket or the callback in the {@link CurrencyParameters}.
+ */
+public class TransactionPipeline {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransactionPipeline.class);
+
+  private final Map<Stage, ThreadPoolExecutor> executors = new EnumMap<>(Stage.class);
+  private final ConcurrentHashMap<String, TransactionJob> jobs = new ConcurrentHashMap<>();
+  private final long jobRetention;
+
+  // Static resolver
+  private static final TransactionPipeline pipeline = new TransactionPipeline();
+
+  public static TransactionPipeline getInstance() {
+    return pipeline;
+  }
+  // End Static resolver, begin actual class.
+
+  private TransactionPipeline() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    jobRetention = TimeUnit.MINUTES.toMillis(config.getPipelineJobRetention());
+
+    for (Stage stage : Stage.values()) {
+      String stageName = stage.name().toLowerCase(Locale.US);
+      AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(config.getPipelineThreads(), config.getPipelineThreads(), 60,
+              TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getPipelineQueueSize()),
+              runnable -> {
+                Thread thread = new Thread(runnable,
+                    "pipeline-" + stageName + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+      executors.put(stage, executor);
+
+      try {
+        CosignerApplication.getMetrics()
+            .register(MetricRegistry.name(TransactionPipeline.class, stageName, "queued"),
+                (Gauge<Integer>) () -> executor.getQueue().size());
+      } catch (IllegalArgumentException e) {
+        LOGGER.debug(null, e);
+      }
+    }
+  }
+
+  /**
+   * Queue up a transaction stage.
+   *
+   * @param stage          Which of the transaction stages to run.
+   * @param params         JSON representation of {@link CurrencyParameters}, as it would be passed
+   *                       to the synchronous {@link Common} method.
+   * @param responseSocket Web socket to notify when the job is done, may be null.
+   * @return The job as it stands after submission, rejected if the stage's queue is full.
+   */
+  public TransactionJob submit(Stage stage, String params, Session responseSocket) {
+    purgeJobs();
+
+    TransactionJob job = new TransactionJob();
+    job.setJobId(UUID.randomUUID().toString());
+    job.setStage(stage);
+    job.setSubmittedTime(System.currentTimeMillis());
+    jobs.put(job.getJobId(), job);
+
+    String stageName = stage.name().toLowerCase(Locale.US);
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+    long queuedAt = System.nanoTime();
+    try {
+      executors.get(stage).execute(() -> {
+        metrics.timer(MetricRegistry.name(TransactionPipeline.class, stageName, "wait"))
+            .update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        job.setStatus(Status.RUNNING);
+        try (Timer.Context ignored = metrics
+            .timer(MetricRegistry.name(TransactionPipeline.class, stageName, "execution"))
+            .time()) {
+          String result = runStage(stage, params);
+          CosignerResponse response =
+              (CosignerResponse) Json.objectifyString(CosignerResponse.class, result);
+          job.setResult(result);
+          if (response == null || response.getError() != null && !response.getError()
+              .isEmpty()) {
+            job.setStatus(Status.FAILED);
+          } else {
+            job.setStatus(Status.COMPLETE);
+          }
+        } catch (Exception e) {
+          LOGGER.debug(null, e);
+          CosignerResponse cosignerResponse = new CosignerResponse();
+          cosignerResponse.setError(e.toString());
+          job.setResult(Json.stringifyObject(CosignerResponse.class, cosignerResponse));
+          job.setStatus(Status.FAILED);
+        }
+        job.setCompletedTime(System.currentTimeMillis());
+        notifyListeners(job, params, responseSocket);
+      });
+      LOGGER.debug("Queued " + stageName + " job " + job.getJobId());
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("Transaction pipeline queue for " + stageName + " is full");
+      metrics.meter(MetricRegistry.name(TransactionPipeline.class, stageName, "rejected")).mark();
+      CosignerResponse cosignerResponse = new CosignerResponse();
+      cosignerResponse.setError("Transaction pipeline is busy, try again later.");
+      job.setResult(Json.stringifyObject(CosignerResponse.class, cosignerResponse));
+      job.setStatus(Status.REJECTED);
+      job.setCompletedTime(System.currentTimeMillis());
+    }
+
+    return job;
+  }
+
+  /**
+   * Look up a job that was submitted to the pipeline.
+   *
+   * @return The job, or null if it's unknown or has expired.
+   */
+  public TransactionJob getJob(String jobId) {
+    if (jobId == null) {
+      return null;
+    }
+    return jobs.get(jobId.trim());
+  }
+
+  private static String runStage(Stage stage, String params) {
+    switch (stage) {
+      case PREPARE:
+        return Common.prepareTransaction(params);
+      case APPROVE:
+        return Common.approveTransaction(params, true);
+      case BROADCAST:
+        return Common.submitTransaction(params);
+      default:
+        throw new IllegalArgumentException("Unknown stage " + stage);
+    }
+  }
+
+  private static void notifyListeners(TransactionJob job, String params, Session responseSocket) {
+    String jobString = Json.stringifyObject(TransactionJob.class, job);
+
+    if (responseSocket != null) {
+      WebSocketPusher.getInstance().send(responseSocket, jobString);
+    }
+
+    CurrencyParameters currencyParams =
+        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, params);
+    if (currencyParams != null && currencyParams.getCallback() != null && !currencyParams
+        .getCallback().isEmpty()) {
+      CallbackDispatcher.getInstance().send(currencyParams.getCallback(), jobString, null);
+    }
+  }
+
+  private void purgeJobs() {
+    long cutoff = System.currentTimeMillis() - jobRetention;
+    jobs.values().removeIf(job -> job.isDone() && job.getCompletedTime() < cutoff);
+  }
+}
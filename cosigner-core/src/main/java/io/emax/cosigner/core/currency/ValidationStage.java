@@ -0,0 +1,205 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.validation.Validator;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.Tracer;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs transactions past the configured validators.
+ *
+ * <p>The validators are independent of each other, so they're run side by side and the first one
+ * to reject the transaction decides the outcome. Verdicts are cached for a short time against the
+ * transaction's hash, so the prepare and approve steps for the same transaction only pay for it
+ * once. Anything that can change a verdict, such as a transaction being signed and counting
+ * towards the spending limits, moves the cache on to a new version.
+ */
+public class ValidationStage {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidationStage.class);
+
+  private final ConcurrentHashMap<String, Verdict> verdicts = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final ExecutorService executor;
+  private final int cacheSize;
+  private final long cacheTtl;
+
+  private static class Verdict {
+    private final boolean valid;
+    private final long expires;
+
+    Verdict(boolean valid, long expires) {
+      this.valid = valid;
+      this.expires = expires;
+    }
+  }
+
+  // Static resolver
+  private static final ValidationStage stage = new ValidationStage();
+
+  public static ValidationStage getInstance() {
+    return stage;
+  }
+  // End Static resolver, begin actual class.
+
+  private ValidationStage() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    cacheSize = config.getValidationCacheSize();
+    cacheTtl = config.getValidationCacheTtl();
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "validator-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    executor = Executors.newFixedThreadPool(config.getValidationThreads(), threadFactory);
+
+    try {
+      CosignerApplication.getMetrics()
+          .register(MetricRegistry.name(ValidationStage.class, "cached"),
+              (Gauge<Integer>) verdicts::size);
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * Check a transaction against every validator.
+   *
+   * @return False if any validator rejected it.
+   */
+  public boolean validate(CurrencyPackageInterface currency, String transaction) {
+    List<Validator> validators = new ArrayList<>(CosignerApplication.getValidators());
+    String key = cacheKey(currency, transaction, validators);
+    long now = System.currentTimeMillis();
+    MetricRegistry metrics = CosignerApplication.getMetrics();
+
+    Verdict verdict = verdicts.get(key);
+    if (verdict != null && verdict.expires > now) {
+      metrics.meter(MetricRegistry.name(ValidationStage.class, "hits")).mark();
+      return verdict.valid;
+    }
+    metrics.meter(MetricRegistry.name(ValidationStage.class, "misses")).mark();
+
+    boolean valid;
+    try (Timer.Context timer =
+        metrics.timer(MetricRegistry.name(ValidationStage.class, "validate")).time();
+        Tracer.Span span = Tracer.span("validate")) {
+      valid = runValidators(currency, transaction, validators);
+    }
+
+    if (verdicts.size() >= cacheSize) {
+      verdicts.values().removeIf(cached -> cached.expires <= now);
+      if (verdicts.size() >= cacheSize) {
+        verdicts.clear();
+      }
+    }
+    verdicts.put(key, new Verdict(valid, now + cacheTtl));
+    return valid;
+  }
+
+  /**
+   * Let the validators know that a transaction has been signed. Cached verdicts may no longer hold
+   * once it's counted, so they're dropped.
+   */
+  public void transactionSigned(CurrencyPackageInterface currency, String transaction) {
+    for (Validator validator : CosignerApplication.getValidators()) {
+      validator.transactionSigned(currency, transaction);
+    }
+    invalidate();
+  }
+
+  /**
+   * Forget every cached verdict, for when the validators or their configuration change.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+    verdicts.clear();
+  }
+
+  private boolean runValidators(CurrencyPackageInterface currency, String transaction,
+      List<Validator> validators) {
+    if (validators.size() == 1) {
+      return check(validators.get(0), currency, transaction);
+    }
+
+    ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+    List<Future<Boolean>> running = new LinkedList<>();
+    String traceContext = Tracer.currentContext();
+    validators.forEach(validator -> running.add(completion.submit(() -> {
+      try (Tracer.Span span = Tracer
+          .span("validator." + validator.getClass().getSimpleName(), traceContext)) {
+        return check(validator, currency, transaction);
+      }
+    })));
+    try {
+      for (int i = 0; i < running.size(); i++) {
+        if (!completion.take().get()) {
+          return false;
+        }
+      }
+      return true;
+    } catch (InterruptedException e) {
+      LOGGER.debug(null, e);
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      LOGGER.debug(null, e);
+      return false;
+    } finally {
+      // Nothing left to decide once one has said no.
+      running.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private static boolean check(Validator validator, CurrencyPackageInterface currency,
+      String transaction) {
+    try {
+      return validator.validateTransaction(currency, transaction);
+    } catch (Exception e) {
+      LOGGER.warn("Validator " + validator.getClass().getSimpleName() + " failed", e);
+      return false;
+    }
+  }
+
+  private String cacheKey(CurrencyPackageInterface currency, String transaction,
+      List<Validator> validators) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      String txHash = ByteUtilities
+          .toHexString(sha256.digest(transaction.getBytes(StandardCharsets.UTF_8)));
+      return version.get() + ":" + validators.hashCode() + ":" + currency.getConfiguration()
+          .getCurrencySymbol() + ":" + txHash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
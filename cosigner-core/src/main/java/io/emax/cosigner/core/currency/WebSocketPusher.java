@@ -0,0 +1,268 @@
+package io.emax.cosigner.core.currency;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking writer for web socket sessions.
+ *
+ * <p>Everything written to a session goes through its outbox, which has at most one frame on the
+ * wire at a time. Balance updates waiting in the outbox are merged by address, so a monitor tick
+ * goes out as one frame per currency, split into several if there are a lot of addresses. When a
+ * client can't keep up and its outbox fills, the configured {@link SlowConsumerPolicy} decides
+ * what to give up.
+ */
+public class WebSocketPusher {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketPusher.class);
+
+  public enum SlowConsumerPolicy {
+    // Drop the oldest waiting message.
+    DROP_OLDEST,
+    // Drop the oldest waiting balances first, they'll be superseded by the next tick anyway.
+    COALESCE,
+    // Close the session.
+    DISCONNECT
+  }
+
+  private final ConcurrentHashMap<Session, Outbox> outboxes = new ConcurrentHashMap<>();
+  private final int queueSize;
+  private final int maxFrameAddresses;
+  private final SlowConsumerPolicy policy;
+
+  private static class Outbox {
+    private final Deque<String> messages = new ArrayDeque<>();
+    private final Map<String, LinkedHashMap<String, String>> balances = new LinkedHashMap<>();
+    private int pendingBalances = 0;
+    private boolean sending = false;
+    private boolean closed = false;
+
+    int size() {
+      return messages.size() + pendingBalances;
+    }
+  }
+
+  // Static resolver
+  private static final WebSocketPusher pusher = new WebSocketPusher();
+
+  public static WebSocketPusher getInstance() {
+    return pusher;
+  }
+  // End Static resolver, begin actual class.
+
+  private WebSocketPusher() {
+    CosignerConfiguration config = CosignerApplication.getConfig();
+    if (config == null) {
+      config = new CosignerConfiguration();
+    }
+    queueSize = config.getWebsocketQueueSize();
+    maxFrameAddresses = config.getWebsocketMaxFrameAddresses();
+    policy = config.getWebsocketSlowConsumerPolicy();
+
+    try {
+      CosignerApplication.getMetrics().register(MetricRegistry.name(WebSocketPusher.class, "queued"),
+          (Gauge<Integer>) () -> outboxes.values().stream().mapToInt(outbox -> {
+            synchronized (outbox) {
+              return outbox.size();
+            }
+          }).sum());
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug(null, e);
+    }
+  }
+
+  /**
+   * Queue a message for a session.
+   */
+  public void send(Session session, String message) {
+    Outbox outbox = getOutbox(session);
+    if (outbox == null) {
+      return;
+    }
+    synchronized (outbox) {
+      if (outbox.closed) {
+        return;
+      }
+      outbox.messages.addLast(message);
+      if (enforceLimit(session, outbox)) {
+        sendNext(session, outbox);
+      }
+    }
+  }
+
+  /**
+   * Queue balance updates for a session. Any balance for the same address that hasn't gone out yet
+   * is replaced.
+   *
+   * @param session  Web socket session.
+   * @param currency Currency symbol.
+   * @param balances Address to balance map.
+   */
+  public void sendBalances(Session session, String currency, Map<String, String> balances) {
+    Outbox outbox = getOutbox(session);
+    if (outbox == null || balances.isEmpty()) {
+      return;
+    }
+    synchronized (outbox) {
+      if (outbox.closed) {
+        return;
+      }
+      LinkedHashMap<String, String> pending =
+          outbox.balances.computeIfAbsent(currency, symbol -> new LinkedHashMap<>());
+      outbox.pendingBalances -= pending.size();
+      pending.putAll(balances);
+      outbox.pendingBalances += pending.size();
+      if (enforceLimit(session, outbox)) {
+        sendNext(session, outbox);
+      }
+    }
+  }
+
+  /**
+   * Forget a session, anything still waiting for it is dropped.
+   */
+  public void close(Session session) {
+    Outbox outbox = outboxes.remove(session);
+    if (outbox != null) {
+      synchronized (outbox) {
+        outbox.closed = true;
+        outbox.messages.clear();
+        outbox.balances.clear();
+        outbox.pendingBalances = 0;
+      }
+    }
+  }
+
+  private Outbox getOutbox(Session session) {
+    if (session == null || !session.isOpen()) {
+      return null;
+    }
+    return outboxes.computeIfAbsent(session, key -> new Outbox());
+  }
+
+  /**
+   * Apply the slow consumer policy if the outbox is over its limit.
+   *
+   * @return False if the session was disconnected.
+   */
+  private boolean enforceLimit(Session session, Outbox outbox) {
+    while (outbox.size() > queueSize) {
+      CosignerApplication.getMetrics().meter(
+          MetricRegistry.name(WebSocketPusher.class, policy.name().toLowerCase(Locale.US)))
+          .mark();
+      if (policy == SlowConsumerPolicy.DISCONNECT) {
+        LOGGER.warn("Disconnecting slow web socket client " + session.getRemoteAddress());
+        close(session);
+        session.close(StatusCode.POLICY_VIOLATION, "Too many pending messages");
+        return false;
+      }
+      if (policy == SlowConsumerPolicy.COALESCE && outbox.pendingBalances > 0) {
+        dropOldestBalance(outbox);
+      } else if (!outbox.messages.isEmpty()) {
+        outbox.messages.pollFirst();
+      } else {
+        dropOldestBalance(outbox);
+      }
+    }
+    return true;
+  }
+
+  private static void dropOldestBalance(Outbox outbox) {
+    Iterator<LinkedHashMap<String, String>> currencies = outbox.balances.values().iterator();
+    LinkedHashMap<String, String> oldest = currencies.next();
+    oldest.remove(oldest.keySet().iterator().next());
+    outbox.pendingBalances--;
+    if (oldest.isEmpty()) {
+      currencies.remove();
+    }
+  }
+
+  // Must be called while holding the outbox's lock.
+  private void sendNext(Session session, Outbox outbox) {
+    if (outbox.sending || outbox.closed) {
+      return;
+    }
+    String frame = nextFrame(outbox);
+    if (frame == null) {
+      return;
+    }
+
+    outbox.sending = true;
+    CosignerApplication.getMetrics().meter(MetricRegistry.name(WebSocketPusher.class, "frames"))
+        .mark();
+    try {
+      session.getRemote().sendString(frame, new WriteCallback() {
+        @Override
+        public void writeFailed(Throwable throwable) {
+          LOGGER.debug(null, throwable);
+          close(session);
+        }
+
+        @Override
+        public void writeSuccess() {
+          synchronized (outbox) {
+            outbox.sending = false;
+            sendNext(session, outbox);
+          }
+        }
+      });
+    } catch (Exception e) {
+      LOGGER.debug(null, e);
+      close(session);
+    }
+  }
+
+  private String nextFrame(Outbox outbox) {
+    if (!outbox.messages.isEmpty()) {
+      return outbox.messages.pollFirst();
+    }
+    if (outbox.balances.isEmpty()) {
+      return null;
+    }
+
+    Iterator<Map.Entry<String, LinkedHashMap<String, String>>> currencies =
+        outbox.balances.entrySet().iterator();
+    Map.Entry<String, LinkedHashMap<String, String>> currency = currencies.next();
+    CurrencyParameters responseParms = new CurrencyParameters();
+    responseParms.setCurrencySymbol(currency.getKey());
+    responseParms.setAccount(new LinkedList<>());
+    List<CurrencyParametersRecipient> receivers = new LinkedList<>();
+    Iterator<Map.Entry<String, String>> balances = currency.getValue().entrySet().iterator();
+    while (balances.hasNext() && receivers.size() < maxFrameAddresses) {
+      Map.Entry<String, String> balance = balances.next();
+      balances.remove();
+      outbox.pendingBalances--;
+      responseParms.getAccount().add(balance.getKey());
+      CurrencyParametersRecipient accountData = new CurrencyParametersRecipient();
+      accountData.setAmount(balance.getValue());
+      accountData.setRecipientAddress(balance.getKey());
+      receivers.add(accountData);
+    }
+    if (currency.getValue().isEmpty()) {
+      currencies.remove();
+    }
+    responseParms.setReceivingAccount(receivers);
+    return Json.stringifyObject(CurrencyParameters.class, responseParms);
+  }
+}
@@ -66,6 +66,21 @@ public class AdminResource {
     return Response.ok(cluster.getServers()).build();
   }
 
+  /**
+   * Readiness check for load balancers and orchestration.
+   *
+   * @return The enabled currencies once their wallets are initialized, 503 until then.
+   */
+  @GET
+  @Path("/Ready")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response ready() {
+    if (!CosignerApplication.isReady()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    return Response.ok(CosignerApplication.getCurrencies().keySet()).build();
+  }
+
   /**
    * Set the cluster key for the current node.
    */
@@ -91,10 +106,7 @@ public class AdminResource {
   @POST
   @Path("/SetLocation")
   public Response setLocation(String location) {
-    Server server = ClusterInfo.getInstance().getThisServer();
-    server.setServerLocation(location);
-    ClusterInfo.getInstance().getServers().remove(server);
-    ClusterInfo.getInstance().getServers().add(server);
+    ClusterInfo.getInstance().updateThisServer(server -> server.setServerLocation(location));
 
     return Response.ok().build();
   }
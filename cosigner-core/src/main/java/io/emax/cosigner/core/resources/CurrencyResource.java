@@ -1,15 +1,22 @@
 package io.emax.cosigner.core.resources;
 
 import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.core.CosignerApplication;
 import io.emax.cosigner.core.currency.Common;
+import io.emax.cosigner.core.currency.CurrencyExecutors;
+import io.emax.cosigner.core.currency.TransactionJob.Stage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.function.Supplier;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -17,6 +24,31 @@ import javax.ws.rs.core.Response;
 public class CurrencyResource {
   private static final Logger LOGGER = LoggerFactory.getLogger(CurrencyResource.class);
 
+  /**
+   * Answer with a 503 while the wallets are still being created, rather than racing the
+   * initializer for them.
+   */
+  private static Response unavailable() {
+    return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+        .entity("Currencies are still initializing").build();
+  }
+
+  /**
+   * Runs the call on its currency's executor and resumes the request once it has a response.
+   */
+  private static void respond(String method, String params, Supplier<String> call,
+      AsyncResponse asyncResponse) {
+    if (!CosignerApplication.isReady()) {
+      asyncResponse.resume(unavailable());
+      return;
+    }
+    CurrencyExecutors.getInstance().submit(params, call).thenAccept(result -> {
+      Response response = Response.ok(result).build();
+      LOGGER.debug("[" + method + ":Response] " + response.toString());
+      asyncResponse.resume(response);
+    });
+  }
+
   /**
    * REST end-point for the {@link Common} currency methods.
    *
@@ -35,32 +67,26 @@ public class CurrencyResource {
   /**
    * REST end-point for the {@link Common} currency methods.
    *
-   * @return Common.registerAddress()
    */
   @POST
   @Path("/RegisterAddress")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response registerAddress(String params) {
+  public void registerAddress(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[RegisterAddress:Request]");
-    Response response = Response.ok(Common.registerAddress(params)).build();
-    LOGGER.debug("[RegisterAddress:Response] " + response.toString());
-    return response;
+    respond("RegisterAddress", params, () -> Common.registerAddress(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.getNewAddress()
    */
   @POST
   @Path("/GetNewAddress")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getNewAccount(String params) {
+  public void getNewAccount(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetNewAccount:Request]");
-    Response response = Response.ok(Common.getNewAddress(params)).build();
-    LOGGER.debug("[GetNewAccount:Response] " + response.toString());
-    return response;
+    respond("GetNewAccount", params, () -> Common.getNewAddress(params), asyncResponse);
   }
 
   /**
@@ -69,117 +95,96 @@ public class CurrencyResource {
   @POST
   @Path("/GenerateAddressFromKey")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response generateAddressFromKey(String params) {
+  public void generateAddressFromKey(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GenerateAddressFromKey:Request]");
-    Response response = Response.ok(Common.generateAddressFromKey(params)).build();
-    LOGGER.debug("[GenerateAddressFromKey:Response] " + response.toString());
-    return response;
+    respond("GenerateAddressFromKey", params, () -> Common.generateAddressFromKey(params),
+        asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.listAllAddresses()
    */
   @POST
   @Path("/ListAllAddresses")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response listAllAccounts(String params) {
+  public void listAllAccounts(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[ListAllAccounts:Request]");
-    Response response = Response.ok(Common.listAllAddresses(params)).build();
-    LOGGER.debug("[ListAllAccounts:Response] " + response.toString());
-    return response;
+    respond("ListAllAccounts", params, () -> Common.listAllAddresses(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.listTransactions()
    */
   @POST
   @Path("/ListTransactions")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response listTransactions(String params) {
+  public void listTransactions(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[ListTransactions:Request]");
-    Response response = Response.ok(Common.listTransactions(params)).build();
-    LOGGER.debug("[ListTransactions:Response] " + response.toString());
-    return response;
+    respond("ListTransactions", params, () -> Common.listTransactions(params), asyncResponse);
   }
 
   @POST
   @Path("/GetTransaction")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getTransaction(String params) {
+  public void getTransaction(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetTransaction:Request]");
-    Response response = Response.ok(Common.getTransaction(params)).build();
-    LOGGER.debug("[GetTransaction:Response] " + response.toString());
-    return response;
+    respond("GetTransaction", params, () -> Common.getTransaction(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.getBalance()
    */
   @POST
   @Path("/GetBalance")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getBalance(String params) {
+  public void getBalance(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetBalance:Request]");
-    Response response = Response.ok(Common.getBalance(params)).build();
-    LOGGER.debug("[GetBalance:Response] " + response.toString());
-    return response;
+    respond("GetBalance", params, () -> Common.getBalance(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.getPendingBalance()
    */
   @POST
   @Path("/GetPendingBalance")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getPendingBalance(String params) {
+  public void getPendingBalance(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetPendingBalance:Request]");
-    Response response = Response.ok(Common.getPendingBalance(params)).build();
-    LOGGER.debug("[GetPendingBalance:Response] " + response.toString());
-    return response;
+    respond("GetPendingBalance", params, () -> Common.getPendingBalance(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.monitorBalance()
    */
   @POST
   @Path("/MonitorBalance")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response monitorBalance(String params) {
+  public void monitorBalance(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[MonitorBalance:Request]");
-    Response response = Response.ok(Common.monitorBalance(params, null)).build();
-    LOGGER.debug("[MonitorBalance:Response] " + response.toString());
-    return response;
+    respond("MonitorBalance", params, () -> Common.monitorBalance(params, null), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.prepareTransaction()
    */
   @POST
   @Path("/PrepareTransaction")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response prepareTransaction(String params) {
+  public void prepareTransaction(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[PrepareTransaction:Request]");
-    Response response = Response.ok(Common.prepareTransaction(params)).build();
-    LOGGER.debug("[PrepareTransaction:Response] " + response.toString());
-    return response;
+    respond("PrepareTransaction", params, () -> Common.prepareTransaction(params), asyncResponse);
   }
 
   /**
@@ -188,11 +193,10 @@ public class CurrencyResource {
   @POST
   @Path("/GetSignersForTransaction")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getSignersForTransaction(String params) {
+  public void getSignersForTransaction(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetSignersForTransaction:Request]");
-    Response response = Response.ok(Common.getSignersForTransaction(params)).build();
-    LOGGER.debug("[GetSignersForTransaction:Response] " + response.toString());
-    return response;
+    respond("GetSignersForTransaction", params, () -> Common.getSignersForTransaction(params),
+        asyncResponse);
   }
 
   /**
@@ -201,11 +205,9 @@ public class CurrencyResource {
   @POST
   @Path("/GetSignatureString")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getSignatureString(String params) {
+  public void getSignatureString(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[GetSignatureString:Request]");
-    Response response = Response.ok(Common.getSignatureString(params)).build();
-    LOGGER.debug("[GetSignatureString:Response] " + response.toString());
-    return response;
+    respond("GetSignatureString", params, () -> Common.getSignatureString(params), asyncResponse);
   }
 
   /**
@@ -214,42 +216,101 @@ public class CurrencyResource {
   @POST
   @Path("/ApplySignature")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response applySignature(String params) {
+  public void applySignature(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[ApplySignature:Request]");
-    Response response = Response.ok(Common.applySignature(params)).build();
-    LOGGER.debug("[ApplySignature:Response] " + response.toString());
-    return response;
+    respond("ApplySignature", params, () -> Common.applySignature(params), asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.approveTransaction()
    */
   @POST
   @Path("/ApproveTransaction")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response approveTransaction(String params) {
+  public void approveTransaction(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[ApproveTransaction:Request]");
-    Response response = Response.ok(Common.approveTransaction(params, true)).build();
-    LOGGER.debug("[ApproveTransaction:Response] " + response.toString());
-    return response;
+    respond("ApproveTransaction", params, () -> Common.approveTransaction(params, true),
+        asyncResponse);
   }
 
   /**
    * REST end-point for the {@link Common} currency methods.
    *
    * @param params JSON representation of {@link CurrencyParameters}
-   * @return Common.submitTransaction()
    */
   @POST
   @Path("/BroadcastTransaction")
   @Produces(MediaType.APPLICATION_JSON)
-  public Response broadcastTransaction(String params) {
+  public void broadcastTransaction(String params, @Suspended AsyncResponse asyncResponse) {
     LOGGER.debug("[BroadcastTransaction:Request]");
-    Response response = Response.ok(Common.submitTransaction(params)).build();
-    LOGGER.debug("[BroadcastTransaction:Response] " + response.toString());
+    respond("BroadcastTransaction", params, () -> Common.submitTransaction(params), asyncResponse);
+  }
+
+  /**
+   * Queue the prepare stage, returns a job ID instead of waiting for the transaction.
+   */
+  @POST
+  @Path("/QueuePrepareTransaction")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response queuePrepareTransaction(String params) {
+    LOGGER.debug("[QueuePrepareTransaction:Request]");
+    if (!CosignerApplication.isReady()) {
+      return unavailable();
+    }
+    Response response =
+        Response.ok(Common.queueTransactionStage(Stage.PREPARE, params, null)).build();
+    LOGGER.debug("[QueuePrepareTransaction:Response] " + response.toString());
+    return response;
+  }
+
+  /**
+   * Queue the approve stage, returns a job ID instead of waiting for the signatures.
+   */
+  @POST
+  @Path("/QueueApproveTransaction")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response queueApproveTransaction(String params) {
+    LOGGER.debug("[QueueApproveTransaction:Request]");
+    if (!CosignerApplication.isReady()) {
+      return unavailable();
+    }
+    Response response =
+        Response.ok(Common.queueTransactionStage(Stage.APPROVE, params, null)).build();
+    LOGGER.debug("[QueueApproveTransaction:Response] " + response.toString());
+    return response;
+  }
+
+  /**
+   * Queue the broadcast stage, returns a job ID instead of waiting for the node.
+   */
+  @POST
+  @Path("/QueueBroadcastTransaction")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response queueBroadcastTransaction(String params) {
+    LOGGER.debug("[QueueBroadcastTransaction:Request]");
+    if (!CosignerApplication.isReady()) {
+      return unavailable();
+    }
+    Response response =
+        Response.ok(Common.queueTransactionStage(Stage.BROADCAST, params, null)).build();
+    LOGGER.debug("[QueueBroadcastTransaction:Response] " + response.toString());
+    return response;
+  }
+
+  /**
+   * Get the status, and result if it's done, of a queued transaction stage.
+   *
+   * @param jobId Job ID returned by one of the Queue end-points.
+   */
+  @POST
+  @Path("/GetTransactionJob")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getTransactionJob(String jobId) {
+    LOGGER.debug("[GetTransactionJob:Request]");
+    Response response = Response.ok(Common.getTransactionJob(jobId)).build();
+    LOGGER.debug("[GetTransactionJob:Response] " + response.toString());
     return response;
   }
 }
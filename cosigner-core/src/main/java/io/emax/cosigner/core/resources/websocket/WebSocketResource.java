@@ -1,13 +1,19 @@
 package io.emax.cosigner.core.resources.websocket;
 
+import io.emax.cosigner.core.CosignerApplication;
 import io.emax.cosigner.core.currency.Common;
+import io.emax.cosigner.core.currency.CurrencyExecutors;
+import io.emax.cosigner.core.currency.SubscriptionRegistry;
+import io.emax.cosigner.core.currency.TransactionJob.Stage;
+import io.emax.cosigner.core.currency.WebSocketPusher;
 
+import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.Locale;
+import java.util.function.Supplier;
 
 import javax.ws.rs.Path;
 
@@ -17,83 +23,135 @@ public class WebSocketResource extends WebSocketAdapter {
 
   @Override
   public void onWebSocketText(String arg1) {
-    try {
-      String functionCall =
-          getSession().getUpgradeRequest().getRequestURI().getPath().replaceAll("/ws", "");
-      LOGGER.debug("Got URI: " + functionCall);
-      switch (functionCall.toLowerCase(Locale.US)) {
-        case "/listcurrencies":
-          LOGGER.debug("[GetCurrencies:WSRequest]");
-          getRemote().sendString(Common.listCurrencies());
-          break;
-        case "/registeraddress":
-          LOGGER.debug("[GetCurrencies:WSRequest]");
-          getRemote().sendString(Common.registerAddress(arg1));
-          break;
-        case "/getnewaddress":
-          LOGGER.debug("[GetNewAccount:WSRequest]");
-          getRemote().sendString(Common.getNewAddress(arg1));
-          break;
-        case "/generateaddressfromkey":
-          LOGGER.debug("[GenerateAddressFromKey:WSRequest]");
-          getRemote().sendString(Common.generateAddressFromKey(arg1));
-          break;
-        case "/listalladdresses":
-          LOGGER.debug("[ListAllAccounts:WSRequest]");
-          getRemote().sendString(Common.listAllAddresses(arg1));
-          break;
-        case "/listtransactions":
-          LOGGER.debug("[ListTransactions:WSRequest]");
-          getRemote().sendString(Common.listTransactions(arg1));
-          break;
-        case "/gettransaction":
-          LOGGER.debug("[GetTransaction:WSRequest]");
-          getRemote().sendString(Common.getTransaction(arg1));
-          break;
-        case "/getbalance":
-          LOGGER.debug("[GetBalance:WSRequest]");
-          getRemote().sendString(Common.getBalance(arg1));
-          break;
-        case "/getpendingbalance":
-          LOGGER.debug("[GetPendingBalance:WSRequest]");
-          getRemote().sendString(Common.getPendingBalance(arg1));
-          break;
-        case "/monitorbalance":
-          LOGGER.debug("[MonitorBalance:WSRequest]");
-          getRemote().sendString(Common.monitorBalance(arg1, getSession()));
-          break;
-        case "/preparetransaction":
-          LOGGER.debug("[PrepareTransaction:WSRequest]");
-          getRemote().sendString(Common.prepareTransaction(arg1));
-          break;
-        case "/getsignersfortransaction":
-          LOGGER.debug("[GetSignersForTransaction:WSRequest]");
-          getRemote().sendString(Common.getSignersForTransaction(arg1));
-          break;
-        case "/getsignaturestring":
-          LOGGER.debug("[GetSignatureString:WSRequest]");
-          getRemote().sendString(Common.getSignatureString(arg1));
-          break;
-        case "/applysignature":
-          LOGGER.debug("[ApplySignature:WSRequest]");
-          getRemote().sendString(Common.applySignature(arg1));
-          break;
-        case "/approvetransaction":
-          LOGGER.debug("[ApproveTransaction:WSRequest]");
-          getRemote().sendString(Common.approveTransaction(arg1, true));
-          break;
-        case "/broadcasttransaction":
-          LOGGER.debug("[SubmitTransaction:WSRequest]");
-          getRemote().sendString(Common.submitTransaction(arg1));
-          break;
-        default:
-          LOGGER.warn("[Invalid:WSRequest] " + arg1);
-          getRemote().sendString("No such function");
-          break;
-      }
-      getRemote().flush();
-    } catch (IOException e) {
-      LOGGER.debug(null, e);
+    Session session = getSession();
+    String functionCall =
+        session.getUpgradeRequest().getRequestURI().getPath().replaceAll("/ws", "");
+    LOGGER.debug("Got URI: " + functionCall);
+
+    // Anything that touches a currency is run on that currency's executor, the rest is answered
+    // right away.
+    Supplier<String> call;
+    switch (functionCall.toLowerCase(Locale.US)) {
+      case "/listcurrencies":
+        LOGGER.debug("[GetCurrencies:WSRequest]");
+        sendResponse(session, Common.listCurrencies());
+        return;
+      case "/registeraddress":
+        LOGGER.debug("[GetCurrencies:WSRequest]");
+        call = () -> Common.registerAddress(arg1);
+        break;
+      case "/getnewaddress":
+        LOGGER.debug("[GetNewAccount:WSRequest]");
+        call = () -> Common.getNewAddress(arg1);
+        break;
+      case "/generateaddressfromkey":
+        LOGGER.debug("[GenerateAddressFromKey:WSRequest]");
+        call = () -> Common.generateAddressFromKey(arg1);
+        break;
+      case "/listalladdresses":
+        LOGGER.debug("[ListAllAccounts:WSRequest]");
+        call = () -> Common.listAllAddresses(arg1);
+        break;
+      case "/listtransactions":
+        LOGGER.debug("[ListTransactions:WSRequest]");
+        call = () -> Common.listTransactions(arg1);
+        break;
+      case "/gettransaction":
+        LOGGER.debug("[GetTransaction:WSRequest]");
+        call = () -> Common.getTransaction(arg1);
+        break;
+      case "/getbalance":
+        LOGGER.debug("[GetBalance:WSRequest]");
+        call = () -> Common.getBalance(arg1);
+        break;
+      case "/getpendingbalance":
+        LOGGER.debug("[GetPendingBalance:WSRequest]");
+        call = () -> Common.getPendingBalance(arg1);
+        break;
+      case "/monitorbalance":
+        LOGGER.debug("[MonitorBalance:WSRequest]");
+        call = () -> Common.monitorBalance(arg1, session);
+        break;
+      case "/preparetransaction":
+        LOGGER.debug("[PrepareTransaction:WSRequest]");
+        call = () -> Common.prepareTransaction(arg1);
+        break;
+      case "/getsignersfortransaction":
+        LOGGER.debug("[GetSignersForTransaction:WSRequest]");
+        call = () -> Common.getSignersForTransaction(arg1);
+        break;
+      case "/getsignaturestring":
+        LOGGER.debug("[GetSignatureString:WSRequest]");
+        call = () -> Common.getSignatureString(arg1);
+        break;
+      case "/applysignature":
+        LOGGER.debug("[ApplySignature:WSRequest]");
+        call = () -> Common.applySignature(arg1);
+        break;
+      case "/approvetransaction":
+        LOGGER.debug("[ApproveTransaction:WSRequest]");
+        call = () -> Common.approveTransaction(arg1, true);
+        break;
+      case "/broadcasttransaction":
+        LOGGER.debug("[SubmitTransaction:WSRequest]");
+        call = () -> Common.submitTransaction(arg1);
+        break;
+      case "/queuepreparetransaction":
+        LOGGER.debug("[QueuePrepareTransaction:WSRequest]");
+        if (isReady(session)) {
+          sendResponse(session, Common.queueTransactionStage(Stage.PREPARE, arg1, session));
+        }
+        return;
+      case "/queueapprovetransaction":
+        LOGGER.debug("[QueueApproveTransaction:WSRequest]");
+        if (isReady(session)) {
+          sendResponse(session, Common.queueTransactionStage(Stage.APPROVE, arg1, session));
+        }
+        return;
+      case "/queuebroadcasttransaction":
+        LOGGER.debug("[QueueBroadcastTransaction:WSRequest]");
+        if (isReady(session)) {
+          sendResponse(session, Common.queueTransactionStage(Stage.BROADCAST, arg1, session));
+        }
+        return;
+      case "/gettransactionjob":
+        LOGGER.debug("[GetTransactionJob:WSRequest]");
+        sendResponse(session, Common.getTransactionJob(arg1));
+        return;
+      default:
+        LOGGER.warn("[Invalid:WSRequest] " + arg1);
+        sendResponse(session, "No such function");
+        return;
+    }
+
+    if (!isReady(session)) {
+      return;
     }
+    CurrencyExecutors.getInstance().submit(arg1, call)
+        .thenAccept(response -> sendResponse(session, response));
+  }
+
+  @Override
+  public void onWebSocketClose(int statusCode, String reason) {
+    SubscriptionRegistry.getInstance().unsubscribe(getSession());
+    WebSocketPusher.getInstance().close(getSession());
+    super.onWebSocketClose(statusCode, reason);
+  }
+
+  /**
+   * Answer with the same error as REST while the wallets are still being created, rather than
+   * racing the initializer for them.
+   */
+  private static boolean isReady(Session session) {
+    if (CosignerApplication.isReady()) {
+      return true;
+    }
+    sendResponse(session, "Currencies are still initializing");
+    return false;
+  }
+
+  private static void sendResponse(Session session, String response) {
+    // Responses can finish on different threads, the pusher keeps the writes in order.
+    WebSocketPusher.getInstance().send(session, response);
   }
 }
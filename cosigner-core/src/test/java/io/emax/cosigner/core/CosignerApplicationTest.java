@@ -0,0 +1,31 @@
+package io.emax.cosigner.core;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.bitcoin.BitcoinCurrencyPackage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class CosignerApplicationTest {
+  @Test
+  public void testLoadCurrencies() {
+    System.out.println("");
+    System.out.println("Discovering currency packages.");
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    Map<String, CurrencyPackageInterface> all =
+        CosignerApplication.loadCurrencies(classLoader, Collections.emptyList());
+    System.out.println("Found currencies: " + all.keySet());
+    // Token symbols come from their properties files, so only check that something besides BTC.
+    Assert.assertTrue(all.containsKey("BTC"));
+    Assert.assertTrue(all.size() > 1);
+
+    Map<String, CurrencyPackageInterface> enabled =
+        CosignerApplication.loadCurrencies(classLoader, Collections.singletonList("BTC"));
+    Assert.assertEquals(Collections.singleton("BTC"), enabled.keySet());
+    Assert.assertTrue(enabled.get("BTC") instanceof BitcoinCurrencyPackage);
+  }
+}
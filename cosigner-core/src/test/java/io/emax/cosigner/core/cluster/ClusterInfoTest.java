@@ -0,0 +1,85 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+public class ClusterInfoTest {
+  @Before
+  public void setUp() {
+    CosignerApplication.setConfig(new CosignerConfiguration());
+  }
+
+  private static Server createServer(int port) {
+    Server server = new Server();
+    server.setServerLocation("localhost");
+    server.setServerId("ClusterInfoTest");
+    server.setServerRpcPort(port);
+    return server;
+  }
+
+  @Test
+  public void testSnapshots() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Testing membership snapshots under concurrent changes.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    ClusterView before = cluster.getView();
+    Set<Server> beforeServers = new HashSet<>(before.getServers());
+
+    List<Server> servers = new LinkedList<>();
+    for (int i = 0; i < 50; i++) {
+      servers.add(createServer(i));
+    }
+    Thread writer = new Thread(() -> {
+      for (int round = 0; round < 100; round++) {
+        servers.forEach(cluster::putServer);
+        servers.forEach(cluster::removeServer);
+      }
+    });
+    writer.start();
+
+    // Iterating while the writer churns never fails, and a view never changes once read.
+    int iterations = 0;
+    while (writer.isAlive()) {
+      ClusterView view = cluster.getView();
+      int size = view.getServers().size();
+      for (Server server : view.getServers()) {
+        Assert.assertNotNull(server);
+        iterations++;
+      }
+      Assert.assertEquals(size, view.getServers().size());
+    }
+    writer.join();
+    System.out.println("Iterated over " + iterations + " servers");
+
+    ClusterView after = cluster.getView();
+    Assert.assertEquals(beforeServers, before.getServers());
+    Assert.assertEquals(beforeServers, after.getServers());
+    Assert.assertEquals(before.getVersion() + 100 * 50 * 2, after.getVersion());
+  }
+
+  @Test
+  public void testUpdateThisServer() {
+    System.out.println("");
+    System.out.println("Testing that this server's entry is replaced rather than changed.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    Server original = cluster.getThisServer();
+    String location = original.getServerLocation();
+
+    Server updated = cluster.updateThisServer(server -> server.setServerLocation("example"));
+    Assert.assertEquals(location, original.getServerLocation());
+    Assert.assertEquals("example", cluster.getServer(original).getServerLocation());
+    Assert.assertSame(updated, cluster.getThisServer());
+
+    cluster.updateThisServer(server -> server.setServerLocation(location));
+  }
+}
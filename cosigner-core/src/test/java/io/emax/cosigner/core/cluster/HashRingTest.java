@@ -0,0 +1,77 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.api.core.Server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class HashRingTest {
+  private static final int KEYS = 10000;
+
+  private static Server createServer(int number) {
+    Server server = new Server();
+    server.setServerId("server" + number);
+    server.setServerRpcPort(5556);
+    server.setServerListeningPort(5555);
+    return server;
+  }
+
+  @Test
+  public void testOwners() {
+    System.out.println("");
+    System.out.println("Testing address ownership on the hash ring.");
+    List<Server> servers = new LinkedList<>();
+    for (int i = 0; i < 5; i++) {
+      servers.add(createServer(i));
+    }
+    HashRing ring = new HashRing(servers);
+
+    Map<Server, Integer> primaries = new HashMap<>();
+    for (int i = 0; i < KEYS; i++) {
+      List<Server> owners = ring.getOwners("address" + i, 3);
+      Assert.assertEquals(3, owners.size());
+      Assert.assertEquals(3, new HashSet<>(owners).size());
+      primaries.merge(owners.get(0), 1, Integer::sum);
+    }
+    // Every server should be primary for roughly a fifth of the addresses.
+    System.out.println("Primaries: " + primaries.values());
+    primaries.values().forEach(count -> Assert.assertTrue(count > KEYS / 5 / 2));
+
+    // Asking for more owners than there are servers returns all of them.
+    Assert.assertEquals(5, ring.getOwners("address", 10).size());
+    Assert.assertTrue(new HashRing(new LinkedList<>()).getOwners("address", 2).isEmpty());
+  }
+
+  @Test
+  public void testRebalance() {
+    System.out.println("");
+    System.out.println("Testing that a new server only takes addresses, never shuffles them.");
+    List<Server> servers = new LinkedList<>();
+    for (int i = 0; i < 4; i++) {
+      servers.add(createServer(i));
+    }
+    HashRing before = new HashRing(servers);
+    Server joined = createServer(4);
+    servers.add(joined);
+    HashRing after = new HashRing(servers);
+
+    int moved = 0;
+    for (int i = 0; i < KEYS; i++) {
+      Server previous = before.getOwners("address" + i, 1).get(0);
+      Server current = after.getOwners("address" + i, 1).get(0);
+      if (!previous.equals(current)) {
+        Assert.assertEquals(joined, current);
+        moved++;
+      }
+    }
+    System.out.println("Moved " + moved + " of " + KEYS + " addresses");
+    Assert.assertTrue(moved > KEYS / 5 / 2);
+    Assert.assertTrue(moved < KEYS / 5 * 2);
+  }
+}
@@ -0,0 +1,203 @@
+package io.emax.cosigner.core.cluster;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.api.core.MemberState;
+import io.emax.cosigner.api.core.Server;
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.crypto.Secp256k1;
+import io.emax.cosigner.core.CosignerApplication;
+import io.emax.cosigner.core.CosignerConfiguration;
+import io.emax.cosigner.core.cluster.commands.ClusterCommand;
+import io.emax.cosigner.core.cluster.commands.ClusterCommandType;
+
+import org.bouncycastle.crypto.digests.SHA3Digest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+public class MembershipTest {
+  private final List<Server> added = new LinkedList<>();
+
+  @Before
+  public void setUp() {
+    CosignerApplication.setConfig(new CosignerConfiguration());
+  }
+
+  @After
+  public void tearDown() {
+    added.forEach(server -> ClusterInfo.getInstance().removeServer(server));
+  }
+
+  private Server createServer(String clusterKey) {
+    byte[] key = Secp256k1.generatePrivateKey();
+    byte[] publicKey = Secp256k1.getPublicKey(key);
+    SHA3Digest sha3 = new SHA3Digest(256);
+    sha3.update(publicKey, 0, publicKey.length);
+    byte[] hashedBytes = new byte[256 / 8];
+    sha3.doFinal(hashedBytes, 0);
+
+    byte[][] signature = new byte[][]{{}, {}, {(byte) 0xff}};
+    while (signature[2][0] == (byte) 0xff) {
+      signature = Secp256k1.signTransaction(hashedBytes, ByteUtilities.toByteArray(clusterKey));
+    }
+
+    Server server = new Server();
+    server.setServerLocation("localhost");
+    server.setServerId(ByteUtilities.toHexString(publicKey));
+    server.setSigR(ByteUtilities.toHexString(signature[0]));
+    server.setSigS(ByteUtilities.toHexString(signature[1]));
+    server.setSigV(ByteUtilities.toHexString(signature[2]));
+    added.add(server);
+    return server;
+  }
+
+  private static Server update(Server server, long incarnation, MemberState state) {
+    Server update = new Server();
+    update.setServerLocation(server.getServerLocation());
+    update.setServerId(server.getServerId());
+    update.setSigR(server.getSigR());
+    update.setSigS(server.getSigS());
+    update.setSigV(server.getSigV());
+    update.setIncarnation(incarnation);
+    update.setMemberState(state);
+    return update;
+  }
+
+  private static void merge(Server server) {
+    Membership.getInstance().merge(Collections.singleton(server));
+  }
+
+  @Test
+  public void testMerge() {
+    System.out.println("");
+    System.out.println("Testing membership update precedence.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    Server server = createServer(cluster.getClusterKey());
+
+    merge(update(server, 0, MemberState.ALIVE));
+    Assert.assertEquals(MemberState.ALIVE, cluster.getServer(server).getMemberState());
+
+    // A suspicion beats alive at the same incarnation, but not the other way around.
+    merge(update(server, 0, MemberState.SUSPECT));
+    Assert.assertEquals(MemberState.SUSPECT, cluster.getServer(server).getMemberState());
+    merge(update(server, 0, MemberState.ALIVE));
+    Assert.assertEquals(MemberState.SUSPECT, cluster.getServer(server).getMemberState());
+
+    // The server refuting it with a higher incarnation clears it.
+    merge(update(server, 1, MemberState.ALIVE));
+    Assert.assertEquals(MemberState.ALIVE, cluster.getServer(server).getMemberState());
+    Assert.assertEquals(1, cluster.getServer(server).getIncarnation());
+
+    // Once removed, old news doesn't bring it back.
+    merge(update(server, 1, MemberState.DEAD));
+    Assert.assertNull(cluster.getServer(server));
+    merge(update(server, 1, MemberState.ALIVE));
+    Assert.assertNull(cluster.getServer(server));
+    merge(update(server, 2, MemberState.ALIVE));
+    Assert.assertNotNull(cluster.getServer(server));
+
+    // Servers from other clusters are ignored.
+    Server outsider = createServer(ByteUtilities.toHexString(Secp256k1.generatePrivateKey()));
+    merge(update(outsider, 0, MemberState.ALIVE));
+    Assert.assertNull(cluster.getServer(outsider));
+
+    // Suspicion of ourselves is refuted.
+    Server thisServer = cluster.getThisServer();
+    long incarnation = thisServer.getIncarnation();
+    Server suspicion = update(thisServer, incarnation, MemberState.SUSPECT);
+    suspicion.setServerListeningPort(thisServer.getServerListeningPort());
+    suspicion.setServerRpcPort(thisServer.getServerRpcPort());
+    merge(suspicion);
+    Assert.assertEquals(incarnation + 1, cluster.getThisServer().getIncarnation());
+    Assert.assertEquals(MemberState.ALIVE, cluster.getThisServer().getMemberState());
+    Assert.assertEquals(incarnation, thisServer.getIncarnation());
+  }
+
+  @Test
+  public void testBroadcastLiveness() {
+    System.out.println("");
+    System.out.println("Testing broadcasts follow membership state.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    Server server = createServer(cluster.getClusterKey());
+    ClusterCommand command = new ClusterCommand();
+    command.setCommandType(ClusterCommandType.DISABLETXS);
+    command.setCommandData("BTC");
+
+    // Servers that aren't members don't get commands.
+    Assert.assertEquals("", Coordinator.broadcastCommand(command, server));
+
+    // Members we haven't heard from directly, like ones learned through gossip, still do.
+    cluster.putServer(update(server, 0, MemberState.ALIVE));
+    Assert.assertEquals(0, cluster.getServer(server).getLastCommunication());
+    Assert.assertNotEquals("", Coordinator.broadcastCommand(command, server));
+    Assert.assertNotNull(cluster.getServer(server));
+
+    // Dead ones don't.
+    cluster.putServer(update(server, 0, MemberState.DEAD));
+    Assert.assertEquals("", Coordinator.broadcastCommand(command, server));
+  }
+
+  @Test
+  public void testSignatureMemo() {
+    System.out.println("");
+    System.out.println("Testing that cluster signatures are only checked once.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    Server server = createServer(cluster.getClusterKey());
+    long checks = CosignerApplication.getMetrics()
+        .meter(MetricRegistry.name(ClusterInfo.class, "signatureChecks")).getCount();
+
+    for (int i = 0; i < 10; i++) {
+      merge(update(server, i, MemberState.ALIVE));
+    }
+    Assert.assertEquals(9, cluster.getServer(server).getIncarnation());
+    Assert.assertEquals(checks + 1, CosignerApplication.getMetrics()
+        .meter(MetricRegistry.name(ClusterInfo.class, "signatureChecks")).getCount());
+  }
+
+  @Test
+  public void testPingRequest() {
+    System.out.println("");
+    System.out.println("Testing which indirect probe requests are accepted.");
+    ClusterInfo cluster = ClusterInfo.getInstance();
+    Server target = createServer(cluster.getClusterKey());
+
+    // Without a requester there's nowhere to send the ack.
+    ClusterCommand request = new ClusterCommand();
+    request.setCommandType(ClusterCommandType.PINGREQ);
+    request.getServer().add(target);
+    Assert.assertFalse(Membership.getInstance().handlePingRequest(request));
+
+    // Requests from outside the cluster are ignored.
+    Server outsider = createServer(ByteUtilities.toHexString(Secp256k1.generatePrivateKey()));
+    outsider.setOriginator(true);
+    request.getServer().add(outsider);
+    Assert.assertFalse(Membership.getInstance().handlePingRequest(request));
+
+    ClusterCommand ack = new ClusterCommand();
+    ack.setCommandType(ClusterCommandType.ACK);
+    ack.getServer().add(target);
+    Assert.assertTrue(Membership.getInstance().handleIndirectAck(ack));
+  }
+
+  @Test
+  public void testOverrides() {
+    System.out.println("");
+    System.out.println("Testing membership precedence rules.");
+    Server known = new Server();
+    known.setIncarnation(3);
+    known.setMemberState(MemberState.SUSPECT);
+
+    Assert.assertFalse(Membership.overrides(update(known, 3, MemberState.ALIVE), known));
+    Assert.assertTrue(Membership.overrides(update(known, 4, MemberState.ALIVE), known));
+    Assert.assertFalse(Membership.overrides(update(known, 3, MemberState.SUSPECT), known));
+    Assert.assertTrue(Membership.overrides(update(known, 4, MemberState.SUSPECT), known));
+    Assert.assertTrue(Membership.overrides(update(known, 3, MemberState.DEAD), known));
+    Assert.assertFalse(Membership.overrides(update(known, 2, MemberState.DEAD), known));
+  }
+}
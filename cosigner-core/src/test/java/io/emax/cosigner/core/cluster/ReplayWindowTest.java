@@ -0,0 +1,79 @@
+package io.emax.cosigner.core.cluster;
+
+import io.emax.cosigner.core.cluster.commands.ReplayWindow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReplayWindowTest {
+  @Test
+  public void testWindow() {
+    System.out.println("");
+    System.out.println("Testing out of order and replayed nonces.");
+    ReplayWindow window = new ReplayWindow(64);
+    Assert.assertEquals(64, window.getSize());
+    Assert.assertFalse(window.accept(0));
+    Assert.assertFalse(window.accept(-1));
+
+    // Out of order is fine, each nonce is only accepted once.
+    Assert.assertTrue(window.accept(5));
+    Assert.assertTrue(window.accept(3));
+    Assert.assertTrue(window.accept(4));
+    Assert.assertFalse(window.accept(3));
+    Assert.assertFalse(window.accept(5));
+    Assert.assertTrue(window.accept(1));
+
+    // Moving the window forgets anything that's fallen behind it.
+    Assert.assertTrue(window.accept(68));
+    Assert.assertFalse(window.accept(4));
+    Assert.assertTrue(window.accept(6));
+    Assert.assertFalse(window.accept(6));
+    Assert.assertTrue(window.accept(1000));
+    Assert.assertFalse(window.accept(68));
+    Assert.assertTrue(window.accept(999));
+    Assert.assertTrue(window.accept(937));
+    Assert.assertFalse(window.accept(936));
+
+    Assert.assertEquals(1024, new ReplayWindow().getSize());
+    Assert.assertEquals(128, new ReplayWindow(100).getSize());
+  }
+
+  @Test
+  public void testConcurrentNonces() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Testing nonces delivered from several threads.");
+    ReplayWindow window = new ReplayWindow();
+    List<Long> nonces = new LinkedList<>();
+    for (long i = 1; i <= 10000; i++) {
+      nonces.add(i);
+      // Deliver each one twice.
+      nonces.add(i);
+    }
+    // Shuffle locally so the spread stays inside the window.
+    List<Long> delivered = new LinkedList<>();
+    for (int i = 0; i < nonces.size(); i += 200) {
+      List<Long> batch = new LinkedList<>(nonces.subList(i, i + 200));
+      Collections.shuffle(batch);
+      delivered.addAll(batch);
+    }
+
+    AtomicInteger accepted = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    delivered.forEach(nonce -> executor.submit(() -> {
+      if (window.accept(nonce)) {
+        accepted.incrementAndGet();
+      }
+    }));
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    Assert.assertEquals(10000, accepted.get());
+  }
+}
@@ -0,0 +1,97 @@
+package io.emax.cosigner.core.currency;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CallbackDispatcherTest {
+  private HttpServer server;
+  private String url;
+  private final List<String> received = new CopyOnWriteArrayList<>();
+  private final AtomicInteger failuresLeft = new AtomicInteger();
+  private final CountDownLatch firstRequest = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream input = exchange.getRequestBody()) {
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          body.write(buffer, 0, read);
+        }
+      }
+      firstRequest.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (failuresLeft.getAndDecrement() > 0) {
+        exchange.sendResponseHeaders(503, -1);
+      } else {
+        received.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+        exchange.sendResponseHeaders(200, -1);
+      }
+      exchange.close();
+    });
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testRetryAndBatching() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Testing callback retries and balance batching.");
+    failuresLeft.set(1);
+    CallbackDispatcher dispatcher = CallbackDispatcher.getInstance();
+
+    dispatcher.send(url, "{\"first\":true}", null);
+    Assert.assertTrue(firstRequest.await(10, TimeUnit.SECONDS));
+
+    // Everything queued while the first POST is stuck should go out as one merged update.
+    dispatcher.sendBalance(url, "BTC", "address1", "1", null);
+    dispatcher.sendBalance(url, "BTC", "address2", "2", null);
+    dispatcher.sendBalance(url, "BTC", "address1", "3", null);
+    release.countDown();
+
+    for (int i = 0; i < 100 && received.size() < 2; i++) {
+      Thread.sleep(100);
+    }
+    System.out.println("Received: " + received);
+    Assert.assertEquals(2, received.size());
+    Assert.assertEquals("{\"first\":true}", received.get(0));
+
+    CurrencyParameters balances =
+        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, received.get(1));
+    Assert.assertEquals("BTC", balances.getCurrencySymbol());
+    Assert.assertEquals(2, balances.getReceivingAccount().size());
+    Assert.assertEquals("address1", balances.getReceivingAccount().get(0).getRecipientAddress());
+    Assert.assertEquals("3", balances.getReceivingAccount().get(0).getAmount());
+  }
+}
@@ -0,0 +1,196 @@
+package io.emax.cosigner.core.currency;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.currency.CurrencyConfiguration;
+import io.emax.cosigner.api.currency.Monitor;
+import io.emax.cosigner.api.currency.Wallet;
+import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.CosignerApplication;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.Assert;
+import org.junit.Test;
+
+import rx.Observable;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SubscriptionRegistryTest {
+  private static class StubMonitor implements Monitor {
+    private final Set<String> addresses = new HashSet<>();
+    private final Map<String, String> balances = new HashMap<>();
+
+    @Override
+    public Monitor createNewMonitor() {
+      return this;
+    }
+
+    @Override
+    public void destroyMonitor() {
+    }
+
+    @Override
+    public void addAddresses(Iterable<String> addresses) {
+      addresses.forEach(this.addresses::add);
+    }
+
+    @Override
+    public void removeAddresses(Iterable<String> addresses) {
+      addresses.forEach(this.addresses::remove);
+    }
+
+    @Override
+    public Iterable<String> listAddresses() {
+      return addresses;
+    }
+
+    @Override
+    public Map<String, String> getBalances() {
+      return balances;
+    }
+
+    @Override
+    public Observable<Map<String, String>> getObservableBalances() {
+      return Observable.never();
+    }
+
+    @Override
+    public Set<TransactionDetails> getTransactions() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Observable<Set<TransactionDetails>> getObservableTransactions() {
+      return Observable.never();
+    }
+  }
+
+  private static class StubCurrency implements CurrencyPackageInterface {
+    private final Monitor monitor = new StubMonitor();
+
+    @Override
+    public CurrencyConfiguration getConfiguration() {
+      return null;
+    }
+
+    @Override
+    public void setConfiguration(CurrencyConfiguration configuration) {
+    }
+
+    @Override
+    public Wallet getWallet() {
+      return null;
+    }
+
+    @Override
+    public void setWallet(Wallet wallet) {
+    }
+
+    @Override
+    public Monitor getMonitor() {
+      return monitor;
+    }
+
+    @Override
+    public void setMonitor(Monitor monitor) {
+    }
+  }
+
+  @Test
+  public void testSharedAddresses() {
+    System.out.println("");
+    System.out.println("Testing subscription registry address sharing.");
+    StubCurrency currency = new StubCurrency();
+    StubMonitor monitor = (StubMonitor) currency.getMonitor();
+    CosignerApplication.getCurrencies().put("REGISTRYTEST", currency);
+
+    SubscriptionRegistry registry = SubscriptionRegistry.getInstance();
+    String first = "http://127.0.0.1:1/first";
+    String second = "http://127.0.0.1:1/second";
+    registry.subscribe(first, "REGISTRYTEST", Arrays.asList("address1", "address2"));
+    registry.subscribe(second, "REGISTRYTEST", Collections.singletonList("address2"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("address1", "address2")), monitor.addresses);
+
+    registry.unsubscribe(first);
+    Assert.assertEquals(Collections.singleton("address2"), monitor.addresses);
+
+    registry.unsubscribe(second, "REGISTRYTEST", Collections.singletonList("address2"));
+    Assert.assertTrue(monitor.addresses.isEmpty());
+    registry.unsubscribe(second);
+
+    CosignerApplication.getCurrencies().remove("REGISTRYTEST");
+  }
+
+  private static Session createSession(List<String> frames) {
+    RemoteEndpoint remote = (RemoteEndpoint) Proxy
+        .newProxyInstance(SubscriptionRegistryTest.class.getClassLoader(),
+            new Class[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+              if (method.getName().equals("sendString") && args.length == 2) {
+                frames.add((String) args[0]);
+              }
+              return null;
+            });
+    return (Session) Proxy
+        .newProxyInstance(SubscriptionRegistryTest.class.getClassLoader(),
+            new Class[]{Session.class}, (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "isOpen":
+                  return true;
+                case "getRemote":
+                  return remote;
+                case "hashCode":
+                  return System.identityHashCode(proxy);
+                case "equals":
+                  return proxy == args[0];
+                default:
+                  return null;
+              }
+            });
+  }
+
+  @Test
+  public void testCurrentBalances() {
+    System.out.println("");
+    System.out.println("Testing that new subscribers get the balances already known.");
+    StubCurrency currency = new StubCurrency();
+    StubMonitor monitor = (StubMonitor) currency.getMonitor();
+    CosignerApplication.getCurrencies().put("REGISTRYBALANCES", currency);
+
+    SubscriptionRegistry registry = SubscriptionRegistry.getInstance();
+    List<String> firstFrames = new CopyOnWriteArrayList<>();
+    Session first = createSession(firstFrames);
+    registry.subscribe(first, "REGISTRYBALANCES", Collections.singletonList("address1"));
+    Assert.assertTrue(firstFrames.isEmpty());
+
+    // The monitor has seen the balance by the time the second subscriber turns up.
+    monitor.balances.put("address1", "5");
+    monitor.balances.put("address2", "7");
+    List<String> secondFrames = new CopyOnWriteArrayList<>();
+    Session second = createSession(secondFrames);
+    registry.subscribe(second, "REGISTRYBALANCES", Arrays.asList("address1", "address3"));
+    Assert.assertEquals(1, secondFrames.size());
+    CurrencyParameters update =
+        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, secondFrames.get(0));
+    Assert.assertEquals(1, update.getReceivingAccount().size());
+    Assert.assertEquals("address1", update.getReceivingAccount().get(0).getRecipientAddress());
+    Assert.assertEquals("5", update.getReceivingAccount().get(0).getAmount());
+    Assert.assertTrue(firstFrames.isEmpty());
+
+    registry.unsubscribe(first);
+    registry.unsubscribe(second);
+    WebSocketPusher.getInstance().close(first);
+    WebSocketPusher.getInstance().close(second);
+    CosignerApplication.getCurrencies().remove("REGISTRYBALANCES");
+  }
+}
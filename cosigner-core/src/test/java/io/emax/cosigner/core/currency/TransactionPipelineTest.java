@@ -0,0 +1,49 @@
+package io.emax.cosigner.core.currency;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+import io.emax.cosigner.core.currency.TransactionJob.Stage;
+import io.emax.cosigner.core.currency.TransactionJob.Status;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransactionPipelineTest {
+  @Test
+  public void testQueuedStage() throws InterruptedException {
+    System.out.println("");
+    System.out.println("Queueing a broadcast for an unknown currency.");
+
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("NOTACURRENCY");
+    params.setTransactionData("deadbeef");
+
+    String queueResponse = Common.queueTransactionStage(Stage.BROADCAST,
+        Json.stringifyObject(CurrencyParameters.class, params), null);
+    System.out.println("Queue response: " + queueResponse);
+    CosignerResponse cosignerResponse =
+        (CosignerResponse) Json.objectifyString(CosignerResponse.class, queueResponse);
+    String jobId = cosignerResponse.getResult();
+    Assert.assertNotNull(jobId);
+
+    TransactionJob job = null;
+    for (int i = 0; i < 50; i++) {
+      cosignerResponse = (CosignerResponse) Json
+          .objectifyString(CosignerResponse.class, Common.getTransactionJob(jobId));
+      job = (TransactionJob) Json.objectifyString(TransactionJob.class, cosignerResponse.getResult());
+      if (job.isDone()) {
+        break;
+      }
+      Thread.sleep(100);
+    }
+
+    System.out.println("Job: " + Json.stringifyObject(TransactionJob.class, job));
+    Assert.assertEquals(Status.FAILED, job.getStatus());
+    Assert.assertNotNull(job.getResult());
+
+    cosignerResponse = (CosignerResponse) Json
+        .objectifyString(CosignerResponse.class, Common.getTransactionJob("not-a-job"));
+    Assert.assertNotNull(cosignerResponse.getError());
+  }
+}
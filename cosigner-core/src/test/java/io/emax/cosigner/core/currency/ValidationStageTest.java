@@ -0,0 +1,130 @@
+package io.emax.cosigner.core.currency;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.currency.CurrencyConfiguration;
+import io.emax.cosigner.api.currency.Monitor;
+import io.emax.cosigner.api.currency.SigningType;
+import io.emax.cosigner.api.currency.Wallet;
+import io.emax.cosigner.api.validation.Validator;
+import io.emax.cosigner.core.CosignerApplication;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ValidationStageTest {
+  private static class StubConfiguration implements CurrencyConfiguration {
+    @Override
+    public String getCurrencySymbol() {
+      return "VALIDATIONTEST";
+    }
+
+    @Override
+    public SigningType getSigningType() {
+      return SigningType.SENDALL;
+    }
+
+    @Override
+    public int getMinSignatures() {
+      return 1;
+    }
+
+    @Override
+    public boolean hasMultipleSenders() {
+      return false;
+    }
+
+    @Override
+    public boolean hasMultipleRecipients() {
+      return false;
+    }
+  }
+
+  private static class StubCurrency implements CurrencyPackageInterface {
+    private final CurrencyConfiguration configuration = new StubConfiguration();
+
+    @Override
+    public CurrencyConfiguration getConfiguration() {
+      return configuration;
+    }
+
+    @Override
+    public void setConfiguration(CurrencyConfiguration configuration) {
+    }
+
+    @Override
+    public Wallet getWallet() {
+      return null;
+    }
+
+    @Override
+    public void setWallet(Wallet wallet) {
+    }
+
+    @Override
+    public Monitor getMonitor() {
+      return null;
+    }
+
+    @Override
+    public void setMonitor(Monitor monitor) {
+    }
+  }
+
+  @Test
+  public void testCachingAndRejection() {
+    System.out.println("");
+    System.out.println("Testing validation caching and short-circuiting.");
+    AtomicInteger slowCalls = new AtomicInteger();
+    AtomicInteger rejectCalls = new AtomicInteger();
+    AtomicInteger signed = new AtomicInteger();
+    Validator slow = new Validator() {
+      @Override
+      public boolean validateTransaction(CurrencyPackageInterface currency, String transaction) {
+        slowCalls.incrementAndGet();
+        try {
+          Thread.sleep(transaction.startsWith("bad") ? 10000 : 10);
+        } catch (InterruptedException e) {
+          return true;
+        }
+        return true;
+      }
+
+      @Override
+      public void transactionSigned(CurrencyPackageInterface currency, String transaction) {
+        signed.incrementAndGet();
+      }
+    };
+    Validator rejecting = (currency, transaction) -> {
+      rejectCalls.incrementAndGet();
+      return !transaction.startsWith("bad");
+    };
+
+    CosignerApplication.getValidators().add(slow);
+    CosignerApplication.getValidators().add(rejecting);
+    try {
+      ValidationStage validation = ValidationStage.getInstance();
+      StubCurrency currency = new StubCurrency();
+
+      Assert.assertTrue(validation.validate(currency, "goodTx"));
+      Assert.assertTrue(validation.validate(currency, "goodTx"));
+      Assert.assertEquals(1, slowCalls.get());
+      Assert.assertEquals(1, rejectCalls.get());
+
+      // The rejection shouldn't have to wait for the slow validator.
+      long start = System.currentTimeMillis();
+      Assert.assertFalse(validation.validate(currency, "badTx"));
+      Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+      // Signing something changes what the validators know, so the verdict is worked out again.
+      validation.transactionSigned(currency, "goodTx");
+      Assert.assertEquals(1, signed.get());
+      Assert.assertTrue(validation.validate(currency, "goodTx"));
+      Assert.assertEquals(3, rejectCalls.get());
+    } finally {
+      CosignerApplication.getValidators().remove(slow);
+      CosignerApplication.getValidators().remove(rejecting);
+    }
+  }
+}
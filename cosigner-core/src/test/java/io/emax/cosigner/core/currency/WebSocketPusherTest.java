@@ -0,0 +1,80 @@
+package io.emax.cosigner.core.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class WebSocketPusherTest {
+  @Test
+  public void testCoalescing() {
+    System.out.println("");
+    System.out.println("Testing web socket balance coalescing.");
+    List<String> frames = new LinkedList<>();
+    List<WriteCallback> callbacks = new LinkedList<>();
+
+    RemoteEndpoint remote = (RemoteEndpoint) Proxy
+        .newProxyInstance(getClass().getClassLoader(), new Class[]{RemoteEndpoint.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("sendString") && args.length == 2) {
+                frames.add((String) args[0]);
+                callbacks.add((WriteCallback) args[1]);
+              }
+              return null;
+            });
+    Session session = (Session) Proxy
+        .newProxyInstance(getClass().getClassLoader(), new Class[]{Session.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "isOpen":
+                  return true;
+                case "getRemote":
+                  return remote;
+                case "hashCode":
+                  return System.identityHashCode(proxy);
+                case "equals":
+                  return proxy == args[0];
+                default:
+                  return null;
+              }
+            });
+
+    WebSocketPusher pusher = WebSocketPusher.getInstance();
+    pusher.send(session, "first");
+    Assert.assertEquals(1, frames.size());
+
+    // Nothing else goes out until the first frame is written, and balances pile up meanwhile.
+    for (int i = 0; i < 3; i++) {
+      Map<String, String> balances = new HashMap<>();
+      balances.put("address1", Integer.toString(i));
+      balances.put("address2", Integer.toString(i * 10));
+      pusher.sendBalances(session, "BTC", balances);
+    }
+    Assert.assertEquals(1, frames.size());
+
+    callbacks.get(0).writeSuccess();
+    Assert.assertEquals(2, frames.size());
+    CurrencyParameters update =
+        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, frames.get(1));
+    System.out.println("Coalesced frame: " + frames.get(1));
+    Assert.assertEquals("BTC", update.getCurrencySymbol());
+    Assert.assertEquals(2, update.getReceivingAccount().size());
+    update.getReceivingAccount().forEach(recipient -> Assert
+        .assertEquals(recipient.getRecipientAddress().equals("address1") ? "2" : "20",
+            recipient.getAmount()));
+
+    callbacks.get(1).writeSuccess();
+    Assert.assertEquals(2, frames.size());
+    pusher.close(session);
+  }
+}
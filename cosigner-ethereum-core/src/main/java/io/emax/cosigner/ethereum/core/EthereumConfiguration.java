@@ -19,6 +19,16 @@ public class EthereumConfiguration implements CurrencyConfiguration, ValidatorCo
   private static final Logger LOGGER = LoggerFactory.getLogger(EthereumConfiguration.class);
   // Defaults
   private String daemonConnectionString = "http://localhost:8101";
+  private int rpcConnectTimeout = 5000;
+  private int rpcReadTimeout = 30000;
+  private int rpcMaxInFlight = 20;
+  private boolean rpcWriteFanOut = false;
+  private int rpcMaxBlockLag = 5;
+  private int rpcHealthCheckInterval = 30;
+  private int balanceSnapshotInterval = 10;
+  private int seenTransactionWindow = 100000;
+  private int contractSyncWait = 30;
+  private String stateFile = "";
   private int minConfirmations = 10;
   private long gasPrice = 100000000000L;
   private long simpleTxGas = 90000L;
@@ -65,6 +75,43 @@ public class EthereumConfiguration implements CurrencyConfiguration, ValidatorCo
         daemonConnectionString = EnvironmentVariableParser.resolveEnvVars(
             cosignerProperties.getProperty("daemonConnectionString", daemonConnectionString));
 
+        // rpcConnectTimeout
+        rpcConnectTimeout =
+            (int) getLongProp(cosignerProperties, "rpcConnectTimeout", rpcConnectTimeout);
+
+        // rpcReadTimeout
+        rpcReadTimeout = (int) getLongProp(cosignerProperties, "rpcReadTimeout", rpcReadTimeout);
+
+        // rpcMaxInFlight
+        rpcMaxInFlight = (int) getLongProp(cosignerProperties, "rpcMaxInFlight", rpcMaxInFlight);
+
+        // rpcWriteFanOut
+        rpcWriteFanOut = Boolean.valueOf(EnvironmentVariableParser.resolveEnvVars(
+            cosignerProperties.getProperty("rpcWriteFanOut", Boolean.toString(rpcWriteFanOut))));
+
+        // rpcMaxBlockLag
+        rpcMaxBlockLag = (int) getLongProp(cosignerProperties, "rpcMaxBlockLag", rpcMaxBlockLag);
+
+        // rpcHealthCheckInterval
+        rpcHealthCheckInterval =
+            (int) getLongProp(cosignerProperties, "rpcHealthCheckInterval", rpcHealthCheckInterval);
+
+        // balanceSnapshotInterval
+        balanceSnapshotInterval = (int) getLongProp(cosignerProperties, "balanceSnapshotInterval",
+            balanceSnapshotInterval);
+
+        // seenTransactionWindow
+        seenTransactionWindow = (int) getLongProp(cosignerProperties, "seenTransactionWindow",
+            seenTransactionWindow);
+
+        // contractSyncWait
+        contractSyncWait =
+            (int) getLongProp(cosignerProperties, "contractSyncWait", contractSyncWait);
+
+        // stateFile
+        stateFile = EnvironmentVariableParser
+            .resolveEnvVars(cosignerProperties.getProperty("stateFile", stateFile));
+
         // minConfirmations
         minConfirmations =
             (int) getLongProp(cosignerProperties, "minConfirmations", minConfirmations);
@@ -150,6 +197,53 @@ public class EthereumConfiguration implements CurrencyConfiguration, ValidatorCo
     return daemonConnectionString;
   }
 
+  /**
+   * Connection strings for every configured node, the first one is the primary.
+   */
+  public String[] getDaemonConnectionStrings() {
+    return daemonConnectionString.split("[|]");
+  }
+
+  public boolean isRpcWriteFanOut() {
+    return rpcWriteFanOut;
+  }
+
+  public int getRpcMaxBlockLag() {
+    return rpcMaxBlockLag;
+  }
+
+  public int getRpcHealthCheckInterval() {
+    return rpcHealthCheckInterval;
+  }
+
+  public int getBalanceSnapshotInterval() {
+    return balanceSnapshotInterval;
+  }
+
+  public int getSeenTransactionWindow() {
+    return seenTransactionWindow;
+  }
+
+  public int getContractSyncWait() {
+    return contractSyncWait;
+  }
+
+  public String getStateFile() {
+    return stateFile;
+  }
+
+  public int getRpcConnectTimeout() {
+    return rpcConnectTimeout;
+  }
+
+  public int getRpcReadTimeout() {
+    return rpcReadTimeout;
+  }
+
+  public int getRpcMaxInFlight() {
+    return rpcMaxInFlight;
+  }
+
   public String getServerPrivateKey() {
     return serverPrivateKey;
   }
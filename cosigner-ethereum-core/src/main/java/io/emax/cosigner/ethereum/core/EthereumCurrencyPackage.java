@@ -19,27 +19,27 @@ public class EthereumCurrencyPackage {
     }
   }
 
-  public Wallet getWallet() {
+  public synchronized Wallet getWallet() {
     if (ethereumWallet == null) {
       ethereumWallet = new EthereumWallet(ethereumConfiguration);
     }
     return ethereumWallet;
   }
 
-  public void setWallet(Wallet wallet) {
+  public synchronized void setWallet(Wallet wallet) {
     if (wallet.getClass().isInstance(EthereumWallet.class)) {
       ethereumWallet = (EthereumWallet) wallet;
     }
   }
 
-  public Monitor getMonitor() {
+  public synchronized Monitor getMonitor() {
     if (ethereumMonitor == null) {
       ethereumMonitor = new EthereumMonitor((EthereumWallet) getWallet());
     }
     return ethereumMonitor;
   }
 
-  public void setMonitor(Monitor monitor) {
+  public synchronized void setMonitor(Monitor monitor) {
     if (monitor.getClass().isInstance(EthereumMonitor.class)) {
       ethereumMonitor = (EthereumMonitor) monitor;
     }
@@ -1,38 +1,59 @@
 package io.emax.cosigner.ethereum.core;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 import io.emax.cosigner.api.currency.Wallet.TransactionDetails;
+import io.emax.cosigner.api.currency.Wallet.TransactionPage;
+import io.emax.cosigner.common.Metrics;
+import io.emax.cosigner.common.SeenTransactions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Observable;
 import rx.Subscription;
+import rx.subjects.PublishSubject;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 public class EthereumMonitor implements io.emax.cosigner.api.currency.Monitor {
   private static final Logger LOGGER = LoggerFactory.getLogger(EthereumMonitor.class);
-  private final HashSet<String> monitoredAddresses = new HashSet<>();
-  private final HashMap<String, String> accountBalances = new HashMap<>();
-  private final HashSet<TransactionDetails> accountTransactions = new HashSet<>();
-  private final HashSet<TransactionDetails> newAccountTransactions = new HashSet<>();
-
-  private final Observable<Map<String, String>> observableBalances =
-      Observable.interval(1, TimeUnit.MINUTES).map(tick -> accountBalances);
-
+  private static final int RECENT_TRANSACTIONS = 1000;
+  private final Set<String> monitoredAddresses = ConcurrentHashMap.newKeySet();
+  private final Map<String, String> accountBalances = new ConcurrentHashMap<>();
+  // Most recent transactions, used to catch up new subscribers.
+  private final LinkedHashSet<TransactionDetails> recentTransactions = new LinkedHashSet<>();
+  private final SeenTransactions seenTransactions;
+  // Filled by the refresh and drained by the transaction interval, which run on different threads.
+  private final Queue<TransactionDetails> newAccountTransactions = new ConcurrentLinkedQueue<>();
+  // Where each address's transaction scan left off, so a refresh only looks at new blocks.
+  private final Map<String, String> transactionCursors = new ConcurrentHashMap<>();
+
+  // Balances that changed in the last refresh, sent out as soon as they're seen.
+  private final PublishSubject<Map<String, String>> balanceChanges = PublishSubject.create();
+  private final Observable<Map<String, String>> observableBalances;
+
+  // Shared, so every subscriber gets each batch instead of racing the others to drain the queue.
   private final Observable<Set<TransactionDetails>> observableTransactions =
-      Observable.interval(1, TimeUnit.MINUTES).map(tick -> {
+      Observable.interval(1, TimeUnit.MINUTES).<Set<TransactionDetails>>map(tick -> {
         HashSet<TransactionDetails> txs = new HashSet<>();
-        txs.addAll(newAccountTransactions);
-        newAccountTransactions.clear();
+        for (TransactionDetails tx = newAccountTransactions.poll(); tx != null;
+            tx = newAccountTransactions.poll()) {
+          txs.add(tx);
+        }
         return txs;
-      });
+      }).share();
 
   private final Subscription balanceSubscription =
       Observable.interval(30, TimeUnit.SECONDS).map(tick -> updateBalances()).subscribe();
@@ -43,38 +64,91 @@ public class EthereumMonitor implements io.emax.cosigner.api.currency.Monitor {
   public EthereumMonitor(EthereumConfiguration conf) {
     config = conf;
     wallet = new EthereumWallet(conf);
+    seenTransactions =
+        new SeenTransactions(config.getCurrencySymbol(), config.getSeenTransactionWindow());
+    observableBalances = buildObservableBalances();
   }
 
   public EthereumMonitor(EthereumWallet inputWallet) {
     wallet = inputWallet;
     config = wallet.config;
+    seenTransactions =
+        new SeenTransactions(config.getCurrencySymbol(), config.getSeenTransactionWindow());
+    observableBalances = buildObservableBalances();
+  }
+
+  private Observable<Map<String, String>> buildObservableBalances() {
+    if (config.getBalanceSnapshotInterval() <= 0) {
+      return balanceChanges;
+    }
+    // Send a full snapshot now and then as well so subscribers can resync.
+    return balanceChanges.mergeWith(
+        Observable.interval(config.getBalanceSnapshotInterval(), TimeUnit.MINUTES)
+            .map(tick -> new HashMap<>(accountBalances)));
   }
 
   private boolean updateBalances() {
+    // Idle monitors, like the currency's template, would only drag the tick metrics down.
+    if (monitoredAddresses.isEmpty()) {
+      return true;
+    }
+    MetricRegistry metrics = Metrics.getRegistry();
+    String symbol = config.getCurrencySymbol();
+    metrics.histogram(MetricRegistry.name(EthereumMonitor.class, symbol, "addresses"))
+        .update(monitoredAddresses.size());
+    Timer.Context tick =
+        metrics.timer(MetricRegistry.name(EthereumMonitor.class, symbol, "tick")).time();
     LOGGER.debug("ETH: Checking balances....");
+    Map<String, String> changes = new HashMap<>();
     monitoredAddresses.forEach(address -> {
       try {
         LOGGER.debug("ETH: Checking balance for: " + address);
         String currentBalance = wallet.getBalance(address);
-        accountBalances.put(address, currentBalance);
+        String previousBalance = accountBalances.put(address, currentBalance);
+        if (currentBalance != null && !currentBalance.equals(previousBalance)) {
+          changes.put(address, currentBalance);
+        }
       } catch (Exception e) {
         LOGGER.debug(null, e);
       }
     });
 
+    if (!changes.isEmpty()) {
+      balanceChanges.onNext(changes);
+    }
+
     updateTransactions();
+    tick.stop();
     return true;
   }
 
   private void updateTransactions() {
     HashSet<TransactionDetails> details = new HashSet<>();
-    monitoredAddresses.forEach(
-        address -> Arrays.asList(wallet.getTransactions(address, 100, 0)).forEach(details::add));
+    monitoredAddresses.forEach(address -> {
+      try {
+        TransactionPage page =
+            wallet.getTransactionsSince(address, transactionCursors.get(address));
+        Arrays.asList(page.getTransactions()).forEach(details::add);
+        if (page.getCursor() != null) {
+          transactionCursors.put(address, page.getCursor());
+        }
+      } catch (Exception e) {
+        LOGGER.debug("Unable to scan transactions for: " + address, e);
+      }
+    });
 
-    // Remove the intersection
-    details.removeAll(accountTransactions);
-    accountTransactions.addAll(details);
-    newAccountTransactions.addAll(details);
+    // Only pass on what hasn't been reported before
+    details.forEach(detail -> {
+      if (seenTransactions.add(detail.identityKey())) {
+        newAccountTransactions.add(detail);
+        synchronized (recentTransactions) {
+          recentTransactions.add(detail);
+          if (recentTransactions.size() > RECENT_TRANSACTIONS) {
+            recentTransactions.remove(recentTransactions.iterator().next());
+          }
+        }
+      }
+    });
 
   }
 
@@ -85,7 +159,11 @@ public class EthereumMonitor implements io.emax.cosigner.api.currency.Monitor {
 
   @Override
   public void removeAddresses(Iterable<String> addresses) {
-    addresses.forEach(monitoredAddresses::remove);
+    addresses.forEach(address -> {
+      monitoredAddresses.remove(address);
+      accountBalances.remove(address);
+      transactionCursors.remove(address);
+    });
   }
 
   @Override
@@ -107,7 +185,9 @@ public class EthereumMonitor implements io.emax.cosigner.api.currency.Monitor {
 
   @Override
   public Set<TransactionDetails> getTransactions() {
-    return accountTransactions;
+    synchronized (recentTransactions) {
+      return new HashSet<>(recentTransactions);
+    }
   }
 
   @Override
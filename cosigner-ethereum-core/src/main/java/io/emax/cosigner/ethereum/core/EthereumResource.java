@@ -1,15 +1,17 @@
 package io.emax.cosigner.ethereum.core;
 
-import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
-import com.googlecode.jsonrpc4j.ProxyUtil;
-
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.NodePoolTransport;
+import io.emax.cosigner.common.rpc.RpcProxy;
+import io.emax.cosigner.common.rpc.RpcTransport;
 import io.emax.cosigner.ethereum.core.gethrpc.EthereumRpc;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Static connection to a geth RPC server.
@@ -17,9 +19,8 @@ import java.net.URL;
  * @author Tom
  */
 public class EthereumResource {
-  private static final Logger LOGGER = LoggerFactory.getLogger(EthereumResource.class);
   private static final EthereumResource serverResource = new EthereumResource();
-  private JsonRpcHttpClient client;
+  private RpcTransport transport;
   private EthereumRpc ethereumRpc;
 
   public static EthereumResource getResource() {
@@ -28,11 +29,18 @@ public class EthereumResource {
 
   private EthereumResource() {
     EthereumConfiguration config = new EthereumConfiguration();
-    try {
-      this.client = new JsonRpcHttpClient(new URL(config.getDaemonConnectionString()));
-    } catch (MalformedURLException e) {
-      LOGGER.error(null, e);
+    List<HttpRpcTransport> nodes = new LinkedList<>();
+    String[] connectionStrings = config.getDaemonConnectionStrings();
+    for (int i = 0; i < connectionStrings.length; i++) {
+      nodes.add(new HttpRpcTransport("geth-" + i, connectionStrings[i].trim(), "", "",
+          config.getRpcConnectTimeout(), config.getRpcReadTimeout(), config.getRpcMaxInFlight()));
     }
+
+    this.transport = new NodePoolTransport("geth", nodes,
+        Collections.singleton("eth_sendRawTransaction"), Collections.emptySet(),
+        config.isRpcWriteFanOut(), config.getRpcMaxBlockLag(), node -> new BigInteger(1,
+            ByteUtilities.toByteArray((String) node.invoke("eth_blockNumber", null, String.class)))
+            .longValue(), config.getRpcHealthCheckInterval());
   }
 
   public EthereumResource(EthereumRpc rpc) {
@@ -43,6 +51,14 @@ public class EthereumResource {
     this.ethereumRpc = rpc;
   }
 
+  /**
+   * Replace the transport used to reach geth.
+   */
+  public void setTransport(RpcTransport transport) {
+    this.transport = transport;
+    this.ethereumRpc = null;
+  }
+
   /**
    * Returns an RPC connector that should be pointing to the geth node.
    *
@@ -50,8 +66,7 @@ public class EthereumResource {
    */
   public EthereumRpc getGethRpc() {
     if (ethereumRpc == null) {
-      this.ethereumRpc =
-          ProxyUtil.createClientProxy(getClass().getClassLoader(), EthereumRpc.class, client);
+      this.ethereumRpc = RpcProxy.createProxy(EthereumRpc.class, transport, Method::getName);
     }
 
     return this.ethereumRpc;
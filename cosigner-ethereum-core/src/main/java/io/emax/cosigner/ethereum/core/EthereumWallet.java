@@ -5,6 +5,7 @@ import io.emax.cosigner.api.currency.CurrencyAdmin;
 import io.emax.cosigner.api.currency.Wallet;
 import io.emax.cosigner.api.validation.Validatable;
 import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.StateStore;
 import io.emax.cosigner.common.crypto.Secp256k1;
 import io.emax.cosigner.ethereum.core.common.EthereumTools;
 import io.emax.cosigner.ethereum.core.common.RlpItem;
@@ -34,24 +35,42 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
   private static final Logger LOGGER = LoggerFactory.getLogger(EthereumWallet.class);
   private static final String TESTNET_VERSION = "2";
   private static final long TESTNET_BASE_ROUNDS = (long) Math.pow(2, 20);
+  private static final String CONTRACT_KEY = "contract/";
+  private static final String SCANNED_ROUNDS_KEY = "scannedRounds/";
 
   private final EthereumRpc ethereumRpc = EthereumResource.getResource().getGethRpc();
   EthereumConfiguration config;
 
   private final HashMap<String, Integer> addressRounds = new HashMap<>();
-  private final HashMap<String, ContractInformation> msigContracts = new HashMap<>();
-  private final HashMap<String, String> reverseMsigContracts = new HashMap<>();
+  private final Map<String, ContractInformation> msigContracts = new ConcurrentHashMap<>();
+  private final Map<String, String> reverseMsigContracts = new ConcurrentHashMap<>();
+
+  // Completes once the first contract sync has run, the contract maps are incomplete until then.
+  private final CompletableFuture<Void> contractsSynced = new CompletableFuture<>();
+  private volatile int syncRound = 0;
+  private volatile int syncRounds = 0;
+
+  // Contracts found by the sync and how far through the contract account's nonces it has got.
+  private final StateStore state;
+  private volatile int scannedRounds = 0;
 
   private Thread multiSigSubscription = new Thread(() -> {
     while (true) {
       try {
         LOGGER.info("Scanning ETH multi-sig addresses");
-        syncMultiSigAddresses();
+        if (syncMultiSigAddresses()) {
+          contractsSynced.complete(null);
+        }
         Thread.sleep(60000);
       } catch (Exception e) {
         LOGGER.debug("Multisig scan interrupted.");
@@ -61,12 +80,10 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   public EthereumWallet(EthereumConfiguration conf) {
     this.config = conf;
-    try {
-      syncMultiSigAddresses();
-    } catch (Exception e) {
-      LOGGER.debug(null, e);
-    }
+    this.state = StateStore.open(config.getStateFile());
+    loadState();
 
+    // The first sync can walk millions of nonces on testnet, so it runs in the background.
     if (!multiSigSubscription.isAlive()) {
       multiSigSubscription.setDaemon(true);
       multiSigSubscription.start();
@@ -75,18 +92,81 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   private volatile boolean synching = false;
 
-  private void syncMultiSigAddresses() {
-    if (synching) {
+  /**
+   * Wait for the first contract sync before using the contract maps.
+   *
+   * @throws IllegalStateException If it hasn't finished within the configured wait.
+   */
+  private void awaitContractSync() {
+    if (contractsSynced.isDone()) {
       return;
     }
     try {
-      synching = true;
-      String decodedContractAccount = config.getContractAccount();
-      String contractKey = config.getContractKey();
+      contractsSynced.get(config.getContractSyncWait(), TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for ETH contract sync", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IllegalStateException(
+          "ETH contracts are still syncing (" + syncRound + "/" + syncRounds + ")", e);
+    }
+  }
+
+  private static String getContractAccount(EthereumConfiguration config) {
+    if (!config.getContractKey().isEmpty()) {
+      return EthereumTools.getPublicAddress(config.getContractKey(), true);
+    }
+    return config.getContractAccount();
+  }
 
-      if (!contractKey.isEmpty()) {
-        decodedContractAccount = EthereumTools.getPublicAddress(contractKey, true);
+  /**
+   * Reload the contracts found by earlier runs, so the sync only has to cover new nonces.
+   */
+  private void loadState() {
+    if (state == null) {
+      return;
+    }
+    state.getAll(CONTRACT_KEY).forEach((key, value) -> {
+      String contract = key.substring(CONTRACT_KEY.length());
+      String[] ownerAndType = value.split(":");
+      try {
+        Class<?> contractType = Class.forName(ownerAndType[1]);
+        MultiSigContractInterface contractParams =
+            (MultiSigContractInterface) contractType.newInstance();
+        msigContracts.put(ownerAndType[0],
+            new ContractInformation(contract, contractParams.getContractPayload(), contractType));
+        reverseMsigContracts.put(contract, ownerAndType[0]);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        LOGGER.warn("Ignoring stored contract " + contract, e);
       }
+    });
+
+    String rounds = state.get(SCANNED_ROUNDS_KEY + getContractAccount(config));
+    if (rounds != null) {
+      scannedRounds = Integer.parseInt(rounds);
+    }
+    LOGGER.info("Loaded " + reverseMsigContracts.size() + " ETH contracts, scanned up to nonce "
+        + scannedRounds);
+  }
+
+  private void saveScannedRounds(String contractAccount, int rounds) {
+    if (state != null) {
+      state.put(SCANNED_ROUNDS_KEY + contractAccount, Integer.toString(rounds));
+    }
+  }
+
+  /**
+   * Scan the contract account's nonces for multi-sig contracts we've deployed.
+   *
+   * @return True if the scan ran to completion.
+   */
+  private boolean syncMultiSigAddresses() {
+    if (synching) {
+      return false;
+    }
+    try {
+      synching = true;
+      String decodedContractAccount = getContractAccount(config);
 
       LOGGER.info(
           "Synchronizing contract accounts with network... (0x" + decodedContractAccount + ")");
@@ -97,10 +177,18 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
       if (ethereumRpc.net_version().equals(TESTNET_VERSION)) {
         baseRounds = (int) TESTNET_BASE_ROUNDS;
       }
+      syncRounds = rounds;
 
-      for (int i = baseRounds; i < rounds; i++) {
+      // Nonces below the transaction count are mined, so what we found at them won't change.
+      // Progress stops at the first contract we couldn't read so it's retried next time.
+      int failedRound = -1;
+      for (int i = Math.max(baseRounds, scannedRounds); i < rounds; i++) {
+        syncRound = i;
         if (i % 50000 == 0) {
           LOGGER.info("Scanning ETH: " + i + "/" + rounds + "...");
+          if (failedRound < 0) {
+            saveScannedRounds(decodedContractAccount, i);
+          }
         }
         RlpList contractAddress = new RlpList();
         RlpItem contractCreator = new RlpItem(ByteUtilities.toByteArray(decodedContractAccount));
@@ -157,9 +245,18 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
                 reverseMsigContracts
                     .put(contract.toLowerCase(Locale.US), userAddress.toLowerCase(Locale.US));
               }
+
+              String owner = reverseMsigContracts.get(contract.toLowerCase(Locale.US));
+              if (state != null && owner != null) {
+                state.put(CONTRACT_KEY + contract.toLowerCase(Locale.US),
+                    owner + ":" + contractType.getName());
+              }
               break;
             } catch (Exception e) {
               LOGGER.warn("Could not process contract data for contract at " + contract + "!", e);
+              if (failedRound < 0) {
+                failedRound = i;
+              }
               break;
             }
           }
@@ -167,8 +264,13 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
           contractType = contractType.getSuperclass();
         }
       }
+
+      scannedRounds = failedRound < 0 ? Math.max(scannedRounds, rounds) : failedRound;
+      saveScannedRounds(decodedContractAccount, scannedRounds);
+      return true;
     } catch (Exception e) {
       LOGGER.warn("Error scanning for existing contracts!");
+      return false;
     } finally {
       synching = false;
     }
@@ -222,6 +324,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   @Override
   public Iterable<String> getAddresses(String name) {
+    awaitContractSync();
     int maxRounds;
     if (addressRounds.containsKey(name)) {
       maxRounds = addressRounds.get(name);
@@ -248,6 +351,8 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   @Override
   public String getMultiSigAddress(Iterable<String> addresses, String name) {
+    // Missing an existing contract here would deploy a duplicate.
+    awaitContractSync();
     String userAddress = "";
     Iterator<String> addIter = addresses.iterator();
     List<String> addressesUsed = new LinkedList<>();
@@ -396,6 +501,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   @Override
   public String createTransaction(Iterable<String> fromAddress, Iterable<Recipient> toAddress) {
+    awaitContractSync();
 
     String senderAddress = fromAddress.iterator().next();
     boolean isMsigSender = false;
@@ -466,6 +572,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   @Override
   public Iterable<String> getSignersForTransaction(String transaction) {
+    awaitContractSync();
     RawTransaction tx = RawTransaction.parseBytes(ByteUtilities.toByteArray(transaction));
     String contractAddress =
         ByteUtilities.toHexString(tx.getTo().getDecodedContents()).toLowerCase(Locale.US);
@@ -885,6 +992,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
 
   @Override
   public String sendTransaction(String transaction) {
+    awaitContractSync();
     transaction = ByteUtilities.toHexString(ByteUtilities.toByteArray(transaction));
     // If this is one of ours, re-sign the whole tx with the contract account.
     RawTransaction decodedTransaction =
@@ -953,6 +1061,8 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
         .put("Maximum Transaction Value Per Hour", config.getMaxAmountPerHour().toPlainString());
     configSummary
         .put("Maximum Transaction Value Per Day", config.getMaxAmountPerDay().toPlainString());
+    configSummary.put("Contract Sync",
+        contractsSynced.isDone() ? "Complete" : syncRound + "/" + syncRounds);
     return configSummary;
   }
 
@@ -1002,12 +1112,51 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
     BigInteger latestBlockNumber =
         new BigInteger(1, ByteUtilities.toByteArray(ethereumRpc.eth_blockNumber()));
 
+    LinkedList<TransactionDetails> txDetails =
+        getTransactions(address, BigInteger.ZERO, latestBlockNumber);
+
+    LOGGER.debug("Size: " + txDetails.size());
+
+    LOGGER.debug("SkipNumber: " + skipNumber);
+    LOGGER.debug("NumberToReturn: " + numberToReturn);
+    Collections.sort(txDetails, new TxDateComparator());
+    for (int i = 0; i < skipNumber; i++) {
+      txDetails.removeLast();
+    }
+    LOGGER.debug("Size: " + txDetails.size());
+    while (txDetails.size() > numberToReturn) {
+      txDetails.removeFirst();
+    }
+    LOGGER.debug("Size: " + txDetails.size());
+    return txDetails.toArray(new TransactionDetails[txDetails.size()]);
+  }
+
+  @Override
+  public TransactionPage getTransactionsSince(String address, String cursor) {
+    BigInteger latestBlockNumber =
+        new BigInteger(1, ByteUtilities.toByteArray(ethereumRpc.eth_blockNumber()));
+    BigInteger fromBlock = cursor == null ? BigInteger.ZERO
+        : new BigInteger(1, ByteUtilities.toByteArray(cursor));
+    if (fromBlock.compareTo(latestBlockNumber) > 0) {
+      return new TransactionPage(new TransactionDetails[0], cursor);
+    }
+
+    // The cursor is the first block that hasn't been scanned yet.
+    LinkedList<TransactionDetails> txDetails =
+        getTransactions(address, fromBlock, latestBlockNumber);
+    Collections.sort(txDetails, new TxDateComparator());
+    return new TransactionPage(txDetails.toArray(new TransactionDetails[txDetails.size()]),
+        "0x" + latestBlockNumber.add(BigInteger.ONE).toString(16));
+  }
+
+  private LinkedList<TransactionDetails> getTransactions(String address, BigInteger fromBlock,
+      BigInteger latestBlockNumber) {
     address = "0x" + ByteUtilities.toHexString(ByteUtilities.toByteArray(address));
 
     LinkedList<TransactionDetails> txDetails = new LinkedList<>();
     Map<String, Object> filterParams = new HashMap<>();
-    filterParams.put("fromBlock", "0x00");
-    filterParams.put("toBlock", "latest");
+    filterParams.put("fromBlock", "0x" + fromBlock.toString(16));
+    filterParams.put("toBlock", "0x" + latestBlockNumber.toString(16));
     filterParams.put("address", address);
     String txFilter = ethereumRpc.eth_newFilter(filterParams);
     Map<String, Object>[] filterResults = ethereumRpc.eth_getFilterLogs(txFilter);
@@ -1047,21 +1196,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
           .divide(BigDecimal.valueOf(config.getWeiMultiplier()), BigDecimal.ROUND_HALF_UP));
       txDetails.add(txDetail);
     }
-
-    LOGGER.debug("Size: " + txDetails.size());
-
-    LOGGER.debug("SkipNumber: " + skipNumber);
-    LOGGER.debug("NumberToReturn: " + numberToReturn);
-    Collections.sort(txDetails, new TxDateComparator());
-    for (int i = 0; i < skipNumber; i++) {
-      txDetails.removeLast();
-    }
-    LOGGER.debug("Size: " + txDetails.size());
-    while (txDetails.size() > numberToReturn) {
-      txDetails.removeFirst();
-    }
-    LOGGER.debug("Size: " + txDetails.size());
-    return txDetails.toArray(new TransactionDetails[txDetails.size()]);
+    return txDetails;
   }
 
   @Override
@@ -1179,6 +1314,9 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
       LOGGER.debug("Unable to decode tx data");
     }
 
+    txDetail.setTxHash("0x" + EthereumTools
+        .hashKeccak(ByteUtilities.toHexString(ByteUtilities.toByteArray(transaction)))
+        .toLowerCase(Locale.US));
     return txDetail;
   }
 
@@ -1186,7 +1324,7 @@ public class EthereumWallet implements Wallet, Validatable, CurrencyAdmin {
   public ServerStatus getWalletStatus() {
     try {
       ethereumRpc.eth_blockNumber();
-      return ServerStatus.CONNECTED;
+      return contractsSynced.isDone() ? ServerStatus.CONNECTED : ServerStatus.SYNCING;
     } catch (Exception e) {
       return ServerStatus.DISCONNECTED;
     }
@@ -2,6 +2,7 @@ package io.emax.cosigner.ethereum.core.common;
 
 import io.emax.cosigner.common.ByteUtilities;
 import io.emax.cosigner.common.DeterministicRng;
+import io.emax.cosigner.common.Tracer;
 import io.emax.cosigner.common.crypto.Secp256k1;
 import io.emax.cosigner.ethereum.core.gethrpc.CallData;
 
@@ -33,31 +34,32 @@ public class EthereumTools {
    */
   public static String getDeterministicPrivateKey(String userKeyPart, String serverKeyPart,
       int rounds) {
+    try (Tracer.Span span = Tracer.span("key.derive")) {
+      byte[] userKey = new BigInteger(userKeyPart, 16).toByteArray();
+      byte[] serverKey = new BigInteger(serverKeyPart, 16).toByteArray();
+      SecureRandom secureRandom = DeterministicRng.getSecureRandom(userKey, serverKey);
 
-    byte[] userKey = new BigInteger(userKeyPart, 16).toByteArray();
-    byte[] serverKey = new BigInteger(serverKeyPart, 16).toByteArray();
-    SecureRandom secureRandom = DeterministicRng.getSecureRandom(userKey, serverKey);
+      // Set up our private key variables
+      BigInteger privateKeyCheck = BigInteger.ZERO;
 
-    // Set up our private key variables
-    BigInteger privateKeyCheck = BigInteger.ZERO;
+      // Bit of magic, move this maybe. This is the max key range.
+      BigInteger maxKey =
+          new BigInteger("00FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364140", 16);
 
-    // Bit of magic, move this maybe. This is the max key range.
-    BigInteger maxKey =
-        new BigInteger("00FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364140", 16);
-
-    // Generate the key, skipping as many as desired.
-    byte[] privateKeyAttempt = new byte[32];
-    for (int i = 0; i < Math.max(rounds, 1); i++) {
-      secureRandom.nextBytes(privateKeyAttempt);
-      privateKeyCheck = new BigInteger(1, privateKeyAttempt);
-      while (privateKeyCheck.compareTo(BigInteger.ZERO) == 0
-          || privateKeyCheck.compareTo(maxKey) == 1) {
+      // Generate the key, skipping as many as desired.
+      byte[] privateKeyAttempt = new byte[32];
+      for (int i = 0; i < Math.max(rounds, 1); i++) {
         secureRandom.nextBytes(privateKeyAttempt);
         privateKeyCheck = new BigInteger(1, privateKeyAttempt);
+        while (privateKeyCheck.compareTo(BigInteger.ZERO) == 0
+            || privateKeyCheck.compareTo(maxKey) == 1) {
+          secureRandom.nextBytes(privateKeyAttempt);
+          privateKeyCheck = new BigInteger(1, privateKeyAttempt);
+        }
       }
-    }
 
-    return privateKeyCheck.toString(16);
+      return privateKeyCheck.toString(16);
+    }
   }
 
   /**
@@ -13,6 +13,14 @@ import java.util.Map;
 
 public class EthereumTestRpc implements EthereumRpc {
   private int txCounter = 1;
+  private int filterLogs = 0;
+
+  /**
+   * Number of logs each filter answers with, for load testing with busier addresses.
+   */
+  public void setFilterLogs(int filterLogs) {
+    this.filterLogs = filterLogs;
+  }
 
   @Override
   public String eth_getBalance(String address, String defaultBlock) {
@@ -51,7 +59,17 @@ public class EthereumTestRpc implements EthereumRpc {
 
   @Override
   public Map<String, Object>[] eth_getFilterLogs(String filterId) {
-    return new Map[] {};
+    Map<String, Object>[] logs = new Map[filterLogs];
+    for (int i = 0; i < filterLogs; i++) {
+      Map<String, Object> log = new HashMap<>();
+      log.put("transactionHash", "0x" + String.format("%064x", i));
+      log.put("blockNumber", "0x" + Integer.toHexString(0x0255 - i % 0x0200));
+      // Recipient, sender and amount.
+      log.put("data", "0x" + String.format("%064x", i + 1) + String.format("%064x", i + 2)
+          + String.format("%064x", 1000000000000000000L));
+      logs[i] = log;
+    }
+    return logs;
   }
 
   @Override
@@ -93,7 +111,13 @@ public class EthereumTestRpc implements EthereumRpc {
 
   @Override
   public Block eth_getBlockByNumber(String number, boolean returnTxData) {
-    return null;
+    if (filterLogs == 0) {
+      return null;
+    }
+    Block block = new Block();
+    block.setNumber(number);
+    block.setTimestamp("0x" + Long.toHexString(System.currentTimeMillis() / 1000));
+    return block;
   }
 
   @Override
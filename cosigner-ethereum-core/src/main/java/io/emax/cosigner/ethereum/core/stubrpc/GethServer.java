@@ -0,0 +1,607 @@
+package io.emax.cosigner.ethereum.core.stubrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.crypto.Secp256k1;
+import io.emax.cosigner.common.rpc.JsonRpcServer;
+import io.emax.cosigner.common.rpc.RpcException;
+import io.emax.cosigner.common.rpc.SimulatedNode;
+import io.emax.cosigner.ethereum.core.common.EthereumTools;
+import io.emax.cosigner.ethereum.core.gethrpc.RawTransaction;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for geth over HTTP JSON-RPC.
+ *
+ * <p>Keeps a synthetic chain in memory: blocks, balances, nonces, deployed contracts and their
+ * logs, enough to answer every call in {@link io.emax.cosigner.ethereum.core.gethrpc.EthereumRpc}.
+ * Senders are recovered from the transaction signatures, but contracts aren't executed: deploying
+ * one stores its init code, calls return zero, and value sent to a contract is logged the way the
+ * multi-sig contract logs deposits. Blocks are mined on a timer, and each block can carry payments
+ * to random watched addresses so the monitors always have something to see.
+ */
+public class GethServer {
+  /**
+   * Topic of the ERC-20 Transfer(address,address,uint256) event.
+   */
+  public static final String TRANSFER_TOPIC =
+      "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+  private static final String ZERO_WORD = String.format("%064d", 0);
+  private static final long GAS_LIMIT = 4712388;
+
+  private final JsonRpcServer server;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Random random;
+
+  private final List<Block> blocks = new ArrayList<>();
+  private final List<Transaction> pending = new LinkedList<>();
+  private final Map<String, Transaction> transactions = new HashMap<>();
+  // Mined logs in chain order.
+  private final List<Log> logs = new ArrayList<>();
+  private final Map<String, BigInteger> balances = new HashMap<>();
+  private final Map<String, Long> nonces = new HashMap<>();
+  private final Map<String, String> code = new HashMap<>();
+  private final Map<String, String> storage = new HashMap<>();
+  private final Set<String> watched = new LinkedHashSet<>();
+  private final Map<String, Filter> filters = new HashMap<>();
+  private int paymentsPerBlock = 0;
+  private long filterCounter = 0;
+
+  private static class Block {
+    private final String hash;
+    private final String parentHash;
+    private final long number;
+    private final long timestamp;
+    private final List<Transaction> transactions = new LinkedList<>();
+
+    Block(String hash, String parentHash, long number, long timestamp) {
+      this.hash = hash;
+      this.parentHash = parentHash;
+      this.number = number;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private static class Transaction {
+    private final String hash;
+    private final String from;
+    private final String to;
+    private final long nonce;
+    private final BigInteger value;
+    private final BigInteger gas;
+    private final BigInteger gasPrice;
+    private final String input;
+    private final List<Log> logs = new LinkedList<>();
+    private String contractAddress;
+    private Block block;
+
+    Transaction(String hash, String from, String to, long nonce, BigInteger value,
+        BigInteger gas, BigInteger gasPrice, String input) {
+      this.hash = hash;
+      this.from = from;
+      this.to = to;
+      this.nonce = nonce;
+      this.value = value;
+      this.gas = gas;
+      this.gasPrice = gasPrice;
+      this.input = input;
+    }
+  }
+
+  private static class Log {
+    private final String address;
+    private final List<String> topics;
+    private final String data;
+    private final Transaction transaction;
+    private int logIndex;
+
+    Log(String address, List<String> topics, String data, Transaction transaction) {
+      this.address = address;
+      this.topics = topics;
+      this.data = data;
+      this.transaction = transaction;
+    }
+  }
+
+  private static class Filter {
+    private final JsonNode from;
+    private final JsonNode to;
+    private final Set<String> addresses = new LinkedHashSet<>();
+    private final JsonNode topics;
+    // Index in the log list that eth_getFilterChanges picks up from.
+    private int cursor;
+
+    Filter(JsonNode params, int cursor) {
+      this.from = params.path("fromBlock");
+      this.to = params.path("toBlock");
+      this.topics = params.path("topics");
+      this.cursor = cursor;
+      JsonNode address = params.path("address");
+      if (address.isArray()) {
+        address.forEach(entry -> addresses.add(normalize(entry.asText())));
+      } else if (address.isTextual()) {
+        addresses.add(normalize(address.asText()));
+      }
+    }
+  }
+
+  /**
+   * Set up a node with just a genesis block.
+   *
+   * @param port Port to listen on, 0 to pick a free one.
+   * @param seed Seed for the synthetic payments.
+   */
+  public GethServer(int port, long seed) throws IOException {
+    this.random = new Random(seed);
+    this.server = new JsonRpcServer("geth", port);
+    blocks.add(new Block(randomHash(), "0x" + ZERO_WORD, 0, now()));
+
+    server.register("eth_blockNumber", params -> quantity(getBlockNumber()));
+    server.register("net_version", params -> "1337");
+    server.register("eth_getBlockByNumber",
+        params -> getBlockByNumber(params.get(0).asText(), params.path(1).asBoolean(false)));
+    server.register("eth_getBalance", params -> quantity(getBalance(params.get(0).asText())));
+    server.register("eth_getTransactionCount",
+        params -> quantity(getTransactionCount(params.get(0).asText())));
+    server.register("eth_getTransactionByHash",
+        params -> getTransactionByHash(params.get(0).asText()));
+    server.register("eth_getTransactionReceipt",
+        params -> getTransactionReceipt(params.get(0).asText()));
+    server.register("eth_sendRawTransaction",
+        params -> sendRawTransaction(params.get(0).asText()));
+    server.register("eth_sign", params -> sign(params.get(0).asText(), params.get(1).asText()));
+    server.register("eth_call", params -> "0x" + ZERO_WORD);
+    server.register("eth_getCode", params -> getCode(params.get(0).asText()));
+    server.register("eth_getStorageAt",
+        params -> getStorageAt(params.get(0).asText(), params.get(1).asText()));
+    server.register("eth_newFilter", params -> newFilter(params.get(0)));
+    server.register("eth_getFilterLogs", params -> getFilterLogs(params.get(0).asText()));
+    server.register("eth_getFilterChanges", params -> getFilterChanges(params.get(0).asText()));
+    server.register("eth_getLogs", params -> getLogs(params.get(0)));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop();
+  }
+
+  public String getUrl() {
+    return server.getUrl();
+  }
+
+  /**
+   * Latency and failures to add to every request, null for none.
+   */
+  public void setProfile(SimulatedNode.Profile profile) {
+    server.setProfile(profile);
+  }
+
+  /**
+   * Number of synthetic payments to watched addresses that each new block carries.
+   */
+  public synchronized void setPaymentsPerBlock(int paymentsPerBlock) {
+    this.paymentsPerBlock = paymentsPerBlock;
+  }
+
+  /**
+   * Mine a block on a timer.
+   */
+  public void produceBlocks(long interval, TimeUnit unit) {
+    server.schedule(interval, unit, this::mineBlock);
+  }
+
+  /**
+   * Include an address in the synthetic payments. Deployed contracts are watched automatically.
+   */
+  public synchronized void watch(String address) {
+    watched.add(normalize(address));
+  }
+
+  /**
+   * Storage the contracts should report, since they aren't run.
+   */
+  public synchronized void setStorage(String address, String position, String value) {
+    storage.put(normalize(address) + ":" + new BigInteger(1, ByteUtilities.toByteArray(position)),
+        value);
+  }
+
+  /**
+   * Pay an address from outside. The payment is pending until the next block.
+   *
+   * @return Transaction hash of the payment.
+   */
+  public synchronized String fund(String address, BigInteger wei) {
+    Transaction tx =
+        new Transaction(randomHash(), randomAddress(), normalize(address), 0, wei,
+            BigInteger.valueOf(21000), BigInteger.ONE, "0x");
+    accept(tx);
+    return tx.hash;
+  }
+
+  /**
+   * Log an ERC-20 transfer on a token contract. The log is pending until the next block.
+   *
+   * @return Transaction hash the log belongs to.
+   */
+  public synchronized String transferTokens(String contract, String from, String to,
+      BigInteger amount) {
+    Transaction tx = new Transaction(randomHash(), normalize(from), normalize(contract), 0,
+        BigInteger.ZERO, BigInteger.valueOf(GAS_LIMIT), BigInteger.ONE, "0x");
+    List<String> topics = new LinkedList<>();
+    topics.add(TRANSFER_TOPIC);
+    topics.add("0x" + word(from));
+    topics.add("0x" + word(to));
+    tx.logs.add(new Log(normalize(contract), topics, word(amount.toString(16)), tx));
+    pending.add(tx);
+    transactions.put(tx.hash, tx);
+    return tx.hash;
+  }
+
+  /**
+   * Mine the pending transactions into a new block, along with any synthetic payments.
+   */
+  public synchronized void mineBlock() {
+    List<String> addresses = new ArrayList<>(watched);
+    for (int i = 0; i < paymentsPerBlock && !addresses.isEmpty(); i++) {
+      String address = addresses.get(random.nextInt(addresses.size()));
+      fund(address, BigInteger.TEN.pow(15).multiply(BigInteger.valueOf(1 + random.nextInt(1000))));
+    }
+
+    Block block = new Block(randomHash(), getTip().hash, blocks.size(), now());
+    pending.forEach(tx -> {
+      tx.block = block;
+      block.transactions.add(tx);
+      tx.logs.forEach(log -> {
+        log.logIndex = logs.size();
+        logs.add(log);
+      });
+    });
+    pending.clear();
+    blocks.add(block);
+  }
+
+  public synchronized long getBlockNumber() {
+    return getTip().number;
+  }
+
+  private Block getTip() {
+    return blocks.get(blocks.size() - 1);
+  }
+
+  private synchronized BigInteger getBalance(String address) {
+    return balances.getOrDefault(normalize(address), BigInteger.ZERO);
+  }
+
+  private synchronized long getTransactionCount(String address) {
+    return nonces.getOrDefault(normalize(address), 0L);
+  }
+
+  private synchronized ObjectNode getBlockByNumber(String number, boolean fullTransactions) {
+    long blockNumber = parseBlock(number);
+    if (blockNumber < 0 || blockNumber >= blocks.size()) {
+      return null;
+    }
+    Block block = blocks.get((int) blockNumber);
+    ObjectNode result = mapper.createObjectNode();
+    result.put("number", quantity(block.number));
+    result.put("hash", block.hash);
+    result.put("parentHash", block.parentHash);
+    result.put("timestamp", quantity(block.timestamp));
+    result.put("miner", "0x" + String.format("%040d", 0));
+    result.put("difficulty", "0x1");
+    result.put("gasLimit", quantity(GAS_LIMIT));
+    result.put("gasUsed", "0x0");
+    ArrayNode txs = result.putArray("transactions");
+    block.transactions
+        .forEach(tx -> txs.add(fullTransactions ? transactionJson(tx) : txs.textNode(tx.hash)));
+    result.putArray("uncles");
+    return result;
+  }
+
+  private synchronized ObjectNode getTransactionByHash(String hash) {
+    Transaction tx = transactions.get(hash.toLowerCase());
+    return tx == null ? null : transactionJson(tx);
+  }
+
+  private ObjectNode transactionJson(Transaction tx) {
+    ObjectNode result = mapper.createObjectNode();
+    result.put("hash", tx.hash);
+    result.put("nonce", quantity(tx.nonce));
+    result.put("blockHash", tx.block == null ? null : tx.block.hash);
+    result.put("blockNumber", tx.block == null ? null : quantity(tx.block.number));
+    result.put("transactionIndex",
+        tx.block == null ? null : quantity(tx.block.transactions.indexOf(tx)));
+    result.put("from", tx.from);
+    result.put("to", tx.to);
+    result.put("value", quantity(tx.value));
+    result.put("gas", quantity(tx.gas));
+    result.put("gasPrice", quantity(tx.gasPrice));
+    result.put("input", tx.input);
+    return result;
+  }
+
+  private synchronized ObjectNode getTransactionReceipt(String hash) {
+    Transaction tx = transactions.get(hash.toLowerCase());
+    if (tx == null || tx.block == null) {
+      return null;
+    }
+    ObjectNode result = mapper.createObjectNode();
+    result.put("transactionHash", tx.hash);
+    result.put("transactionIndex", quantity(tx.block.transactions.indexOf(tx)));
+    result.put("blockHash", tx.block.hash);
+    result.put("blockNumber", quantity(tx.block.number));
+    result.put("from", tx.from);
+    result.put("to", tx.to);
+    result.put("contractAddress", tx.contractAddress);
+    result.put("gasUsed", quantity(tx.gas));
+    result.put("cumulativeGasUsed", quantity(tx.gas));
+    result.put("status", "0x1");
+    ArrayNode logArray = result.putArray("logs");
+    tx.logs.forEach(log -> logArray.add(logJson(log)));
+    return result;
+  }
+
+  private synchronized String sendRawTransaction(String hex) {
+    byte[] bytes = ByteUtilities.toByteArray(hex);
+    RawTransaction raw = RawTransaction.parseBytes(bytes);
+    if (raw == null) {
+      throw new RpcException("rlp: invalid transaction");
+    }
+    String hash = "0x" + EthereumTools.hashKeccak(ByteUtilities.toHexString(bytes)).toLowerCase();
+    if (transactions.containsKey(hash)) {
+      throw new RpcException("known transaction: " + hash.substring(2));
+    }
+
+    String from = recoverSender(raw);
+    long nonce = new BigInteger(1, raw.getNonce().getDecodedContents()).longValue();
+    if (nonce < getTransactionCount(from)) {
+      throw new RpcException("nonce too low");
+    }
+    byte[] toBytes = raw.getTo().getDecodedContents();
+    Transaction tx = new Transaction(hash, from,
+        toBytes.length == 0 ? null : normalize(ByteUtilities.toHexString(toBytes)), nonce,
+        new BigInteger(1, raw.getValue().getDecodedContents()),
+        new BigInteger(1, raw.getGasLimit().getDecodedContents()),
+        new BigInteger(1, raw.getGasPrice().getDecodedContents()),
+        "0x" + ByteUtilities.toHexString(raw.getData().getDecodedContents()).toLowerCase());
+    nonces.put(from, nonce + 1);
+    if (tx.to == null) {
+      tx.contractAddress =
+          normalize(EthereumTools.calculateContractAddress(from.substring(2), nonce));
+      code.put(tx.contractAddress, tx.input);
+      watched.add(tx.contractAddress);
+    }
+    balances.put(from, getBalance(from).subtract(tx.value));
+    accept(tx);
+    return hash;
+  }
+
+  /**
+   * Credit the recipient and log value sent to a contract, then queue it for the next block.
+   */
+  private void accept(Transaction tx) {
+    if (tx.to != null) {
+      balances.put(tx.to, getBalance(tx.to).add(tx.value));
+      if (code.containsKey(tx.to) && tx.value.signum() > 0) {
+        tx.logs.add(new Log(tx.to, new LinkedList<>(),
+            word(tx.to) + word(tx.from) + word(tx.value.toString(16)), tx));
+      }
+    }
+    transactions.put(tx.hash, tx);
+    pending.add(tx);
+  }
+
+  private static String recoverSender(RawTransaction raw) {
+    byte[] sigV = raw.getSigV().getDecodedContents();
+    if (sigV.length == 0) {
+      throw new RpcException("invalid sender");
+    }
+    try {
+      byte[] hash = ByteUtilities.toByteArray(
+          EthereumTools.hashKeccak(ByteUtilities.toHexString(raw.getSigBytes())));
+      byte[] publicKey = Secp256k1.recoverPublicKey(raw.getSigR().getDecodedContents(),
+          raw.getSigS().getDecodedContents(), new byte[]{(byte) (sigV[0] - 27)}, hash);
+      return normalize(EthereumTools
+          .getPublicAddress(ByteUtilities.toHexString(publicKey).substring(2), false));
+    } catch (RuntimeException e) {
+      throw new RpcException("invalid sender");
+    }
+  }
+
+  private String sign(String address, String data) {
+    // Nothing checks these signatures, they just have to be the right shape.
+    String hash = EthereumTools.hashKeccak(ByteUtilities.toHexString(ByteUtilities
+        .toByteArray(normalize(address) + ByteUtilities.toHexString(
+            ByteUtilities.toByteArray(data)))));
+    return "0x" + hash + EthereumTools.hashKeccak(hash) + "1b";
+  }
+
+  private synchronized String getCode(String address) {
+    return code.getOrDefault(normalize(address), "0x");
+  }
+
+  private synchronized String getStorageAt(String address, String position) {
+    return storage.getOrDefault(
+        normalize(address) + ":" + new BigInteger(1, ByteUtilities.toByteArray(position)),
+        "0x" + ZERO_WORD);
+  }
+
+  private synchronized String newFilter(JsonNode params) {
+    String id = quantity(++filterCounter);
+    filters.put(id, new Filter(params, logs.size()));
+    return id;
+  }
+
+  private synchronized ArrayNode getFilterLogs(String id) {
+    Filter filter = filters.get(id);
+    if (filter == null) {
+      throw new RpcException("filter not found");
+    }
+    return matchLogs(filter, 0);
+  }
+
+  private synchronized ArrayNode getFilterChanges(String id) {
+    Filter filter = filters.get(id);
+    if (filter == null) {
+      throw new RpcException("filter not found");
+    }
+    ArrayNode changes = matchLogs(filter, filter.cursor);
+    filter.cursor = logs.size();
+    return changes;
+  }
+
+  private synchronized ArrayNode getLogs(JsonNode params) {
+    return params.isTextual() ? getFilterLogs(params.asText()) :
+        matchLogs(new Filter(params, 0), 0);
+  }
+
+  private ArrayNode matchLogs(Filter filter, int start) {
+    long from = filter.from.isMissingNode() ? getBlockNumber() : parseBlock(filter.from.asText());
+    long to = filter.to.isMissingNode() ? getBlockNumber() : parseBlock(filter.to.asText());
+    ArrayNode result = mapper.createArrayNode();
+    for (int i = start; i < logs.size(); i++) {
+      Log log = logs.get(i);
+      long number = log.transaction.block.number;
+      if (number >= from && number <= to && (filter.addresses.isEmpty() || filter.addresses
+          .contains(log.address)) && matchTopics(filter.topics, log.topics)) {
+        result.add(logJson(log));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Topics match position by position, where null matches anything and a list matches any of its
+   * entries.
+   */
+  private static boolean matchTopics(JsonNode filterTopics, List<String> topics) {
+    if (!filterTopics.isArray()) {
+      return true;
+    }
+    for (int i = 0; i < filterTopics.size(); i++) {
+      JsonNode wanted = filterTopics.get(i);
+      if (wanted.isNull()) {
+        continue;
+      }
+      if (i >= topics.size()) {
+        return false;
+      }
+      boolean matched = false;
+      if (wanted.isArray()) {
+        for (JsonNode option : wanted) {
+          matched |= option.isNull() || option.asText().equalsIgnoreCase(topics.get(i));
+        }
+      } else {
+        matched = wanted.asText().equalsIgnoreCase(topics.get(i));
+      }
+      if (!matched) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private ObjectNode logJson(Log log) {
+    ObjectNode result = mapper.createObjectNode();
+    Transaction tx = log.transaction;
+    result.put("address", log.address);
+    ArrayNode topics = result.putArray("topics");
+    log.topics.forEach(topics::add);
+    result.put("data", "0x" + log.data);
+    result.put("blockNumber", tx.block == null ? null : quantity(tx.block.number));
+    result.put("blockHash", tx.block == null ? null : tx.block.hash);
+    result.put("transactionHash", tx.hash);
+    result.put("transactionIndex",
+        tx.block == null ? null : quantity(tx.block.transactions.indexOf(tx)));
+    result.put("logIndex", quantity(log.logIndex));
+    result.put("removed", false);
+    return result;
+  }
+
+  private long parseBlock(String number) {
+    switch (number) {
+      case "latest":
+      case "pending":
+        return getBlockNumber();
+      case "earliest":
+        return 0;
+      default:
+        // Cosigner sometimes asks for blocks by their decimal number.
+        return number.startsWith("0x") ? new BigInteger(number.substring(2), 16).longValue() :
+            Long.parseLong(number);
+    }
+  }
+
+  private static String normalize(String address) {
+    String hex = address.startsWith("0x") ? address.substring(2) : address;
+    return "0x" + String.format("%40s", hex.toLowerCase()).replace(' ', '0');
+  }
+
+  /**
+   * Left-pads an address or hex number to a 32 byte word, without the 0x.
+   */
+  private static String word(String hex) {
+    String stripped = hex.startsWith("0x") ? hex.substring(2) : hex;
+    return String.format("%64s", stripped.toLowerCase()).replace(' ', '0');
+  }
+
+  private static String quantity(long value) {
+    return "0x" + Long.toHexString(value);
+  }
+
+  private static String quantity(BigInteger value) {
+    return "0x" + value.toString(16);
+  }
+
+  private String randomHash() {
+    byte[] hash = new byte[32];
+    random.nextBytes(hash);
+    return "0x" + ByteUtilities.toHexString(hash).toLowerCase();
+  }
+
+  private String randomAddress() {
+    byte[] address = new byte[20];
+    random.nextBytes(address);
+    return "0x" + ByteUtilities.toHexString(address).toLowerCase();
+  }
+
+  private static long now() {
+    return System.currentTimeMillis() / 1000L;
+  }
+
+  /**
+   * Run a node from the command line.
+   *
+   * <p>Arguments are the port (default 8101), seconds between blocks (default 15) and the number
+   * of synthetic payments per block (default 10).
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8101;
+    long interval = args.length > 1 ? Long.parseLong(args[1]) : 15;
+    int payments = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    GethServer node = new GethServer(port, System.currentTimeMillis());
+    node.setPaymentsPerBlock(payments);
+    node.produceBlocks(interval, TimeUnit.SECONDS);
+    node.start();
+    System.out.println("geth stand-in listening on " + node.getUrl());
+  }
+}
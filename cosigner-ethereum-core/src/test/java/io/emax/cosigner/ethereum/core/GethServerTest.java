@@ -0,0 +1,151 @@
+package io.emax.cosigner.ethereum.core;
+
+import io.emax.cosigner.common.ByteUtilities;
+import io.emax.cosigner.common.crypto.Secp256k1;
+import io.emax.cosigner.common.rpc.HttpRpcTransport;
+import io.emax.cosigner.common.rpc.RpcException;
+import io.emax.cosigner.common.rpc.RpcProxy;
+import io.emax.cosigner.ethereum.core.common.EthereumTools;
+import io.emax.cosigner.ethereum.core.gethrpc.Block;
+import io.emax.cosigner.ethereum.core.gethrpc.DefaultBlock;
+import io.emax.cosigner.ethereum.core.gethrpc.EthereumRpc;
+import io.emax.cosigner.ethereum.core.gethrpc.RawTransaction;
+import io.emax.cosigner.ethereum.core.stubrpc.GethServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GethServerTest {
+  private static final String PRIVATE_KEY =
+      "4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+
+  private GethServer node;
+  private EthereumRpc rpc;
+
+  @Before
+  public void setUp() throws IOException {
+    node = new GethServer(0, 1);
+    node.start();
+    HttpRpcTransport transport =
+        new HttpRpcTransport("geth-test", node.getUrl(), "", "", 1000, 5000, 4);
+    rpc = RpcProxy.createProxy(EthereumRpc.class, transport, Method::getName);
+  }
+
+  @After
+  public void tearDown() {
+    node.stop();
+  }
+
+  private static long number(String quantity) {
+    return new BigInteger(1, ByteUtilities.toByteArray(quantity)).longValue();
+  }
+
+  private static String sign(RawTransaction tx) {
+    byte[] hash = ByteUtilities
+        .toByteArray(EthereumTools.hashKeccak(ByteUtilities.toHexString(tx.getSigBytes())));
+    byte[][] signature;
+    do {
+      signature = Secp256k1.signTransaction(hash, ByteUtilities.toByteArray(PRIVATE_KEY));
+    } while (signature[2][0] != 0 && signature[2][0] != 1);
+    tx.getSigR().setDecodedContents(ByteUtilities.stripLeadingNullBytes(signature[0]));
+    tx.getSigS().setDecodedContents(ByteUtilities.stripLeadingNullBytes(signature[1]));
+    tx.getSigV().setDecodedContents(new byte[]{(byte) (signature[2][0] + 27)});
+    return "0x" + ByteUtilities.toHexString(tx.encode());
+  }
+
+  @Test
+  public void testChain() {
+    System.out.println("");
+    System.out.println("Testing geth stand-in.");
+    String sender = "0x" + EthereumTools.getPublicAddress(PRIVATE_KEY);
+    Assert.assertEquals(0, number(rpc.eth_blockNumber()));
+
+    node.fund(sender, BigInteger.TEN.pow(18));
+    node.mineBlock();
+    Assert.assertEquals(1, number(rpc.eth_blockNumber()));
+    Assert.assertEquals(BigInteger.TEN.pow(18), new BigInteger(1, ByteUtilities
+        .toByteArray(rpc.eth_getBalance(sender, DefaultBlock.LATEST.toString()))));
+
+    // Deploy a contract, then pay it.
+    RawTransaction deploy = new RawTransaction();
+    deploy.getData().setDecodedContents(ByteUtilities.toByteArray("6060604052"));
+    String deployHash = rpc.eth_sendRawTransaction(sign(deploy));
+    Assert.assertNull(rpc.eth_getTransactionReceipt(deployHash));
+    node.mineBlock();
+    Map<String, Object> receipt = rpc.eth_getTransactionReceipt(deployHash);
+    String contract = (String) receipt.get("contractAddress");
+    Assert.assertEquals(
+        "0x" + EthereumTools.calculateContractAddress(sender.substring(2), 0L).toLowerCase(),
+        contract);
+    Assert.assertEquals("0x6060604052",
+        rpc.eth_getCode(contract, DefaultBlock.LATEST.toString()));
+    Assert.assertEquals(1, number(rpc.eth_getTransactionCount(sender, "latest")));
+
+    RawTransaction payment = new RawTransaction();
+    payment.getNonce().setDecodedContents(new byte[]{1});
+    payment.getTo().setDecodedContents(ByteUtilities.toByteArray(contract));
+    payment.getValue().setDecodedContents(BigInteger.TEN.pow(17).toByteArray());
+    String paymentTx = sign(payment);
+    String paymentHash = rpc.eth_sendRawTransaction(paymentTx);
+    try {
+      rpc.eth_sendRawTransaction(paymentTx);
+      Assert.fail("Expected the repeated transaction to be rejected.");
+    } catch (RpcException e) {
+      System.out.println("Got expected error: " + e.getMessage());
+    }
+
+    Map<String, Object> filterParams = new HashMap<>();
+    filterParams.put("fromBlock", "0x0");
+    filterParams.put("address", contract);
+    String filter = rpc.eth_newFilter(filterParams);
+    Assert.assertEquals(0, rpc.eth_getFilterLogs(filter).length);
+    node.mineBlock();
+
+    Map<String, Object>[] logs = rpc.eth_getFilterLogs(filter);
+    Assert.assertEquals(1, logs.length);
+    Assert.assertEquals(paymentHash, logs[0].get("transactionHash"));
+    String data = (String) logs[0].get("data");
+    Assert.assertTrue(data.endsWith(BigInteger.TEN.pow(17).toString(16)));
+    Assert.assertEquals(1, rpc.eth_getFilterChanges(filter).length);
+    Assert.assertEquals(0, rpc.eth_getFilterChanges(filter).length);
+
+    Map<String, Object> tx = rpc.eth_getTransactionByHash(paymentHash);
+    Assert.assertEquals(sender, tx.get("from"));
+    Block block = rpc.eth_getBlockByNumber((String) tx.get("blockNumber"), true);
+    Assert.assertEquals(1, block.getTransactions().length);
+    Assert.assertNotNull(rpc.eth_getBlockByNumber("3", true).getTimestamp());
+  }
+
+  @Test
+  public void testTokenLogs() {
+    System.out.println("");
+    System.out.println("Testing geth stand-in token logs.");
+    String token = "0x00000000000000000000000000000000000000aa";
+    node.transferTokens(token, "0x01", "0x02", BigInteger.valueOf(500));
+    node.transferTokens(token, "0x02", "0x03", BigInteger.valueOf(100));
+    node.watch("0x04");
+    node.setPaymentsPerBlock(2);
+    node.mineBlock();
+
+    String recipient = "0x" + String.format("%064x", 2);
+    Map<String, Object> filterParams = new HashMap<>();
+    filterParams.put("fromBlock", "0x0");
+    filterParams.put("address", token);
+    filterParams.put("topics", new Object[]{new String[]{GethServer.TRANSFER_TOPIC}, null,
+        new String[]{recipient}});
+    Map<String, Object>[] logs = rpc.eth_getFilterLogs(rpc.eth_newFilter(filterParams));
+    Assert.assertEquals(1, logs.length);
+    Assert.assertEquals(500, number((String) logs[0].get("data")));
+
+    Assert.assertEquals(BigInteger.ZERO.compareTo(
+        new BigInteger(1, ByteUtilities.toByteArray(rpc.eth_getBalance("0x04", "latest")))), -1);
+  }
+}
@@ -26,7 +26,7 @@ public class EuroCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public Wallet getWallet() {
+  public synchronized Wallet getWallet() {
     if(tokenWallet == null) {
       tokenWallet = new TokenWallet(tokenConfiguration);
     }
@@ -34,14 +34,14 @@ public class EuroCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public void setWallet(Wallet wallet) {
+  public synchronized void setWallet(Wallet wallet) {
     if(wallet.getClass().isInstance(TokenWallet.class)) {
       tokenWallet = (TokenWallet) wallet;
     }
   }
 
   @Override
-  public Monitor getMonitor() {
+  public synchronized Monitor getMonitor() {
     if(tokenMonitor == null) {
       tokenMonitor = new TokenMonitor((TokenWallet) getWallet());
     }
@@ -49,7 +49,7 @@ public class EuroCurrencyPackage implements CurrencyPackageInterface {
   }
 
   @Override
-  public void setMonitor(Monitor monitor) {
+  public synchronized void setMonitor(Monitor monitor) {
     if(monitor.getClass().isInstance(TokenMonitor.class)) {
       tokenMonitor = (TokenMonitor) monitor;
     }
@@ -27,27 +27,27 @@ public class GenericCurrencyPackage implements CurrencyPackageInterface {
     }
   }
 
-  public Wallet getWallet() {
+  public synchronized Wallet getWallet() {
     if (tokenWallet == null) {
       tokenWallet = new TokenWallet(tokenConfiguration);
     }
     return tokenWallet;
   }
 
-  public void setWallet(Wallet wallet) {
+  public synchronized void setWallet(Wallet wallet) {
     if (wallet.getClass().isInstance(TokenWallet.class)) {
       tokenWallet = (TokenWallet) wallet;
     }
   }
 
-  public Monitor getMonitor() {
+  public synchronized Monitor getMonitor() {
     if (tokenMonitor == null) {
       tokenMonitor = new TokenMonitor((TokenWallet) getWallet());
     }
     return tokenMonitor;
   }
 
-  public void setMonitor(Monitor monitor) {
+  public synchronized void setMonitor(Monitor monitor) {
     if (monitor.getClass().isInstance(TokenMonitor.class)) {
       tokenMonitor = (TokenMonitor) monitor;
     }
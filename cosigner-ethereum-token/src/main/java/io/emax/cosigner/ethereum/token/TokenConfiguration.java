@@ -40,6 +40,10 @@ public class TokenConfiguration implements CurrencyConfiguration, EthereumTransa
   private BigDecimal maxAmountPerHour = BigDecimal.ZERO;
   private BigDecimal maxAmountPerDay = BigDecimal.ZERO;
   private BigDecimal maxAmountPerTransaction = BigDecimal.ZERO;
+  private int balanceSnapshotInterval = 10;
+  private int seenTransactionWindow = 100000;
+  private int contractSyncWait = 30;
+  private String stateFile = "";
 
   private boolean configLoaded = false;
 
@@ -169,6 +173,22 @@ public class TokenConfiguration implements CurrencyConfiguration, EthereumTransa
             cosignerProperties
                 .getProperty("maxAmountPerTransaction", maxAmountPerTransaction.toPlainString())));
 
+        // balanceSnapshotInterval
+        balanceSnapshotInterval = (int) getLongProp(cosignerProperties, "balanceSnapshotInterval",
+            balanceSnapshotInterval);
+
+        // seenTransactionWindow
+        seenTransactionWindow = (int) getLongProp(cosignerProperties, "seenTransactionWindow",
+            seenTransactionWindow);
+
+        // contractSyncWait
+        contractSyncWait =
+            (int) getLongProp(cosignerProperties, "contractSyncWait", contractSyncWait);
+
+        // stateFile
+        stateFile = EnvironmentVariableParser
+            .resolveEnvVars(cosignerProperties.getProperty("stateFile", stateFile));
+
       } catch (IOException e) {
         if (propertiesFile != null) {
           try {
@@ -276,6 +296,22 @@ public class TokenConfiguration implements CurrencyConfiguration, EthereumTransa
     return maxAmountPerTransaction;
   }
 
+  public int getBalanceSnapshotInterval() {
+    return balanceSnapshotInterval;
+  }
+
+  public int getSeenTransactionWindow() {
+    return seenTransactionWindow;
+  }
+
+  public int getContractSyncWait() {
+    return contractSyncWait;
+  }
+
+  public String getStateFile() {
+    return stateFile;
+  }
+
   public String getAdminContractAddress() {
     return adminContractAddress;
   }
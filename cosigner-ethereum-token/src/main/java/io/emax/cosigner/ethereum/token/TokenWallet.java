@@ -6,6 +6,7 @@ import io.emax.cosigner.api.currency.OfflineWallet;
 import io.emax.cosigner.api.currency.Wallet;
 import io.emax.cosigner.common.ByteUtilities;
 import io.emax.cosigner.common.Json;
+import io.emax.cosigner.common.StateStore;
 import io.emax.cosigner.common.crypto.Secp256k1;
 import io.emax.cosigner.ethereum.core.EthereumConfiguration;
 import io.emax.cosigner.ethereum.core.EthereumResource;
@@ -38,27 +39,103 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   private static final Logger LOGGER = LoggerFactory.getLogger(TokenWallet.class);
 
   private static final String TESTNET_VERSION = "2";
   private static final long TESTNET_BASE_ROUNDS = (long) Math.pow(2, 20);
+  private static final String CONTRACTS_KEY = "contracts/";
+  private static final String OWNED_ADDRESSES_KEY = "ownedAddresses/";
 
   // RPC and configuration
   private final EthereumRpc ethereumRpc = EthereumResource.getResource().getGethRpc();
   TokenConfiguration config;
 
-  private String storageContractAddress = "";
-  private String tokenContractAddress = "";
-  private String adminContractAddress = "";
-  private TokenContractInterface contractInterface = new TokenContract();
+  private volatile String storageContractAddress = "";
+  private volatile String tokenContractAddress = "";
+  private volatile String adminContractAddress = "";
+  private volatile TokenContractInterface contractInterface = new TokenContract();
+
+  // Completes once the contracts have been found or deployed.
+  private final CompletableFuture<Void> contractsReady = new CompletableFuture<>();
+  private volatile int syncRound = 0;
+  private volatile int syncRounds = 0;
   private HashSet<String> knownAddresses = new HashSet<>();
   private HashMap<String, HashSet<String>> ownedAddresses = new HashMap<>();
+  // Addresses handed out and contracts found, so restarts skip the balance walk and nonce scan.
+  private final StateStore state;
 
   public TokenWallet(TokenConfiguration conf) {
     config = conf;
-    setupTokenContract();
+    state = StateStore.open(config.getStateFile());
+    if (state != null) {
+      state.getAll(OWNED_ADDRESSES_KEY).forEach((key, addresses) -> {
+        HashSet<String> userAddresses = new HashSet<>(Arrays.asList(addresses.split(",")));
+        ownedAddresses.put(key.substring(OWNED_ADDRESSES_KEY.length()), userAddresses);
+        knownAddresses.addAll(userAddresses);
+      });
+    }
+
+    // Finding the contracts can walk millions of nonces on testnet, so it runs in the background.
+    Thread contractSetup = new Thread(() -> {
+      setupTokenContract();
+      contractsReady.complete(null);
+    }, "token-setup-" + config.getCurrencySymbol());
+    contractSetup.setDaemon(true);
+    contractSetup.start();
+  }
+
+  /**
+   * Wait for the contract setup before using the contract addresses.
+   *
+   * @throws IllegalStateException If it hasn't finished within the configured wait.
+   */
+  private void awaitContractSetup() {
+    // The setup itself signs and sends through these methods while holding the lock.
+    if (contractsReady.isDone() || Thread.holdsLock(this)) {
+      return;
+    }
+    try {
+      contractsReady.get(config.getContractSyncWait(), TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(
+          "Interrupted waiting for " + config.getCurrencySymbol() + " contract setup", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IllegalStateException(
+          config.getCurrencySymbol() + " contracts are still syncing (" + syncRound + "/"
+              + syncRounds + ")", e);
+    }
+  }
+
+  /**
+   * Use the contracts an earlier run found for this account, if they're still on the chain.
+   *
+   * @return False if there weren't any, the scan has to find them.
+   */
+  private boolean loadStoredContracts(String contractAccount) {
+    String stored = state == null ? null : state.get(CONTRACTS_KEY + contractAccount);
+    if (stored == null) {
+      return false;
+    }
+    String[] contracts = stored.split(":", -1);
+    TokenContractInterface storedInterface = getContractVersion(contracts[0]);
+    if (storedInterface == null) {
+      LOGGER.warn("[" + config.getCurrencySymbol() + "] Stored contract " + contracts[0]
+          + " not found on the chain, scanning for it");
+      return false;
+    }
+    contractInterface = storedInterface;
+    storageContractAddress = contracts[0];
+    tokenContractAddress = contracts[1];
+    adminContractAddress = contracts[2];
+    LOGGER.info("[" + config.getCurrencySymbol() + "] Using stored contract " + contracts[0]);
+    return true;
   }
 
   private void findExistingContract(String contractAccount) {
@@ -70,11 +147,13 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
       if (ethereumRpc.net_version().equals(TESTNET_VERSION)) {
         baseRounds = (int) TESTNET_BASE_ROUNDS;
       }
+      syncRounds = rounds;
 
       LOGGER.info(
           "[" + config.getCurrencySymbol() + "] Token Rounds: " + (rounds - baseRounds) + "("
               + txCount + " - " + baseRounds + ") for " + contractAccount);
       for (int i = baseRounds; i < rounds; i++) {
+        syncRound = i;
         if (i % 10000 == 0) {
           LOGGER.info(
               "[" + config.getCurrencySymbol() + "] Token Round progress: " + i + "/" + rounds
@@ -139,7 +218,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
     }
   }
 
-  public void setupTokenContract() {
+  public synchronized void setupTokenContract() {
     LOGGER.info("[" + config.getCurrencySymbol() + "] Attempting to setup token contract");
     if (config.getStorageContractAddress() != null && !config.getStorageContractAddress()
         .isEmpty()) {
@@ -168,7 +247,9 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
             "[" + config.getCurrencySymbol() + "] ContractAccount from config: " + contractAccount);
       }
 
-      findExistingContract(contractAccount);
+      if (!loadStoredContracts(contractAccount)) {
+        findExistingContract(contractAccount);
+      }
 
       try {
         if ((storageContractAddress == null || storageContractAddress.isEmpty()) && config
@@ -305,6 +386,11 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
         }
         LOGGER.info("[" + config.getCurrencySymbol() + "] Got contract address of: "
             + storageContractAddress);
+        if (state != null && storageContractAddress != null && !storageContractAddress
+            .isEmpty()) {
+          state.put(CONTRACTS_KEY + contractAccount,
+              storageContractAddress + ":" + tokenContractAddress + ":" + adminContractAddress);
+        }
       } catch (Exception e) {
         LOGGER.error("[" + config.getCurrencySymbol()
             + "] Unable to create contract, Token module is not usable!");
@@ -405,6 +491,9 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
     knownAddresses.add(publicAddress);
 
     ownedAddresses.get(user).add(publicAddress);
+    if (state != null) {
+      state.put(OWNED_ADDRESSES_KEY + user, String.join(",", ownedAddresses.get(user)));
+    }
 
     LOGGER.debug("New address " + publicAddress + " generated after " + rounds + " rounds");
     return publicAddress;
@@ -449,6 +538,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
 
   @Override
   public String getBalance(String address) {
+    awaitContractSetup();
     CallData callData = EthereumTools
         .generateCall(contractInterface.getContractParameters().getBalance(address),
             storageContractAddress);
@@ -489,6 +579,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   }
 
   public String getTotalBalances() {
+    awaitContractSetup();
     CallData callData = EthereumTools
         .generateCall(contractInterface.getContractParameters().getTotalBalance(),
             storageContractAddress);
@@ -505,6 +596,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
 
   @Override
   public String createTransaction(Iterable<String> fromAddresses, Iterable<Recipient> toAddresses) {
+    awaitContractSetup();
     String firstSender = fromAddresses.iterator().next();
     String contract = storageContractAddress;
     TokenContractInterface txInterface = getContractVersion(firstSender);
@@ -553,6 +645,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
 
   @Override
   public Iterable<String> getSignersForTransaction(String transaction) {
+    awaitContractSetup();
     RawTransaction rawTx = RawTransaction.parseBytes(ByteUtilities.toByteArray(transaction));
     if (rawTx == null) {
       return new LinkedList<>();
@@ -700,6 +793,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
 
   @Override
   public String sendTransaction(String transaction) {
+    awaitContractSetup();
     LOGGER.debug("Asked to send: " + transaction);
     RawTransaction rawTx = RawTransaction.parseBytes(ByteUtilities.toByteArray(transaction));
 
@@ -752,6 +846,8 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
     configSummary
         .put("Maximum Transaction Value Per Day", config.getMaxAmountPerDay().toPlainString());
     configSummary.put("Contract", this.storageContractAddress);
+    configSummary.put("Contract Sync",
+        contractsReady.isDone() ? "Complete" : syncRound + "/" + syncRounds);
     if (config.getContractKey() != null && !config.getContractKey().isEmpty()) {
       configSummary
           .put("Contract Manager", EthereumTools.getPublicAddress(config.getContractKey(), true));
@@ -819,15 +915,40 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
     return txDetails.toArray(new TransactionDetails[txDetails.size()]);
   }
 
+  @Override
+  public TransactionPage getTransactionsSince(String address, String cursor) {
+    awaitContractSetup();
+    BigInteger latestBlockNumber =
+        new BigInteger(1, ByteUtilities.toByteArray(ethereumRpc.eth_blockNumber()));
+    BigInteger fromBlock = cursor == null ? BigInteger.ZERO
+        : new BigInteger(1, ByteUtilities.toByteArray(cursor));
+    if (fromBlock.compareTo(latestBlockNumber) > 0) {
+      return new TransactionPage(new TransactionDetails[0], cursor);
+    }
+
+    // The cursor is the first block that hasn't been scanned yet.
+    LinkedList<TransactionDetails> txDetails = new LinkedList<>();
+    Arrays.asList(getReconciliations(address, fromBlock, latestBlockNumber))
+        .forEach(txDetails::add);
+    Arrays.asList(getTransfers(address, fromBlock, latestBlockNumber)).forEach(txDetails::add);
+    Collections.sort(txDetails, new TxDateComparator());
+    return new TransactionPage(txDetails.toArray(new TransactionDetails[txDetails.size()]),
+        "0x" + latestBlockNumber.add(BigInteger.ONE).toString(16));
+  }
+
   private TransactionDetails[] getTransfers(String address) {
     // Get latest block
     BigInteger latestBlockNumber =
         new BigInteger(1, ByteUtilities.toByteArray(ethereumRpc.eth_blockNumber()));
+    return getTransfers(address, BigInteger.ZERO, latestBlockNumber);
+  }
 
+  private TransactionDetails[] getTransfers(String address, BigInteger fromBlock,
+      BigInteger latestBlockNumber) {
     LinkedList<TransactionDetails> txDetails = new LinkedList<>();
     Map<String, Object> filterParams = new HashMap<>();
-    filterParams.put("fromBlock", "0x00");
-    filterParams.put("toBlock", "latest");
+    filterParams.put("fromBlock", "0x" + fromBlock.toString(16));
+    filterParams.put("toBlock", "0x" + latestBlockNumber.toString(16));
     filterParams.put("address", "0x" + storageContractAddress);
     LinkedList<String> functionTopics = new LinkedList<>();
     functionTopics.add("0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef");
@@ -921,11 +1042,15 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
     // Get latest block
     BigInteger latestBlockNumber =
         new BigInteger(1, ByteUtilities.toByteArray(ethereumRpc.eth_blockNumber()));
+    return getReconciliations(address, BigInteger.ZERO, latestBlockNumber);
+  }
 
+  private TransactionDetails[] getReconciliations(String address, BigInteger fromBlock,
+      BigInteger latestBlockNumber) {
     LinkedList<TransactionDetails> txDetails = new LinkedList<>();
     Map<String, Object> filterParams = new HashMap<>();
-    filterParams.put("fromBlock", "0x00");
-    filterParams.put("toBlock", "latest");
+    filterParams.put("fromBlock", "0x" + fromBlock.toString(16));
+    filterParams.put("toBlock", "0x" + latestBlockNumber.toString(16));
     filterParams.put("address", "0x" + storageContractAddress);
     LinkedList<String> functionTopics = new LinkedList<>();
     functionTopics.add("0x73bb00f3ad09ef6bc524e5cf56563dff2bc6663caa0b4054aa5946811083ed2e");
@@ -1058,7 +1183,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   public ServerStatus getWalletStatus() {
     try {
       ethereumRpc.eth_blockNumber();
-      return ServerStatus.CONNECTED;
+      return contractsReady.isDone() ? ServerStatus.CONNECTED : ServerStatus.SYNCING;
     } catch (Exception e) {
       return ServerStatus.DISCONNECTED;
     }
@@ -1360,6 +1485,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   }
 
   public String generateTokens(String recipient, long amount) {
+    awaitContractSetup();
     Long nonce =
         contractInterface.getContractParameters().getNonce(ethereumRpc, adminContractAddress);
     RawTransaction tx = RawTransaction.createTransaction(config, adminContractAddress, null,
@@ -1371,6 +1497,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   }
 
   public String destroyTokens(String sender, long amount) {
+    awaitContractSetup();
     Long nonce =
         contractInterface.getContractParameters().getNonce(ethereumRpc, adminContractAddress);
     RawTransaction tx = RawTransaction.createTransaction(config, adminContractAddress, null,
@@ -1382,6 +1509,7 @@ public class TokenWallet implements Wallet, OfflineWallet, CurrencyAdmin {
   }
 
   public String reconcile(Map<String, BigInteger> addressChanges) {
+    awaitContractSetup();
     Long nonce =
         contractInterface.getContractParameters().getNonce(ethereumRpc, storageContractAddress);
     RawTransaction tx = RawTransaction.createTransaction(config, storageContractAddress, null,